@@ -2,9 +2,14 @@ package io.engytita.proxy;
 
 import static java.lang.String.format;
 
+import java.util.List;
+
+import io.engytita.proxy.handler.protocol.http1.Http1OriginPool;
 import io.engytita.proxy.handler.proxy.HttpProxyHandler;
 import io.engytita.proxy.handler.proxy.TransparentProxyHandler;
 import io.engytita.proxy.listener.ProxyListener;
+import io.engytita.proxy.listener.ProxyListenerManager;
+import io.engytita.proxy.tls.ClientIdentity;
 import io.engytita.proxy.tls.TlsContext;
 import io.engytita.proxy.ws.WebSocketContext;
 import io.netty.buffer.ByteBufAllocator;
@@ -19,6 +24,7 @@ public class ConnectionContext {
     private ProxyMaster master;
     private HandlerProvider provider;
     private ProxyListener listener;
+    private ProxyListener[] listenerSlots;
 
     private ByteBufAllocator alloc;
 
@@ -27,8 +33,16 @@ public class ConnectionContext {
 
     private Channel clientChannel;
     private Channel serverChannel;
+    private ChannelFuture connectFuture;
+    private Channel drainingServerChannel;
+    private volatile long serverRtt = -1;
+    // Set when the client speaks HTTP/2 and the server HTTP/1.1, the streams are then served by the origin pool
+    private boolean http2Translated;
+    private Http1OriginPool http1OriginPool;
 
     private TlsContext tlsCtx;
+    // Set once the client presented a verified certificate
+    private volatile ClientIdentity clientIdentity;
     private WebSocketContext wsCtx;
 
     public ConnectionContext(ProxyMaster master) {
@@ -36,7 +50,9 @@ public class ConnectionContext {
         this.provider = master.provider(this);
         this.tlsCtx = new TlsContext();
         this.wsCtx = new WebSocketContext();
-        this.listener = master.listenerProvider().create();
+        ProxyListenerManager listeners = master.listenerProvider().create();
+        this.listener = listeners;
+        this.listenerSlots = listeners.newSlots();
     }
 
     public ConnectionContext withClientAddr(Address clientAddr) {
@@ -57,6 +73,20 @@ public class ConnectionContext {
         return serverAddr;
     }
 
+    public ConnectionContext withClientIdentity(ClientIdentity clientIdentity) {
+        this.clientIdentity = clientIdentity;
+        return this;
+    }
+
+    /**
+     * Get the identity of the client, from the certificate it presented during the TLS handshake.
+     *
+     * @return the client identity, {@code null} without a client certificate
+     */
+    public ClientIdentity clientIdentity() {
+        return clientIdentity;
+    }
+
     public ConnectionContext withClientChannel(Channel clientChannel) {
         this.clientChannel = clientChannel;
         return this;
@@ -115,7 +145,7 @@ public class ConnectionContext {
         tlsCtx.protocols(fromCtx.executor().newPromise());
         tlsCtx.protocol(fromCtx.executor().newPromise());
         serverAddr = address;
-        return master.connect(fromCtx, this, new ChannelInitializer<Channel>() {
+        return connectFuture = master.connect(fromCtx, this, new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel ch) {
                 withServerChannel(ch);
@@ -126,10 +156,97 @@ public class ConnectionContext {
         });
     }
 
+    /**
+     * Replace the server connection with a new one to the same address, when the server stopped accepting new
+     * streams. The old connection keeps serving its in-flight streams until it is closed.
+     *
+     * @param fromCtx the ctx of the handler reconnecting
+     * @return the connect future
+     */
+    public ChannelFuture reconnect(ChannelHandlerContext fromCtx) {
+        boolean tlsEnabled = tlsCtx.isEnabled();
+        List<String> protocols = tlsEnabled ? tlsCtx.protocols() : null;
+        String protocol = tlsCtx.protocol();
+
+        drainingServerChannel = serverChannel;
+        serverChannel = null;
+        ChannelFuture future = connect(serverAddr, fromCtx);
+        // The protocol was already negotiated with the client, the new connection must use the same one
+        if (tlsEnabled) {
+            tlsCtx.protocolsPromise().setSuccess(protocols);
+        } else {
+            tlsCtx.disableTls();
+        }
+        tlsCtx.protocolPromise().setSuccess(protocol);
+        return future;
+    }
+
+    /**
+     * Forget a draining server connection once it was closed.
+     *
+     * @param channel the closed server channel
+     */
+    public void drained(Channel channel) {
+        if (drainingServerChannel == channel) {
+            drainingServerChannel = null;
+        }
+    }
+
     public Channel serverChannel() {
         return serverChannel;
     }
 
+    /**
+     * Get the future of the last connection to the server, which may still be in progress, such as after a CONNECT.
+     *
+     * @return the connect future, {@code null} if never connected
+     */
+    public ChannelFuture connectFuture() {
+        return connectFuture;
+    }
+
+    /**
+     * Get the previous server connection, still serving the streams opened before a {@link #reconnect}.
+     *
+     * @return the draining server channel, or {@code null}
+     */
+    public Channel drainingServerChannel() {
+        return drainingServerChannel;
+    }
+
+    /**
+     * Get the last round trip time measured with the server.
+     *
+     * @return the round trip time in nanoseconds, or {@code -1} if not measured
+     */
+    public long serverRtt() {
+        return serverRtt;
+    }
+
+    public void serverRtt(long serverRtt) {
+        this.serverRtt = serverRtt;
+    }
+
+    public boolean http2Translated() {
+        return http2Translated;
+    }
+
+    public void http2Translated(boolean http2Translated) {
+        this.http2Translated = http2Translated;
+    }
+
+    /**
+     * Get the pool of HTTP/1.1 server connections serving the streams of a translated HTTP/2 client.
+     *
+     * @return the origin pool, created on first use
+     */
+    public Http1OriginPool http1OriginPool() {
+        if (http1OriginPool == null) {
+            http1OriginPool = new Http1OriginPool(this);
+        }
+        return http1OriginPool;
+    }
+
     public Channel clientChannel() {
         return clientChannel;
     }
@@ -146,6 +263,15 @@ public class ConnectionContext {
         return listener;
     }
 
+    /**
+     * Get the listeners created for this connection by the non-shared listener providers.
+     *
+     * @return the per-connection listeners
+     */
+    public ProxyListener[] listenerSlots() {
+        return listenerSlots;
+    }
+
     public void close() {
         listener.close(this);
     }
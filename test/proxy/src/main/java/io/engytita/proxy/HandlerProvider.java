@@ -13,12 +13,15 @@ import io.engytita.proxy.handler.protocol.http1.Http1FrontendHandler;
 import io.engytita.proxy.handler.protocol.http2.Http2BackendHandler;
 import io.engytita.proxy.handler.protocol.http2.Http2EventHandler;
 import io.engytita.proxy.handler.protocol.http2.Http2FrontendHandler;
+import io.engytita.proxy.handler.protocol.http2.Http2TranslationHandler;
 import io.engytita.proxy.handler.protocol.tls.TlsBackendHandler;
 import io.engytita.proxy.handler.protocol.tls.TlsFrontendHandler;
 import io.engytita.proxy.handler.protocol.ws.WebSocketBackendHandler;
 import io.engytita.proxy.handler.protocol.ws.WebSocketEventHandler;
 import io.engytita.proxy.handler.protocol.ws.WebSocketFrontendHandler;
 import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http2.Http2Settings;
 
 public class HandlerProvider {
 
@@ -34,10 +37,23 @@ public class HandlerProvider {
         return new ProtocolSelectHandler(context);
     }
 
+    /**
+     * Whether there is a dedicated frontend handler for the protocol, other protocols are forwarded as is.
+     *
+     * @param protocol the protocol
+     * @return {@code true} if {@link #frontendHandler(String)} supports the protocol
+     */
+    public boolean supportsFrontend(String protocol) {
+        return protocol.equals(Protocols.HTTP_1)
+                || protocol.equals(Protocols.HTTP_2)
+                || protocol.equals(Protocols.H2C)
+                || protocol.equals(Protocols.FORWARD);
+    }
+
     public ChannelHandler frontendHandler(String protocol) {
         if (protocol.equals(Protocols.HTTP_1)) {
             return http1FrontendHandler();
-        } else if (protocol.equals(Protocols.HTTP_2)) {
+        } else if (protocol.equals(Protocols.HTTP_2) || protocol.equals(Protocols.H2C)) {
             return http2FrontendHandler();
         } else if (protocol.equals(Protocols.FORWARD)) {
             return forwardFrontendHandler();
@@ -47,9 +63,11 @@ public class HandlerProvider {
     }
 
     public ChannelHandler backendHandler(String protocol) {
-        if (protocol.equals(Protocols.HTTP_1)) {
+        if (context.http2Translated() && (protocol.equals(Protocols.HTTP_1) || protocol.equals(Protocols.H2C))) {
+            return context.http1OriginPool().connectionHandler();
+        } else if (protocol.equals(Protocols.HTTP_1)) {
             return http1BackendHandler();
-        } else if (protocol.equals(Protocols.HTTP_2)) {
+        } else if (protocol.equals(Protocols.HTTP_2) || protocol.equals(Protocols.H2C)) {
             return http2BackendHandler();
         } else if (protocol.equals(Protocols.FORWARD)) {
             return forwardBackendHandler();
@@ -90,6 +108,14 @@ public class HandlerProvider {
         return new Http2FrontendHandler(context);
     }
 
+    public ChannelHandler h2cUpgradeFrontendHandler(Http2Settings settings, FullHttpRequest request) {
+        return new Http2FrontendHandler(context, settings, request);
+    }
+
+    public ChannelHandler http2TranslationHandler() {
+        return new Http2TranslationHandler(context);
+    }
+
     public ChannelHandler http2EventHandler() {
         return new Http2EventHandler(context);
     }
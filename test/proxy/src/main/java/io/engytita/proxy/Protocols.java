@@ -4,6 +4,11 @@ public class Protocols {
 
    public static final String HTTP_1 = "http";
    public static final String HTTP_2 = "h2";
+   public static final String H2C = "h2c";
+   public static final String TLS = "tls";
+   public static final String RESP = "resp";
+   public static final String HOTROD = "hotrod";
+   public static final String PROXY = "proxy";
    public static final String FORWARD = "forward";
    public static final String UNKNOWN = "unknown";
 
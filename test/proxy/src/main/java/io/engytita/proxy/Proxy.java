@@ -1,11 +1,16 @@
 package io.engytita.proxy;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.jboss.logging.Logger;
 
+import io.engytita.proxy.channel.BackendChannelBootstrap;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.ServerSocketChannel;
@@ -17,6 +22,9 @@ public class Proxy {
    private static final Logger LOGGER = Logger.getLogger(Proxy.class);
 
    private final ProxyConfig config;
+   private volatile ProxyMaster master;
+   // Both stop() and the end of start() shut down, only the first one does
+   private final AtomicBoolean shutdown = new AtomicBoolean();
 
    private EventLoopGroup bossGroup;
    private EventLoopGroup workerGroup;
@@ -26,6 +34,15 @@ public class Proxy {
       this.config = config;
    }
 
+   /**
+    * Get the master of the running proxy, it is created by {@link #start()} from the configuration at that time.
+    *
+    * @return the master, null until the proxy is started
+    */
+   public ProxyMaster master() {
+      return master;
+   }
+
    private EventLoopGroup createEventLoopGroup(int nThreads) {
       return switch (config.getProxyTransport()) {
          case NIO -> new NioEventLoopGroup(nThreads);
@@ -42,16 +59,45 @@ public class Proxy {
       };
    }
 
+   private void shutdown() {
+      if (!shutdown.compareAndSet(false, true)) {
+         return;
+      }
+      // Stop accepting first, then let the clients finish their in-flight requests
+      if (bossGroup != null) {
+         bossGroup.shutdownGracefully();
+      }
+      ProxyMaster master = this.master;
+      if (master == null) {
+         return;
+      }
+      if (!master.clientChannels().close().awaitUninterruptibly(config.getGracefulShutdownTimeout())) {
+         LOGGER.warnf("client connections not drained within %dms", config.getGracefulShutdownTimeout());
+      }
+      if (workerGroup != null) {
+         workerGroup.shutdownGracefully();
+      }
+      master.shutdown();
+   }
+
    public void start() throws Exception {
+      // Compiles the listeners configured so far, and a restarted proxy does not reuse the executors shut down
+      ProxyMaster master = new ProxyMaster(config, new BackendChannelBootstrap());
+      this.master = master;
+      shutdown.set(false);
       bossGroup = createEventLoopGroup(1);
       workerGroup = createEventLoopGroup(0);
       try {
          ServerBootstrap bootstrap = new ServerBootstrap()
                .group(bossGroup, workerGroup)
                .channel(getServerChannelClass())
-               .childHandler(new ProxyInitializer(config))
+               .childHandler(new ProxyInitializer(master))
                /*.childOption(ChannelOption.SO_KEEPALIVE, true)
                .childOption(ChannelOption.TCP_NODELAY, true)*/;
+         if (config.getProxyTransport() == ProxyTransport.EPOLL && !config.getTlsPassthroughRules().isEmpty()) {
+            // The passed through connections are spliced, which needs level triggered channels
+            bootstrap.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED);
+         }
          Channel channel = bootstrap
                .bind(config.getHost(), config.getPort())
                .sync()
@@ -67,19 +113,13 @@ public class Proxy {
 
          channel.closeFuture().sync();
       } finally {
-         bossGroup.shutdownGracefully();
-         workerGroup.shutdownGracefully();
+         shutdown();
          status = ProxyStatus.STOPPED;
       }
    }
 
    public void stop() {
-      if (bossGroup != null) {
-         bossGroup.shutdownGracefully();
-      }
-      if (workerGroup != null) {
-         workerGroup.shutdownGracefully();
-      }
+      shutdown();
 
       status = ProxyStatus.STOPPED;
 
@@ -1,6 +1,15 @@
 package io.engytita.proxy;
 
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+import io.engytita.proxy.cache.ProxyCaffeineCache;
 import io.engytita.proxy.listener.ProxyCacheListener;
+import io.engytita.proxy.tls.CertUtil;
+import io.engytita.proxy.tls.TlsPassthroughRule;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslProvider;
 import picocli.CommandLine;
 
 /**
@@ -26,6 +35,39 @@ public class ProxyApp implements Runnable {
    @CommandLine.Option(names = {"-c", "--cache"}, description = "Enable proxy cache", defaultValue = "false")
    boolean cache;
 
+   @CommandLine.Option(names = {"-e", "--early-hints"}, description = "Send 103 Early Hints for the learned page sub-resources", defaultValue = "false")
+   boolean earlyHints;
+
+   @CommandLine.Option(names = {"--push"}, description = "Push the cached page sub-resources to http2 clients", defaultValue = "false")
+   boolean push;
+
+   @CommandLine.Option(names = {"--http2-translation"}, description = "Serve http2 clients of http/1.1 only backends over a pool of http/1.1 connections", defaultValue = "false")
+   boolean http2Translation;
+
+   @CommandLine.Option(names = {"--http1-pool-size"}, description = "The maximum number of http/1.1 backend connections per translated http2 client", defaultValue = "6")
+   int http1PoolSize;
+
+   @CommandLine.Option(names = {"--grpc"}, description = "Count the gRPC messages per method and enforce the grpc-timeout deadlines", defaultValue = "false")
+   boolean grpc;
+
+   @CommandLine.Option(names = {"--tls-engine"}, description = "Select a TLS engine (JDK, OPENSSL, OPENSSL_REFCNT), OpenSSL when available by default")
+   SslProvider tlsEngine;
+
+   @CommandLine.Option(names = {"--tls-passthrough"}, description = "Forward the TLS connections of the matching SNI encrypted, host, *.domain or *, optionally followed by =backend:port in transparent mode")
+   List<String> tlsPassthrough = List.of();
+
+   @CommandLine.Option(names = {"--tls-client-auth"}, description = "Ask the clients for a certificate (NONE, OPTIONAL, REQUIRE)", defaultValue = "NONE")
+   ClientAuth tlsClientAuth;
+
+   @CommandLine.Option(names = {"--tls-client-ca"}, description = "The PEM file of the CAs verifying the client certificates, the JVM trust store by default")
+   Path tlsClientCa;
+
+   @CommandLine.Option(names = {"--tls-client-crl"}, description = "A file or URL of CRLs revoking client certificates, reloaded in the background")
+   List<URI> tlsClientCrl = List.of();
+
+   @CommandLine.Option(names = {"--tls-client-ocsp"}, description = "Query the OCSP status of the client certificates in the background", defaultValue = "false")
+   boolean tlsClientOcsp;
+
    @CommandLine.Option(names = {"-t", "--transport"}, description = "Select a transport (NIO, EPOLL, URING)", defaultValue = "NIO")
    ProxyTransport transport;
 
@@ -38,8 +80,22 @@ public class ProxyApp implements Runnable {
       config.setRemoteHost(backendHost);
       config.setMaxContentLength(maxContentLength);
       config.setProxyTransport(transport);
+      config.setEarlyHints(earlyHints);
+      config.setHttp2Push(push);
+      config.setHttp2Translation(http2Translation);
+      config.setHttp1OriginPoolSize(http1PoolSize);
+      config.setGrpc(grpc);
+      config.setTlsEngine(tlsEngine);
+      config.setTlsPassthroughRules(tlsPassthrough.stream().map(TlsPassthroughRule::parse).toList());
+      config.setTlsClientAuth(tlsClientAuth);
+      if (tlsClientCa != null) {
+         config.setTlsClientCaCertificates(CertUtil.readCertificates(tlsClientCa));
+      }
+      config.setTlsClientCrlSources(tlsClientCrl);
+      config.setTlsClientOcsp(tlsClientOcsp);
       if (cache) {
-         config.getListeners().addFirst(new ProxyCacheListener());
+         config.setResponseCache(new ProxyCaffeineCache<>());
+         config.getListeners().addFirst(new ProxyCacheListener(config.getResponseCache()));
       }
       Proxy proxy = new Proxy(config);
       try {
@@ -2,9 +2,12 @@ package io.engytita.proxy;
 
 import static java.util.Arrays.asList;
 
+import java.net.URI;
+import java.nio.file.Path;
 import java.security.Provider;
-import java.util.Collections;
+import java.security.cert.X509Certificate;
 import java.util.List;
+import java.util.function.Function;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManager;
@@ -12,11 +15,22 @@ import javax.net.ssl.TrustManager;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.cert.X509CertificateHolder;
 
+import io.engytita.proxy.cache.ProxyCache;
 import io.engytita.proxy.enums.ProxyMode;
+import io.engytita.proxy.handler.protocol.HotRodProtocolDetector;
 import io.engytita.proxy.handler.protocol.ProtocolDetector;
+import io.engytita.proxy.handler.protocol.ProxyProtocolDetector;
+import io.engytita.proxy.handler.protocol.RespProtocolDetector;
 import io.engytita.proxy.handler.protocol.http1.Http1ProtocolDetector;
+import io.engytita.proxy.handler.protocol.http2.Http2PrefaceDetector;
+import io.engytita.proxy.handler.protocol.tls.TlsClientHelloDetector;
 import io.engytita.proxy.listener.ProxyListeners;
+import io.engytita.proxy.tls.TlsCipherPolicy;
+import io.engytita.proxy.tls.TlsPassthroughRule;
 import io.engytita.proxy.tls.UnsafeAccessSupport;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslProvider;
 
 public class ProxyConfig {
 
@@ -35,13 +49,83 @@ public class ProxyConfig {
    private boolean insecure;
    private Provider sslProvider;
    private List<String> tlsProtocols;
+   // TLS engine, OpenSSL when available if null, the session ticket keys and the stapled OCSP responses per host
+   // only apply to OpenSSL, the responses are fetched from the responder off the event loops
+   private SslProvider tlsEngine;
+   private List<byte[]> tlsTicketKeys;
+   // TLS cipher policy, the suites preferred with the clients and with the servers, the engine defaults follow them,
+   // null for the engine order alone, whether the order of the proxy wins over the order of the clients, and the
+   // named groups of the key exchanges in preference order, null for the engine defaults
+   private List<String> tlsClientCiphers;
+   private List<String> tlsServerCiphers;
+   private boolean tlsServerCipherPreference;
+   private List<String> tlsNamedGroups;
+   // TLS passthrough, the connections whose SNI matches a rule are forwarded encrypted instead of being intercepted
+   private List<TlsPassthroughRule> tlsPassthroughRules;
+   // TLS session resumption, the sessions cached per context, their timeout in seconds, and the rotation interval
+   // in milliseconds of the generated ticket keys, used without configured keys, 0 disables the rotation
+   private int tlsSessionCacheSize;
+   private long tlsSessionTimeout;
+   private long tlsTicketKeyRotation;
+   private Function<String, byte[]> ocspResponder;
+   // TLS handshake work run off the event loops, 0 threads runs it on the event loops, and the client handshakes
+   // in flight beyond which new connections are closed, 0 for no limit
+   private int tlsHandshakeThreads;
+   private int tlsMaxPendingHandshakes;
+   // Certificates minted per host in interception mode, signed off the event loops, shared by the sibling
+   // subdomains with wildcards, and kept in the store directory across restarts if set
+   private int certMintingThreads;
+   private boolean certWildcards;
+   private Path certStorePath;
    private KeyManagerFactory clientKeyManagerFactory;
+   // Client certificates, whether the clients present one, the CAs verifying them, the JVM trust store if empty, how
+   // long in milliseconds a verification is reused, the CRL sources and whether OCSP is queried, both kept in memory
+   // and refreshed in the background at the interval in milliseconds
+   private ClientAuth tlsClientAuth;
+   private List<X509Certificate> tlsClientCaCertificates;
+   private long tlsClientValidationCacheTtl;
+   private List<URI> tlsClientCrlSources;
+   private boolean tlsClientOcsp;
+   private long tlsClientRevocationRefresh;
    private int maxContentLength;
    private ProxyStatusListener statusListener;
    private ProxyListeners listeners;
    private TrustManager trustManager;
    private UnsafeAccessSupport unsafeAccessSupport = UnsafeAccessSupport.DENY;
    private List<ProtocolDetector> detectors;
+   // Blocking listeners
+   private int blockingListenerConcurrency;
+   private int blockingListenerQueueSize;
+   // HTTP/2 flow control, applied to both the client and the server connections
+   private int http2InitialWindowSize;
+   private int http2ConnectionWindowSize;
+   private int http2MaxFrameSize;
+   // HTTP/2 header compression, the size of the HPACK dynamic table and the limit of the decoded header list
+   private long http2HeaderTableSize;
+   private long http2MaxHeaderListSize;
+   // HTTP/2 write scheduling to the clients, the quantum is the number of bytes a stream writes before the next
+   // stream gets its turn, and up to the batch size flushes are coalesced, 0 disables the batching
+   private int http2SchedulerQuantum;
+   private int http2FlushBatchSize;
+   // HTTP/2 server connection liveness and draining, the durations are in milliseconds and a 0 ping interval
+   // disables the pings
+   private long http2PingInterval;
+   private int http2ReplayBufferSize;
+   private long gracefulShutdownTimeout;
+   // HTTP/2 clients of HTTP/1.1 only servers, the streams are translated to requests over a bounded pool of
+   // keep-alive connections per client connection
+   private boolean http2Translation;
+   private int http1OriginPoolSize;
+   // gRPC calls over HTTP/2, the messages are counted per method, up to the max methods, and the grpc-timeout
+   // deadlines are enforced by the proxy
+   private boolean grpc;
+   private int grpcMaxMethods;
+   // Cache, the responses are keyed by request uri
+   private ProxyCache<String, FullHttpResponse> responseCache;
+   private boolean earlyHints;
+   private int earlyHintsMaxPages;
+   private int earlyHintsMaxPreloads;
+   private boolean http2Push;
    // Default values
    public ProxyConfig() {
       proxyMode = ProxyMode.HTTP;
@@ -54,11 +138,59 @@ public class ProxyConfig {
 
       insecure = false;
       tlsProtocols = asList("TLSv1.3", "TLSv1.2");
+      tlsTicketKeys = List.of();
+      tlsClientCiphers = TlsCipherPolicy.preferredCiphers();
+      tlsServerCipherPreference = true;
+      tlsPassthroughRules = List.of();
+      tlsSessionCacheSize = 1024;
+      tlsSessionTimeout = 3600;
+      tlsTicketKeyRotation = 3_600_000;
+      tlsHandshakeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+      tlsMaxPendingHandshakes = 1024;
+      certMintingThreads = 2;
+      certWildcards = true;
+      tlsClientAuth = ClientAuth.NONE;
+      tlsClientCaCertificates = List.of();
+      tlsClientValidationCacheTtl = 600_000;
+      tlsClientCrlSources = List.of();
+      tlsClientRevocationRefresh = 3_600_000;
 
       maxContentLength = 1024 * 1024;
 
       listeners = new ProxyListeners();
-      detectors = Collections.singletonList(Http1ProtocolDetector.INSTANCE);
+      detectors = asList(
+            Http1ProtocolDetector.INSTANCE,
+            Http2PrefaceDetector.INSTANCE,
+            TlsClientHelloDetector.INSTANCE,
+            RespProtocolDetector.INSTANCE,
+            HotRodProtocolDetector.INSTANCE,
+            ProxyProtocolDetector.INSTANCE);
+
+      blockingListenerConcurrency = 256;
+      blockingListenerQueueSize = 10_000;
+
+      http2InitialWindowSize = 1024 * 1024;
+      http2ConnectionWindowSize = 16 * 1024 * 1024;
+      http2MaxFrameSize = 64 * 1024;
+      http2HeaderTableSize = 4096;
+      http2MaxHeaderListSize = 16 * 1024;
+      http2SchedulerQuantum = 1024;
+      http2FlushBatchSize = 16;
+
+      http2PingInterval = 30_000;
+      http2ReplayBufferSize = 64 * 1024;
+      gracefulShutdownTimeout = 10_000;
+
+      http2Translation = false;
+      http1OriginPoolSize = 6;
+
+      grpc = false;
+      grpcMaxMethods = 1000;
+
+      earlyHints = false;
+      earlyHintsMaxPages = 10_000;
+      earlyHintsMaxPreloads = 8;
+      http2Push = false;
    }
 
    public ProxyTransport getProxyTransport() {
@@ -149,6 +281,134 @@ public class ProxyConfig {
       this.tlsProtocols = tlsProtocols;
    }
 
+   public SslProvider getTlsEngine() {
+      return tlsEngine;
+   }
+
+   public void setTlsEngine(SslProvider tlsEngine) {
+      this.tlsEngine = tlsEngine;
+   }
+
+   public List<byte[]> getTlsTicketKeys() {
+      return tlsTicketKeys;
+   }
+
+   public void setTlsTicketKeys(List<byte[]> tlsTicketKeys) {
+      this.tlsTicketKeys = tlsTicketKeys;
+   }
+
+   public List<String> getTlsClientCiphers() {
+      return tlsClientCiphers;
+   }
+
+   public void setTlsClientCiphers(List<String> tlsClientCiphers) {
+      this.tlsClientCiphers = tlsClientCiphers;
+   }
+
+   public List<String> getTlsServerCiphers() {
+      return tlsServerCiphers;
+   }
+
+   public void setTlsServerCiphers(List<String> tlsServerCiphers) {
+      this.tlsServerCiphers = tlsServerCiphers;
+   }
+
+   public boolean isTlsServerCipherPreference() {
+      return tlsServerCipherPreference;
+   }
+
+   public void setTlsServerCipherPreference(boolean tlsServerCipherPreference) {
+      this.tlsServerCipherPreference = tlsServerCipherPreference;
+   }
+
+   public List<String> getTlsNamedGroups() {
+      return tlsNamedGroups;
+   }
+
+   public void setTlsNamedGroups(List<String> tlsNamedGroups) {
+      this.tlsNamedGroups = tlsNamedGroups;
+   }
+
+   public List<TlsPassthroughRule> getTlsPassthroughRules() {
+      return tlsPassthroughRules;
+   }
+
+   public void setTlsPassthroughRules(List<TlsPassthroughRule> tlsPassthroughRules) {
+      this.tlsPassthroughRules = tlsPassthroughRules;
+   }
+
+   public int getTlsSessionCacheSize() {
+      return tlsSessionCacheSize;
+   }
+
+   public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+      this.tlsSessionCacheSize = tlsSessionCacheSize;
+   }
+
+   public long getTlsSessionTimeout() {
+      return tlsSessionTimeout;
+   }
+
+   public void setTlsSessionTimeout(long tlsSessionTimeout) {
+      this.tlsSessionTimeout = tlsSessionTimeout;
+   }
+
+   public long getTlsTicketKeyRotation() {
+      return tlsTicketKeyRotation;
+   }
+
+   public void setTlsTicketKeyRotation(long tlsTicketKeyRotation) {
+      this.tlsTicketKeyRotation = tlsTicketKeyRotation;
+   }
+
+   public Function<String, byte[]> getOcspResponder() {
+      return ocspResponder;
+   }
+
+   public void setOcspResponder(Function<String, byte[]> ocspResponder) {
+      this.ocspResponder = ocspResponder;
+   }
+
+   public int getTlsHandshakeThreads() {
+      return tlsHandshakeThreads;
+   }
+
+   public void setTlsHandshakeThreads(int tlsHandshakeThreads) {
+      this.tlsHandshakeThreads = tlsHandshakeThreads;
+   }
+
+   public int getTlsMaxPendingHandshakes() {
+      return tlsMaxPendingHandshakes;
+   }
+
+   public void setTlsMaxPendingHandshakes(int tlsMaxPendingHandshakes) {
+      this.tlsMaxPendingHandshakes = tlsMaxPendingHandshakes;
+   }
+
+   public int getCertMintingThreads() {
+      return certMintingThreads;
+   }
+
+   public void setCertMintingThreads(int certMintingThreads) {
+      this.certMintingThreads = certMintingThreads;
+   }
+
+   public boolean isCertWildcards() {
+      return certWildcards;
+   }
+
+   public void setCertWildcards(boolean certWildcards) {
+      this.certWildcards = certWildcards;
+   }
+
+   public Path getCertStorePath() {
+      return certStorePath;
+   }
+
+   public void setCertStorePath(Path certStorePath) {
+      this.certStorePath = certStorePath;
+   }
+
    public KeyManagerFactory getClientKeyManagerFactory() {
       return clientKeyManagerFactory;
    }
@@ -165,6 +425,54 @@ public class ProxyConfig {
       this.trustManager = trustManager;
    }
 
+   public ClientAuth getTlsClientAuth() {
+      return tlsClientAuth;
+   }
+
+   public void setTlsClientAuth(ClientAuth tlsClientAuth) {
+      this.tlsClientAuth = tlsClientAuth;
+   }
+
+   public List<X509Certificate> getTlsClientCaCertificates() {
+      return tlsClientCaCertificates;
+   }
+
+   public void setTlsClientCaCertificates(List<X509Certificate> tlsClientCaCertificates) {
+      this.tlsClientCaCertificates = tlsClientCaCertificates;
+   }
+
+   public long getTlsClientValidationCacheTtl() {
+      return tlsClientValidationCacheTtl;
+   }
+
+   public void setTlsClientValidationCacheTtl(long tlsClientValidationCacheTtl) {
+      this.tlsClientValidationCacheTtl = tlsClientValidationCacheTtl;
+   }
+
+   public List<URI> getTlsClientCrlSources() {
+      return tlsClientCrlSources;
+   }
+
+   public void setTlsClientCrlSources(List<URI> tlsClientCrlSources) {
+      this.tlsClientCrlSources = tlsClientCrlSources;
+   }
+
+   public boolean isTlsClientOcsp() {
+      return tlsClientOcsp;
+   }
+
+   public void setTlsClientOcsp(boolean tlsClientOcsp) {
+      this.tlsClientOcsp = tlsClientOcsp;
+   }
+
+   public long getTlsClientRevocationRefresh() {
+      return tlsClientRevocationRefresh;
+   }
+
+   public void setTlsClientRevocationRefresh(long tlsClientRevocationRefresh) {
+      this.tlsClientRevocationRefresh = tlsClientRevocationRefresh;
+   }
+
    public int getMaxContentLength() {
       return maxContentLength;
    }
@@ -201,6 +509,174 @@ public class ProxyConfig {
       this.detectors = detectors;
    }
 
+   public int getBlockingListenerConcurrency() {
+      return blockingListenerConcurrency;
+   }
+
+   public void setBlockingListenerConcurrency(int blockingListenerConcurrency) {
+      this.blockingListenerConcurrency = blockingListenerConcurrency;
+   }
+
+   public int getBlockingListenerQueueSize() {
+      return blockingListenerQueueSize;
+   }
+
+   public void setBlockingListenerQueueSize(int blockingListenerQueueSize) {
+      this.blockingListenerQueueSize = blockingListenerQueueSize;
+   }
+
+   public int getHttp2InitialWindowSize() {
+      return http2InitialWindowSize;
+   }
+
+   public void setHttp2InitialWindowSize(int http2InitialWindowSize) {
+      this.http2InitialWindowSize = http2InitialWindowSize;
+   }
+
+   public int getHttp2ConnectionWindowSize() {
+      return http2ConnectionWindowSize;
+   }
+
+   public void setHttp2ConnectionWindowSize(int http2ConnectionWindowSize) {
+      this.http2ConnectionWindowSize = http2ConnectionWindowSize;
+   }
+
+   public int getHttp2MaxFrameSize() {
+      return http2MaxFrameSize;
+   }
+
+   public void setHttp2MaxFrameSize(int http2MaxFrameSize) {
+      this.http2MaxFrameSize = http2MaxFrameSize;
+   }
+
+   public long getHttp2HeaderTableSize() {
+      return http2HeaderTableSize;
+   }
+
+   public void setHttp2HeaderTableSize(long http2HeaderTableSize) {
+      this.http2HeaderTableSize = http2HeaderTableSize;
+   }
+
+   public long getHttp2MaxHeaderListSize() {
+      return http2MaxHeaderListSize;
+   }
+
+   public void setHttp2MaxHeaderListSize(long http2MaxHeaderListSize) {
+      this.http2MaxHeaderListSize = http2MaxHeaderListSize;
+   }
+
+   public int getHttp2SchedulerQuantum() {
+      return http2SchedulerQuantum;
+   }
+
+   public void setHttp2SchedulerQuantum(int http2SchedulerQuantum) {
+      this.http2SchedulerQuantum = http2SchedulerQuantum;
+   }
+
+   public int getHttp2FlushBatchSize() {
+      return http2FlushBatchSize;
+   }
+
+   public void setHttp2FlushBatchSize(int http2FlushBatchSize) {
+      this.http2FlushBatchSize = http2FlushBatchSize;
+   }
+
+   public long getHttp2PingInterval() {
+      return http2PingInterval;
+   }
+
+   public void setHttp2PingInterval(long http2PingInterval) {
+      this.http2PingInterval = http2PingInterval;
+   }
+
+   public int getHttp2ReplayBufferSize() {
+      return http2ReplayBufferSize;
+   }
+
+   public void setHttp2ReplayBufferSize(int http2ReplayBufferSize) {
+      this.http2ReplayBufferSize = http2ReplayBufferSize;
+   }
+
+   public long getGracefulShutdownTimeout() {
+      return gracefulShutdownTimeout;
+   }
+
+   public void setGracefulShutdownTimeout(long gracefulShutdownTimeout) {
+      this.gracefulShutdownTimeout = gracefulShutdownTimeout;
+   }
+
+   public boolean isHttp2Translation() {
+      return http2Translation;
+   }
+
+   public void setHttp2Translation(boolean http2Translation) {
+      this.http2Translation = http2Translation;
+   }
+
+   public int getHttp1OriginPoolSize() {
+      return http1OriginPoolSize;
+   }
+
+   public void setHttp1OriginPoolSize(int http1OriginPoolSize) {
+      this.http1OriginPoolSize = http1OriginPoolSize;
+   }
+
+   public boolean isGrpc() {
+      return grpc;
+   }
+
+   public void setGrpc(boolean grpc) {
+      this.grpc = grpc;
+   }
+
+   public int getGrpcMaxMethods() {
+      return grpcMaxMethods;
+   }
+
+   public void setGrpcMaxMethods(int grpcMaxMethods) {
+      this.grpcMaxMethods = grpcMaxMethods;
+   }
+
+   public ProxyCache<String, FullHttpResponse> getResponseCache() {
+      return responseCache;
+   }
+
+   public void setResponseCache(ProxyCache<String, FullHttpResponse> responseCache) {
+      this.responseCache = responseCache;
+   }
+
+   public boolean isEarlyHints() {
+      return earlyHints;
+   }
+
+   public void setEarlyHints(boolean earlyHints) {
+      this.earlyHints = earlyHints;
+   }
+
+   public int getEarlyHintsMaxPages() {
+      return earlyHintsMaxPages;
+   }
+
+   public void setEarlyHintsMaxPages(int earlyHintsMaxPages) {
+      this.earlyHintsMaxPages = earlyHintsMaxPages;
+   }
+
+   public int getEarlyHintsMaxPreloads() {
+      return earlyHintsMaxPreloads;
+   }
+
+   public void setEarlyHintsMaxPreloads(int earlyHintsMaxPreloads) {
+      this.earlyHintsMaxPreloads = earlyHintsMaxPreloads;
+   }
+
+   public boolean isHttp2Push() {
+      return http2Push;
+   }
+
+   public void setHttp2Push(boolean http2Push) {
+      this.http2Push = http2Push;
+   }
+
    @Override
    public String toString() {
       return "NitmProxyConfig{" +
@@ -214,13 +690,55 @@ public class ProxyConfig {
             ", insecure=" + insecure +
             ", sslProvider=" + sslProvider +
             ", tlsProtocols=" + tlsProtocols +
+            ", tlsEngine=" + tlsEngine +
+            ", tlsTicketKeys=" + tlsTicketKeys.size() +
+            ", tlsClientCiphers=" + tlsClientCiphers +
+            ", tlsServerCiphers=" + tlsServerCiphers +
+            ", tlsServerCipherPreference=" + tlsServerCipherPreference +
+            ", tlsNamedGroups=" + tlsNamedGroups +
+            ", tlsPassthroughRules=" + tlsPassthroughRules +
+            ", tlsSessionCacheSize=" + tlsSessionCacheSize +
+            ", tlsSessionTimeout=" + tlsSessionTimeout +
+            ", tlsTicketKeyRotation=" + tlsTicketKeyRotation +
+            ", tlsHandshakeThreads=" + tlsHandshakeThreads +
+            ", tlsMaxPendingHandshakes=" + tlsMaxPendingHandshakes +
+            ", certMintingThreads=" + certMintingThreads +
+            ", certWildcards=" + certWildcards +
+            ", certStorePath=" + certStorePath +
             ", clientKeyManagerFactory=" + clientKeyManagerFactory +
+            ", tlsClientAuth=" + tlsClientAuth +
+            ", tlsClientCaCertificates=" + tlsClientCaCertificates.size() +
+            ", tlsClientValidationCacheTtl=" + tlsClientValidationCacheTtl +
+            ", tlsClientCrlSources=" + tlsClientCrlSources +
+            ", tlsClientOcsp=" + tlsClientOcsp +
+            ", tlsClientRevocationRefresh=" + tlsClientRevocationRefresh +
             ", maxContentLength=" + maxContentLength +
             ", statusListener=" + statusListener +
             ", listenerStore=" + listeners +
             ", trustManager=" + trustManager +
             ", unsafeAccessSupport=" + unsafeAccessSupport +
             ", detectors=" + detectors +
+            ", blockingListenerConcurrency=" + blockingListenerConcurrency +
+            ", blockingListenerQueueSize=" + blockingListenerQueueSize +
+            ", http2InitialWindowSize=" + http2InitialWindowSize +
+            ", http2ConnectionWindowSize=" + http2ConnectionWindowSize +
+            ", http2MaxFrameSize=" + http2MaxFrameSize +
+            ", http2HeaderTableSize=" + http2HeaderTableSize +
+            ", http2MaxHeaderListSize=" + http2MaxHeaderListSize +
+            ", http2SchedulerQuantum=" + http2SchedulerQuantum +
+            ", http2FlushBatchSize=" + http2FlushBatchSize +
+            ", http2PingInterval=" + http2PingInterval +
+            ", http2ReplayBufferSize=" + http2ReplayBufferSize +
+            ", gracefulShutdownTimeout=" + gracefulShutdownTimeout +
+            ", http2Translation=" + http2Translation +
+            ", http1OriginPoolSize=" + http1OriginPoolSize +
+            ", grpc=" + grpc +
+            ", grpcMaxMethods=" + grpcMaxMethods +
+            ", responseCache=" + responseCache +
+            ", earlyHints=" + earlyHints +
+            ", earlyHintsMaxPages=" + earlyHintsMaxPages +
+            ", earlyHintsMaxPreloads=" + earlyHintsMaxPreloads +
+            ", http2Push=" + http2Push +
             '}';
    }
 }
\ No newline at end of file
@@ -33,6 +33,7 @@ public class ProxyInitializer extends ChannelInitializer<Channel> {
                 .withClientChannel(channel)
                 .withAlloc(channel.alloc());
         context.listener().onInit(context, channel);
+        master.clientChannels().add(channel);
 
         LOGGER.debug("{} : connection init", context);
 
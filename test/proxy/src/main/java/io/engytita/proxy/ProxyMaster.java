@@ -1,26 +1,62 @@
 package io.engytita.proxy;
 
+import io.engytita.proxy.cache.EarlyHints;
 import io.engytita.proxy.channel.BackendChannelBootstrap;
+import io.engytita.proxy.grpc.GrpcStats;
+import io.engytita.proxy.handler.protocol.http2.Http2WriteStats;
+import io.engytita.proxy.listener.BlockingListenerExecutor;
 import io.engytita.proxy.listener.ProxyListenerManagerProvider;
-import io.engytita.proxy.listener.ProxyListenerProvider;
 import io.engytita.proxy.tls.CertManager;
+import io.engytita.proxy.tls.ClientCertVerifier;
+import io.engytita.proxy.tls.HandshakeExecutor;
+import io.engytita.proxy.tls.OcspStapling;
+import io.engytita.proxy.tls.SessionTicketKeys;
+import io.engytita.proxy.tls.SslContextCache;
+import io.engytita.proxy.tls.TlsSessionStats;
+import io.engytita.proxy.tls.TlsUtil;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
 public class ProxyMaster {
 
    private final ProxyConfig config;
    private final BackendChannelBootstrap backendChannelBootstrap;
    private final ProxyListenerManagerProvider listenerProvider;
+   private final BlockingListenerExecutor blockingListenerExecutor;
    private final CertManager certManager;
+   private final SslContextCache sslContextCache = new SslContextCache();
+   private final SessionTicketKeys sessionTicketKeys;
+   private final TlsSessionStats tlsSessionStats = new TlsSessionStats();
+   private final HandshakeExecutor handshakeExecutor;
+   private final ClientCertVerifier clientCertVerifier;
+   private final OcspStapling ocspStapling;
+   private final EarlyHints earlyHints;
+   private final Http2WriteStats http2WriteStats = new Http2WriteStats();
+   private final GrpcStats grpcStats;
+   private final ChannelGroup clientChannels = new DefaultChannelGroup("clients", GlobalEventExecutor.INSTANCE);
 
    public ProxyMaster(ProxyConfig config,
                       BackendChannelBootstrap backendChannelBootstrap) {
       this.config = config;
       this.backendChannelBootstrap = backendChannelBootstrap;
-      this.listenerProvider = new ProxyListenerManagerProvider(config.getListeners());
+      this.blockingListenerExecutor = new BlockingListenerExecutor(config.getBlockingListenerConcurrency(),
+            config.getBlockingListenerQueueSize());
+      this.listenerProvider = new ProxyListenerManagerProvider(config.getListeners(), blockingListenerExecutor);
       this.certManager = new CertManager(config);
+      this.sessionTicketKeys = new SessionTicketKeys(config);
+      this.handshakeExecutor = new HandshakeExecutor(config);
+      this.clientCertVerifier = config.getTlsClientAuth() != ClientAuth.NONE ? new ClientCertVerifier(config) : null;
+      this.ocspStapling = config.getOcspResponder() != null && TlsUtil.tlsEngine(config) != SslProvider.JDK
+            ? new OcspStapling(config)
+            : null;
+      this.earlyHints = new EarlyHints(config);
+      this.grpcStats = new GrpcStats(config.getGrpcMaxMethods());
    }
 
    public ProxyConfig config() {
@@ -31,16 +67,91 @@ public class ProxyMaster {
       return new HandlerProvider(this, context);
    }
 
-   public ProxyListenerProvider listenerProvider() {
+   public ProxyListenerManagerProvider listenerProvider() {
       return listenerProvider;
    }
 
+   /**
+    * Recompile the listener chain from the configured listeners. Existing connections keep the chain they were
+    * created with, new connections use the reloaded one.
+    */
+   public void reloadListeners() {
+      listenerProvider.reload();
+   }
+
+   public BlockingListenerExecutor blockingListenerExecutor() {
+      return blockingListenerExecutor;
+   }
+
    public CertManager certManager() {
       return certManager;
    }
 
+   public SslContextCache sslContextCache() {
+      return sslContextCache;
+   }
+
+   public SessionTicketKeys sessionTicketKeys() {
+      return sessionTicketKeys;
+   }
+
+   public TlsSessionStats tlsSessionStats() {
+      return tlsSessionStats;
+   }
+
+   public HandshakeExecutor handshakeExecutor() {
+      return handshakeExecutor;
+   }
+
+   /**
+    * @return the verifier of the client certificates, null if the clients are not asked for one
+    */
+   public ClientCertVerifier clientCertVerifier() {
+      return clientCertVerifier;
+   }
+
+   /**
+    * @return the OCSP responses stapled for the clients, null without a responder or with the JDK engine
+    */
+   public OcspStapling ocspStapling() {
+      return ocspStapling;
+   }
+
+   public EarlyHints earlyHints() {
+      return earlyHints;
+   }
+
+   public Http2WriteStats http2WriteStats() {
+      return http2WriteStats;
+   }
+
+   public GrpcStats grpcStats() {
+      return grpcStats;
+   }
+
+   /**
+    * Get the open client connections, closing them drains the http2 connections with a graceful GOAWAY.
+    *
+    * @return the client channels
+    */
+   public ChannelGroup clientChannels() {
+      return clientChannels;
+   }
+
    public ChannelFuture connect(ChannelHandlerContext fromCtx, ConnectionContext connectionContext,
                                 ChannelHandler handler) {
       return backendChannelBootstrap.connect(fromCtx, connectionContext, handler);
    }
+
+   public void shutdown() {
+      blockingListenerExecutor.shutdown();
+      certManager.shutdown();
+      handshakeExecutor.shutdown();
+      if (clientCertVerifier != null) {
+         clientCertVerifier.shutdown();
+      }
+      if (ocspStapling != null) {
+         ocspStapling.shutdown();
+      }
+   }
 }
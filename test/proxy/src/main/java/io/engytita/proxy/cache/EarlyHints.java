@@ -0,0 +1,187 @@
+package io.engytita.proxy.cache;
+
+import static io.netty.handler.codec.http.HttpMethod.GET;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.engytita.proxy.ProxyConfig;
+import io.engytita.proxy.event.HttpEvent;
+import io.netty.util.AsciiString;
+
+/**
+ * Learns the sub-resources loaded by the pages, to announce them with {@code 103 Early Hints} before the page is
+ * served.
+ * <p>
+ * A sub-resource is recorded for a page when a successful GET request refers to the page with the {@code referer}
+ * header. Only the same origin styles, scripts, images and fonts are recorded, in the order they were first seen.
+ */
+public class EarlyHints {
+
+   public static final AsciiString LINK = AsciiString.cached("link");
+
+   private final boolean enabled;
+   private final int maxPreloads;
+   private final Cache<String, Preloads> pages;
+
+   public EarlyHints(ProxyConfig config) {
+      this.enabled = config.isEarlyHints();
+      this.maxPreloads = config.getEarlyHintsMaxPreloads();
+      this.pages = Caffeine.newBuilder()
+            .maximumSize(config.getEarlyHintsMaxPages())
+            .build();
+   }
+
+   public boolean isEnabled() {
+      return enabled;
+   }
+
+   /**
+    * Record the resource of a served request for the page it was loaded from.
+    *
+    * @param event the http event
+    */
+   public void learn(HttpEvent event) {
+      if (!enabled || event.getReferer() == null || event.getHost() == null || event.getMethod() != GET
+            || event.getStatus() == null || event.getStatus().code() / 100 != 2) {
+         return;
+      }
+      String destination = destination(event.getContentType());
+      if (destination == null) {
+         return;
+      }
+      URI referer = parse(event.getReferer());
+      if (referer == null || !event.getHost().equals(referer.getRawAuthority())) {
+         return;
+      }
+      String resource = path(event.getPath());
+      String page = referer.getRawQuery() == null
+            ? referer.getRawPath()
+            : referer.getRawPath() + "?" + referer.getRawQuery();
+      if (resource == null || page == null || page.isEmpty() || page.equals(resource)) {
+         return;
+      }
+      pages.get(key(event.getHost(), page), ignore -> new Preloads(maxPreloads))
+            .add(resource, destination);
+   }
+
+   /**
+    * Get the {@code link} header announcing the sub-resources of a page.
+    *
+    * @param host the host of the page
+    * @param path the path of the page
+    * @return the link header value, or {@code null} if no sub-resource was recorded
+    */
+   public String links(String host, String path) {
+      if (!enabled || host == null) {
+         return null;
+      }
+      String page = path(path);
+      if (page == null) {
+         return null;
+      }
+      Preloads preloads = pages.getIfPresent(key(host, page));
+      return preloads == null ? null : preloads.link();
+   }
+
+   /**
+    * Get the paths of the sub-resources of a page.
+    *
+    * @param host the host of the page
+    * @param path the path of the page
+    * @return the paths of the sub-resources
+    */
+   public List<String> resources(String host, String path) {
+      String page = enabled && host != null ? path(path) : null;
+      Preloads preloads = page == null ? null : pages.getIfPresent(key(host, page));
+      return preloads == null ? List.of() : preloads.resources();
+   }
+
+   private static String key(String host, String path) {
+      return host + path;
+   }
+
+   // The uri of the requests sent to a http proxy is in absolute form, the pages are keyed by their origin form
+   private static String path(String uri) {
+      if (uri == null || uri.startsWith("/")) {
+         return uri;
+      }
+      URI parsed = parse(uri);
+      if (parsed == null || parsed.getRawPath() == null) {
+         return null;
+      }
+      return parsed.getRawQuery() == null ? parsed.getRawPath() : parsed.getRawPath() + "?" + parsed.getRawQuery();
+   }
+
+   private static URI parse(String uri) {
+      try {
+         return new URI(uri);
+      } catch (URISyntaxException e) {
+         return null;
+      }
+   }
+
+   private static String destination(String contentType) {
+      if (contentType == null) {
+         return null;
+      }
+      if (contentType.equals("text/css")) {
+         return "style";
+      }
+      if (contentType.endsWith("javascript")) {
+         return "script";
+      }
+      if (contentType.startsWith("image/")) {
+         return "image";
+      }
+      if (contentType.startsWith("font/") || contentType.startsWith("application/font")) {
+         return "font";
+      }
+      return null;
+   }
+
+   private static class Preloads {
+      private final int max;
+      // Resource paths to their preload destination, in the order they were first seen
+      private final Map<String, String> destinations = new LinkedHashMap<>();
+      private volatile List<String> resources = List.of();
+      private volatile String link;
+
+      private Preloads(int max) {
+         this.max = max;
+      }
+
+      private synchronized void add(String resource, String destination) {
+         if (destinations.size() >= max || destinations.putIfAbsent(resource, destination) != null) {
+            return;
+         }
+         StringBuilder builder = new StringBuilder();
+         destinations.forEach((path, as) -> {
+            if (builder.length() > 0) {
+               builder.append(", ");
+            }
+            builder.append('<').append(path).append(">; rel=preload; as=").append(as);
+            if (as.equals("font")) {
+               // Fonts are always fetched in cors mode
+               builder.append("; crossorigin");
+            }
+         });
+         resources = List.copyOf(destinations.keySet());
+         link = builder.toString();
+      }
+
+      private String link() {
+         return link;
+      }
+
+      private List<String> resources() {
+         return resources;
+      }
+   }
+}
@@ -5,15 +5,22 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollSocketChannel;
 
 public class BackendChannelBootstrap {
    public ChannelFuture connect(ChannelHandlerContext fromCtx,
                                 ConnectionContext connectionContext,
                                 ChannelHandler handler) {
-      return new Bootstrap()
+      Bootstrap bootstrap = new Bootstrap()
             .group(fromCtx.channel().eventLoop())
             .channel(fromCtx.channel().getClass())
-            .handler(handler)
+            .handler(handler);
+      if (fromCtx.channel() instanceof EpollSocketChannel epollChannel) {
+         // Same mode on both legs, so they can be spliced
+         bootstrap.option(EpollChannelOption.EPOLL_MODE, epollChannel.config().getEpollMode());
+      }
+      return bootstrap
             /*.option(ChannelOption.SO_KEEPALIVE, true)
             .option(ChannelOption.TCP_NODELAY, true)*/
             .connect(connectionContext.getServerAddr().getHost(),
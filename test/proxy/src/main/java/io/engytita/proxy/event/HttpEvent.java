@@ -2,11 +2,14 @@ package io.engytita.proxy.event;
 
 import io.engytita.proxy.Address;
 import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.tls.TlsContext;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
 
 public class HttpEvent {
+   private ConnectionContext connectionContext;
    private Address client;
    private Address server;
 
@@ -15,6 +18,7 @@ public class HttpEvent {
    private HttpVersion version;
    private String host;
    private String path;
+   private String referer;
    private long requestBodySize;
    private long requestTime;
 
@@ -23,10 +27,24 @@ public class HttpEvent {
    private String contentType;
    private long responseBodySize;
    private long responseTime;
+   private HttpHeaders trailers;
+
+   // grpc
+   private Integer grpcStatus;
+   private String grpcMessage;
+   private long requestMessages;
+   private long responseMessages;
+
+   // tls, null without tls on the leg
+   private String clientTlsProtocol;
+   private String clientCipherSuite;
+   private String serverTlsProtocol;
+   private String serverCipherSuite;
 
    private long timeSpent;
 
    private HttpEvent(Builder builder) {
+      connectionContext = builder.connectionContext;
       client = builder.client;
       server = builder.server;
 
@@ -34,6 +52,7 @@ public class HttpEvent {
       version = builder.version;
       host = builder.host;
       path = builder.path;
+      referer = builder.referer;
       requestBodySize = builder.requestBodySize;
       requestTime = builder.requestTime;
 
@@ -41,6 +60,19 @@ public class HttpEvent {
       contentType = builder.contentType;
       responseBodySize = builder.responseBodySize;
       responseTime = builder.responseTime;
+      trailers = builder.trailers;
+
+      grpcStatus = builder.grpcStatus;
+      grpcMessage = builder.grpcMessage;
+      requestMessages = builder.requestMessages;
+      responseMessages = builder.responseMessages;
+
+      // Both handshakes completed before the response
+      TlsContext tlsCtx = connectionContext.tlsCtx();
+      clientTlsProtocol = tlsCtx.clientTlsProtocol();
+      clientCipherSuite = tlsCtx.clientCipherSuite();
+      serverTlsProtocol = tlsCtx.serverTlsProtocol();
+      serverCipherSuite = tlsCtx.serverCipherSuite();
 
       timeSpent = builder.responseTime - builder.requestTime;
    }
@@ -49,6 +81,10 @@ public class HttpEvent {
       return new Builder(ctx);
    }
 
+   public ConnectionContext getConnectionContext() {
+      return connectionContext;
+   }
+
    public Address getClient() {
       return client;
    }
@@ -73,6 +109,10 @@ public class HttpEvent {
       return path;
    }
 
+   public String getReferer() {
+      return referer;
+   }
+
    public long getRequestBodySize() {
       return requestBodySize;
    }
@@ -97,11 +137,66 @@ public class HttpEvent {
       return responseTime;
    }
 
+   /**
+    * @return the trailers of the response, null if the response had none
+    */
+   public HttpHeaders getTrailers() {
+      return trailers;
+   }
+
+   /**
+    * @return the status of a gRPC call, null if not a gRPC call or if the call ended without a status
+    */
+   public Integer getGrpcStatus() {
+      return grpcStatus;
+   }
+
+   public String getGrpcMessage() {
+      return grpcMessage;
+   }
+
+   public long getRequestMessages() {
+      return requestMessages;
+   }
+
+   public long getResponseMessages() {
+      return responseMessages;
+   }
+
+   /**
+    * @return the TLS protocol negotiated with the client, such as {@code TLSv1.3}, null without TLS
+    */
+   public String getClientTlsProtocol() {
+      return clientTlsProtocol;
+   }
+
+   /**
+    * @return the cipher suite negotiated with the client, null without TLS
+    */
+   public String getClientCipherSuite() {
+      return clientCipherSuite;
+   }
+
+   /**
+    * @return the TLS protocol negotiated with the server, null without TLS
+    */
+   public String getServerTlsProtocol() {
+      return serverTlsProtocol;
+   }
+
+   /**
+    * @return the cipher suite negotiated with the server, null without TLS
+    */
+   public String getServerCipherSuite() {
+      return serverCipherSuite;
+   }
+
    public long getTimeSpent() {
       return timeSpent;
    }
 
    public static class Builder {
+      private ConnectionContext connectionContext;
       private Address client;
       private Address server;
 
@@ -110,6 +205,7 @@ public class HttpEvent {
       private HttpVersion version;
       private String host;
       private String path;
+      private String referer;
       private long requestBodySize;
       private long requestTime;
 
@@ -118,8 +214,16 @@ public class HttpEvent {
       private String contentType;
       private long responseBodySize;
       private long responseTime;
+      private HttpHeaders trailers;
+
+      // grpc
+      private Integer grpcStatus;
+      private String grpcMessage;
+      private long requestMessages;
+      private long responseMessages;
 
       private Builder(ConnectionContext ctx) {
+         connectionContext = ctx;
          client = ctx.getClientAddr();
          server = ctx.getServerAddr();
       }
@@ -144,6 +248,11 @@ public class HttpEvent {
          return this;
       }
 
+      public Builder referer(String referer) {
+         this.referer = referer;
+         return this;
+      }
+
       public Builder requestBodySize(long requestBodySize) {
          this.requestBodySize = requestBodySize;
          return this;
@@ -184,6 +293,31 @@ public class HttpEvent {
          return this;
       }
 
+      public Builder trailers(HttpHeaders trailers) {
+         this.trailers = trailers;
+         return this;
+      }
+
+      public Builder grpcStatus(Integer grpcStatus) {
+         this.grpcStatus = grpcStatus;
+         return this;
+      }
+
+      public Builder grpcMessage(String grpcMessage) {
+         this.grpcMessage = grpcMessage;
+         return this;
+      }
+
+      public Builder requestMessages(long requestMessages) {
+         this.requestMessages = requestMessages;
+         return this;
+      }
+
+      public Builder responseMessages(long responseMessages) {
+         this.responseMessages = responseMessages;
+         return this;
+      }
+
       public HttpEvent build() {
          return new HttpEvent(this);
       }
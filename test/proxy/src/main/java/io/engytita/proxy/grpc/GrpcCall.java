@@ -0,0 +1,177 @@
+package io.engytita.proxy.grpc;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.Future;
+
+/**
+ * The state of a gRPC call going through a http2 stream, the messages of both directions and the status of the
+ * trailers.
+ * <p>
+ * A call is confined to the event loop of the client connection.
+ */
+public class GrpcCall {
+
+   public static final AsciiString CONTENT_TYPE_GRPC = AsciiString.cached("application/grpc");
+   public static final AsciiString GRPC_STATUS = AsciiString.cached("grpc-status");
+   public static final AsciiString GRPC_MESSAGE = AsciiString.cached("grpc-message");
+   public static final AsciiString GRPC_TIMEOUT = AsciiString.cached("grpc-timeout");
+
+   public static final int OK = 0;
+   public static final int UNKNOWN = 2;
+   public static final int DEADLINE_EXCEEDED = 4;
+
+   // A timeout is at most 8 digits followed by its unit
+   private static final int MAX_TIMEOUT_DIGITS = 8;
+
+   private final String method;
+   private final long startNanos;
+   private final GrpcMessageCounter requests = new GrpcMessageCounter();
+   private final GrpcMessageCounter responses = new GrpcMessageCounter();
+   private long latencyNanos = -1;
+   private Integer status;
+   private String message;
+   private Future<?> deadline;
+
+   public GrpcCall(String method) {
+      this.method = method;
+      this.startNanos = System.nanoTime();
+   }
+
+   /**
+    * Check if a request is a gRPC call, from its content type.
+    *
+    * @param headers the request headers
+    * @return {@code true} if the content type is {@code application/grpc}, with or without a sub type
+    */
+   public static boolean isGrpc(Http2Headers headers) {
+      CharSequence contentType = headers.get(CONTENT_TYPE);
+      if (contentType == null || !AsciiString.regionMatches(contentType, true, 0, CONTENT_TYPE_GRPC, 0,
+            CONTENT_TYPE_GRPC.length())) {
+         return false;
+      }
+      if (contentType.length() == CONTENT_TYPE_GRPC.length()) {
+         return true;
+      }
+      char next = contentType.charAt(CONTENT_TYPE_GRPC.length());
+      return next == '+' || next == ';';
+   }
+
+   /**
+    * Parse a {@code grpc-timeout} header, an ASCII integer of at most 8 digits followed by one of the units
+    * {@code H}, {@code M}, {@code S}, {@code m}, {@code u} and {@code n}.
+    *
+    * @param timeout the header value, may be null
+    * @return the timeout in nanoseconds, -1 if absent or malformed
+    */
+   public static long timeoutNanos(CharSequence timeout) {
+      if (timeout == null || timeout.length() < 2 || timeout.length() > MAX_TIMEOUT_DIGITS + 1) {
+         return -1;
+      }
+      int last = timeout.length() - 1;
+      long value = 0;
+      for (int i = 0; i < last; i++) {
+         char c = timeout.charAt(i);
+         if (c < '0' || c > '9') {
+            return -1;
+         }
+         value = value * 10 + c - '0';
+      }
+      TimeUnit unit = switch (timeout.charAt(last)) {
+         case 'H' -> TimeUnit.HOURS;
+         case 'M' -> TimeUnit.MINUTES;
+         case 'S' -> TimeUnit.SECONDS;
+         case 'm' -> TimeUnit.MILLISECONDS;
+         case 'u' -> TimeUnit.MICROSECONDS;
+         case 'n' -> TimeUnit.NANOSECONDS;
+         default -> null;
+      };
+      return unit == null ? -1 : unit.toNanos(value);
+   }
+
+   /**
+    * Read the status of the trailers, or of the headers of a trailers-only response.
+    *
+    * @param headers the trailers
+    */
+   public void onTrailers(Http2Headers headers) {
+      CharSequence grpcStatus = headers.get(GRPC_STATUS);
+      if (grpcStatus == null) {
+         return;
+      }
+      try {
+         status = Integer.parseInt(grpcStatus.toString());
+      } catch (NumberFormatException e) {
+         status = UNKNOWN;
+      }
+      // The message is kept percent-encoded, as sent by the server
+      message = headers.contains(GRPC_MESSAGE) ? headers.get(GRPC_MESSAGE).toString() : null;
+   }
+
+   /**
+    * Set the task which ends the call at its deadline.
+    *
+    * @param deadline the scheduled task
+    */
+   public void deadline(Future<?> deadline) {
+      this.deadline = deadline;
+   }
+
+   /**
+    * Stop the latency clock and cancel the deadline, once the call ended.
+    */
+   public void end() {
+      if (latencyNanos < 0) {
+         latencyNanos = System.nanoTime() - startNanos;
+      }
+      if (deadline != null) {
+         deadline.cancel(false);
+         deadline = null;
+      }
+   }
+
+   public String method() {
+      return method;
+   }
+
+   public GrpcMessageCounter requests() {
+      return requests;
+   }
+
+   public GrpcMessageCounter responses() {
+      return responses;
+   }
+
+   /**
+    * @return the time from the request headers to the end of the call, in nanoseconds
+    */
+   public long latencyNanos() {
+      return latencyNanos < 0 ? System.nanoTime() - startNanos : latencyNanos;
+   }
+
+   /**
+    * @return the gRPC status of the trailers, null if the call ended without one
+    */
+   public Integer status() {
+      return status;
+   }
+
+   public String message() {
+      return message;
+   }
+
+   @Override
+   public String toString() {
+      return "GrpcCall{" +
+            "method='" + method + '\'' +
+            ", status=" + status +
+            ", requestMessages=" + requests.messages() +
+            ", responseMessages=" + responses.messages() +
+            ", latencyNanos=" + latencyNanos() +
+            '}';
+   }
+}
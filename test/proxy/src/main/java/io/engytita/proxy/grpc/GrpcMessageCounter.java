@@ -0,0 +1,97 @@
+package io.engytita.proxy.grpc;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Counts the length-prefixed messages of one direction of a gRPC call, as its DATA frames go through the proxy.
+ * <p>
+ * A message is a 1 byte compressed flag and a 4 bytes big endian length, followed by the payload. The prefix and the
+ * payload may be split across any number of frames, so the counter keeps the position within the current message.
+ * The frames are only read at absolute indexes, their content is neither copied nor consumed.
+ */
+public class GrpcMessageCounter {
+
+   private static final int PREFIX_LENGTH = 5;
+
+   private long messages;
+   private long compressedMessages;
+   private long bytes;
+   private long maxMessageSize;
+
+   // Position within the current message, the bytes of a split prefix and the payload bytes still to skip
+   private int prefixRead;
+   private long prefix;
+   private long remaining;
+
+   /**
+    * Account the content of a DATA frame.
+    *
+    * @param content the frame content
+    */
+   public void onData(ByteBuf content) {
+      int index = content.readerIndex();
+      int end = content.writerIndex();
+      while (index < end) {
+         if (remaining > 0) {
+            int skipped = (int) Math.min(remaining, end - index);
+            index += skipped;
+            remaining -= skipped;
+         } else if (prefixRead == 0 && end - index >= PREFIX_LENGTH) {
+            onMessage(content.getByte(index), content.getUnsignedInt(index + 1));
+            index += PREFIX_LENGTH;
+         } else {
+            prefix = prefix << 8 | content.getUnsignedByte(index++);
+            if (++prefixRead == PREFIX_LENGTH) {
+               onMessage((byte) (prefix >>> 32), prefix & 0xFFFFFFFFL);
+               prefix = 0;
+               prefixRead = 0;
+            }
+         }
+      }
+   }
+
+   private void onMessage(byte flag, long length) {
+      messages++;
+      if ((flag & 1) != 0) {
+         compressedMessages++;
+      }
+      bytes += length;
+      maxMessageSize = Math.max(maxMessageSize, length);
+      remaining = length;
+   }
+
+   /**
+    * @return the number of messages which were started
+    */
+   public long messages() {
+      return messages;
+   }
+
+   /**
+    * @return the number of messages with the compressed flag
+    */
+   public long compressedMessages() {
+      return compressedMessages;
+   }
+
+   /**
+    * @return the sum of the message lengths, without the prefixes
+    */
+   public long bytes() {
+      return bytes;
+   }
+
+   /**
+    * @return the length of the largest message
+    */
+   public long maxMessageSize() {
+      return maxMessageSize;
+   }
+
+   /**
+    * @return {@code true} if the stream stopped within a message
+    */
+   public boolean isPartial() {
+      return prefixRead > 0 || remaining > 0;
+   }
+}
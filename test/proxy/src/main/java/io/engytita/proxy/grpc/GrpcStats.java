@@ -0,0 +1,155 @@
+package io.engytita.proxy.grpc;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The gRPC calls per method, aggregated over all the connections.
+ * <p>
+ * The methods are the request paths, which come from the clients, so only the first max methods get their own
+ * entry and the calls of the other methods share the {@link #OTHER_METHODS} entry.
+ */
+public class GrpcStats {
+
+   public static final String OTHER_METHODS = "other";
+
+   private final int maxMethods;
+   private final ConcurrentMap<String, MethodStats> methods = new ConcurrentHashMap<>();
+
+   public GrpcStats(int maxMethods) {
+      this.maxMethods = maxMethods;
+   }
+
+   /**
+    * Record a call once it ended.
+    *
+    * @param call the call
+    */
+   public void record(GrpcCall call) {
+      MethodStats stats = methods.get(call.method());
+      if (stats == null) {
+         String key = methods.size() < maxMethods ? call.method() : OTHER_METHODS;
+         stats = methods.computeIfAbsent(key, ignore -> new MethodStats());
+      }
+      stats.record(call);
+   }
+
+   /**
+    * Get the stats of a method.
+    *
+    * @param method the method path, such as {@code /package.Service/Method}
+    * @return the stats, null if the method had no call
+    */
+   public MethodStats method(String method) {
+      return methods.get(method);
+   }
+
+   public Map<String, MethodStats> methods() {
+      return Collections.unmodifiableMap(methods);
+   }
+
+   @Override
+   public String toString() {
+      return "GrpcStats" + methods;
+   }
+
+   public static class MethodStats {
+      private final LongAdder calls = new LongAdder();
+      private final LongAdder failures = new LongAdder();
+      private final LongAdder deadlinesExceeded = new LongAdder();
+      private final LongAdder requestMessages = new LongAdder();
+      private final LongAdder responseMessages = new LongAdder();
+      private final LongAdder requestBytes = new LongAdder();
+      private final LongAdder responseBytes = new LongAdder();
+      private final LongAdder totalLatency = new LongAdder();
+      private final AtomicLong maxLatency = new AtomicLong();
+      private final AtomicLong maxMessageSize = new AtomicLong();
+
+      private void record(GrpcCall call) {
+         calls.increment();
+         Integer status = call.status();
+         if (status == null || status != GrpcCall.OK) {
+            failures.increment();
+         }
+         if (status != null && status == GrpcCall.DEADLINE_EXCEEDED) {
+            deadlinesExceeded.increment();
+         }
+         requestMessages.add(call.requests().messages());
+         responseMessages.add(call.responses().messages());
+         requestBytes.add(call.requests().bytes());
+         responseBytes.add(call.responses().bytes());
+         long latency = call.latencyNanos();
+         totalLatency.add(latency);
+         maxLatency.accumulateAndGet(latency, Math::max);
+         maxMessageSize.accumulateAndGet(
+               Math.max(call.requests().maxMessageSize(), call.responses().maxMessageSize()), Math::max);
+      }
+
+      public long callCount() {
+         return calls.sum();
+      }
+
+      /**
+       * @return the number of calls which ended with a status other than OK, or without a status
+       */
+      public long failureCount() {
+         return failures.sum();
+      }
+
+      public long deadlineExceededCount() {
+         return deadlinesExceeded.sum();
+      }
+
+      public long requestMessageCount() {
+         return requestMessages.sum();
+      }
+
+      public long responseMessageCount() {
+         return responseMessages.sum();
+      }
+
+      public long requestBytes() {
+         return requestBytes.sum();
+      }
+
+      public long responseBytes() {
+         return responseBytes.sum();
+      }
+
+      /**
+       * @return the average duration of a call, in nanoseconds
+       */
+      public long averageLatencyNanos() {
+         long count = calls.sum();
+         return count == 0 ? 0 : totalLatency.sum() / count;
+      }
+
+      public long maxLatencyNanos() {
+         return maxLatency.get();
+      }
+
+      public long maxMessageSize() {
+         return maxMessageSize.get();
+      }
+
+      @Override
+      public String toString() {
+         return "MethodStats{" +
+               "calls=" + callCount() +
+               ", failures=" + failureCount() +
+               ", deadlinesExceeded=" + deadlineExceededCount() +
+               ", requestMessages=" + requestMessageCount() +
+               ", responseMessages=" + responseMessageCount() +
+               ", requestBytes=" + requestBytes() +
+               ", responseBytes=" + responseBytes() +
+               ", averageLatencyNanos=" + averageLatencyNanos() +
+               ", maxLatencyNanos=" + maxLatencyNanos() +
+               ", maxMessageSize=" + maxMessageSize() +
+               '}';
+      }
+   }
+}
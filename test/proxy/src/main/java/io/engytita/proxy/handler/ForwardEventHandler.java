@@ -5,6 +5,7 @@ import static java.lang.System.currentTimeMillis;
 import io.engytita.proxy.ConnectionContext;
 import io.engytita.proxy.event.ForwardEvent;
 import io.engytita.proxy.listener.ProxyListener;
+import io.engytita.proxy.util.StageSequencer;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -18,6 +19,9 @@ public class ForwardEventHandler extends ChannelDuplexHandler {
    private long requestTime;
    private long requestBytes;
 
+   private final StageSequencer requestSequence;
+   private final StageSequencer responseSequence;
+
    /**
     * Create new instance of http1 event handler.
     *
@@ -26,13 +30,23 @@ public class ForwardEventHandler extends ChannelDuplexHandler {
    public ForwardEventHandler(ConnectionContext connectionContext) {
       this.connectionContext = connectionContext;
       this.listener = connectionContext.listener();
+      this.requestSequence = new StageSequencer(connectionContext::clientChannel);
+      this.responseSequence = new StageSequencer(connectionContext::serverChannel);
    }
 
    @Override
    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
          throws Exception {
       ByteBuf byteBuf = (ByteBuf) msg;
-      listener.onForwardResponse(connectionContext, byteBuf);
+      responseSequence.submit(ctx.executor(), listener.onForwardResponseAsync(connectionContext, byteBuf),
+            ignore -> writeResponse(ctx, byteBuf, promise),
+            cause -> {
+               byteBuf.release();
+               promise.setFailure(cause);
+            });
+   }
+
+   private void writeResponse(ChannelHandlerContext ctx, ByteBuf byteBuf, ChannelPromise promise) {
       long responseTime = currentTimeMillis();
       ForwardEvent forwardEvent = ForwardEvent.builder(connectionContext)
             .requestBodySize(requestBytes)
@@ -45,15 +59,27 @@ public class ForwardEventHandler extends ChannelDuplexHandler {
       } finally {
          requestTime = 0;
       }
-      super.write(ctx, msg, promise);
+      ctx.write(byteBuf, promise);
+   }
+
+   @Override
+   public void flush(ChannelHandlerContext ctx) {
+      // Keep flushes behind the writes still waiting for a listener
+      responseSequence.submit(ctx.executor(), ctx::flush, ctx::fireExceptionCaught);
    }
 
    @Override
    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
       ByteBuf byteBuf = (ByteBuf) msg;
-      listener.onForwardRequest(connectionContext, byteBuf);
-      requestBytes = byteBuf.readableBytes();
-      requestTime = currentTimeMillis();
-      super.channelRead(ctx, msg);
+      requestSequence.submit(ctx.executor(), listener.onForwardRequestAsync(connectionContext, byteBuf),
+            ignore -> {
+               requestBytes = byteBuf.readableBytes();
+               requestTime = currentTimeMillis();
+               ctx.fireChannelRead(byteBuf);
+            },
+            cause -> {
+               byteBuf.release();
+               ctx.fireExceptionCaught(cause);
+            });
    }
 }
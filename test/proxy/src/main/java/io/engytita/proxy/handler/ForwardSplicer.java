@@ -0,0 +1,45 @@
+package io.engytita.proxy.handler;
+
+import io.netty.channel.Channel;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollSocketChannel;
+
+/**
+ * Splices the bytes of a forwarded connection from one socket to the other in the kernel, with the EPOLL transport,
+ * so they are never copied to the proxy. The forward handlers still see the connections closing, but not the bytes.
+ */
+public final class ForwardSplicer {
+
+   private ForwardSplicer() {
+   }
+
+   /**
+    * @param from the source channel
+    * @param to   the destination channel
+    * @return {@code true} if the bytes can be spliced between the channels, which were registered level triggered
+    */
+   public static boolean isSupported(Channel from, Channel to) {
+      return from instanceof EpollSocketChannel source && to instanceof EpollSocketChannel destination
+            && from.eventLoop() == to.eventLoop()
+            && source.config().getEpollMode() == EpollMode.LEVEL_TRIGGERED
+            && destination.config().getEpollMode() == EpollMode.LEVEL_TRIGGERED;
+   }
+
+   /**
+    * Splice the bytes read from a channel to another, until one of them is closed.
+    *
+    * @param from the source channel
+    * @param to   the destination channel
+    */
+   public static void splice(Channel from, Channel to) {
+      spliceNext((EpollSocketChannel) from, (EpollSocketChannel) to);
+   }
+
+   private static void spliceNext(EpollSocketChannel source, EpollSocketChannel destination) {
+      source.spliceTo(destination, Integer.MAX_VALUE).addListener(future -> {
+         if (future.isSuccess() && source.isActive() && destination.isActive()) {
+            spliceNext(source, destination);
+         }
+      });
+   }
+}
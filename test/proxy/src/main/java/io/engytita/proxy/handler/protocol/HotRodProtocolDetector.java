@@ -0,0 +1,58 @@
+package io.engytita.proxy.handler.protocol;
+
+import io.engytita.proxy.Protocols;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Detects an Infinispan Hot Rod request header: the request magic, a variable-length message id and the protocol
+ * version.
+ */
+public class HotRodProtocolDetector implements ProtocolDetector {
+
+   public static final HotRodProtocolDetector INSTANCE = new HotRodProtocolDetector();
+
+   private static final int REQUEST_MAGIC = 0xA0;
+   private static final int MAX_VLONG_BYTES = 9;
+   private static final int MIN_VERSION = 10;
+   private static final int MAX_VERSION = 40;
+
+   @Override
+   public String protocol() {
+      return Protocols.HOTROD;
+   }
+
+   @Override
+   public int detect(ByteBuf msg) {
+      int start = msg.readerIndex();
+      int end = msg.writerIndex();
+      if (start == end) {
+         return NEED_MORE_DATA;
+      }
+      if (msg.getUnsignedByte(start) != REQUEST_MAGIC) {
+         return NO_MATCH;
+      }
+      int i = start + 1;
+      // message id, vLong with the high bit as continuation flag
+      for (int n = 0; ; n++) {
+         if (i == end) {
+            return NEED_MORE_DATA;
+         }
+         if (n == MAX_VLONG_BYTES) {
+            return NO_MATCH;
+         }
+         if ((msg.getByte(i++) & 0x80) == 0) {
+            break;
+         }
+      }
+      if (i == end) {
+         return NEED_MORE_DATA;
+      }
+      int version = msg.getUnsignedByte(i);
+      return version >= MIN_VERSION && version <= MAX_VERSION ? MATCH : NO_MATCH;
+   }
+
+   @Override
+   public String toString() {
+      return Protocols.HOTROD;
+   }
+}
@@ -0,0 +1,51 @@
+package io.engytita.proxy.handler.protocol;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Detects a protocol which always starts with the same bytes.
+ */
+public class PrefixProtocolDetector implements ProtocolDetector {
+
+   private final String protocol;
+   private final byte[] prefix;
+
+   public PrefixProtocolDetector(String protocol, byte[] prefix) {
+      this.protocol = protocol;
+      this.prefix = prefix;
+   }
+
+   @Override
+   public String protocol() {
+      return protocol;
+   }
+
+   @Override
+   public int detect(ByteBuf msg) {
+      return matchPrefix(msg, prefix);
+   }
+
+   /**
+    * Compare the readable bytes of {@code msg} with {@code prefix}.
+    *
+    * @param msg    the buffer
+    * @param prefix the expected prefix
+    * @return {@link #MATCH} if the buffer starts with the prefix, {@link #NEED_MORE_DATA} if the buffer is a
+    * prefix of it, {@link #NO_MATCH} otherwise
+    */
+   public static int matchPrefix(ByteBuf msg, byte[] prefix) {
+      int start = msg.readerIndex();
+      int length = Math.min(msg.readableBytes(), prefix.length);
+      for (int i = 0; i < length; i++) {
+         if (msg.getByte(start + i) != prefix[i]) {
+            return NO_MATCH;
+         }
+      }
+      return length == prefix.length ? MATCH : NEED_MORE_DATA;
+   }
+
+   @Override
+   public String toString() {
+      return protocol;
+   }
+}
@@ -1,11 +1,33 @@
 package io.engytita.proxy.handler.protocol;
 
-import java.util.Optional;
-
 import io.netty.buffer.ByteBuf;
 
+/**
+ * Detects a protocol from the first bytes sent by the client.
+ * <p>
+ * Detectors inspect the buffer in place with absolute reads, they must neither modify the reader index nor
+ * allocate. When the bytes received so far are a valid prefix of the protocol, {@link #NEED_MORE_DATA} is returned
+ * and the detection is attempted again with the cumulated bytes of the next read.
+ */
 public interface ProtocolDetector {
 
-   Optional<String> detect(ByteBuf msg);
+   int MATCH = 1;
+   int NEED_MORE_DATA = 0;
+   int NO_MATCH = -1;
+
+   /**
+    * Get the protocol recognised by this detector.
+    *
+    * @return the protocol, see {@link io.engytita.proxy.Protocols}
+    */
+   String protocol();
+
+   /**
+    * Check whether the readable bytes of {@code msg} start with this protocol.
+    *
+    * @param msg the bytes received from the client
+    * @return {@link #MATCH}, {@link #NEED_MORE_DATA} or {@link #NO_MATCH}
+    */
+   int detect(ByteBuf msg);
 
 }
@@ -1,7 +1,6 @@
 package io.engytita.proxy.handler.protocol;
 
 import java.util.List;
-import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +16,9 @@ public class ProtocolSelectHandler extends ByteToMessageDecoder {
 
    private static final Logger LOGGER = LoggerFactory.getLogger(ProtocolSelectHandler.class);
 
+   // Give up on the detection and forward the bytes if no detector decided within this many bytes
+   private static final int MAX_DETECTION_BYTES = 8192;
+
    private final ConnectionContext connectionContext;
 
    public ProtocolSelectHandler(ConnectionContext connectionContext) {
@@ -25,13 +27,13 @@ public class ProtocolSelectHandler extends ByteToMessageDecoder {
 
    @Override
    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-      String protocol = connectionContext
-            .config()
-            .getDetectors()
-            .stream()
-            .flatMap(detector -> detector.detect(in).map(Stream::of).orElse(Stream.empty()))
-            .findFirst()
-            .orElse(Protocols.FORWARD);
+      String detected = detect(in);
+      if (detected == null) {
+         // Partial first read, wait for the next bytes to be cumulated
+         return;
+      }
+      String protocol = connectionContext.provider().supportsFrontend(detected) ? detected : Protocols.FORWARD;
+      LOGGER.debug("{} : detected protocol {}, selected {}", connectionContext, detected, protocol);
       connectionContext.tlsCtx().protocolPromise().setSuccess(protocol);
 
       try {
@@ -42,4 +44,21 @@ public class ProtocolSelectHandler extends ByteToMessageDecoder {
          ctx.close();
       }
    }
+
+   private String detect(ByteBuf in) {
+      List<ProtocolDetector> detectors = connectionContext.config().getDetectors();
+      boolean needMoreData = false;
+      for (int i = 0; i < detectors.size(); i++) {
+         ProtocolDetector detector = detectors.get(i);
+         int result = detector.detect(in);
+         if (result == ProtocolDetector.MATCH) {
+            return detector.protocol();
+         }
+         needMoreData |= result == ProtocolDetector.NEED_MORE_DATA;
+      }
+      if (needMoreData && in.readableBytes() < MAX_DETECTION_BYTES) {
+         return null;
+      }
+      return Protocols.FORWARD;
+   }
 }
@@ -0,0 +1,51 @@
+package io.engytita.proxy.handler.protocol;
+
+import static io.engytita.proxy.handler.protocol.PrefixProtocolDetector.matchPrefix;
+
+import java.nio.charset.StandardCharsets;
+
+import io.engytita.proxy.Protocols;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Detects the header of the HAProxy PROXY protocol, either the text (v1) or the binary (v2) format.
+ */
+public class ProxyProtocolDetector implements ProtocolDetector {
+
+   public static final ProxyProtocolDetector INSTANCE = new ProxyProtocolDetector();
+
+   private static final byte[] V1_PREFIX = "PROXY ".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] V2_SIGNATURE = {
+         0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A
+   };
+   private static final int V2_VERSION = 0x20;
+
+   @Override
+   public String protocol() {
+      return Protocols.PROXY;
+   }
+
+   @Override
+   public int detect(ByteBuf msg) {
+      if (msg.readableBytes() == 0) {
+         return NEED_MORE_DATA;
+      }
+      if (msg.getByte(msg.readerIndex()) == 'P') {
+         return matchPrefix(msg, V1_PREFIX);
+      }
+      int result = matchPrefix(msg, V2_SIGNATURE);
+      if (result != MATCH) {
+         return result;
+      }
+      if (msg.readableBytes() == V2_SIGNATURE.length) {
+         return NEED_MORE_DATA;
+      }
+      int versionCommand = msg.getUnsignedByte(msg.readerIndex() + V2_SIGNATURE.length);
+      return (versionCommand & 0xF0) == V2_VERSION ? MATCH : NO_MATCH;
+   }
+
+   @Override
+   public String toString() {
+      return Protocols.PROXY;
+   }
+}
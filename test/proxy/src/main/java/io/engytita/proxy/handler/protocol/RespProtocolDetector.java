@@ -0,0 +1,63 @@
+package io.engytita.proxy.handler.protocol;
+
+import io.engytita.proxy.Protocols;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Detects a Redis (RESP) command, sent by clients as an array of bulk strings: {@code *<count>\r\n$<length>\r\n}.
+ */
+public class RespProtocolDetector implements ProtocolDetector {
+
+   public static final RespProtocolDetector INSTANCE = new RespProtocolDetector();
+
+   private static final int MAX_COUNT_DIGITS = 10;
+
+   @Override
+   public String protocol() {
+      return Protocols.RESP;
+   }
+
+   @Override
+   public int detect(ByteBuf msg) {
+      int start = msg.readerIndex();
+      int end = msg.writerIndex();
+      if (start == end) {
+         return NEED_MORE_DATA;
+      }
+      if (msg.getByte(start) != '*') {
+         return NO_MATCH;
+      }
+      int i = start + 1;
+      while (i < end && isDigit(msg.getByte(i))) {
+         if (i - start > MAX_COUNT_DIGITS) {
+            return NO_MATCH;
+         }
+         i++;
+      }
+      if (i == end) {
+         return NEED_MORE_DATA;
+      }
+      if (i == start + 1 || msg.getByte(i) != '\r') {
+         return NO_MATCH;
+      }
+      if (++i == end) {
+         return NEED_MORE_DATA;
+      }
+      if (msg.getByte(i) != '\n') {
+         return NO_MATCH;
+      }
+      if (++i == end) {
+         return NEED_MORE_DATA;
+      }
+      return msg.getByte(i) == '$' ? MATCH : NO_MATCH;
+   }
+
+   private static boolean isDigit(byte b) {
+      return b >= '0' && b <= '9';
+   }
+
+   @Override
+   public String toString() {
+      return Protocols.RESP;
+   }
+}
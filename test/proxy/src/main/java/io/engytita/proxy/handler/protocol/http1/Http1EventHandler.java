@@ -2,6 +2,7 @@ package io.engytita.proxy.handler.protocol.http1;
 
 import static io.engytita.proxy.http.HttpHeadersUtil.getContentType;
 import static io.netty.handler.codec.http.HttpHeaderNames.HOST;
+import static io.netty.handler.codec.http.HttpHeaderNames.REFERER;
 import static io.netty.util.ReferenceCountUtil.release;
 import static io.netty.util.ReferenceCountUtil.retain;
 import static java.lang.System.currentTimeMillis;
@@ -12,16 +13,24 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.cache.EarlyHints;
 import io.engytita.proxy.event.HttpEvent;
+import io.engytita.proxy.http.HttpUtil;
 import io.engytita.proxy.listener.ProxyListener;
+import io.engytita.proxy.util.StageSequencer;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.util.concurrent.PromiseCombiner;
 
@@ -29,12 +38,16 @@ public class Http1EventHandler extends ChannelDuplexHandler {
 
    private ProxyListener listener;
    private ConnectionContext connectionContext;
+   private EarlyHints earlyHints;
 
    private long requestTime;
    private Queue<FullHttpRequest> requests;
    private HttpResponse response;
    private AtomicLong responseBytes;
 
+   private final StageSequencer requestSequence;
+   private final StageSequencer responseSequence;
+
    /**
     * Create new instance of http1 event handler.
     *
@@ -43,6 +56,9 @@ public class Http1EventHandler extends ChannelDuplexHandler {
    public Http1EventHandler(ConnectionContext connectionContext) {
       this.connectionContext = connectionContext;
       this.listener = connectionContext.listener();
+      this.requestSequence = new StageSequencer(connectionContext::clientChannel);
+      this.responseSequence = new StageSequencer(connectionContext::serverChannel);
+      this.earlyHints = connectionContext.master().earlyHints();
       this.requests = new ConcurrentLinkedQueue<>();
    }
 
@@ -50,10 +66,21 @@ public class Http1EventHandler extends ChannelDuplexHandler {
    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
          throws Exception {
       if (!(msg instanceof HttpObject)) {
-         ctx.write(msg, promise);
+         responseSequence.submit(ctx.executor(), () -> ctx.write(msg, promise), cause -> {
+            release(msg);
+            promise.setFailure(cause);
+         });
          return;
       }
-      List<HttpObject> output = listener.onHttp1Response(connectionContext, (HttpObject) msg);
+      responseSequence.submit(ctx.executor(), listener.onHttp1ResponseAsync(connectionContext, (HttpObject) msg),
+            output -> writeResponse(ctx, msg, output, promise),
+            cause -> {
+               release(msg);
+               promise.setFailure(cause);
+            });
+   }
+
+   private void writeResponse(ChannelHandlerContext ctx, Object msg, List<HttpObject> output, ChannelPromise promise) {
       for (HttpObject httpObject : output) {
          if (httpObject instanceof HttpResponse) {
             assert !requests.isEmpty() : "request is empty";
@@ -63,7 +90,7 @@ public class Http1EventHandler extends ChannelDuplexHandler {
          }
          if (httpObject instanceof HttpContent) {
             assert responseBytes != null : "responseBytes is null";
-            HttpContent httpContent = (HttpContent) msg;
+            HttpContent httpContent = (HttpContent) httpObject;
             responseBytes.addAndGet(httpContent.content().readableBytes());
          }
          if (httpObject instanceof LastHttpContent) {
@@ -71,20 +98,23 @@ public class Http1EventHandler extends ChannelDuplexHandler {
             assert response != null : "response is null";
             FullHttpRequest request = requests.poll();
             long responseTime = currentTimeMillis();
+            HttpHeaders trailers = ((LastHttpContent) httpObject).trailingHeaders();
             HttpEvent httpEvent = HttpEvent.builder(connectionContext)
                   .method(request.method())
                   .version(request.protocolVersion())
                   .host(request.headers().get(HOST))
                   .path(request.uri())
+                  .referer(request.headers().get(REFERER))
                   .requestBodySize(request.content().readableBytes())
                   .requestTime(requestTime)
                   .status(response.status())
                   .contentType(getContentType(response.headers()))
                   .responseTime(responseTime)
                   .responseBodySize(responseBytes.get())
+                  .trailers(trailers.isEmpty() ? null : trailers)
                   .build();
             try {
-               listener.onHttpEvent(httpEvent);
+               onHttpEvent(httpEvent);
             } finally {
                release(request);
                release(response);
@@ -106,14 +136,20 @@ public class Http1EventHandler extends ChannelDuplexHandler {
       }
    }
 
+   @Override
+   public void flush(ChannelHandlerContext ctx) {
+      // Keep flushes behind the writes still waiting for a listener
+      responseSequence.submit(ctx.executor(), ctx::flush, ctx::fireExceptionCaught);
+   }
+
    @Override
    public void channelRead(ChannelHandlerContext ctx, Object msg) {
       if (!(msg instanceof FullHttpRequest request)) {
-         ctx.fireChannelRead(msg);
+         requestSequence.submit(ctx.executor(), () -> ctx.fireChannelRead(msg), cause -> release(msg));
          return;
       }
 
-      listener.onHttp1Request(connectionContext, (FullHttpRequest) msg).thenAccept(response -> {
+      requestSequence.submit(ctx.executor(), listener.onHttp1Request(connectionContext, request), response -> {
          if (response != null) {
             try {
                sendResponse(ctx, request, response);
@@ -123,9 +159,15 @@ public class Http1EventHandler extends ChannelDuplexHandler {
             return;
          }
 
+         if (earlyHints.isEnabled() && requests.isEmpty()) {
+            sendEarlyHints(ctx, request);
+         }
          this.requests.add(request.retain());
          this.requestTime = currentTimeMillis();
          ctx.fireChannelRead(msg);
+      }, cause -> {
+         request.release();
+         ctx.fireExceptionCaught(cause);
       });
    }
 
@@ -135,16 +177,46 @@ public class Http1EventHandler extends ChannelDuplexHandler {
             .version(request.protocolVersion())
             .host(request.headers().get(HOST))
             .path(request.uri())
+            .referer(request.headers().get(REFERER))
             .requestBodySize(request.content().readableBytes())
             .requestTime(currentTimeMillis())
             .status(response.status())
             .contentType(getContentType(response.headers()))
             .responseBodySize(response.content().readableBytes())
             .build();
-      listener.onHttpEvent(httpEvent);
+      onHttpEvent(httpEvent);
       ctx.writeAndFlush(response);
    }
 
+   /**
+    * Send the sub-resources learned for the requested page while the server prepares the response. Only sent when
+    * no previous response is in flight, the interim response must not interleave with it.
+    * <p>
+    * The response encoder pairs every response with a request, an interim response included, so the hints are
+    * written below it, already encoded.
+    *
+    * @param ctx     the ctx
+    * @param request the request
+    */
+   private void sendEarlyHints(ChannelHandlerContext ctx, FullHttpRequest request) {
+      if (request.method() != HttpMethod.GET || !HttpVersion.HTTP_1_1.equals(request.protocolVersion())) {
+         return;
+      }
+      ChannelHandlerContext codecCtx = ctx.pipeline().context(HttpServerCodec.class);
+      String links = earlyHints.links(request.headers().get(HOST), request.uri());
+      if (codecCtx == null || links == null || links.indexOf('\r') >= 0 || links.indexOf('\n') >= 0) {
+         return;
+      }
+      String hints = HttpVersion.HTTP_1_1 + " " + HttpUtil.EARLY_HINTS + "\r\n"
+            + EarlyHints.LINK + ": " + links + "\r\n\r\n";
+      codecCtx.writeAndFlush(ByteBufUtil.writeAscii(ctx.alloc(), hints));
+   }
+
+   private void onHttpEvent(HttpEvent httpEvent) {
+      earlyHints.learn(httpEvent);
+      listener.onHttpEvent(httpEvent);
+   }
+
    @Override
    public void handlerRemoved(ChannelHandlerContext ctx) {
       requests.forEach(FullHttpRequest::release);
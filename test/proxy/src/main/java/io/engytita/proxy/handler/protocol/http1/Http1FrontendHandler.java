@@ -5,6 +5,7 @@ import static io.engytita.proxy.http.HttpUtil.HTTP_PORT;
 import static io.engytita.proxy.util.LogWrappers.description;
 
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -16,22 +17,35 @@ import io.engytita.proxy.Protocols;
 import io.engytita.proxy.ProxyMaster;
 import io.engytita.proxy.enums.ProxyMode;
 import io.engytita.proxy.event.OutboundChannelClosedEvent;
+import io.engytita.proxy.http.HeaderNames;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.util.AsciiString;
 
 public class Http1FrontendHandler extends ChannelDuplexHandler {
 
    private static final Logger LOGGER = LoggerFactory.getLogger(Http1FrontendHandler.class);
+   private static final AsciiString H2C = AsciiString.cached(Protocols.H2C);
+   private static final AsciiString HTTP2_SETTINGS = AsciiString.cached("http2-settings");
+   private static final int SETTING_ENTRY_LENGTH = 6;
 
    private ProxyMaster master;
    private ConnectionContext connectionContext;
@@ -51,6 +65,9 @@ public class Http1FrontendHandler extends ChannelDuplexHandler {
 
       addedHandlers.add(new HttpServerCodec());
       addedHandlers.add(new HttpObjectAggregator(master.config().getMaxContentLength()));
+      if (!tunneled) {
+         addedHandlers.add(new H2cUpgradeHandler());
+      }
       addedHandlers.add(connectionContext.provider().http1EventHandler());
       addedHandlers.forEach(handler -> ctx.pipeline().addBefore(ctx.name(), null, handler));
 
@@ -156,4 +173,88 @@ public class Http1FrontendHandler extends ChannelDuplexHandler {
       connectionContext.tlsCtx().disableTls();
       connectionContext.tlsCtx().protocolPromise().setSuccess(Protocols.HTTP_1);
    }
+
+   /**
+    * Handle the cleartext http2 upgrade, see https://datatracker.ietf.org/doc/html/rfc7540#section-3.2
+    * <p>
+    * Sits before the event handler so the upgrade happens synchronously while the codec still holds
+    * the bytes following the upgrade request, which are the client connection preface.
+    */
+   private class H2cUpgradeHandler extends ChannelInboundHandlerAdapter {
+      private List<ByteBuf> pendings;
+
+      @Override
+      public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+         if (pendings != null && msg instanceof ByteBuf) {
+            pendings.add((ByteBuf) msg);
+         } else if (msg instanceof FullHttpRequest && isH2cUpgrade((FullHttpRequest) msg)) {
+            upgrade(ctx, (FullHttpRequest) msg);
+         } else {
+            ctx.fireChannelRead(msg);
+         }
+      }
+
+      private boolean isH2cUpgrade(FullHttpRequest request) {
+         return !connectionContext.connected()
+               && request.headers().containsValue(HttpHeaderNames.UPGRADE, H2C, true)
+               && request.headers().containsValue(HttpHeaderNames.CONNECTION, HttpHeaderValues.UPGRADE, true)
+               && request.headers().getAll(HTTP2_SETTINGS).size() == 1;
+      }
+
+      private void upgrade(ChannelHandlerContext ctx, FullHttpRequest request) {
+         Http2Settings settings;
+         try {
+            settings = decodeSettings(request.headers().get(HTTP2_SETTINGS));
+         } catch (IllegalArgumentException e) {
+            LOGGER.debug("{} : invalid {} header, {}", connectionContext, HTTP2_SETTINGS, e.getMessage());
+            ctx.fireChannelRead(request);
+            return;
+         }
+         LOGGER.debug("{} : upgrade to h2c, {}", connectionContext, description(request));
+
+         FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+               HttpResponseStatus.SWITCHING_PROTOCOLS, Unpooled.EMPTY_BUFFER);
+         response.headers()
+               .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.UPGRADE)
+               .set(HttpHeaderNames.UPGRADE, H2C);
+         ctx.writeAndFlush(response);
+
+         HttpHeaders headers = request.headers();
+         headers.remove(HttpHeaderNames.CONNECTION)
+               .remove(HttpHeaderNames.UPGRADE)
+               .remove(HTTP2_SETTINGS)
+               .remove(HeaderNames.KEEP_ALIVE)
+               .remove(HeaderNames.PROXY_CONNECTION)
+               .remove(HttpHeaderNames.TRANSFER_ENCODING);
+
+         // The codec forwards the preface bytes it already read when removed, hold them for the http2 handler
+         pendings = new ArrayList<>(1);
+         ChannelPipeline pipeline = ctx.pipeline();
+         addedHandlers.remove(this);
+         addedHandlers.forEach(pipeline::remove);
+         addedHandlers.clear();
+         pipeline.replace(Http1FrontendHandler.this, null,
+               connectionContext.provider().h2cUpgradeFrontendHandler(settings, request));
+         List<ByteBuf> preface = pendings;
+         pendings = null;
+         pipeline.remove(this);
+         preface.forEach(ctx::fireChannelRead);
+         ctx.fireChannelReadComplete();
+      }
+
+      private Http2Settings decodeSettings(String header) {
+         byte[] payload = Base64.getUrlDecoder().decode(header);
+         if (payload.length % SETTING_ENTRY_LENGTH != 0) {
+            throw new IllegalArgumentException("invalid settings length " + payload.length);
+         }
+         Http2Settings settings = new Http2Settings();
+         ByteBuf buf = Unpooled.wrappedBuffer(payload);
+         while (buf.isReadable()) {
+            char id = buf.readChar();
+            long value = buf.readUnsignedInt();
+            settings.put(id, Long.valueOf(value));
+         }
+         return settings;
+      }
+   }
 }
@@ -0,0 +1,388 @@
+package io.engytita.proxy.handler.protocol.http1;
+
+import static io.engytita.proxy.handler.protocol.http2.Http2FrameWrapper.frameWrapper;
+import static io.engytita.proxy.http.HttpHeadersUtil.toHttp2Headers;
+import static io.engytita.proxy.http.HttpUtil.isIdempotent;
+import static io.netty.handler.codec.http.HttpStatusClass.INFORMATIONAL;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.handler.protocol.http2.Http2DataFrameWrapper;
+import io.engytita.proxy.tls.TlsUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.handler.codec.DecoderResultProvider;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.DefaultHttp2ResetFrame;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * A bounded pool of HTTP/1.1 keep-alive connections to the server, serving the streams of a HTTP/2 client one
+ * request at a time per connection.
+ * <p>
+ * The responses are streamed back to the client channel as HTTP/2 frames. A server connection stops reading while a
+ * window of its DATA frames was not written to the client yet, so the client window is the backpressure of the
+ * server. A request waits in a queue while all the connections are busy and the pool is full. The server connection
+ * opened to negotiate the protocol joins the pool, the others are opened on demand.
+ * <p>
+ * The pool is confined to the event loop of the client connection, which the server connections share.
+ */
+public class Http1OriginPool {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(Http1OriginPool.class);
+   // The bytes of a server connection that may wait for the client window, as much as a HTTP/2 server could send
+   private static final int MAX_UNCONSUMED_BYTES = Http2CodecUtil.DEFAULT_WINDOW_SIZE;
+
+   private final ConnectionContext connectionContext;
+   private final int maxConnections;
+   private final Set<OriginConnection> connections = new HashSet<>();
+   private final Deque<OriginConnection> idle = new ArrayDeque<>();
+   private final Deque<Exchange> pending = new ArrayDeque<>();
+   private boolean closed;
+
+   public Http1OriginPool(ConnectionContext connectionContext) {
+      this.connectionContext = connectionContext;
+      this.maxConnections = Math.max(1, connectionContext.config().getHttp1OriginPoolSize());
+   }
+
+   /**
+    * Create the handler of a server connection, the connection joins the pool once active.
+    *
+    * @return the connection handler
+    */
+   public ChannelHandler connectionHandler() {
+      return new OriginConnection();
+   }
+
+   /**
+    * Send the request of a stream on the next free connection.
+    *
+    * @param ctx      the ctx of the client handler, the new connections share its event loop
+    * @param streamId the client stream id
+    * @param request  the translated request
+    */
+   public void send(ChannelHandlerContext ctx, int streamId, FullHttpRequest request) {
+      if (closed) {
+         request.release();
+         return;
+      }
+      dispatch(ctx, new Exchange(streamId, request));
+   }
+
+   private void dispatch(ChannelHandlerContext ctx, Exchange exchange) {
+      // The most recently used connection is the least likely to have been closed by the server
+      OriginConnection connection = idle.pollLast();
+      if (connection != null) {
+         connection.send(exchange);
+         return;
+      }
+      pending.add(exchange);
+      if (connections.size() < maxConnections) {
+         connect(ctx);
+      }
+   }
+
+   /**
+    * Cancel the request of a stream reset by the client, a request already sent can only be cancelled by closing
+    * its connection.
+    *
+    * @param streamId the client stream id
+    */
+   public void cancel(int streamId) {
+      Iterator<Exchange> iterator = pending.iterator();
+      while (iterator.hasNext()) {
+         Exchange exchange = iterator.next();
+         if (exchange.streamId == streamId) {
+            iterator.remove();
+            exchange.release();
+            return;
+         }
+      }
+      for (OriginConnection connection : connections) {
+         if (connection.exchange != null && connection.exchange.streamId == streamId) {
+            connection.exchange.cancelled = true;
+            connection.channel.close();
+            return;
+         }
+      }
+   }
+
+   /**
+    * Close the server connections and drop the waiting requests, once the client is gone.
+    */
+   public void close() {
+      closed = true;
+      pending.forEach(Exchange::release);
+      pending.clear();
+      idle.clear();
+      new ArrayList<>(connections).forEach(connection -> {
+         if (connection.channel != null) {
+            connection.channel.close();
+         }
+      });
+   }
+
+   private void connect(ChannelHandlerContext ctx) {
+      OriginConnection connection = new OriginConnection();
+      connections.add(connection);
+      connectionContext.master().connect(ctx, connectionContext, new ChannelInitializer<Channel>() {
+         @Override
+         protected void initChannel(Channel ch) throws Exception {
+            if (connectionContext.tlsCtx().isEnabled()) {
+               ch.pipeline().addLast(TlsUtil.http1ClientHandler(connectionContext, ch.alloc()));
+            }
+            ch.pipeline().addLast(connection);
+            connectionContext.listener().onConnect(connectionContext, ch);
+         }
+      }).addListener((ChannelFuture future) -> {
+         if (!future.isSuccess()) {
+            LOGGER.debug("{} : origin connection failed, {}", connectionContext, future.cause().getMessage());
+            connections.remove(connection);
+            if (connections.isEmpty()) {
+               refusePending();
+            }
+         }
+      });
+   }
+
+   // No connection is left to serve the waiting requests, the client may retry them
+   private void refusePending() {
+      Exchange exchange;
+      while ((exchange = pending.poll()) != null) {
+         reset(exchange.streamId, Http2Error.REFUSED_STREAM);
+         exchange.release();
+      }
+   }
+
+   private void reset(int streamId, Http2Error error) {
+      connectionContext.clientChannel().writeAndFlush(frameWrapper(streamId, new DefaultHttp2ResetFrame(error)));
+   }
+
+   private static class Exchange {
+      private final int streamId;
+      private final FullHttpRequest request;
+      private int attempts;
+      private boolean cancelled;
+      // The response headers were written to the client, the stream can only be reset from now on
+      private boolean responded;
+
+      private Exchange(int streamId, FullHttpRequest request) {
+         this.streamId = streamId;
+         this.request = request;
+      }
+
+      // A keep-alive connection may be closed by the server while the request is sent, an idempotent request is
+      // sent again once on another connection
+      private boolean retryable() {
+         return !cancelled && !responded && attempts == 1 && isIdempotent(request.method());
+      }
+
+      private void release() {
+         request.release();
+      }
+   }
+
+   private class OriginConnection extends ChannelInboundHandlerAdapter {
+      private Channel channel;
+      private Exchange exchange;
+      private boolean keepAlive;
+      private int unconsumedBytes;
+      private boolean unflushed;
+
+      @Override
+      public void handlerAdded(ChannelHandlerContext ctx) {
+         LOGGER.debug("{} : origin connection added", connectionContext);
+         channel = ctx.channel();
+         connections.add(this);
+         ctx.pipeline().addBefore(ctx.name(), null, new HttpClientCodec());
+         if (channel.isActive()) {
+            released();
+         }
+      }
+
+      @Override
+      public void channelActive(ChannelHandlerContext ctx) {
+         released();
+         ctx.fireChannelActive();
+      }
+
+      private void send(Exchange exchange) {
+         this.exchange = exchange;
+         exchange.attempts++;
+         // The request is kept until the response, to send it again if the connection was closed
+         channel.writeAndFlush(exchange.request.retainedDuplicate()).addListener((ChannelFuture future) -> {
+            if (!future.isSuccess()) {
+               channel.close();
+            }
+         });
+      }
+
+      private void released() {
+         if (closed) {
+            channel.close();
+            return;
+         }
+         Exchange next = pending.poll();
+         if (next != null) {
+            send(next);
+         } else {
+            idle.add(this);
+         }
+      }
+
+      @Override
+      public void channelRead(ChannelHandlerContext ctx, Object msg) {
+         if (exchange == null) {
+            ReferenceCountUtil.release(msg);
+            return;
+         }
+         if (msg instanceof DecoderResultProvider decoded && decoded.decoderResult().isFailure()) {
+            ReferenceCountUtil.release(msg);
+            ctx.close();
+            return;
+         }
+         if (msg instanceof HttpResponse response) {
+            onResponse(response);
+         }
+         if (msg instanceof HttpContent content) {
+            onContent(content);
+         } else {
+            ReferenceCountUtil.release(msg);
+         }
+      }
+
+      private void onResponse(HttpResponse response) {
+         if (response.status().codeClass() == INFORMATIONAL) {
+            // The body was already received from the client, the interim responses are not forwarded
+            return;
+         }
+         keepAlive = HttpUtil.isKeepAlive(response) && HttpUtil.isKeepAlive(exchange.request);
+         exchange.responded = true;
+         if (!exchange.cancelled) {
+            Http2Headers headers = new DefaultHttp2Headers().status(response.status().codeAsText());
+            toHttp2Headers(response.headers(), headers);
+            write(frameWrapper(exchange.streamId, new DefaultHttp2HeadersFrame(headers, false)));
+         }
+      }
+
+      private void onContent(HttpContent content) {
+         if (!exchange.responded || exchange.cancelled) {
+            // The body of an interim response, or of a stream reset by the client
+            content.release();
+         } else if (content instanceof LastHttpContent last && !last.trailingHeaders().isEmpty()) {
+            if (content.content().isReadable()) {
+               writeData(content.retain(), false);
+            }
+            Http2Headers trailers = new DefaultHttp2Headers();
+            toHttp2Headers(last.trailingHeaders(), trailers);
+            content.release();
+            write(frameWrapper(exchange.streamId, new DefaultHttp2HeadersFrame(trailers, true)));
+         } else {
+            writeData(content, content instanceof LastHttpContent);
+         }
+         if (content instanceof LastHttpContent && exchange.responded) {
+            Exchange current = exchange;
+            exchange = null;
+            current.release();
+            connectionContext.clientChannel().flush();
+            unflushed = false;
+            if (keepAlive) {
+               released();
+            } else {
+               channel.close();
+            }
+         }
+      }
+
+      private void writeData(HttpContent content, boolean endStream) {
+         int bytes = content.content().readableBytes();
+         Http2DataFrameWrapper frame = frameWrapper(exchange.streamId,
+               new DefaultHttp2DataFrame(content.content(), endStream));
+         if (bytes > 0) {
+            // The server is read again once the client window let enough of the body through
+            unconsumedBytes += bytes;
+            if (unconsumedBytes >= MAX_UNCONSUMED_BYTES) {
+               channel.config().setAutoRead(false);
+            }
+            frame.onConsumed(() -> consumed(bytes));
+         }
+         write(frame);
+      }
+
+      private void consumed(int bytes) {
+         unconsumedBytes -= bytes;
+         if (unconsumedBytes < MAX_UNCONSUMED_BYTES && !channel.config().isAutoRead()) {
+            channel.config().setAutoRead(true);
+         }
+      }
+
+      private void write(Object frame) {
+         connectionContext.clientChannel().write(frame);
+         unflushed = true;
+      }
+
+      @Override
+      public void channelReadComplete(ChannelHandlerContext ctx) {
+         if (unflushed) {
+            unflushed = false;
+            connectionContext.clientChannel().flush();
+         }
+         ctx.fireChannelReadComplete();
+      }
+
+      @Override
+      public void channelInactive(ChannelHandlerContext ctx) {
+         LOGGER.debug("{} : origin connection closed", connectionContext);
+         connections.remove(this);
+         idle.remove(this);
+         Exchange current = exchange;
+         exchange = null;
+         if (current != null && !closed) {
+            if (current.retryable()) {
+               dispatch(ctx, current);
+            } else {
+               if (!current.cancelled) {
+                  reset(current.streamId, Http2Error.INTERNAL_ERROR);
+               }
+               current.release();
+            }
+         } else if (current != null) {
+            current.release();
+         }
+         if (!closed && !pending.isEmpty() && connections.size() < maxConnections) {
+            connect(ctx);
+         }
+         ctx.fireChannelInactive();
+      }
+
+      @Override
+      public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+         LOGGER.debug("{} : origin connection failed, {}", connectionContext, cause.getMessage());
+         ctx.close();
+      }
+   }
+}
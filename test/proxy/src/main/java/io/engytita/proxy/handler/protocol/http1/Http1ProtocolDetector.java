@@ -1,38 +1,81 @@
 package io.engytita.proxy.handler.protocol.http1;
 
-import java.util.Arrays;
-import java.util.Optional;
-import java.util.regex.Pattern;
-
 import io.engytita.proxy.Protocols;
 import io.engytita.proxy.handler.protocol.ProtocolDetector;
 import io.netty.buffer.ByteBuf;
 
+/**
+ * Detects an HTTP/1.0 or HTTP/1.1 request line: {@code METHOD SP request-target SP HTTP/1.x CRLF}.
+ */
 public class Http1ProtocolDetector implements ProtocolDetector {
 
    public static final Http1ProtocolDetector INSTANCE = new Http1ProtocolDetector();
-   private static final int MAX_READ_BYTES = 100;
-   private static final Pattern HTTP_FIRST_LINE = Pattern.compile("[A-Z]+\\s\\S+\\sHTTP/1\\.1");
+
+   private static final int MAX_METHOD_LENGTH = 16;
+   private static final int MAX_INITIAL_LINE_LENGTH = 4096;
+   private static final byte[] VERSION_PREFIX = {'H', 'T', 'T', 'P', '/', '1', '.'};
+
+   private static final int METHOD = 0;
+   private static final int TARGET = 1;
+   private static final int VERSION = 2;
+   private static final int MINOR_VERSION = 3;
+   private static final int END_OF_LINE = 4;
 
    @Override
-   public Optional<String> detect(ByteBuf msg) {
-      int readBytes = Math.min(MAX_READ_BYTES, msg.readableBytes());
-      if (readBytes == 0) {
-         return Optional.empty();
-      }
-      byte[] bytes = new byte[readBytes];
-      for (int pos = 0; pos < readBytes; pos++) {
-         bytes[pos] = msg.getByte(pos);
-         if (bytes[pos] == '\r') {
-            bytes = Arrays.copyOf(bytes, pos);
-            break;
+   public String protocol() {
+      return Protocols.HTTP_1;
+   }
+
+   @Override
+   public int detect(ByteBuf msg) {
+      int start = msg.readerIndex();
+      int end = start + Math.min(msg.readableBytes(), MAX_INITIAL_LINE_LENGTH);
+      int state = METHOD;
+      int length = 0;
+      for (int i = start; i < end; i++) {
+         byte b = msg.getByte(i);
+         switch (state) {
+            case METHOD:
+               if (b >= 'A' && b <= 'Z') {
+                  if (++length > MAX_METHOD_LENGTH) {
+                     return NO_MATCH;
+                  }
+               } else if (b == ' ' && length > 0) {
+                  state = TARGET;
+                  length = 0;
+               } else {
+                  return NO_MATCH;
+               }
+               break;
+            case TARGET:
+               if (b == ' ' && length > 0) {
+                  state = VERSION;
+                  length = 0;
+               } else if (b == ' ' || b == '\r' || b == '\n') {
+                  return NO_MATCH;
+               } else {
+                  length++;
+               }
+               break;
+            case VERSION:
+               if (b != VERSION_PREFIX[length]) {
+                  return NO_MATCH;
+               }
+               if (++length == VERSION_PREFIX.length) {
+                  state = MINOR_VERSION;
+               }
+               break;
+            case MINOR_VERSION:
+               if (b != '0' && b != '1') {
+                  return NO_MATCH;
+               }
+               state = END_OF_LINE;
+               break;
+            default:
+               return b == '\r' || b == '\n' ? MATCH : NO_MATCH;
          }
       }
-      String line = new String(bytes);
-      if (HTTP_FIRST_LINE.matcher(line).matches()) {
-         return Optional.of(Protocols.HTTP_1);
-      }
-      return Optional.empty();
+      return msg.readableBytes() >= MAX_INITIAL_LINE_LENGTH ? NO_MATCH : NEED_MORE_DATA;
    }
 
    @Override
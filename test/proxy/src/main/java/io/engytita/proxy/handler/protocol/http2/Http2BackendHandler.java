@@ -5,33 +5,54 @@ import static io.engytita.proxy.util.LogWrappers.format;
 import static io.netty.handler.logging.LogLevel.DEBUG;
 import static io.netty.util.ReferenceCountUtil.touch;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.engytita.proxy.ConnectionContext;
 import io.engytita.proxy.exception.ProxyException;
+import io.engytita.proxy.http.HttpUtil;
+import io.engytita.proxy.util.IntIntHashMap;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http2.DefaultHttp2Connection;
 import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
 import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
 import io.netty.handler.codec.http2.DefaultHttp2ResetFrame;
 import io.netty.handler.codec.http2.DefaultHttp2SettingsFrame;
-import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
 import io.netty.handler.codec.http2.Http2Connection;
 import io.netty.handler.codec.http2.Http2ConnectionHandler;
 import io.netty.handler.codec.http2.Http2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.Http2Error;
 import io.netty.handler.codec.http2.Http2Flags;
 import io.netty.handler.codec.http2.Http2FrameListener;
 import io.netty.handler.codec.http2.Http2FrameLogger;
 import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
 import io.netty.handler.codec.http2.Http2Settings;
-
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.PromiseNotifier;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * Writes the client streams to the server connection.
+ * <p>
+ * When the server sends a GOAWAY, the streams it did not process are replayed on a new connection which takes over
+ * the new streams, while the old connection drains the streams it accepted. The server connection is also checked
+ * with PINGs, which measure the round trip time.
+ */
 public class Http2BackendHandler
       extends ChannelDuplexHandler
       implements Http2FrameListener {
@@ -42,9 +63,15 @@ public class Http2BackendHandler
    private Http2ConnectionHandler http2ConnectionHandler;
 
    private ChannelPromise ready;
-   private AtomicInteger currentStreamId = new AtomicInteger(1);
-   private ConcurrentHashMap<Integer, Integer> streams = new ConcurrentHashMap<>();
-   private ConcurrentHashMap<Integer, Integer> inverse = new ConcurrentHashMap<>();
+   // The stream tables are only accessed from the event loop of the connection
+   private int currentStreamId = 1;
+   private final IntIntHashMap streams = new IntIntHashMap();
+   private final IntIntHashMap inverse = new IntIntHashMap();
+   // Request frames by client stream id, kept until the server answers
+   private final IntObjectMap<StreamReplay> replays = new IntObjectHashMap<>();
+
+   private ScheduledFuture<?> pingTask;
+   private long pingPayload;
 
    public Http2BackendHandler(ConnectionContext connectionContext) {
       this.connectionContext = connectionContext;
@@ -59,11 +86,24 @@ public class Http2BackendHandler
             .connection(http2Connection)
             .frameListener(this)
             .frameLogger(new Http2FrameLogger(DEBUG))
+            // The proxy pushes from its own cache, the server promises would have no client stream to map to
+            .initialSettings(Http2FlowControl.initialSettings(connectionContext.config()).pushEnabled(false))
             .build();
       ctx.pipeline()
             .addBefore(ctx.name(), null, http2ConnectionHandler);
 
       ready = ctx.newPromise();
+      if (ctx.channel().isActive()) {
+         Http2FlowControl.initConnectionWindow(ctx, http2ConnectionHandler, connectionContext.config());
+      }
+   }
+
+   @Override
+   public void channelActive(ChannelHandlerContext ctx) throws Exception {
+      super.channelActive(ctx);
+      Http2FlowControl.initConnectionWindow(ctx, http2ConnectionHandler, connectionContext.config());
+      // Cleartext connections have no handshake flushing the connection preface, the origin waits for it
+      ctx.flush();
    }
 
    @Override
@@ -73,6 +113,15 @@ public class Http2BackendHandler
          ctx.write(msg, promise);
          return;
       }
+      Channel draining = connectionContext.drainingServerChannel();
+      if (draining != null && draining != ctx.channel() && frame.streamId() != 0
+            && !streams.containsKey(frame.streamId()) && !replays.containsKey(frame.streamId())
+            && isOpenOn(draining, frame.streamId())) {
+         // A stream opened before the reconnection, still served by the previous connection, trailers included
+         draining.writeAndFlush(msg).addListener(new PromiseNotifier<>(promise));
+         return;
+      }
+      record(frame);
       if (ready.isSuccess()) {
          frame.write(ctx, http2ConnectionHandler.encoder(), getUpstreamStreamId(frame.streamId()),
                promise);
@@ -94,7 +143,64 @@ public class Http2BackendHandler
       if (!ready.isDone()) {
          ready.setFailure(new ProxyException("Channel was closed"));
       }
-      connectionContext.clientChannel().close();
+      if (pingTask != null) {
+         pingTask.cancel(false);
+      }
+      replays.values().forEach(StreamReplay::release);
+      replays.clear();
+      if (ctx.channel() == connectionContext.drainingServerChannel()) {
+         connectionContext.drained(ctx.channel());
+      } else if (ctx.channel() == connectionContext.serverChannel()) {
+         connectionContext.clientChannel().close();
+      }
+   }
+
+   // Both server connections are on the event loop of the client
+   private static boolean isOpenOn(Channel channel, int streamId) {
+      Http2BackendHandler handler = channel.pipeline().get(Http2BackendHandler.class);
+      return handler != null && handler.streams.containsKey(streamId);
+   }
+
+   private void record(Http2FrameWrapper<?> frame) {
+      if (frame.streamId() == 0) {
+         return;
+      }
+      StreamReplay replay = replays.get(frame.streamId());
+      if (replay == null) {
+         if (!frame.isHeaders() || streams.containsKey(frame.streamId())) {
+            return;
+         }
+         replay = new StreamReplay(frame.streamId(), isReplayable(frame.frame(Http2HeadersFrame.class).headers()));
+         replays.put(frame.streamId(), replay);
+      }
+      replay.add(frame, connectionContext.config().getHttp2ReplayBufferSize());
+   }
+
+   // Only the idempotent requests are replayed, the others are refused so the client decides
+   private boolean isReplayable(Http2Headers headers) {
+      if (headers.method() == null || !HttpUtil.isIdempotent(HttpMethod.valueOf(headers.method().toString()))) {
+         return false;
+      }
+      Long contentLength = headers.getLong(HttpHeaderNames.CONTENT_LENGTH);
+      return contentLength == null || contentLength <= connectionContext.config().getHttp2ReplayBufferSize();
+   }
+
+   private void answered(int streamId) {
+      StreamReplay replay = replays.remove(streamId);
+      if (replay != null) {
+         replay.release();
+      }
+   }
+
+   private void ping(ChannelHandlerContext ctx) {
+      if (pingPayload != 0) {
+         LOGGER.debug("{} : PING not acknowledged, closing the server connection", connectionContext);
+         ctx.close();
+         return;
+      }
+      pingPayload = System.nanoTime();
+      http2ConnectionHandler.encoder().writePing(ctx, false, pingPayload, ctx.newPromise());
+      ctx.flush();
    }
 
    @Override
@@ -107,18 +213,21 @@ public class Http2BackendHandler
    public int onDataRead(ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding,
                          boolean endOfStream) {
       int originStreamId = getOriginStreamId(streamId);
-      int processed = data.readableBytes() + padding;
+      int flowControlled = data.readableBytes() + padding;
       Http2DataFrameWrapper frame = frameWrapper(originStreamId,
-            new DefaultHttp2DataFrame(data.copy(), endOfStream, padding));
+            new DefaultHttp2DataFrame(data.retain(), endOfStream, padding));
+      // The server window is only replenished once the frame was written to the client
+      frame.onConsumed(() -> Http2FlowControl.consumeBytes(ctx, http2ConnectionHandler, streamId, flowControlled));
       connectionContext.clientChannel().writeAndFlush(touch(frame,
             format("%s context=%s", frame, connectionContext)));
-      return processed;
+      return 0;
    }
 
    @Override
    public void onHeadersRead(ChannelHandlerContext ctx, int streamId, Http2Headers headers,
                              int padding, boolean endOfStream) {
       int originStreamId = getOriginStreamId(streamId);
+      answered(originStreamId);
       connectionContext.clientChannel().writeAndFlush(
             frameWrapper(originStreamId, new DefaultHttp2HeadersFrame(headers, endOfStream, padding)));
    }
@@ -127,6 +236,7 @@ public class Http2BackendHandler
    public void onHeadersRead(ChannelHandlerContext ctx, int streamId, Http2Headers headers,
                              int streamDependency, short weight, boolean exclusive, int padding, boolean endOfStream) {
       int originStreamId = getOriginStreamId(streamId);
+      answered(originStreamId);
       connectionContext.clientChannel().writeAndFlush(
             frameWrapper(originStreamId, new DefaultHttp2HeadersFrame(headers, endOfStream, padding)));
    }
@@ -139,6 +249,7 @@ public class Http2BackendHandler
    @Override
    public void onRstStreamRead(ChannelHandlerContext ctx, int streamId, long errorCode) {
       int originStreamId = getOriginStreamId(streamId);
+      answered(originStreamId);
       connectionContext.clientChannel().writeAndFlush(
             frameWrapper(originStreamId, new DefaultHttp2ResetFrame(errorCode)));
    }
@@ -149,11 +260,16 @@ public class Http2BackendHandler
 
    @Override
    public void onSettingsRead(ChannelHandlerContext ctx, Http2Settings settings) {
-      ready.setSuccess();
+      // Only the first settings complete the connection preface
+      long pingInterval = connectionContext.config().getHttp2PingInterval();
+      if (ready.trySuccess() && pingInterval > 0) {
+         pingTask = ctx.executor().scheduleAtFixedRate(() -> ping(ctx), pingInterval, pingInterval,
+               TimeUnit.MILLISECONDS);
+      }
 
       connectionContext.clientChannel().writeAndFlush(
             frameWrapper(0,
-                  new DefaultHttp2SettingsFrame(settings)));
+                  new DefaultHttp2SettingsFrame(Http2FlowControl.forwardedSettings(settings))));
    }
 
    @Override
@@ -162,6 +278,10 @@ public class Http2BackendHandler
 
    @Override
    public void onPingAckRead(ChannelHandlerContext ctx, long data) {
+      if (data == pingPayload) {
+         connectionContext.serverRtt(System.nanoTime() - data);
+         pingPayload = 0;
+      }
    }
 
    @Override
@@ -172,14 +292,51 @@ public class Http2BackendHandler
    @Override
    public void onGoAwayRead(ChannelHandlerContext ctx, int lastStreamId, long errorCode,
                             ByteBuf debugData) {
+      LOGGER.debug("{} : GOAWAY with lastStreamId={} errorCode={}", connectionContext, lastStreamId, errorCode);
+      // The streams above the last stream id were not processed by the server, they are closed by netty
+      List<StreamReplay> refused = new ArrayList<>();
+      for (Iterator<StreamReplay> it = replays.values().iterator(); it.hasNext(); ) {
+         StreamReplay replay = it.next();
+         int upstreamStreamId = streams.get(replay.streamId, 0);
+         if (upstreamStreamId > lastStreamId) {
+            it.remove();
+            inverse.remove(upstreamStreamId);
+            streams.remove(replay.streamId);
+            refused.add(replay);
+         }
+      }
+      if (ctx.channel() != connectionContext.serverChannel()) {
+         refused.forEach(this::refuse);
+         return;
+      }
+      connectionContext.reconnect(ctx).addListener(future -> {
+         if (!future.isSuccess()) {
+            connectionContext.clientChannel().close();
+         }
+      });
+      Channel serverChannel = connectionContext.serverChannel();
+      refused.sort(Comparator.comparingInt(replay -> replay.streamId));
+      for (StreamReplay replay : refused) {
+         if (replay.replayable) {
+            LOGGER.debug("{} : replaying stream {} on a new connection", connectionContext, replay.streamId);
+            replay.frames.forEach(serverChannel::write);
+            replay.frames.clear();
+         } else {
+            refuse(replay);
+         }
+      }
+      serverChannel.flush();
+   }
+
+   private void refuse(StreamReplay replay) {
+      replay.release();
+      connectionContext.clientChannel().writeAndFlush(
+            frameWrapper(replay.streamId, new DefaultHttp2ResetFrame(Http2Error.REFUSED_STREAM)));
    }
 
    @Override
    public void onWindowUpdateRead(ChannelHandlerContext ctx, int streamId, int windowSizeIncrement) {
-      int originStreamId = getOriginStreamId(streamId);
-      connectionContext.clientChannel().writeAndFlush(
-            frameWrapper(originStreamId,
-                  new DefaultHttp2WindowUpdateFrame(windowSizeIncrement)));
+      // Windows are per connection, the client is only credited once the frames were written to the server
    }
 
    @Override
@@ -191,18 +348,63 @@ public class Http2BackendHandler
       if (streamId == 0) {
          return streamId;
       }
-      Integer i = streams.computeIfAbsent(streamId, ignore -> currentStreamId.getAndAdd(2));
-      inverse.putIfAbsent(i, streamId);
-      return i;
+      int upstreamStreamId = streams.get(streamId, 0);
+      if (upstreamStreamId == 0) {
+         upstreamStreamId = currentStreamId;
+         currentStreamId += 2;
+         streams.put(streamId, upstreamStreamId);
+         inverse.put(upstreamStreamId, streamId);
+      }
+      return upstreamStreamId;
    }
 
    private int getOriginStreamId(int streamId) {
       if (streamId == 0) {
          return streamId;
       }
-      if (!inverse.containsKey(streamId)) {
+      int originStreamId = inverse.get(streamId, 0);
+      if (originStreamId == 0) {
          throw new IllegalStateException("No stream found: " + streamId);
       }
-      return inverse.get(streamId);
+      return originStreamId;
+   }
+
+   /**
+    * The request frames of a stream, the data is retained until the server answers so the stream can be written again
+    * on a new connection. Streams of non-idempotent requests or with more data than the replay buffer size are not
+    * replayable, and retain nothing.
+    */
+   private static class StreamReplay {
+      private final int streamId;
+      private final List<Http2FrameWrapper<?>> frames = new ArrayList<>();
+      private int size;
+      private boolean replayable;
+
+      private StreamReplay(int streamId, boolean replayable) {
+         this.streamId = streamId;
+         this.replayable = replayable;
+      }
+
+      private void add(Http2FrameWrapper<?> frame, int maxSize) {
+         if (!replayable) {
+            return;
+         }
+         if (frame instanceof Http2DataFrameWrapper dataFrame) {
+            size += dataFrame.content().readableBytes();
+            if (size > maxSize) {
+               release();
+               replayable = false;
+               return;
+            }
+            frames.add(dataFrame.retainedDuplicate());
+         } else {
+            frames.add(frame);
+         }
+      }
+
+      private void release() {
+         frames.forEach(ReferenceCountUtil::release);
+         frames.clear();
+      }
    }
-}
\ No newline at end of file
+}
@@ -2,14 +2,100 @@ package io.engytita.proxy.handler.protocol.http2;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http2.Http2ConnectionEncoder;
 import io.netty.handler.codec.http2.Http2DataFrame;
-
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
+
+/**
+ * Wrapper of a DATA frame.
+ * <p>
+ * The wrappers created with {@link #newInstance(int, Http2DataFrame)} are pooled, they are recycled once written so
+ * a wrapper must not be used after it was passed to a write.
+ */
 public class Http2DataFrameWrapper
       extends Http2FrameWrapper<Http2DataFrame>
       implements ByteBufHolder {
 
+   private static final Recycler<Http2DataFrameWrapper> RECYCLER = new Recycler<>() {
+      @Override
+      protected Http2DataFrameWrapper newObject(Handle<Http2DataFrameWrapper> handle) {
+         return new Http2DataFrameWrapper(handle);
+      }
+   };
+
+   private final Handle<Http2DataFrameWrapper> handle;
+   // Returns the flow controlled bytes of the frame to its sender, invoked once the frame left the proxy
+   private Runnable consumer;
+
    public Http2DataFrameWrapper(int streamId, Http2DataFrame frame) {
       super(streamId, frame);
+      this.handle = null;
+   }
+
+   private Http2DataFrameWrapper(Handle<Http2DataFrameWrapper> handle) {
+      super(0, null);
+      this.handle = handle;
+   }
+
+   /**
+    * Get a pooled wrapper.
+    *
+    * @param streamId the stream id
+    * @param frame    the data frame
+    * @return the wrapper
+    */
+   public static Http2DataFrameWrapper newInstance(int streamId, Http2DataFrame frame) {
+      Http2DataFrameWrapper wrapper = RECYCLER.get();
+      wrapper.streamId = streamId;
+      wrapper.frame = frame;
+      return wrapper;
+   }
+
+   /**
+    * Defer the flow control of the frame until it is written to the other peer.
+    *
+    * @param consumer returns the flow controlled bytes of the frame to its sender
+    * @return this wrapper
+    */
+   public Http2DataFrameWrapper onConsumed(Runnable consumer) {
+      this.consumer = consumer;
+      return this;
+   }
+
+   /**
+    * Mark the frame as consumed, the sender gets its flow controlled bytes back. Only the first call has an effect.
+    */
+   public void consumed() {
+      Runnable consumer = this.consumer;
+      this.consumer = null;
+      if (consumer != null) {
+         consumer.run();
+      }
+   }
+
+   @Override
+   public void write(ChannelHandlerContext ctx, Http2ConnectionEncoder encoder, int streamId,
+                     ChannelPromise promise) {
+      Runnable consumer = this.consumer;
+      if (consumer != null) {
+         // The encoder holds the frame until the peer window allows it, that is the backpressure of the sender
+         promise = promise.unvoid();
+         promise.addListener(future -> consumer.run());
+      }
+      super.write(ctx, encoder, streamId, promise);
+      recycle();
+   }
+
+   private void recycle() {
+      if (handle != null) {
+         streamId = 0;
+         frame = null;
+         consumer = null;
+         handle.recycle(this);
+      }
    }
 
    @Override
@@ -1,37 +1,78 @@
 package io.engytita.proxy.handler.protocol.http2;
 
 import static io.engytita.proxy.http.HttpHeadersUtil.getContentType;
+import static io.engytita.proxy.http.HttpHeadersUtil.getMethod;
 import static io.engytita.proxy.http.HttpHeadersUtil.getStatus;
+import static io.engytita.proxy.handler.protocol.http2.Http2FrameWrapper.frameWrapper;
+import static io.engytita.proxy.http.HttpHeadersUtil.toHttp2Headers;
+import static io.engytita.proxy.http.HttpHeadersUtil.toHttpHeaders;
+import static io.engytita.proxy.http.HttpUtil.cacheKey;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaderNames.REFERER;
+import static io.netty.handler.codec.http.HttpStatusClass.INFORMATIONAL;
 import static io.netty.util.ReferenceCountUtil.release;
 import static java.lang.System.currentTimeMillis;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.cache.EarlyHints;
+import io.engytita.proxy.cache.ProxyCache;
 import io.engytita.proxy.event.HttpEvent;
+import io.engytita.proxy.grpc.GrpcCall;
+import io.engytita.proxy.grpc.GrpcStats;
+import io.engytita.proxy.http.HttpUrl;
 import io.engytita.proxy.http.HttpUtil;
 import io.engytita.proxy.listener.ProxyListener;
+import io.engytita.proxy.util.StageSequencer;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.DefaultHttp2ResetFrame;
 import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Error;
 import io.netty.handler.codec.http2.Http2Frame;
 import io.netty.handler.codec.http2.Http2Headers;
 import io.netty.handler.codec.http2.Http2HeadersFrame;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
 import io.netty.util.concurrent.PromiseCombiner;
 
 public class Http2EventHandler extends ChannelDuplexHandler {
 
+   private static final Logger LOGGER = LoggerFactory.getLogger(Http2EventHandler.class);
+
+   // Collectors kept for the next streams, a burst of concurrent streams does not stay allocated
+   private static final int MAX_RECYCLED_COLLECTORS = 256;
+
    private ProxyListener listener;
    private ConnectionContext connectionContext;
+   private EarlyHints earlyHints;
+   private GrpcStats grpcStats;
+
+   // Only accessed from the event loop of the connection
+   private final IntObjectMap<FrameCollector> streams = new IntObjectHashMap<>();
+   private final Deque<FrameCollector> recycledCollectors = new ArrayDeque<>();
 
-   private Map<Integer, FrameCollector> streams = new ConcurrentHashMap<>();
+   private final StageSequencer requestSequence;
+   private final StageSequencer responseSequence;
 
    /**
     * Create new instance of http1 event handler.
@@ -41,31 +82,61 @@ public class Http2EventHandler extends ChannelDuplexHandler {
    public Http2EventHandler(ConnectionContext connectionContext) {
       this.connectionContext = connectionContext;
       this.listener = connectionContext.listener();
+      this.requestSequence = new StageSequencer(connectionContext::clientChannel);
+      // Translated streams are served by the pooled origin connections, which stop reading on their own while
+      // their frames are not written, the server channel of the context is not the one producing the responses
+      this.responseSequence = new StageSequencer(
+            () -> connectionContext.http2Translated() ? null : connectionContext.serverChannel());
+      this.earlyHints = connectionContext.master().earlyHints();
+      this.grpcStats = connectionContext.config().isGrpc() ? connectionContext.master().grpcStats() : null;
    }
 
    @Override
    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
          throws Exception {
       if (!(msg instanceof Http2FrameWrapper)) {
-         ctx.write(msg, promise);
+         responseSequence.submit(ctx.executor(), () -> ctx.write(msg, promise), cause -> {
+            release(msg);
+            promise.setFailure(cause);
+         });
          return;
       }
 
       Http2FrameWrapper<?> frameWrapper = (Http2FrameWrapper<?>) msg;
-      FrameCollector frameCollector = streams.computeIfAbsent(frameWrapper.streamId(), this::newFrameCollector);
-      List<Http2FrameWrapper<?>> output = listener.onHttp2Response(connectionContext, frameWrapper);
-      boolean streamEnded = output.stream()
-            .map(wrapper -> frameCollector.onResponseFrame(wrapper.frame()))
-            .filter(Boolean::booleanValue)
-            .findFirst()
-            .orElse(false);
+      responseSequence.submit(ctx.executor(), listener.onHttp2ResponseAsync(connectionContext, frameWrapper),
+            output -> writeResponse(ctx, frameWrapper, output, promise),
+            cause -> {
+               release(msg);
+               promise.setFailure(cause);
+            });
+   }
+
+   private void writeResponse(ChannelHandlerContext ctx, Http2FrameWrapper<?> frameWrapper,
+                              List<Http2FrameWrapper<?>> output, ChannelPromise promise) {
+      if (frameWrapper instanceof Http2DataFrameWrapper && !output.contains(frameWrapper)) {
+         // A listener replaced the frame, the server must not wait for it to be written
+         ((Http2DataFrameWrapper) frameWrapper).consumed();
+      }
+      FrameCollector frameCollector = streams.get(frameWrapper.streamId());
+      if (frameCollector == null) {
+         // Not a request stream, or a frame following the end of the stream
+         writeFrames(ctx, output, promise);
+         return;
+      }
+      boolean streamEnded = false;
+      for (Http2FrameWrapper<?> wrapper : output) {
+         streamEnded |= frameCollector.onResponseFrame(wrapper.frame());
+      }
       writeFrames(ctx, output, promise);
+      if (streamEnded && !frameCollector.onResponseEnd()) {
+         // Streamed request still in flight, the event is collected with its last frame
+         return;
+      }
       if (streamEnded) {
          try {
-            frameCollector.collect().ifPresent(listener::onHttpEvent);
+            collect(frameCollector);
          } finally {
-            frameCollector.release();
-            streams.remove(frameWrapper.streamId());
+            recycle(frameCollector);
          }
       }
    }
@@ -78,29 +149,92 @@ public class Http2EventHandler extends ChannelDuplexHandler {
          ctx.write(frames.get(0), promise);
       } else {
          PromiseCombiner combiner = new PromiseCombiner(ctx.executor());
-         frames.stream().map(ctx::write).forEach(combiner::add);
+         for (Http2FrameWrapper<?> frame : frames) {
+            combiner.add(ctx.write(frame));
+         }
          combiner.finish(promise);
       }
    }
 
+   @Override
+   public void flush(ChannelHandlerContext ctx) {
+      // Keep flushes behind the writes still waiting for a listener
+      responseSequence.submit(ctx.executor(), ctx::flush, ctx::fireExceptionCaught);
+   }
+
    @Override
    public void channelRead(ChannelHandlerContext ctx, Object msg) {
       if (!(msg instanceof Http2FrameWrapper)
             || (!Http2FrameWrapper.isFrame(msg, Http2HeadersFrame.class)
             && !Http2FrameWrapper.isFrame(msg, Http2DataFrame.class))) {
-         ctx.fireChannelRead(msg);
+         requestSequence.submit(ctx.executor(), () -> ctx.fireChannelRead(msg), cause -> release(msg));
          return;
       }
 
       Http2FrameWrapper<?> frameWrapper = (Http2FrameWrapper<?>) msg;
-      FrameCollector frameCollector = streams.computeIfAbsent(frameWrapper.streamId(), this::newFrameCollector);
+      FrameCollector frameCollector = isRequestHeaders(frameWrapper)
+            ? frameCollector(frameWrapper.streamId())
+            : streams.get(frameWrapper.streamId());
+      if (frameCollector == null) {
+         // A frame following the end of the stream, such as after the deadline of a gRPC call
+         requestSequence.submit(ctx.executor(), () -> ctx.fireChannelRead(msg), cause -> release(msg));
+         return;
+      }
+      if (frameWrapper.isHeaders() && !frameCollector.hasRequestHeaders()) {
+         Http2Headers headers = ((Http2HeadersFrame) frameWrapper.frame()).headers();
+         frameCollector.buffering(listener.interceptsHttp2Request(connectionContext, headers));
+         if (earlyHints.isEnabled()) {
+            sendEarlyHints(ctx, frameWrapper.streamId(), headers);
+         }
+         if (grpcStats != null && headers.path() != null && GrpcCall.isGrpc(headers)) {
+            startGrpcCall(ctx, frameCollector, headers);
+         }
+      }
       Optional<Http2FramesWrapper> requestOptional = frameCollector.onRequestFrame(frameWrapper.frame());
+      if (!frameCollector.isBuffering()) {
+         requestSequence.submit(ctx.executor(), () -> forwardRequestFrame(ctx, frameWrapper, frameCollector),
+               cause -> release(msg));
+         return;
+      }
+      if (frameWrapper instanceof Http2DataFrameWrapper) {
+         // Buffered requests are stored and forwarded, the client is not flow controlled by the server
+         ((Http2DataFrameWrapper) frameWrapper).consumed();
+      }
       if (!requestOptional.isPresent()) {
          return;
       }
 
       Http2FramesWrapper request = requestOptional.get();
-      Optional<Http2FramesWrapper> responseOptional = listener.onHttp2Request(connectionContext, request);
+      requestSequence.submit(ctx.executor(), listener.onHttp2RequestAsync(connectionContext, request),
+            responseOptional -> onRequest(ctx, frameCollector, request, responseOptional),
+            cause -> {
+               release(request);
+               recycle(frameCollector);
+               ctx.fireExceptionCaught(cause);
+            });
+   }
+
+   private static boolean isRequestHeaders(Http2FrameWrapper<?> frameWrapper) {
+      return frameWrapper.isHeaders() && ((Http2HeadersFrame) frameWrapper.frame()).headers().method() != null;
+   }
+
+   private void forwardRequestFrame(ChannelHandlerContext ctx, Http2FrameWrapper<?> frameWrapper,
+                                    FrameCollector frameCollector) {
+      int streamId = frameWrapper.streamId();
+      ctx.fireChannelRead(frameWrapper);
+      // The collector may already be recycled when the response ended first
+      if (streams.get(streamId) == frameCollector && frameCollector.isDone()) {
+         // The response ended before the end of the streamed request
+         try {
+            collect(frameCollector);
+         } finally {
+            recycle(frameCollector);
+         }
+      }
+   }
+
+   private void onRequest(ChannelHandlerContext ctx, FrameCollector frameCollector,
+                          Http2FramesWrapper request, Optional<Http2FramesWrapper> responseOptional) {
       if (!responseOptional.isPresent()) {
          request.getAllFrames().forEach(ctx::fireChannelRead);
          return;
@@ -110,23 +244,167 @@ public class Http2EventHandler extends ChannelDuplexHandler {
          Http2FramesWrapper response = responseOptional.get();
          frameCollector.onResponseHeadersFrame(response.getHeaders());
          response.getData().forEach(frameCollector::onResponseDataFrame);
-         frameCollector.collect().ifPresent(listener::onHttpEvent);
+         if (response.getTrailers() != null) {
+            frameCollector.onResponseHeadersFrame(response.getTrailers());
+         }
+         collect(frameCollector);
          response.getAllFrames().forEach(ctx::write);
          ctx.flush();
       } finally {
          release(request);
-         frameCollector.release();
-         streams.remove(frameWrapper.streamId());
+         recycle(frameCollector);
+      }
+   }
+
+   /**
+    * Send the sub-resources learned for the requested page while the server prepares the response, and push the
+    * ones found in the response cache if enabled.
+    *
+    * @param ctx      the ctx
+    * @param streamId the stream id of the request
+    * @param headers  the request headers
+    */
+   private void sendEarlyHints(ChannelHandlerContext ctx, int streamId, Http2Headers headers) {
+      if (!HttpMethod.GET.asciiName().contentEquals(headers.method()) || headers.authority() == null
+            || headers.path() == null) {
+         return;
+      }
+      String host = headers.authority().toString();
+      String path = headers.path().toString();
+      String links = earlyHints.links(host, path);
+      if (links == null) {
+         return;
+      }
+      Http2Headers hints = new DefaultHttp2Headers()
+            .status(HttpUtil.EARLY_HINTS.codeAsText())
+            .set(EarlyHints.LINK, links);
+      ctx.writeAndFlush(Http2FrameWrapper.frameWrapper(streamId, new DefaultHttp2HeadersFrame(hints)));
+
+      ProxyCache<String, FullHttpResponse> cache = connectionContext.config().getResponseCache();
+      if (!connectionContext.config().isHttp2Push() || cache == null) {
+         return;
+      }
+      String scheme = headers.scheme() != null ? headers.scheme().toString()
+            : HttpUrl.scheme(connectionContext.tlsCtx().isEnabled());
+      for (String resource : earlyHints.resources(host, path)) {
+         // The frontend checks on the event loop that the page stream is still open
+         cache.get(cacheKey(scheme, host, resource)).thenAcceptAsync(response -> {
+            if (response == null) {
+               return;
+            }
+            Http2Headers requestHeaders = new DefaultHttp2Headers()
+                  .method(headers.method())
+                  .scheme(scheme)
+                  .authority(headers.authority())
+                  .path(resource);
+            Http2Headers responseHeaders = new DefaultHttp2Headers().status(response.status().codeAsText());
+            toHttp2Headers(response.headers(), responseHeaders);
+            ctx.writeAndFlush(new Http2PushPromiseWrapper(streamId, requestHeaders, responseHeaders,
+                  response.content().retainedDuplicate()));
+         }, ctx.executor());
+      }
+   }
+
+   /**
+    * Track the messages of a gRPC call, and end the call at the deadline of its {@code grpc-timeout} header.
+    *
+    * @param ctx            the ctx
+    * @param frameCollector the collector of the call stream
+    * @param headers        the request headers
+    */
+   private void startGrpcCall(ChannelHandlerContext ctx, FrameCollector frameCollector, Http2Headers headers) {
+      GrpcCall call = new GrpcCall(headers.path().toString());
+      frameCollector.grpcCall(call);
+      long timeout = GrpcCall.timeoutNanos(headers.get(GrpcCall.GRPC_TIMEOUT));
+      if (timeout >= 0) {
+         call.deadline(ctx.executor().schedule(() -> deadlineExceeded(ctx, frameCollector, call),
+               timeout, TimeUnit.NANOSECONDS));
       }
    }
 
+   private void deadlineExceeded(ChannelHandlerContext ctx, FrameCollector frameCollector, GrpcCall call) {
+      int streamId = frameCollector.streamId;
+      if (streams.get(streamId) != frameCollector || frameCollector.grpcCall != call) {
+         return;
+      }
+      LOGGER.debug("{} : deadline exceeded for {} on stream {}", connectionContext, call.method(), streamId);
+      // The server stops working on the call, after the request frames already on their way
+      requestSequence.submit(ctx.executor(),
+            () -> ctx.fireChannelRead(frameWrapper(streamId, new DefaultHttp2ResetFrame(Http2Error.CANCEL))),
+            ctx::fireExceptionCaught);
+      // The client gets the status after the response frames already on their way
+      responseSequence.submit(ctx.executor(), () -> {
+         if (streams.get(streamId) != frameCollector) {
+            // The response ended in the meantime
+            return;
+         }
+         Http2Headers trailers = new DefaultHttp2Headers();
+         if (!frameCollector.hasResponseHeaders()) {
+            trailers.status(HttpResponseStatus.OK.codeAsText()).set(CONTENT_TYPE, GrpcCall.CONTENT_TYPE_GRPC);
+         }
+         trailers.setInt(GrpcCall.GRPC_STATUS, GrpcCall.DEADLINE_EXCEEDED)
+               .set(GrpcCall.GRPC_MESSAGE, "Deadline Exceeded");
+         Http2HeadersFrame trailersFrame = new DefaultHttp2HeadersFrame(trailers, true);
+         boolean requestDone = frameCollector.requestDone;
+         frameCollector.onResponseHeadersFrame(trailersFrame);
+         frameCollector.onResponseEnd();
+         frameCollector.endRequest();
+         ctx.write(frameWrapper(streamId, trailersFrame));
+         if (!requestDone) {
+            // The rest of the request is not needed anymore
+            ctx.write(frameWrapper(streamId, new DefaultHttp2ResetFrame(Http2Error.NO_ERROR)));
+         }
+         ctx.flush();
+         try {
+            collect(frameCollector);
+         } finally {
+            recycle(frameCollector);
+         }
+      }, ctx::fireExceptionCaught);
+   }
+
+   private void collect(FrameCollector frameCollector) {
+      Optional<HttpEvent> httpEvent = frameCollector.collect();
+      GrpcCall call = frameCollector.grpcCall;
+      if (call != null && httpEvent.isPresent()) {
+         grpcStats.record(call);
+         LOGGER.debug("{} : {}", connectionContext, call);
+      }
+      httpEvent.ifPresent(this::onHttpEvent);
+   }
+
+   private void onHttpEvent(HttpEvent httpEvent) {
+      earlyHints.learn(httpEvent);
+      listener.onHttpEvent(httpEvent);
+   }
+
    @Override
    public void handlerRemoved(ChannelHandlerContext ctx) {
       streams.values().forEach(FrameCollector::release);
+      streams.clear();
+      recycledCollectors.clear();
    }
 
-   private FrameCollector newFrameCollector(int streamId) {
-      return new FrameCollector(streamId, HttpEvent.builder(connectionContext));
+   private FrameCollector frameCollector(int streamId) {
+      FrameCollector frameCollector = streams.get(streamId);
+      if (frameCollector == null) {
+         frameCollector = recycledCollectors.poll();
+         if (frameCollector == null) {
+            frameCollector = new FrameCollector();
+         }
+         frameCollector.init(streamId, HttpEvent.builder(connectionContext));
+         streams.put(streamId, frameCollector);
+      }
+      return frameCollector;
+   }
+
+   private void recycle(FrameCollector frameCollector) {
+      frameCollector.release();
+      if (streams.remove(frameCollector.streamId) == frameCollector
+            && recycledCollectors.size() < MAX_RECYCLED_COLLECTORS) {
+         frameCollector.init(0, null);
+         recycledCollectors.push(frameCollector);
+      }
    }
 
    private static class FrameCollector {
@@ -135,41 +413,117 @@ public class Http2EventHandler extends ChannelDuplexHandler {
       private HttpEvent.Builder httpEventBuilder;
       private Http2HeadersFrame requestHeader;
       private List<Http2DataFrame> requestData = new ArrayList<>();
+      private Http2HeadersFrame requestTrailers;
+      private boolean buffering;
       private boolean requestDone;
+      private boolean responseHeaders;
+      private boolean responseDone;
+      private GrpcCall grpcCall;
 
-      public FrameCollector(int streamId, HttpEvent.Builder httpEventBuilder) {
+      /**
+       * Reset the collector for a new stream.
+       *
+       * @param streamId         the stream id
+       * @param httpEventBuilder the event builder of the stream
+       */
+      public void init(int streamId, HttpEvent.Builder httpEventBuilder) {
          this.streamId = streamId;
          this.httpEventBuilder = httpEventBuilder;
+         requestHeader = null;
+         requestData.clear();
+         requestTrailers = null;
+         buffering = false;
+         requestDone = false;
+         responseHeaders = false;
+         responseDone = false;
+         grpcCall = null;
+      }
+
+      public boolean hasRequestHeaders() {
+         return requestHeader != null;
+      }
+
+      /**
+       * @return {@code true} once the final response headers were seen, the next headers are the trailers
+       */
+      public boolean hasResponseHeaders() {
+         return responseHeaders;
+      }
+
+      public void grpcCall(GrpcCall grpcCall) {
+         this.grpcCall = grpcCall;
+      }
+
+      public void buffering(boolean buffering) {
+         this.buffering = buffering;
+      }
+
+      public boolean isBuffering() {
+         return buffering;
+      }
+
+      /**
+       * Mark the response as ended.
+       *
+       * @return {@code true} if the request was ended as well
+       */
+      public boolean onResponseEnd() {
+         responseDone = true;
+         return requestDone;
+      }
+
+      public boolean isDone() {
+         return requestDone && responseDone;
+      }
+
+      /**
+       * Mark the request as ended, the remaining frames of the stream are not collected.
+       */
+      public void endRequest() {
+         requestDone = true;
       }
 
       /**
        * Handles a http2 frame of the request, and return full request frames while the request was ended.
+       * Frames of a request which is not buffered are only accounted, the caller forwards them.
        *
        * @param frame a http2 frame
        * @return full request frames if the request was ended, return empty if there are more frames of the request
        */
       public Optional<Http2FramesWrapper> onRequestFrame(Http2Frame frame) {
-         if (frame instanceof Http2HeadersFrame) {
-            requestHeader = (Http2HeadersFrame) frame;
-            Http2Headers headers = requestHeader.headers();
-            httpEventBuilder.method(HttpMethod.valueOf(headers.method().toString()))
-                  .version(HttpUtil.HTTP_2)
-                  .host(headers.authority().toString())
-                  .path(headers.path().toString())
-                  .requestTime(currentTimeMillis());
-            requestDone = requestHeader.isEndStream();
+         if (frame instanceof Http2HeadersFrame headersFrame) {
+            if (requestHeader == null) {
+               requestHeader = headersFrame;
+               Http2Headers headers = requestHeader.headers();
+               httpEventBuilder.method(getMethod(headers))
+                     .version(HttpUtil.HTTP_2)
+                     .host(Objects.toString(headers.authority(), null))
+                     .path(Objects.toString(headers.path(), null))
+                     .referer(Objects.toString(headers.get(REFERER), null))
+                     .requestTime(currentTimeMillis());
+            } else {
+               // The trailers of a streamed request
+               requestTrailers = headersFrame;
+            }
+            requestDone = headersFrame.isEndStream();
          } else if (frame instanceof Http2DataFrame) {
             Http2DataFrame data = (Http2DataFrame) frame;
-            requestData.add(data);
+            if (buffering) {
+               requestData.add(data);
+            }
+            if (grpcCall != null) {
+               grpcCall.requests().onData(data.content());
+            }
             httpEventBuilder.addRequestBodySize(data.content().readableBytes());
             requestDone = data.isEndStream();
          }
 
-         if (requestDone) {
+         if (requestDone && buffering) {
             Http2FramesWrapper request = Http2FramesWrapper
                   .builder(streamId)
                   .headers(requestHeader)
                   .data(requestData)
+                  .trailers(requestTrailers)
                   .build();
             requestData.clear();
             return Optional.of(request);
@@ -189,26 +543,56 @@ public class Http2EventHandler extends ChannelDuplexHandler {
 
       public boolean onResponseHeadersFrame(Http2HeadersFrame frame) {
          Http2Headers headers = frame.headers();
-         httpEventBuilder.status(getStatus(headers))
+         if (responseHeaders || headers.status() == null) {
+            // The trailers of a streamed response
+            HttpHeaders trailers = new DefaultHttpHeaders();
+            toHttpHeaders(headers, trailers);
+            httpEventBuilder.trailers(trailers);
+            if (grpcCall != null) {
+               grpcCall.onTrailers(headers);
+            }
+            return frame.isEndStream();
+         }
+         HttpResponseStatus status = getStatus(headers);
+         httpEventBuilder.status(status)
                .contentType(getContentType(headers))
                .responseTime(currentTimeMillis());
+         // The interim responses are followed by the final one
+         responseHeaders = status.codeClass() != INFORMATIONAL;
+         if (grpcCall != null && frame.isEndStream()) {
+            // A trailers-only response, the status is in the headers
+            grpcCall.onTrailers(headers);
+         }
          return frame.isEndStream();
       }
 
       public boolean onResponseDataFrame(Http2DataFrame frame) {
+         if (grpcCall != null) {
+            grpcCall.responses().onData(frame.content());
+         }
          httpEventBuilder.addResponseBodySize(frame.content().readableBytes());
          return frame.isEndStream();
       }
 
       public Optional<HttpEvent> collect() {
-         if (requestDone) {
-            return Optional.of(httpEventBuilder.build());
+         if (!requestDone) {
+            return Optional.empty();
          }
-         return Optional.empty();
+         if (grpcCall != null) {
+            grpcCall.end();
+            httpEventBuilder.grpcStatus(grpcCall.status())
+                  .grpcMessage(grpcCall.message())
+                  .requestMessages(grpcCall.requests().messages())
+                  .responseMessages(grpcCall.responses().messages());
+         }
+         return Optional.of(httpEventBuilder.build());
       }
 
       public void release() {
          requestData.forEach(ReferenceCountUtil::release);
+         if (grpcCall != null) {
+            grpcCall.end();
+         }
       }
    }
 }
@@ -0,0 +1,111 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import static io.netty.handler.codec.http2.Http2CodecUtil.DEFAULT_WINDOW_SIZE;
+import static io.netty.handler.codec.http2.Http2CodecUtil.SETTINGS_ENABLE_PUSH;
+import static io.netty.handler.codec.http2.Http2CodecUtil.SETTINGS_HEADER_TABLE_SIZE;
+import static io.netty.handler.codec.http2.Http2CodecUtil.SETTINGS_INITIAL_WINDOW_SIZE;
+import static io.netty.handler.codec.http2.Http2CodecUtil.SETTINGS_MAX_HEADER_LIST_SIZE;
+import static io.netty.handler.codec.http2.Http2CodecUtil.SETTINGS_MAX_FRAME_SIZE;
+
+import io.engytita.proxy.ProxyConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2Stream;
+
+/**
+ * Bridges the flow control of the client and the server connections.
+ * <p>
+ * Each leg keeps its own windows, tracked by the netty flow controllers. The bytes of a DATA frame read on one leg
+ * are only consumed, and so returned to the sender with a WINDOW_UPDATE, once the frame was written on the other leg.
+ * The write waits for the window of the receiving peer, so a slow receiver throttles the sender instead of the proxy
+ * buffering the stream.
+ */
+public final class Http2FlowControl {
+
+   private Http2FlowControl() {
+   }
+
+   /**
+    * Create the local settings advertised to a peer, the header table size bounds the HPACK dynamic table the peer
+    * may use to compress the headers sent to the proxy.
+    *
+    * @param config the proxy config
+    * @return the initial settings
+    */
+   public static Http2Settings initialSettings(ProxyConfig config) {
+      return Http2Settings.defaultSettings()
+            .initialWindowSize(config.getHttp2InitialWindowSize())
+            .maxFrameSize(config.getHttp2MaxFrameSize())
+            .headerTableSize(config.getHttp2HeaderTableSize())
+            .maxHeaderListSize(config.getHttp2MaxHeaderListSize());
+   }
+
+   /**
+    * Grow the connection window above the protocol default, the connection window can only be changed with a
+    * WINDOW_UPDATE so it must be called once the connection preface was sent.
+    *
+    * @param ctx     the ctx of the handler sending the window update
+    * @param handler the http2 connection handler
+    * @param config  the proxy config
+    * @throws Http2Exception if the window overflows
+    */
+   public static void initConnectionWindow(ChannelHandlerContext ctx, Http2ConnectionHandler handler,
+                                           ProxyConfig config) throws Http2Exception {
+      int delta = config.getHttp2ConnectionWindowSize() - DEFAULT_WINDOW_SIZE;
+      if (delta > 0) {
+         Http2Stream connectionStream = handler.connection().connectionStream();
+         handler.decoder().flowController().incrementWindowSize(connectionStream, delta);
+         ctx.flush();
+      }
+   }
+
+   /**
+    * Copy the settings received from a peer without the hop by hop settings, the forwarded settings must not
+    * override the flow control nor the header compression of the other leg.
+    *
+    * @param settings the received settings
+    * @return the settings to forward
+    */
+   public static Http2Settings forwardedSettings(Http2Settings settings) {
+      Http2Settings forwarded = new Http2Settings();
+      forwarded.putAll(settings);
+      forwarded.remove(SETTINGS_INITIAL_WINDOW_SIZE);
+      forwarded.remove(SETTINGS_MAX_FRAME_SIZE);
+      forwarded.remove(SETTINGS_ENABLE_PUSH);
+      forwarded.remove(SETTINGS_HEADER_TABLE_SIZE);
+      forwarded.remove(SETTINGS_MAX_HEADER_LIST_SIZE);
+      return forwarded;
+   }
+
+   /**
+    * Return the flow controlled bytes of a frame to its sender.
+    *
+    * @param ctx      the ctx of the handler which read the frame
+    * @param handler  the http2 connection handler which read the frame
+    * @param streamId the stream id of the frame on that connection
+    * @param bytes    the flow controlled bytes, including the padding
+    */
+   public static void consumeBytes(ChannelHandlerContext ctx, Http2ConnectionHandler handler, int streamId,
+                                   int bytes) {
+      if (!ctx.executor().inEventLoop()) {
+         ctx.executor().execute(() -> consumeBytes(ctx, handler, streamId, bytes));
+         return;
+      }
+      Http2Connection connection = handler.connection();
+      // Closed streams already gave their unconsumed bytes back to the connection window
+      Http2Stream stream = connection.stream(streamId);
+      if (stream == null) {
+         return;
+      }
+      try {
+         if (handler.decoder().flowController().consumeBytes(stream, bytes)) {
+            ctx.flush();
+         }
+      } catch (Http2Exception e) {
+         ctx.fireExceptionCaught(e);
+      }
+   }
+}
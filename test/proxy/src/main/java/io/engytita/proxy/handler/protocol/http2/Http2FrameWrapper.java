@@ -22,7 +22,7 @@ public class Http2FrameWrapper<T extends Http2Frame> {
    }
 
    public static Http2DataFrameWrapper frameWrapper(int streamId, Http2DataFrame frame) {
-      return new Http2DataFrameWrapper(streamId, frame);
+      return Http2DataFrameWrapper.newInstance(streamId, frame);
    }
 
    public static <T extends Http2Frame> Http2FrameWrapper<T> frameWrapper(
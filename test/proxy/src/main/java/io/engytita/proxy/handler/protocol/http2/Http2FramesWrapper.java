@@ -1,6 +1,7 @@
 package io.engytita.proxy.handler.protocol.http2;
 
 import static io.engytita.proxy.handler.protocol.http2.Http2FrameWrapper.frameWrapper;
+import static io.engytita.proxy.http.HttpHeadersUtil.toHttp2Headers;
 import static io.netty.handler.codec.http.HttpHeaderNames.HOST;
 
 import java.util.ArrayList;
@@ -20,11 +21,13 @@ public class Http2FramesWrapper {
    private int streamId;
    private Http2HeadersFrame headersFrame;
    private List<Http2DataFrame> dataFrames;
+   private Http2HeadersFrame trailersFrame;
 
    public Http2FramesWrapper(Builder builder) {
       this.streamId = builder.streamId;
       this.headersFrame = builder.headersFrame;
       this.dataFrames = builder.dataFrames;
+      this.trailersFrame = builder.trailersFrame;
    }
 
    public static Builder builder(int streamId) {
@@ -43,10 +46,20 @@ public class Http2FramesWrapper {
       return dataFrames;
    }
 
+   /**
+    * @return the trailing headers frame, null if the stream was ended by the headers or a data frame
+    */
+   public Http2HeadersFrame getTrailers() {
+      return trailersFrame;
+   }
+
    public List<Http2FrameWrapper<?>> getAllFrames() {
       List<Http2FrameWrapper<?>> list = new ArrayList<>();
       list.add(frameWrapper(streamId, headersFrame));
       list.addAll(dataFrames.stream().map(frame -> frameWrapper(streamId, frame)).toList());
+      if (trailersFrame != null) {
+         list.add(frameWrapper(streamId, trailersFrame));
+      }
       return list;
    }
 
@@ -54,21 +67,25 @@ public class Http2FramesWrapper {
       private int streamId;
       private Http2HeadersFrame headersFrame;
       private List<Http2DataFrame> dataFrames = new ArrayList<>();
+      private Http2HeadersFrame trailersFrame;
 
       private Builder(int streamId) {
          this.streamId = streamId;
       }
 
       public Builder request(FullHttpRequest request) {
+         return request(request, "https");
+      }
+
+      public Builder request(FullHttpRequest request, String scheme) {
          headersFrame = new DefaultHttp2HeadersFrame(new DefaultHttp2Headers(),
                request.content().readableBytes() == 0);
          headersFrame.headers()
                .authority(request.headers().get(HOST))
                .path(request.uri())
-               .method(request.method().name())
-               .scheme("https");
-         request.headers().forEach(entry -> headersFrame
-               .headers().add(entry.getKey().toLowerCase(), entry.getValue()));
+               .method(request.method().asciiName())
+               .scheme(scheme);
+         toHttp2Headers(request.headers(), headersFrame.headers());
          if (request.content().readableBytes() > 0) {
             dataFrames.add(new DefaultHttp2DataFrame(request.content(), true));
          }
@@ -79,8 +96,7 @@ public class Http2FramesWrapper {
          headersFrame = new DefaultHttp2HeadersFrame(new DefaultHttp2Headers(),
                response.content().readableBytes() == 0);
          headersFrame.headers().status(response.status().codeAsText());
-         response.headers().forEach(entry -> headersFrame
-               .headers().add(entry.getKey().toLowerCase(), entry.getValue()));
+         toHttp2Headers(response.headers(), headersFrame.headers());
          if (response.content().readableBytes() > 0) {
             dataFrames.add(new DefaultHttp2DataFrame(response.content(), true));
          }
@@ -102,6 +118,11 @@ public class Http2FramesWrapper {
          return this;
       }
 
+      public Builder trailers(Http2HeadersFrame trailersFrame) {
+         this.trailersFrame = trailersFrame;
+         return this;
+      }
+
       public Http2FramesWrapper build() {
          if (headersFrame == null) {
             throw new ProxyException("null headers");
@@ -113,6 +134,12 @@ public class Http2FramesWrapper {
             }
             ended = data.isEndStream();
          }
+         if (trailersFrame != null) {
+            if (ended) {
+               throw new ProxyException("stream was ended, but found trailers");
+            }
+            ended = trailersFrame.isEndStream();
+         }
          if (!ended) {
             throw new ProxyException("stream not ended");
          }
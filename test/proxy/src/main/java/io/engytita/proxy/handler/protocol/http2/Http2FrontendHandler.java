@@ -1,5 +1,6 @@
 package io.engytita.proxy.handler.protocol.http2;
 
+import static io.engytita.proxy.http.HttpUtil.HTTP_PORT;
 import static io.engytita.proxy.util.LogWrappers.format;
 import static io.netty.handler.logging.LogLevel.DEBUG;
 import static io.netty.util.ReferenceCountUtil.touch;
@@ -7,53 +8,136 @@ import static io.netty.util.ReferenceCountUtil.touch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.engytita.proxy.Address;
 import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.Protocols;
+import io.engytita.proxy.enums.ProxyMode;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http2.DefaultHttp2Connection;
 import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
 import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
 import io.netty.handler.codec.http2.DefaultHttp2ResetFrame;
 import io.netty.handler.codec.http2.DefaultHttp2SettingsFrame;
-import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
 import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionEncoder;
 import io.netty.handler.codec.http2.Http2ConnectionHandler;
 import io.netty.handler.codec.http2.Http2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Exception;
 import io.netty.handler.codec.http2.Http2Flags;
 import io.netty.handler.codec.http2.Http2FrameListener;
 import io.netty.handler.codec.http2.Http2FrameLogger;
 import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
 import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2Stream;
+import io.netty.handler.flush.FlushConsolidationHandler;
 
 public class Http2FrontendHandler
       extends ChannelOutboundHandlerAdapter
       implements Http2FrameListener {
 
    private static final Logger LOGGER = LoggerFactory.getLogger(Http2FrontendHandler.class);
+   private static final String HTTP = "http";
 
    private ConnectionContext connectionContext;
    private Http2ConnectionHandler http2ConnectionHandler;
+   private Http2WriteScheduler scheduler;
+
+   // Set when the connection was upgraded from HTTP/1 with "Upgrade: h2c"
+   private Http2Settings upgradeSettings;
+   private FullHttpRequest upgradeRequest;
 
    public Http2FrontendHandler(ConnectionContext connectionContext) {
       this.connectionContext = connectionContext;
    }
 
+   public Http2FrontendHandler(ConnectionContext connectionContext, Http2Settings upgradeSettings,
+                               FullHttpRequest upgradeRequest) {
+      this.connectionContext = connectionContext;
+      this.upgradeSettings = upgradeSettings;
+      this.upgradeRequest = upgradeRequest;
+   }
+
    @Override
    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
       LOGGER.debug("{} : handlerAdded", connectionContext);
 
       Http2Connection http2Connection = new DefaultHttp2Connection(true);
+      scheduler = new Http2WriteScheduler(http2Connection, connectionContext.config(),
+            connectionContext.master().http2WriteStats());
       http2ConnectionHandler = new Http2ConnectionHandlerBuilder()
             .connection(http2Connection)
             .frameListener(this)
             .frameLogger(new Http2FrameLogger(DEBUG))
+            .initialSettings(Http2FlowControl.initialSettings(connectionContext.config()))
+            .gracefulShutdownTimeoutMillis(connectionContext.config().getGracefulShutdownTimeout())
             .build();
 
-      ctx.pipeline()
-            .addBefore(ctx.name(), null, http2ConnectionHandler)
-            .addAfter(ctx.name(), null, connectionContext.provider().http2EventHandler());
+      ctx.pipeline().addBefore(ctx.name(), null, http2ConnectionHandler);
+      if (connectionContext.config().isHttp2Translation()) {
+         ctx.pipeline().addAfter(ctx.name(), null, connectionContext.provider().http2TranslationHandler());
+      }
+      ctx.pipeline().addAfter(ctx.name(), null, connectionContext.provider().http2EventHandler());
+      int flushBatchSize = connectionContext.config().getHttp2FlushBatchSize();
+      if (flushBatchSize > 0) {
+         // The frames of several streams pile up in the flow controller until the flush, so the scheduler can
+         // interleave them instead of writing each stream in the order its frames arrived
+         ctx.pipeline().addBefore(ctx.name(), null, new FlushConsolidationHandler(flushBatchSize, true));
+      }
+      Http2FlowControl.initConnectionWindow(ctx, http2ConnectionHandler, connectionContext.config());
+
+      if (!connectionContext.connected() && connectionContext.config().getProxyMode() == ProxyMode.HTTP) {
+         connect(ctx, new Address(connectionContext.config().getRemoteHost(),
+               connectionContext.config().getRemotePort()));
+      }
+      if (upgradeRequest != null) {
+         upgrade(ctx);
+      }
+   }
+
+   private void upgrade(ChannelHandlerContext ctx) throws Http2Exception {
+      http2ConnectionHandler.onHttpServerUpgrade(upgradeSettings);
+      // The upgrade request implicitly opens the half-closed stream 1, the data frame takes over its content
+      Http2FramesWrapper request = Http2FramesWrapper.builder(1)
+            .request(upgradeRequest, HTTP)
+            .build();
+      if (request.getData().isEmpty()) {
+         upgradeRequest.release();
+      }
+      upgradeRequest = null;
+      connectIfNeeded(ctx, request.getHeaders().headers());
+      request.getAllFrames().forEach(ctx::fireChannelRead);
+   }
+
+   private void connectIfNeeded(ChannelHandlerContext ctx, Http2Headers headers) {
+      if (connectionContext.connected() || connectionContext.config().getProxyMode() != ProxyMode.TRANSPARENT) {
+         return;
+      }
+      CharSequence authority = headers.authority();
+      if (authority == null) {
+         LOGGER.error("{} : authority is required for cleartext http2 in transparent mode", connectionContext);
+         ctx.close();
+         return;
+      }
+      connect(ctx, Address.resolve(authority.toString(), HTTP_PORT));
+   }
+
+   private void connect(ChannelHandlerContext ctx, Address address) {
+      // A cleartext server is expected to only speak HTTP/1.1 when the translation is enabled
+      connectionContext.http2Translated(connectionContext.config().isHttp2Translation());
+      connectionContext.connect(address, ctx).addListener((ChannelFuture future) -> {
+         if (!future.isSuccess()) {
+            ctx.close();
+         }
+      });
+      connectionContext.tlsCtx().disableTls();
+      connectionContext.tlsCtx().protocolPromise().setSuccess(Protocols.H2C);
    }
 
    @Override
@@ -67,35 +151,74 @@ public class Http2FrontendHandler
       if (msg instanceof Http2FrameWrapper) {
          Http2FrameWrapper<?> frame = (Http2FrameWrapper<?>) touch(msg,
                format("%s context=%s", msg, connectionContext));
+         if (frame.frame() instanceof Http2DataFrame) {
+            scheduler.queued(frame.streamId(), promise);
+         } else if (frame.frame() instanceof Http2HeadersFrame headersFrame) {
+            scheduler.prioritize(frame.streamId(), headersFrame.headers());
+         }
          frame.write(ctx, http2ConnectionHandler.encoder(), frame.streamId(), promise);
+      } else if (msg instanceof Http2PushPromiseWrapper push) {
+         push(ctx, push, promise);
       } else {
          ctx.write(msg, promise);
       }
    }
 
+   private void push(ChannelHandlerContext ctx, Http2PushPromiseWrapper push, ChannelPromise promise) {
+      Http2Connection connection = http2ConnectionHandler.connection();
+      Http2Stream associated = connection.stream(push.streamId());
+      if (!connection.remote().allowPushTo() || !connection.local().canOpenStream() || associated == null
+            || associated.state() != Http2Stream.State.OPEN
+            && associated.state() != Http2Stream.State.HALF_CLOSED_REMOTE) {
+         // The client disabled push, has too many streams, or the page response already ended
+         push.release();
+         promise.setSuccess();
+         return;
+      }
+      Http2ConnectionEncoder encoder = http2ConnectionHandler.encoder();
+      int promisedStreamId = connection.local().incrementAndGetNextStreamId();
+      encoder.writePushPromise(ctx, push.streamId(), promisedStreamId, push.requestHeaders(), 0, ctx.newPromise());
+      if (push.content().isReadable()) {
+         encoder.writeHeaders(ctx, promisedStreamId, push.responseHeaders(), 0, false, ctx.newPromise());
+         encoder.writeData(ctx, promisedStreamId, push.content(), 0, true, promise);
+      } else {
+         push.release();
+         encoder.writeHeaders(ctx, promisedStreamId, push.responseHeaders(), 0, true, promise);
+      }
+   }
+
    @Override
    public int onDataRead(ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding,
                          boolean endOfStream) {
-      int processed = data.readableBytes() + padding;
-      ctx.fireChannelRead(Http2FrameWrapper.frameWrapper(streamId, new DefaultHttp2DataFrame(data.retain(), endOfStream, padding)));
-      return processed;
+      int flowControlled = data.readableBytes() + padding;
+      Http2DataFrameWrapper frame = Http2FrameWrapper.frameWrapper(streamId,
+            new DefaultHttp2DataFrame(data.retain(), endOfStream, padding));
+      // The client window is only replenished once the frame was written to the server
+      frame.onConsumed(() -> Http2FlowControl.consumeBytes(ctx, http2ConnectionHandler, streamId, flowControlled));
+      ctx.fireChannelRead(frame);
+      return 0;
    }
 
    @Override
    public void onHeadersRead(ChannelHandlerContext ctx, int streamId, Http2Headers headers,
                              int padding, boolean endOfStream) {
+      connectIfNeeded(ctx, headers);
+      scheduler.prioritize(streamId, headers);
       ctx.fireChannelRead(Http2FrameWrapper.frameWrapper(streamId, new DefaultHttp2HeadersFrame(headers, endOfStream, padding)));
    }
 
    @Override
    public void onHeadersRead(ChannelHandlerContext ctx, int streamId, Http2Headers headers,
                              int streamDependency, short weight, boolean exclusive, int padding, boolean endOfStream) {
+      connectIfNeeded(ctx, headers);
+      scheduler.prioritize(streamId, headers);
       ctx.fireChannelRead(Http2FrameWrapper.frameWrapper(streamId, new DefaultHttp2HeadersFrame(headers, endOfStream, padding)));
    }
 
    @Override
    public void onPriorityRead(ChannelHandlerContext ctx, int streamId, int streamDependency,
                               short weight, boolean exclusive) {
+      // The decoder already applied the priority to the scheduler
    }
 
    @Override
@@ -109,7 +232,8 @@ public class Http2FrontendHandler
 
    @Override
    public void onSettingsRead(ChannelHandlerContext ctx, Http2Settings settings) {
-      ctx.fireChannelRead(Http2FrameWrapper.frameWrapper(0, new DefaultHttp2SettingsFrame(settings)));
+      ctx.fireChannelRead(Http2FrameWrapper.frameWrapper(0,
+            new DefaultHttp2SettingsFrame(Http2FlowControl.forwardedSettings(settings))));
    }
 
    @Override
@@ -132,12 +256,14 @@ public class Http2FrontendHandler
 
    @Override
    public void onWindowUpdateRead(ChannelHandlerContext ctx, int streamId, int windowSizeIncrement) {
-      ctx.fireChannelRead(Http2FrameWrapper.frameWrapper(streamId,
-            new DefaultHttp2WindowUpdateFrame(windowSizeIncrement)));
+      // Windows are per connection, the server is only credited once the frames were written to the client
    }
 
    @Override
    public void onUnknownFrame(ChannelHandlerContext ctx, byte frameType, int streamId,
                               Http2Flags flags, ByteBuf payload) {
+      if (frameType == Http2WriteScheduler.PRIORITY_UPDATE && streamId == 0) {
+         scheduler.priorityUpdate(payload);
+      }
    }
 }
\ No newline at end of file
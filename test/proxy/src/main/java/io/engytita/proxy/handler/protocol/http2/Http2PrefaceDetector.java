@@ -0,0 +1,20 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import java.nio.charset.StandardCharsets;
+
+import io.engytita.proxy.Protocols;
+import io.engytita.proxy.handler.protocol.PrefixProtocolDetector;
+
+/**
+ * Detects the connection preface of a cleartext HTTP/2 connection with prior knowledge.
+ */
+public class Http2PrefaceDetector extends PrefixProtocolDetector {
+
+   private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+   public static final Http2PrefaceDetector INSTANCE = new Http2PrefaceDetector();
+
+   public Http2PrefaceDetector() {
+      super(Protocols.H2C, PREFACE);
+   }
+}
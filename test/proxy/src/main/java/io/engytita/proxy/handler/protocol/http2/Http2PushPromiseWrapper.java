@@ -0,0 +1,48 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.handler.codec.http2.Http2Headers;
+
+/**
+ * A response pushed to the client, promised on the stream of the request it belongs to.
+ */
+public class Http2PushPromiseWrapper extends DefaultByteBufHolder {
+
+   private final int streamId;
+   private final Http2Headers requestHeaders;
+   private final Http2Headers responseHeaders;
+
+   /**
+    * Create a push promise.
+    *
+    * @param streamId        the stream the push is associated with
+    * @param requestHeaders  the headers of the promised request
+    * @param responseHeaders the headers of the pushed response
+    * @param content         the content of the pushed response
+    */
+   public Http2PushPromiseWrapper(int streamId, Http2Headers requestHeaders, Http2Headers responseHeaders,
+                                  ByteBuf content) {
+      super(content);
+      this.streamId = streamId;
+      this.requestHeaders = requestHeaders;
+      this.responseHeaders = responseHeaders;
+   }
+
+   public int streamId() {
+      return streamId;
+   }
+
+   public Http2Headers requestHeaders() {
+      return requestHeaders;
+   }
+
+   public Http2Headers responseHeaders() {
+      return responseHeaders;
+   }
+
+   @Override
+   public String toString() {
+      return "PUSH_PROMISE Frame: streamId=" + streamId + " path=" + requestHeaders.path();
+   }
+}
@@ -0,0 +1,214 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import static io.engytita.proxy.http.HttpHeadersUtil.getMethod;
+import static io.engytita.proxy.http.HttpHeadersUtil.toHttpHeaders;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaderNames.EXPECT;
+import static io.netty.handler.codec.http.HttpHeaderNames.HOST;
+import static io.netty.handler.codec.http.HttpHeaderNames.TRANSFER_ENCODING;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.handler.protocol.http1.Http1OriginPool;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http2.DefaultHttp2ResetFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2Frame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+/**
+ * Translates the streams of a HTTP/2 client to HTTP/1.1 requests, when the server only speaks HTTP/1.1.
+ * <p>
+ * The frames of a stream are aggregated into a {@link FullHttpRequest}, up to the max content length, and sent on a
+ * connection of the {@link Http1OriginPool}, which writes the response back to the stream. The frames of a client
+ * which is not translated are passed through to the server.
+ */
+public class Http2TranslationHandler extends ChannelInboundHandlerAdapter {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(Http2TranslationHandler.class);
+
+   private final ConnectionContext connectionContext;
+   private final int maxContentLength;
+   private final IntObjectMap<StreamRequest> requests = new IntObjectHashMap<>();
+
+   public Http2TranslationHandler(ConnectionContext connectionContext) {
+      this.connectionContext = connectionContext;
+      this.maxContentLength = connectionContext.config().getMaxContentLength();
+   }
+
+   @Override
+   public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      if (!connectionContext.http2Translated() || !(msg instanceof Http2FrameWrapper<?> frameWrapper)) {
+         ctx.fireChannelRead(msg);
+         return;
+      }
+      int streamId = frameWrapper.streamId();
+      Http2Frame frame = frameWrapper.frame();
+      if (frame instanceof Http2HeadersFrame headersFrame) {
+         onHeaders(ctx, streamId, headersFrame);
+      } else if (frame instanceof Http2DataFrame) {
+         onData(ctx, streamId, (Http2DataFrameWrapper) frameWrapper);
+      } else if (frame instanceof Http2ResetFrame) {
+         StreamRequest request = requests.remove(streamId);
+         if (request != null) {
+            request.release();
+         } else {
+            connectionContext.http1OriginPool().cancel(streamId);
+         }
+      } else {
+         // The settings and the window updates only concern the client connection
+         ReferenceCountUtil.release(frame);
+      }
+   }
+
+   private void onHeaders(ChannelHandlerContext ctx, int streamId, Http2HeadersFrame frame) {
+      Http2Headers headers = frame.headers();
+      StreamRequest request = requests.get(streamId);
+      if (request != null) {
+         request.trailers = headers;
+      } else if (headers.path() == null || HttpMethod.CONNECT.asciiName().contentEquals(headers.method())) {
+         // Tunnels and extended connect have no HTTP/1.1 request form
+         reset(streamId, Http2Error.HTTP_1_1_REQUIRED);
+         return;
+      } else {
+         request = new StreamRequest(headers, ctx.alloc().compositeBuffer());
+         requests.put(streamId, request);
+      }
+      if (frame.isEndStream()) {
+         if (request.discarded) {
+            requests.remove(streamId);
+         } else {
+            complete(ctx, streamId);
+         }
+      }
+   }
+
+   private void onData(ChannelHandlerContext ctx, int streamId, Http2DataFrameWrapper frameWrapper) {
+      Http2DataFrame frame = frameWrapper.frame();
+      boolean endStream = frame.isEndStream();
+      StreamRequest request = requests.get(streamId);
+      if (request == null || request.discarded) {
+         frame.release();
+      } else if (request.content.readableBytes() + frame.content().readableBytes() > maxContentLength) {
+         frame.release();
+         request.discard();
+         respond(streamId, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+      } else {
+         request.content.addComponent(true, frame.content());
+      }
+      // The request is buffered, the client gets its window back right away
+      frameWrapper.consumed();
+      if (endStream && request != null) {
+         if (request.discarded) {
+            requests.remove(streamId);
+         } else {
+            complete(ctx, streamId);
+         }
+      }
+   }
+
+   private void complete(ChannelHandlerContext ctx, int streamId) {
+      StreamRequest request = requests.remove(streamId);
+      LOGGER.debug("{} : translate stream {} to HTTP/1.1", connectionContext, streamId);
+      connectionContext.http1OriginPool().send(ctx, streamId, request.toHttpRequest());
+   }
+
+   private void reset(int streamId, Http2Error error) {
+      connectionContext.clientChannel().writeAndFlush(
+            Http2FrameWrapper.frameWrapper(streamId, new DefaultHttp2ResetFrame(error)));
+   }
+
+   private void respond(int streamId, HttpResponseStatus status) {
+      Channel clientChannel = connectionContext.clientChannel();
+      Http2FramesWrapper.builder(streamId)
+            .response(new DefaultFullHttpResponse(HTTP_1_1, status, Unpooled.EMPTY_BUFFER))
+            .build()
+            .getAllFrames()
+            .forEach(clientChannel::write);
+      clientChannel.flush();
+   }
+
+   @Override
+   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      releaseRequests();
+      if (connectionContext.http2Translated()) {
+         connectionContext.http1OriginPool().close();
+      }
+      super.channelInactive(ctx);
+   }
+
+   @Override
+   public void handlerRemoved(ChannelHandlerContext ctx) {
+      releaseRequests();
+   }
+
+   private void releaseRequests() {
+      requests.values().forEach(StreamRequest::release);
+      requests.clear();
+   }
+
+   private static class StreamRequest {
+      private final Http2Headers headers;
+      private CompositeByteBuf content;
+      private Http2Headers trailers;
+      private boolean discarded;
+
+      private StreamRequest(Http2Headers headers, CompositeByteBuf content) {
+         this.headers = headers;
+         this.content = content;
+      }
+
+      private FullHttpRequest toHttpRequest() {
+         FullHttpRequest request = new DefaultFullHttpRequest(HTTP_1_1, getMethod(headers),
+               headers.path().toString(), content);
+         content = null;
+         if (headers.authority() != null) {
+            request.headers().set(HOST, headers.authority());
+         }
+         toHttpHeaders(headers, request.headers());
+         // The body was already received, and http2 has no transfer coding
+         request.headers().remove(EXPECT).remove(TRANSFER_ENCODING);
+         if (trailers != null) {
+            toHttpHeaders(trailers, request.trailingHeaders());
+            request.headers().remove(CONTENT_LENGTH);
+            HttpUtil.setTransferEncodingChunked(request, true);
+         } else if (request.content().isReadable() || request.headers().contains(CONTENT_LENGTH)) {
+            HttpUtil.setContentLength(request, request.content().readableBytes());
+         }
+         return request;
+      }
+
+      private void discard() {
+         discarded = true;
+         release();
+      }
+
+      private void release() {
+         if (content != null) {
+            ByteBuf buf = content;
+            content = null;
+            buf.release();
+         }
+      }
+   }
+}
@@ -0,0 +1,171 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import static io.netty.handler.codec.http2.Http2CodecUtil.CONNECTION_STREAM_ID;
+import static io.netty.handler.codec.http2.Http2CodecUtil.DEFAULT_PRIORITY_WEIGHT;
+import static io.netty.handler.codec.http2.Http2CodecUtil.MIN_WEIGHT;
+import static io.netty.util.CharsetUtil.US_ASCII;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.engytita.proxy.ProxyConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http2.DefaultHttp2RemoteFlowController;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionAdapter;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2Stream;
+import io.netty.handler.codec.http2.WeightedFairQueueByteDistributor;
+import io.netty.util.AsciiString;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+
+/**
+ * Schedules the frames written to a client across the streams of the connection.
+ * <p>
+ * The DATA frames are queued per stream by the remote flow controller, a weighted fair queue hands the connection
+ * window and the socket to the streams with pending bytes a quantum at a time, so a large download no longer starves
+ * the small responses of the same connection. The weights come from the RFC 7540 priority signals, applied by the
+ * decoder, and from the RFC 9218 {@code priority} header and PRIORITY_UPDATE frame.
+ * <p>
+ * The scheduler is confined to the event loop of the client connection.
+ */
+public class Http2WriteScheduler {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(Http2WriteScheduler.class);
+
+   public static final AsciiString PRIORITY = AsciiString.cached("priority");
+   public static final byte PRIORITY_UPDATE = 0x10;
+
+   private static final int DEFAULT_URGENCY = 3;
+   private static final int MAX_URGENCY = 7;
+
+   private final Http2Connection connection;
+   private final Http2WriteStats stats;
+   private final IntObjectMap<StreamDelay> delays = new IntObjectHashMap<>();
+
+   public Http2WriteScheduler(Http2Connection connection, ProxyConfig config, Http2WriteStats stats) {
+      this.connection = connection;
+      this.stats = stats;
+      WeightedFairQueueByteDistributor distributor = new WeightedFairQueueByteDistributor(connection);
+      distributor.allocationQuantum(config.getHttp2SchedulerQuantum());
+      // Set before the encoder is built, which otherwise creates a flow controller with the default quantum
+      connection.remote().flowController(new DefaultHttp2RemoteFlowController(connection, distributor));
+      connection.addListener(new Http2ConnectionAdapter() {
+         @Override
+         public void onStreamClosed(Http2Stream stream) {
+            closed(stream.id());
+         }
+      });
+   }
+
+   /**
+    * Apply the {@code priority} header of a request, or of a response which overrides the one of its request.
+    *
+    * @param streamId the stream id
+    * @param headers  the headers
+    */
+   public void prioritize(int streamId, Http2Headers headers) {
+      CharSequence priority = headers.get(PRIORITY);
+      if (priority != null) {
+         prioritize(streamId, priority);
+      }
+   }
+
+   /**
+    * Apply a PRIORITY_UPDATE frame, the update of a stream which is not open yet is ignored.
+    *
+    * @param payload the frame payload
+    */
+   public void priorityUpdate(ByteBuf payload) {
+      if (payload.readableBytes() < 4) {
+         return;
+      }
+      int streamId = payload.getInt(payload.readerIndex()) & Integer.MAX_VALUE;
+      if (connection.stream(streamId) != null) {
+         prioritize(streamId, payload.toString(payload.readerIndex() + 4, payload.readableBytes() - 4, US_ASCII));
+      }
+   }
+
+   private void prioritize(int streamId, CharSequence priority) {
+      connection.remote().flowController()
+            .updateDependencyTree(streamId, CONNECTION_STREAM_ID, weight(urgency(priority)), false);
+   }
+
+   /**
+    * Parse the urgency of a RFC 9218 priority field, the incremental parameter is not used as the fair queue always
+    * interleaves the streams of the same weight.
+    *
+    * @param priority the priority field value
+    * @return the urgency, from 0 the most urgent to 7
+    */
+   static int urgency(CharSequence priority) {
+      int length = priority.length();
+      for (int i = 0; i < length; i++) {
+         boolean start = i == 0 || priority.charAt(i - 1) == ',' || priority.charAt(i - 1) == ' ';
+         if (start && priority.charAt(i) == 'u' && i + 2 < length && priority.charAt(i + 1) == '=') {
+            int urgency = priority.charAt(i + 2) - '0';
+            boolean end = i + 3 == length || priority.charAt(i + 3) == ',' || priority.charAt(i + 3) == ' '
+                  || priority.charAt(i + 3) == ';';
+            return urgency >= 0 && urgency <= MAX_URGENCY && end ? urgency : DEFAULT_URGENCY;
+         }
+      }
+      return DEFAULT_URGENCY;
+   }
+
+   /**
+    * Map an urgency to a weight, each urgency level gets twice the bandwidth of the next one and the default urgency
+    * gets the default weight.
+    *
+    * @param urgency the urgency
+    * @return the weight
+    */
+   static short weight(int urgency) {
+      return (short) Math.max(MIN_WEIGHT, DEFAULT_PRIORITY_WEIGHT << DEFAULT_URGENCY >> urgency);
+   }
+
+   /**
+    * Track the queueing delay of a DATA frame, from now until the frame was written to the client.
+    *
+    * @param streamId the stream id
+    * @param promise  the promise of the frame write
+    */
+   public void queued(int streamId, ChannelPromise promise) {
+      long start = System.nanoTime();
+      promise.addListener((ChannelFuture future) -> written(streamId, System.nanoTime() - start));
+   }
+
+   private void written(int streamId, long delay) {
+      StreamDelay streamDelay = delays.get(streamId);
+      if (streamDelay == null) {
+         if (connection.stream(streamId) == null) {
+            return;
+         }
+         streamDelay = new StreamDelay();
+         delays.put(streamId, streamDelay);
+      }
+      streamDelay.frames++;
+      streamDelay.total += delay;
+      streamDelay.max = Math.max(streamDelay.max, delay);
+   }
+
+   private void closed(int streamId) {
+      StreamDelay streamDelay = delays.remove(streamId);
+      if (streamDelay == null) {
+         return;
+      }
+      stats.record(streamDelay.frames, streamDelay.total, streamDelay.max);
+      if (LOGGER.isDebugEnabled()) {
+         LOGGER.debug("Stream {} queueing delay: frames={} average={}us max={}us", streamId, streamDelay.frames,
+               streamDelay.total / streamDelay.frames / 1000, streamDelay.max / 1000);
+      }
+   }
+
+   private static class StreamDelay {
+      private long frames;
+      private long total;
+      private long max;
+   }
+}
@@ -0,0 +1,71 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queueing delay of the DATA frames written to the http2 clients, aggregated over all the connections.
+ * <p>
+ * The delay of a frame is the time from its write to the client connection until it left the proxy, it includes
+ * the time spent waiting for the flow control windows and for the other streams of the connection.
+ */
+public class Http2WriteStats {
+
+   private final LongAdder streams = new LongAdder();
+   private final LongAdder frames = new LongAdder();
+   private final LongAdder totalDelay = new LongAdder();
+   private final AtomicLong maxDelay = new AtomicLong();
+
+   /**
+    * Record the delays of a stream once it was closed.
+    *
+    * @param frameCount the number of data frames written on the stream
+    * @param totalNanos the sum of the queueing delays of the frames
+    * @param maxNanos   the longest queueing delay of a frame
+    */
+   public void record(long frameCount, long totalNanos, long maxNanos) {
+      streams.increment();
+      frames.add(frameCount);
+      totalDelay.add(totalNanos);
+      maxDelay.accumulateAndGet(maxNanos, Math::max);
+   }
+
+   /**
+    * @return the number of streams which wrote data frames
+    */
+   public long streamCount() {
+      return streams.sum();
+   }
+
+   /**
+    * @return the number of data frames written
+    */
+   public long frameCount() {
+      return frames.sum();
+   }
+
+   /**
+    * @return the average queueing delay of a data frame, in nanoseconds
+    */
+   public long averageDelayNanos() {
+      long count = frames.sum();
+      return count == 0 ? 0 : totalDelay.sum() / count;
+   }
+
+   /**
+    * @return the longest queueing delay of a data frame, in nanoseconds
+    */
+   public long maxDelayNanos() {
+      return maxDelay.get();
+   }
+
+   @Override
+   public String toString() {
+      return "Http2WriteStats{" +
+            "streams=" + streamCount() +
+            ", frames=" + frameCount() +
+            ", averageDelayNanos=" + averageDelayNanos() +
+            ", maxDelayNanos=" + maxDelayNanos() +
+            '}';
+   }
+}
@@ -99,9 +99,7 @@ public class TlsBackendHandler extends ChannelDuplexHandler {
    }
 
    private SslHandler sslHandler(ByteBufAllocator alloc) throws SSLException {
-      return TlsUtil.ctxForClient(connectionContext)
-            .newHandler(alloc, connectionContext.getServerAddr().getHost(),
-                  connectionContext.getServerAddr().getPort());
+      return TlsUtil.clientHandler(connectionContext, alloc);
    }
 
    private void flushPendings(ChannelHandlerContext ctx) {
@@ -149,6 +147,12 @@ public class TlsBackendHandler extends ChannelDuplexHandler {
       return Protocols.FORWARD;
    }
 
+   private boolean isHttp2Translated(String protocol) {
+      return connectionContext.config().isHttp2Translation()
+            && HTTP_1_1.equals(protocol)
+            && connectionContext.tlsCtx().protocols().contains(ApplicationProtocolNames.HTTP_2);
+   }
+
    private class AlpnHandler extends ApplicationProtocolNegotiationHandler {
       private ChannelHandlerContext tlsCtx;
 
@@ -160,7 +164,13 @@ public class TlsBackendHandler extends ChannelDuplexHandler {
       @Override
       protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
          if (!connectionContext.tlsCtx().isNegotiated()) {
-            connectionContext.tlsCtx().protocolPromise().setSuccess(protocol);
+            if (isHttp2Translated(protocol)) {
+               // The client keeps HTTP/2, its streams are translated to the HTTP/1.1 server
+               connectionContext.http2Translated(true);
+               connectionContext.tlsCtx().protocolPromise().setSuccess(ApplicationProtocolNames.HTTP_2);
+            } else {
+               connectionContext.tlsCtx().protocolPromise().setSuccess(protocol);
+            }
          }
          if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
             configureProtocol(tlsCtx, Protocols.HTTP_1);
@@ -0,0 +1,48 @@
+package io.engytita.proxy.handler.protocol.tls;
+
+import io.engytita.proxy.Protocols;
+import io.engytita.proxy.handler.protocol.ProtocolDetector;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Detects a TLS record carrying a ClientHello handshake message.
+ */
+public class TlsClientHelloDetector implements ProtocolDetector {
+
+   public static final TlsClientHelloDetector INSTANCE = new TlsClientHelloDetector();
+
+   private static final int CONTENT_TYPE_HANDSHAKE = 22;
+   private static final int HANDSHAKE_TYPE_CLIENT_HELLO = 1;
+   private static final int MAJOR_VERSION = 3;
+   private static final int MAX_MINOR_VERSION = 4;
+
+   @Override
+   public String protocol() {
+      return Protocols.TLS;
+   }
+
+   @Override
+   public int detect(ByteBuf msg) {
+      // struct { ContentType type; ProtocolVersion version; uint16 length; } followed by the handshake type
+      int start = msg.readerIndex();
+      int readable = msg.readableBytes();
+      if (readable > 0 && msg.getUnsignedByte(start) != CONTENT_TYPE_HANDSHAKE) {
+         return NO_MATCH;
+      }
+      if (readable > 1 && msg.getUnsignedByte(start + 1) != MAJOR_VERSION) {
+         return NO_MATCH;
+      }
+      if (readable > 2 && msg.getUnsignedByte(start + 2) > MAX_MINOR_VERSION) {
+         return NO_MATCH;
+      }
+      if (readable > 5) {
+         return msg.getUnsignedByte(start + 5) == HANDSHAKE_TYPE_CLIENT_HELLO ? MATCH : NO_MATCH;
+      }
+      return NEED_MORE_DATA;
+   }
+
+   @Override
+   public String toString() {
+      return Protocols.TLS;
+   }
+}
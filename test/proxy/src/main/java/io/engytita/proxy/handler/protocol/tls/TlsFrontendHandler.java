@@ -13,9 +13,15 @@ import io.engytita.proxy.Address;
 import io.engytita.proxy.ConnectionContext;
 import io.engytita.proxy.Protocols;
 import io.engytita.proxy.enums.ProxyMode;
+import io.engytita.proxy.handler.ForwardSplicer;
+import io.engytita.proxy.tls.HandshakeExecutor;
+import io.engytita.proxy.tls.TlsPassthroughRule;
 import io.engytita.proxy.tls.TlsUtil;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.ssl.AbstractSniHandler;
@@ -24,11 +30,14 @@ import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.ssl.SslClientHelloHandler;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
 
 public class TlsFrontendHandler extends ChannelDuplexHandler {
    private static final Logger LOGGER = LoggerFactory.getLogger(TlsFrontendHandler.class);
 
    private ConnectionContext connectionContext;
+   // The admission time of the client handshake, 0 once released
+   private long handshakeStart;
 
    public TlsFrontendHandler(ConnectionContext connectionContext) {
       this.connectionContext = connectionContext;
@@ -50,7 +59,32 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
    }
 
    private SslHandler sslHandler(ByteBufAllocator alloc) throws SSLException {
-      return TlsUtil.ctxForServer(connectionContext).newHandler(alloc);
+      SslHandler sslHandler = TlsUtil.serverHandler(connectionContext, alloc);
+      sslHandler.handshakeFuture().addListener(future -> releaseHandshake(future.isSuccess()));
+      return sslHandler;
+   }
+
+   /**
+    * Admit the handshake of the client before any certificate is minted, released once the handshake completed or
+    * the connection closed.
+    */
+   private boolean admitHandshake(ChannelHandlerContext ctx) {
+      HandshakeExecutor handshakeExecutor = connectionContext.master().handshakeExecutor();
+      if (!handshakeExecutor.tryAdmit()) {
+         LOGGER.debug("{} : handshake not admitted, {} pending", connectionContext,
+               handshakeExecutor.pendingHandshakes());
+         return false;
+      }
+      handshakeStart = System.nanoTime();
+      ctx.channel().closeFuture().addListener(future -> releaseHandshake(false));
+      return true;
+   }
+
+   private void releaseHandshake(boolean completed) {
+      if (handshakeStart != 0) {
+         connectionContext.master().handshakeExecutor().release(completed ? System.nanoTime() - handshakeStart : -1);
+         handshakeStart = 0;
+      }
    }
 
    private class DetectSslHandler extends SslClientHelloHandler<Boolean> {
@@ -84,18 +118,75 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
 
    private class SniExtractorHandler extends AbstractSniHandler<Address> {
 
+      private boolean passthrough;
+
       @Override
       protected Future<Address> lookup(ChannelHandlerContext ctx, String hostname) {
          LOGGER.debug("Client SNI lookup with {}", hostname);
          if (hostname != null) {
-            int port = isTransparentProxy() ? 443 : connectionContext.getServerAddr().getPort();
-            return ctx.executor().newSucceededFuture(new Address(hostname, port));
+            TlsPassthroughRule rule = TlsPassthroughRule.find(connectionContext.config().getTlsPassthroughRules(),
+                  hostname);
+            if (rule != null) {
+               passthrough = true;
+               return passthroughLookup(ctx, rule.backend() != null ? rule.backend() : new Address(hostname, 443));
+            }
+         }
+         if (!admitHandshake(ctx)) {
+            return ctx.executor().newFailedFuture(new SSLException("Too many pending handshakes"));
          }
-         return ctx.executor().newSucceededFuture(null);
+         Address address = hostname == null ? null : new Address(hostname,
+               isTransparentProxy() ? 443 : connectionContext.getServerAddr().getPort());
+         // Without SNI, the certificate is minted for the CONNECT target
+         String certHost = address != null ? address.getHost()
+               : isTransparentProxy() ? null : connectionContext.getServerAddr().getHost();
+         if (certHost == null) {
+            return ctx.executor().newSucceededFuture(null);
+         }
+         // Mint the certificate off the event loop, the handshake then finds it in the cache
+         Promise<Address> promise = ctx.executor().newPromise();
+         connectionContext.master().certManager().certificate(certHost).whenComplete((certificate, cause) -> {
+            if (cause != null) {
+               promise.tryFailure(cause);
+            } else {
+               promise.trySuccess(address);
+            }
+         });
+         return promise;
+      }
+
+      /**
+       * Wait for the connection to the backend before the ClientHello is forwarded to it, in transparent mode the
+       * backend of the rule or the SNI host, otherwise the CONNECT target which may still be connecting.
+       */
+      private Future<Address> passthroughLookup(ChannelHandlerContext ctx, Address address) {
+         ChannelFuture connectFuture = isTransparentProxy()
+               ? connectionContext.connect(address, ctx)
+               : connectionContext.connectFuture();
+         Promise<Address> promise = ctx.executor().newPromise();
+         connectFuture.addListener(channelFuture -> {
+            if (channelFuture.isSuccess()) {
+               promise.trySuccess(address);
+            } else {
+               promise.tryFailure(channelFuture.cause());
+            }
+         });
+         return promise;
       }
 
       @Override
       protected void onLookupComplete(ChannelHandlerContext ctx, String hostname, Future<Address> future) {
+         if (!future.isSuccess()) {
+            LOGGER.debug("{} of {} failed with {}", passthrough ? "Passthrough" : "Handshake", hostname,
+                  future.cause().getMessage());
+            ctx.close();
+            // Otherwise the buffered ClientHello is decoded and looked up again
+            ctx.pipeline().remove(this);
+            return;
+         }
+         if (passthrough) {
+            passthrough(ctx, hostname);
+            return;
+         }
          Address address = future.getNow();
          if (isTransparentProxy()) {
             if (address == null) {
@@ -108,11 +199,33 @@ public class TlsFrontendHandler extends ChannelDuplexHandler {
                   ctx.close();
                }
             });
-         } else {
+         } else if (address != null) {
+            // Without SNI, the certificate is minted for the CONNECT target
             connectionContext.withServerAddr(address);
          }
          ctx.pipeline().replace(ctx.name(), null, new AlpnNegotiateHandler());
       }
+
+      /**
+       * Forward the connection encrypted, starting with the ClientHello still buffered by this handler.
+       */
+      private void passthrough(ChannelHandlerContext ctx, String hostname) {
+         LOGGER.debug("{} : TLS passthrough of {}", connectionContext, hostname);
+         connectionContext.tlsCtx().disableTls();
+         connectionContext.tlsCtx().protocolPromise().setSuccess(Protocols.FORWARD);
+         ctx.pipeline().replace(ctx.name(), null, connectionContext.provider().frontendHandler(Protocols.FORWARD));
+         Channel client = ctx.channel();
+         Channel server = connectionContext.serverChannel();
+         if (ForwardSplicer.isSupported(client, server)) {
+            ForwardSplicer.splice(server, client);
+            // Once the ClientHello was written, the next bytes of the client cannot overtake it
+            server.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(written -> {
+               if (written.isSuccess()) {
+                  ForwardSplicer.splice(client, server);
+               }
+            });
+         }
+      }
    }
 
    private class AlpnNegotiateHandler extends AbstractAlpnHandler<String> {
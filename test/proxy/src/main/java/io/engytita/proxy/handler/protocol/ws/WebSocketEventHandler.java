@@ -1,17 +1,24 @@
 package io.engytita.proxy.handler.protocol.ws;
 
+import java.util.concurrent.CompletionStage;
+
 import io.engytita.proxy.ConnectionContext;
 import io.engytita.proxy.listener.ProxyListener;
+import io.engytita.proxy.util.StageSequencer;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
 
 public class WebSocketEventHandler extends ChannelDuplexHandler {
 
    private ProxyListener listener;
    private ConnectionContext connectionContext;
 
+   private final StageSequencer requestSequence;
+   private final StageSequencer responseSequence;
+
    /**
     * Create new instance of web socket event handler.
     *
@@ -20,23 +27,37 @@ public class WebSocketEventHandler extends ChannelDuplexHandler {
    public WebSocketEventHandler(ConnectionContext connectionContext) {
       this.connectionContext = connectionContext;
       this.listener = connectionContext.listener();
+      this.requestSequence = new StageSequencer(connectionContext::clientChannel);
+      this.responseSequence = new StageSequencer(connectionContext::serverChannel);
    }
 
    @Override
    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
          throws Exception {
-      if (msg instanceof WebSocketFrame) {
-         listener.onWsResponse(connectionContext, (WebSocketFrame) msg);
-      }
-      ctx.write(msg, promise);
+      CompletionStage<Void> stage = msg instanceof WebSocketFrame
+            ? listener.onWsResponseAsync(connectionContext, (WebSocketFrame) msg)
+            : ProxyListener.COMPLETED;
+      responseSequence.submit(ctx.executor(), stage, ignore -> ctx.write(msg, promise), cause -> {
+         ReferenceCountUtil.release(msg);
+         promise.setFailure(cause);
+      });
+   }
+
+   @Override
+   public void flush(ChannelHandlerContext ctx) {
+      // Keep flushes behind the writes still waiting for a listener
+      responseSequence.submit(ctx.executor(), ctx::flush, ctx::fireExceptionCaught);
    }
 
    @Override
    public void channelRead(ChannelHandlerContext ctx, Object msg) {
-      if (msg instanceof WebSocketFrame) {
-         listener.onWsRequest(connectionContext, (WebSocketFrame) msg);
-      }
-      ctx.fireChannelRead(msg);
+      CompletionStage<Void> stage = msg instanceof WebSocketFrame
+            ? listener.onWsRequestAsync(connectionContext, (WebSocketFrame) msg)
+            : ProxyListener.COMPLETED;
+      requestSequence.submit(ctx.executor(), stage, ignore -> ctx.fireChannelRead(msg), cause -> {
+         ReferenceCountUtil.release(msg);
+         ctx.fireExceptionCaught(cause);
+      });
    }
 
    @Override
@@ -1,10 +1,19 @@
 package io.engytita.proxy.handler.proxy;
 
+import java.util.List;
+
 import io.engytita.proxy.ConnectionContext;
-import io.netty.channel.ChannelHandlerAdapter;
+import io.engytita.proxy.Protocols;
+import io.engytita.proxy.handler.protocol.ProtocolDetector;
+import io.engytita.proxy.handler.protocol.http2.Http2PrefaceDetector;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
 
-public class HttpProxyHandler extends ChannelHandlerAdapter {
+/**
+ * Entry point of the http proxy mode, clients either speak HTTP/1 or cleartext HTTP/2 with prior knowledge.
+ */
+public class HttpProxyHandler extends ByteToMessageDecoder {
    private ConnectionContext connectionContext;
 
    public HttpProxyHandler(ConnectionContext connectionContext) {
@@ -12,7 +21,13 @@ public class HttpProxyHandler extends ChannelHandlerAdapter {
    }
 
    @Override
-   public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
-      ctx.pipeline().replace(this, null, connectionContext.provider().http1FrontendHandler());
+   protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+      int result = Http2PrefaceDetector.INSTANCE.detect(in);
+      if (result == ProtocolDetector.NEED_MORE_DATA) {
+         return;
+      }
+      String protocol = result == ProtocolDetector.MATCH ? Protocols.H2C : Protocols.HTTP_1;
+      ctx.pipeline().addAfter(ctx.name(), null, connectionContext.provider().frontendHandler(protocol));
+      ctx.pipeline().remove(this);
    }
 }
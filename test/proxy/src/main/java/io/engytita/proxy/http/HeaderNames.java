@@ -0,0 +1,73 @@
+package io.engytita.proxy.http;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.util.AsciiString;
+
+/**
+ * Interns the header names, the well known names are translated to the lower case {@link HttpHeaderNames}
+ * constants instead of allocating a new lower case string for every header of every message.
+ * <p>
+ * The table is built once and only read afterwards, so it can be shared by all the event loops.
+ */
+public final class HeaderNames {
+
+   // Deprecated in HttpHeaderNames, interned to these constants instead
+   public static final AsciiString KEEP_ALIVE = AsciiString.cached("keep-alive");
+   public static final AsciiString PROXY_CONNECTION = AsciiString.cached("proxy-connection");
+
+   private static final AsciiString[] TABLE;
+   private static final int MASK;
+
+   static {
+      Field[] fields = HttpHeaderNames.class.getFields();
+      TABLE = new AsciiString[Integer.highestOneBit(fields.length * 4)];
+      MASK = TABLE.length - 1;
+      add(KEEP_ALIVE);
+      add(PROXY_CONNECTION);
+      for (Field field : fields) {
+         if (Modifier.isStatic(field.getModifiers()) && field.getType() == AsciiString.class) {
+            try {
+               add((AsciiString) field.get(null));
+            } catch (IllegalAccessException e) {
+               throw new IllegalStateException(e);
+            }
+         }
+      }
+   }
+
+   private HeaderNames() {
+   }
+
+   private static void add(AsciiString name) {
+      int index = AsciiString.hashCode(name) & MASK;
+      while (TABLE[index] != null) {
+         if (TABLE[index].contentEquals(name)) {
+            return;
+         }
+         index = (index + 1) & MASK;
+      }
+      TABLE[index] = name;
+   }
+
+   /**
+    * Get the lower case name of a header.
+    *
+    * @param name the header name, in any case
+    * @return the interned constant for a well known name, a new lower case string otherwise
+    */
+   public static AsciiString intern(CharSequence name) {
+      // The hash of AsciiString ignores the case
+      int index = AsciiString.hashCode(name) & MASK;
+      AsciiString known;
+      while ((known = TABLE[index]) != null) {
+         if (known.contentEqualsIgnoreCase(name)) {
+            return known;
+         }
+         index = (index + 1) & MASK;
+      }
+      return AsciiString.of(name).toLowerCase();
+   }
+}
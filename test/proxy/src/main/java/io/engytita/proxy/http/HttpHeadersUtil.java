@@ -1,16 +1,34 @@
 package io.engytita.proxy.http;
 
+import static io.engytita.proxy.http.HeaderNames.KEEP_ALIVE;
+import static io.engytita.proxy.http.HeaderNames.PROXY_CONNECTION;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONNECTION;
 import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
-import static java.lang.Integer.parseInt;
+import static io.netty.handler.codec.http.HttpHeaderNames.COOKIE;
+import static io.netty.handler.codec.http.HttpHeaderNames.HOST;
+import static io.netty.handler.codec.http.HttpHeaderNames.TE;
+import static io.netty.handler.codec.http.HttpHeaderNames.TRANSFER_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.UPGRADE;
+import static io.netty.handler.codec.http.HttpHeaderValues.TRAILERS;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
 
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.util.AsciiString;
 
 public class HttpHeadersUtil {
 
+   private static final HttpMethod[] METHODS = {
+         HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.HEAD, HttpMethod.OPTIONS,
+         HttpMethod.PATCH, HttpMethod.CONNECT, HttpMethod.TRACE
+   };
+
    private HttpHeadersUtil() {
    }
 
@@ -22,7 +40,7 @@ public class HttpHeadersUtil {
     */
    public static String getContentType(HttpHeaders headers) {
       if (headers.contains(CONTENT_TYPE)) {
-         return headers.get(CONTENT_TYPE).split(";")[0];
+         return mediaType(headers.get(CONTENT_TYPE));
       }
       return null;
    }
@@ -34,10 +52,13 @@ public class HttpHeadersUtil {
     * @return the content type
     */
    public static String getContentType(Http2Headers headers) {
-      if (headers.contains(CONTENT_TYPE)) {
-         return headers.get(CONTENT_TYPE).toString().split(";")[0];
-      }
-      return null;
+      CharSequence contentType = headers.get(CONTENT_TYPE);
+      return contentType == null ? null : mediaType(contentType);
+   }
+
+   private static String mediaType(CharSequence contentType) {
+      int end = AsciiString.indexOf(contentType, ';', 0);
+      return (end < 0 ? contentType : contentType.subSequence(0, end)).toString();
    }
 
    /**
@@ -47,7 +68,79 @@ public class HttpHeadersUtil {
     * @return the status
     */
    public static HttpResponseStatus getStatus(Http2Headers headers) {
-      return HttpResponseStatus.valueOf(parseInt(headers.status().toString()));
+      return HttpResponseStatus.parseLine(headers.status());
+   }
+
+   /**
+    * Get method from http2 headers, the well known methods are resolved without converting the header to a string.
+    *
+    * @param headers the http2 headers
+    * @return the method
+    */
+   public static HttpMethod getMethod(Http2Headers headers) {
+      CharSequence method = headers.method();
+      for (HttpMethod known : METHODS) {
+         if (known.asciiName().contentEquals(method)) {
+            return known;
+         }
+      }
+      return HttpMethod.valueOf(method.toString());
+   }
+
+   /**
+    * Copy http headers to http2 headers. The names are lower cased with {@link HeaderNames#intern(CharSequence)},
+    * and the connection specific headers, which are not allowed in http2, are skipped.
+    *
+    * @param in  the http headers
+    * @param out the http2 headers
+    */
+   public static void toHttp2Headers(HttpHeaders in, Http2Headers out) {
+      Iterator<Entry<CharSequence, CharSequence>> iterator = in.iteratorCharSequence();
+      while (iterator.hasNext()) {
+         Entry<CharSequence, CharSequence> entry = iterator.next();
+         AsciiString name = HeaderNames.intern(entry.getKey());
+         if (isConnectionSpecific(name)
+               || name == TE && !AsciiString.contentEqualsIgnoreCase(entry.getValue(), TRAILERS)) {
+            continue;
+         }
+         out.add(name, entry.getValue());
+      }
+   }
+
+   /**
+    * Copy http2 headers to http headers, without the pseudo headers. The cookie crumbs, which http2 sends as
+    * separate headers, are joined back into a single header.
+    *
+    * @param in  the http2 headers
+    * @param out the http headers
+    */
+   public static void toHttpHeaders(Http2Headers in, HttpHeaders out) {
+      StringBuilder cookie = null;
+      for (Entry<CharSequence, CharSequence> entry : in) {
+         CharSequence name = entry.getKey();
+         if (Http2Headers.PseudoHeaderName.hasPseudoHeaderFormat(name)) {
+            continue;
+         }
+         if (COOKIE.contentEqualsIgnoreCase(name)) {
+            if (cookie == null) {
+               cookie = new StringBuilder();
+            } else {
+               cookie.append("; ");
+            }
+            cookie.append(entry.getValue());
+         } else {
+            out.add(name, entry.getValue());
+         }
+      }
+      if (cookie != null) {
+         out.set(COOKIE, cookie);
+      }
+   }
+
+   // The names are interned, so the well known ones are compared by identity
+   private static boolean isConnectionSpecific(AsciiString name) {
+      return name == CONNECTION || name == KEEP_ALIVE || name == PROXY_CONNECTION || name == TRANSFER_ENCODING
+            || name == UPGRADE || name == HOST;
    }
 
    /**
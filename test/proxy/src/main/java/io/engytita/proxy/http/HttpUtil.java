@@ -11,6 +11,9 @@ import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 import io.netty.buffer.ByteBuf;
@@ -32,10 +35,70 @@ public class HttpUtil {
    public static final int HTTP_PORT = 80;
    public static final int HTTPS_PORT = 443;
    public static final HttpVersion HTTP_2 = new HttpVersion("http/2.0", true);
+   public static final HttpResponseStatus EARLY_HINTS = HttpResponseStatus.valueOf(103, "Early Hints");
 
    private HttpUtil() {
    }
 
+   /**
+    * Tell whether a request with this method can be sent again without changing the outcome.
+    *
+    * @param method the request method
+    * @return {@code true} if the method is idempotent
+    */
+   public static boolean isIdempotent(HttpMethod method) {
+      return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS
+            || method == HttpMethod.PUT || method == HttpMethod.DELETE || method == HttpMethod.TRACE;
+   }
+
+   /**
+    * Build the key of a response in the response cache, the same for a HTTP/1.1 request and a HTTP/2 request of
+    * the same resource.
+    *
+    * @param scheme    the scheme
+    * @param authority the authority, with the port only if not the default one of the scheme
+    * @param path      the path, with the query
+    * @return the key
+    */
+   public static String cacheKey(String scheme, String authority, String path) {
+      String lowerScheme = scheme.toLowerCase(Locale.ROOT);
+      String host = authority.toLowerCase(Locale.ROOT);
+      String defaultPort = lowerScheme.equals("https") ? ":" + HTTPS_PORT : ":" + HTTP_PORT;
+      if (host.endsWith(defaultPort)) {
+         host = host.substring(0, host.length() - defaultPort.length());
+      }
+      return lowerScheme + "://" + host + path;
+   }
+
+   /**
+    * Build the key of a response in the response cache from a HTTP/1.1 request, in absolute-form or in
+    * origin-form with a {@code host} header.
+    *
+    * @param request the request
+    * @param tls     whether the request was received over TLS, for the requests in origin-form
+    * @return the key, null if the request does not tell its authority
+    */
+   public static String cacheKey(HttpRequest request, boolean tls) {
+      String uri = request.uri();
+      if (uri.startsWith("/")) {
+         String host = request.headers().get(HOST);
+         return host == null ? null : cacheKey(HttpUrl.scheme(tls), host, uri);
+      }
+      try {
+         URI absolute = new URI(uri);
+         if (absolute.getScheme() == null || absolute.getRawAuthority() == null) {
+            return null;
+         }
+         String path = absolute.getRawPath() == null || absolute.getRawPath().isEmpty() ? "/" : absolute.getRawPath();
+         if (absolute.getRawQuery() != null) {
+            path += "?" + absolute.getRawQuery();
+         }
+         return cacheKey(absolute.getScheme(), absolute.getRawAuthority(), path);
+      } catch (URISyntaxException e) {
+         return null;
+      }
+   }
+
    public static FullHttpRequest defaultRequest() {
       return request(HttpVersion.HTTP_1_1, HttpMethod.GET, "localhost", "/");
    }
@@ -0,0 +1,158 @@
+package io.engytita.proxy.listener;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Executor for the callbacks of {@link ProxyListenerProvider#isBlocking() blocking} listeners.
+ * <p>
+ * Every task runs on its own virtual thread when the runtime supports them, otherwise on a cached pool of daemon
+ * threads. At most {@code maxConcurrency} tasks run at the same time, the others wait in a queue bounded by
+ * {@code maxQueueSize}; tasks submitted to a full queue are rejected. Tasks accepted in the queue always run, on the
+ * caller thread if the delegate was shut down.
+ */
+public class BlockingListenerExecutor implements Executor {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(BlockingListenerExecutor.class);
+
+   private final ExecutorService delegate;
+   private final int maxConcurrency;
+   private final int maxQueueSize;
+
+   private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+   private final AtomicInteger queued = new AtomicInteger();
+   private final AtomicInteger active = new AtomicInteger();
+   private final AtomicLong completed = new AtomicLong();
+   private final AtomicLong rejected = new AtomicLong();
+
+   public BlockingListenerExecutor(int maxConcurrency, int maxQueueSize) {
+      this(newThreadPerTaskExecutor(), maxConcurrency, maxQueueSize);
+   }
+
+   public BlockingListenerExecutor(ExecutorService delegate, int maxConcurrency, int maxQueueSize) {
+      if (maxConcurrency <= 0) {
+         throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+      }
+      this.delegate = delegate;
+      this.maxConcurrency = maxConcurrency;
+      this.maxQueueSize = maxQueueSize;
+   }
+
+   private static ExecutorService newThreadPerTaskExecutor() {
+      try {
+         Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+         ExecutorService executor = (ExecutorService) method.invoke(null);
+         LOGGER.debug("Blocking listeners run on virtual threads");
+         return executor;
+      } catch (ReflectiveOperationException | RuntimeException e) {
+         LOGGER.debug("Virtual threads not available, blocking listeners run on platform threads");
+         return Executors.newCachedThreadPool(new DefaultThreadFactory("proxy-blocking-listener", true));
+      }
+   }
+
+   @Override
+   public void execute(Runnable task) {
+      if (queued.incrementAndGet() > maxQueueSize) {
+         queued.decrementAndGet();
+         rejected.incrementAndGet();
+         throw new RejectedExecutionException("Blocking listener queue is full: " + maxQueueSize);
+      }
+      queue.add(task);
+      dispatch();
+   }
+
+   private void dispatch() {
+      while (!queue.isEmpty()) {
+         int current = active.get();
+         if (current >= maxConcurrency) {
+            return;
+         }
+         if (!active.compareAndSet(current, current + 1)) {
+            continue;
+         }
+         Runnable task = queue.poll();
+         if (task == null) {
+            active.decrementAndGet();
+            continue;
+         }
+         queued.decrementAndGet();
+         try {
+            delegate.execute(() -> run(task));
+         } catch (RejectedExecutionException e) {
+            // The delegate is shut down, the task still runs so whoever waits on it is released
+            LOGGER.debug("Blocking listener task run by the caller: {}", e.toString());
+            run(task);
+         }
+      }
+   }
+
+   private void run(Runnable task) {
+      try {
+         task.run();
+      } finally {
+         completed.incrementAndGet();
+         active.decrementAndGet();
+         dispatch();
+      }
+   }
+
+   /**
+    * @return the number of tasks waiting for a free slot
+    */
+   public int queueDepth() {
+      return queued.get();
+   }
+
+   /**
+    * @return the number of tasks currently running
+    */
+   public int activeCount() {
+      return active.get();
+   }
+
+   /**
+    * @return the number of tasks which completed
+    */
+   public long completedCount() {
+      return completed.get();
+   }
+
+   /**
+    * @return the number of tasks rejected because the queue was full
+    */
+   public long rejectedCount() {
+      return rejected.get();
+   }
+
+   public int maxConcurrency() {
+      return maxConcurrency;
+   }
+
+   public void shutdown() {
+      delegate.shutdown();
+   }
+
+   @Override
+   public String toString() {
+      return "BlockingListenerExecutor{" +
+            "active=" + active.get() +
+            ", queued=" + queued.get() +
+            ", completed=" + completed.get() +
+            ", rejected=" + rejected.get() +
+            ", maxConcurrency=" + maxConcurrency +
+            ", maxQueueSize=" + maxQueueSize +
+            '}';
+   }
+}
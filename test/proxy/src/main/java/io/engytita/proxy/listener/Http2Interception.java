@@ -0,0 +1,34 @@
+package io.engytita.proxy.listener;
+
+import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.handler.protocol.http2.Http2FramesWrapper;
+
+/**
+ * Tells whether a listener class implements the http2 request callbacks, the listeners which do are given the full
+ * requests unless they decide otherwise with {@link ProxyListener#interceptsHttp2Request}.
+ */
+final class Http2Interception {
+
+   private static final ClassValue<Boolean> OVERRIDES = new ClassValue<>() {
+      @Override
+      protected Boolean computeValue(Class<?> type) {
+         return overrides(type, "onHttp2Request") || overrides(type, "onHttp2RequestAsync");
+      }
+   };
+
+   private Http2Interception() {
+   }
+
+   static boolean overridesRequestCallbacks(Class<?> listenerClass) {
+      return OVERRIDES.get(listenerClass);
+   }
+
+   private static boolean overrides(Class<?> type, String name) {
+      try {
+         return type.getMethod(name, ConnectionContext.class, Http2FramesWrapper.class).getDeclaringClass()
+               != ProxyListener.class;
+      } catch (NoSuchMethodException e) {
+         return false;
+      }
+   }
+}
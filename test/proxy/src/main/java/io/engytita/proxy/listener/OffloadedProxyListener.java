@@ -0,0 +1,189 @@
+package io.engytita.proxy.listener;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.event.ForwardEvent;
+import io.engytita.proxy.event.HttpEvent;
+import io.engytita.proxy.handler.protocol.http2.Http2FrameWrapper;
+import io.engytita.proxy.handler.protocol.http2.Http2FramesWrapper;
+import io.engytita.proxy.util.SerialExecutor;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+
+/**
+ * Runs the callbacks of a listener on an executor instead of the event loop.
+ * <p>
+ * An instance is created per connection, the callbacks of a connection run one at a time and in the order they were
+ * received. The handlers resume on the event loop when the returned stages complete.
+ * <p>
+ * When the executor rejects a callback, its stage fails and the connection is closed by the handler. A rejected
+ * notification is dropped, except {@link #close(ConnectionContext)} which runs on the caller so the listener always
+ * releases its resources.
+ */
+public class OffloadedProxyListener implements ProxyListener {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(OffloadedProxyListener.class);
+
+   private final ProxyListener delegate;
+   private final Executor executor;
+
+   public OffloadedProxyListener(ProxyListener delegate, Executor executor) {
+      this.delegate = delegate;
+      this.executor = new SerialExecutor(executor);
+   }
+
+   public ProxyListener delegate() {
+      return delegate;
+   }
+
+   private void notify(Runnable notification) {
+      try {
+         executor.execute(notification);
+      } catch (RejectedExecutionException e) {
+         LOGGER.warn("Notification of {} dropped: {}", delegate, e.getMessage());
+      }
+   }
+
+   private <T> CompletionStage<T> offload(Supplier<CompletionStage<T>> callback) {
+      try {
+         return CompletableFuture.supplyAsync(callback, executor).thenCompose(Function.identity());
+      } catch (RejectedExecutionException e) {
+         return CompletableFuture.failedFuture(e);
+      }
+   }
+
+   @Override
+   public void onInit(ConnectionContext connectionContext, Channel clientChannel) {
+      notify(() -> delegate.onInit(connectionContext, clientChannel));
+   }
+
+   @Override
+   public void onConnect(ConnectionContext connectionContext, Channel serverChannel) {
+      notify(() -> delegate.onConnect(connectionContext, serverChannel));
+   }
+
+   @Override
+   public void onHttpEvent(HttpEvent event) {
+      notify(() -> delegate.onHttpEvent(event));
+   }
+
+   @Override
+   public CompletionStage<FullHttpResponse> onHttp1Request(ConnectionContext connectionContext, FullHttpRequest request) {
+      return offload(() -> delegate.onHttp1Request(connectionContext, request));
+   }
+
+   @Override
+   public List<HttpObject> onHttp1Response(ConnectionContext connectionContext, HttpObject response) {
+      return delegate.onHttp1Response(connectionContext, response);
+   }
+
+   @Override
+   public CompletionStage<List<HttpObject>> onHttp1ResponseAsync(ConnectionContext connectionContext,
+                                                                 HttpObject response) {
+      return offload(() -> delegate.onHttp1ResponseAsync(connectionContext, response));
+   }
+
+   @Override
+   public boolean interceptsHttp2Request(ConnectionContext connectionContext, Http2Headers headers) {
+      return delegate.interceptsHttp2Request(connectionContext, headers);
+   }
+
+   @Override
+   public Optional<Http2FramesWrapper> onHttp2Request(ConnectionContext connectionContext,
+                                                      Http2FramesWrapper request) {
+      return delegate.onHttp2Request(connectionContext, request);
+   }
+
+   @Override
+   public CompletionStage<Optional<Http2FramesWrapper>> onHttp2RequestAsync(ConnectionContext connectionContext,
+                                                                            Http2FramesWrapper request) {
+      return offload(() -> delegate.onHttp2RequestAsync(connectionContext, request));
+   }
+
+   @Override
+   public List<Http2FrameWrapper<?>> onHttp2Response(ConnectionContext connectionContext,
+                                                     Http2FrameWrapper<?> frame) {
+      return delegate.onHttp2Response(connectionContext, frame);
+   }
+
+   @Override
+   public CompletionStage<List<Http2FrameWrapper<?>>> onHttp2ResponseAsync(ConnectionContext connectionContext,
+                                                                           Http2FrameWrapper<?> frame) {
+      return offload(() -> delegate.onHttp2ResponseAsync(connectionContext, frame));
+   }
+
+   @Override
+   public void onWsRequest(ConnectionContext connectionContext, WebSocketFrame frame) {
+      delegate.onWsRequest(connectionContext, frame);
+   }
+
+   @Override
+   public CompletionStage<Void> onWsRequestAsync(ConnectionContext connectionContext, WebSocketFrame frame) {
+      return offload(() -> delegate.onWsRequestAsync(connectionContext, frame));
+   }
+
+   @Override
+   public void onWsResponse(ConnectionContext connectionContext, WebSocketFrame frame) {
+      delegate.onWsResponse(connectionContext, frame);
+   }
+
+   @Override
+   public CompletionStage<Void> onWsResponseAsync(ConnectionContext connectionContext, WebSocketFrame frame) {
+      return offload(() -> delegate.onWsResponseAsync(connectionContext, frame));
+   }
+
+   @Override
+   public void onForwardEvent(ConnectionContext connectionContext, ForwardEvent forwardEvent) {
+      notify(() -> delegate.onForwardEvent(connectionContext, forwardEvent));
+   }
+
+   @Override
+   public void onForwardRequest(ConnectionContext connectionContext, ByteBuf data) {
+      delegate.onForwardRequest(connectionContext, data);
+   }
+
+   @Override
+   public CompletionStage<Void> onForwardRequestAsync(ConnectionContext connectionContext, ByteBuf data) {
+      return offload(() -> delegate.onForwardRequestAsync(connectionContext, data));
+   }
+
+   @Override
+   public void onForwardResponse(ConnectionContext connectionContext, ByteBuf data) {
+      delegate.onForwardResponse(connectionContext, data);
+   }
+
+   @Override
+   public CompletionStage<Void> onForwardResponseAsync(ConnectionContext connectionContext, ByteBuf data) {
+      return offload(() -> delegate.onForwardResponseAsync(connectionContext, data));
+   }
+
+   @Override
+   public void close(ConnectionContext connectionContext) {
+      try {
+         executor.execute(() -> delegate.close(connectionContext));
+      } catch (RejectedExecutionException e) {
+         delegate.close(connectionContext);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "offloaded(" + delegate + ")";
+   }
+}
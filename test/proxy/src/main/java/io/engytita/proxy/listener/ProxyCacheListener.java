@@ -1,5 +1,7 @@
 package io.engytita.proxy.listener;
 
+import static io.engytita.proxy.http.HttpUtil.cacheKey;
+
 import java.util.List;
 import java.util.concurrent.CompletionStage;
 
@@ -17,20 +19,37 @@ public class ProxyCacheListener implements ProxyListener {
    private static final AttributeKey<String> URI_KEY = AttributeKey.newInstance("uri");
 
    public ProxyCacheListener() {
-      cache = new ProxyCaffeineCache<>();
+      this(new ProxyCaffeineCache<>());
+   }
+
+   /**
+    * Create a listener serving the responses from {@code cache}, the cache can be shared with
+    * {@link io.engytita.proxy.ProxyConfig#setResponseCache} to push the cached responses.
+    *
+    * @param cache the response cache
+    */
+   public ProxyCacheListener(ProxyCache<String, FullHttpResponse> cache) {
+      this.cache = cache;
    }
 
    @Override
    public CompletionStage<FullHttpResponse> onHttp1Request(ConnectionContext connectionContext, FullHttpRequest request) {
-      connectionContext.clientChannel().attr(URI_KEY).set(request.uri());
-      return cache.get(request.uri()).thenApply(r -> r == null ? null : r.retain());
+      // Keyed like the pushes look the responses up
+      String key = cacheKey(request, connectionContext.tlsCtx().isEnabled());
+      connectionContext.clientChannel().attr(URI_KEY).set(key);
+      if (key == null) {
+         return ProxyListenerManager.COMPLETED_NULL_FUTURE;
+      }
+      return cache.get(key).thenApply(r -> r == null ? null : r.retain());
    }
 
    @Override
    public List<HttpObject> onHttp1Response(ConnectionContext connectionContext, HttpObject response) {
       if (response instanceof FullHttpResponse r) {
          String s = connectionContext.clientChannel().attr(URI_KEY).getAndSet(null);
-         cache.put(s, r.retainedDuplicate());
+         if (s != null) {
+            cache.put(s, r.retainedDuplicate());
+         }
       }
       return ProxyListener.super.onHttp1Response(connectionContext, response);
    }
@@ -17,9 +17,21 @@ import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http2.Http2Headers;
 
+/**
+ * Listener of the proxied traffic.
+ * <p>
+ * Every interception point has an asynchronous variant returning a {@link CompletionStage}, the handlers only
+ * invoke the asynchronous variants. Their default implementations delegate to the synchronous callbacks and return
+ * an already completed stage, which the handlers process on the event loop without any extra hop. Listeners doing
+ * I/O should override the asynchronous variants, the handlers resume on the channel event loop once the stage is
+ * completed, preserving the order of the messages of a connection.
+ */
 public interface ProxyListener {
 
+   CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+
    /**
     * This callback will be invoked when the client channel was first initialized.
     *
@@ -69,7 +81,39 @@ public interface ProxyListener {
    }
 
    /**
-    * This callback will be invoked when receiving a request from client.
+    * Asynchronous variant of {@link #onHttp1Response(ConnectionContext, HttpObject)}.
+    *
+    * @param connectionContext the connection context
+    * @param response          the response
+    * @return a stage completed with the intercepted response objects
+    */
+   default CompletionStage<List<HttpObject>> onHttp1ResponseAsync(ConnectionContext connectionContext,
+                                                                  HttpObject response) {
+      return CompletableFuture.completedFuture(onHttp1Response(connectionContext, response));
+   }
+
+   /**
+    * This callback will be invoked when receiving the headers of a http2 request from client, it decides if the
+    * request body is buffered for {@link #onHttp2Request(ConnectionContext, Http2FramesWrapper)}.
+    * <p>
+    * Requests no listener asks for are streamed to the server frame by frame, the client is then flow controlled
+    * by the server. This callback runs on the event loop and must not block.
+    * <p>
+    * By default, the listeners overriding one of the http2 request callbacks receive every full request, override
+    * this method to only buffer the requests they need.
+    *
+    * @param connectionContext the connection context
+    * @param headers           the request headers
+    * @return {@code true} to receive the full request
+    */
+   default boolean interceptsHttp2Request(ConnectionContext connectionContext, Http2Headers headers) {
+      return Http2Interception.overridesRequestCallbacks(getClass());
+   }
+
+   /**
+    * This callback will be invoked when receiving a request from client, only if
+    * {@link #interceptsHttp2Request(ConnectionContext, Http2Headers)} asked for it, which it does by default for
+    * the listeners overriding this callback.
     *
     * @param connectionContext the connection context
     * @param request           the request
@@ -80,6 +124,18 @@ public interface ProxyListener {
       return Optional.empty();
    }
 
+   /**
+    * Asynchronous variant of {@link #onHttp2Request(ConnectionContext, Http2FramesWrapper)}.
+    *
+    * @param connectionContext the connection context
+    * @param request           the request
+    * @return a stage completed with the response if you want to intercept the request
+    */
+   default CompletionStage<Optional<Http2FramesWrapper>> onHttp2RequestAsync(ConnectionContext connectionContext,
+                                                                             Http2FramesWrapper request) {
+      return CompletableFuture.completedFuture(onHttp2Request(connectionContext, request));
+   }
+
    /**
     * This callback will be invoked when receiving a response from server.
     *
@@ -92,6 +148,18 @@ public interface ProxyListener {
       return Collections.singletonList(frame);
    }
 
+   /**
+    * Asynchronous variant of {@link #onHttp2Response(ConnectionContext, Http2FrameWrapper)}.
+    *
+    * @param connectionContext the connection context
+    * @param frame             the response frame
+    * @return a stage completed with the intercepted response frames
+    */
+   default CompletionStage<List<Http2FrameWrapper<?>>> onHttp2ResponseAsync(ConnectionContext connectionContext,
+                                                                            Http2FrameWrapper<?> frame) {
+      return CompletableFuture.completedFuture(onHttp2Response(connectionContext, frame));
+   }
+
    /**
     * This callback will be invoked while receiving a ws request from client.
     *
@@ -101,6 +169,18 @@ public interface ProxyListener {
    default void onWsRequest(ConnectionContext connectionContext, WebSocketFrame frame) {
    }
 
+   /**
+    * Asynchronous variant of {@link #onWsRequest(ConnectionContext, WebSocketFrame)}.
+    *
+    * @param connectionContext the connection context
+    * @param frame             the ws frame
+    * @return a stage completed once the frame can be forwarded
+    */
+   default CompletionStage<Void> onWsRequestAsync(ConnectionContext connectionContext, WebSocketFrame frame) {
+      onWsRequest(connectionContext, frame);
+      return COMPLETED;
+   }
+
    /**
     * This callback will be invoked while receiving a ws response from server.
     *
@@ -110,6 +190,18 @@ public interface ProxyListener {
    default void onWsResponse(ConnectionContext connectionContext, WebSocketFrame frame) {
    }
 
+   /**
+    * Asynchronous variant of {@link #onWsResponse(ConnectionContext, WebSocketFrame)}.
+    *
+    * @param connectionContext the connection context
+    * @param frame             the ws frame
+    * @return a stage completed once the frame can be forwarded
+    */
+   default CompletionStage<Void> onWsResponseAsync(ConnectionContext connectionContext, WebSocketFrame frame) {
+      onWsResponse(connectionContext, frame);
+      return COMPLETED;
+   }
+
    /**
     * This callback will be invoked while receiving a ws response from server.
     *
@@ -128,6 +220,18 @@ public interface ProxyListener {
    default void onForwardRequest(ConnectionContext connectionContext, ByteBuf data) {
    }
 
+   /**
+    * Asynchronous variant of {@link #onForwardRequest(ConnectionContext, ByteBuf)}.
+    *
+    * @param connectionContext the connection context
+    * @param data              the data
+    * @return a stage completed once the data can be forwarded
+    */
+   default CompletionStage<Void> onForwardRequestAsync(ConnectionContext connectionContext, ByteBuf data) {
+      onForwardRequest(connectionContext, data);
+      return COMPLETED;
+   }
+
    /**
     * This callback will be invoked while receiving data from server.
     *
@@ -137,6 +241,18 @@ public interface ProxyListener {
    default void onForwardResponse(ConnectionContext connectionContext, ByteBuf data) {
    }
 
+   /**
+    * Asynchronous variant of {@link #onForwardResponse(ConnectionContext, ByteBuf)}.
+    *
+    * @param connectionContext the connection context
+    * @param data              the data
+    * @return a stage completed once the data can be forwarded
+    */
+   default CompletionStage<Void> onForwardResponseAsync(ConnectionContext connectionContext, ByteBuf data) {
+      onForwardResponse(connectionContext, data);
+      return COMPLETED;
+   }
+
    /**
     * This callback will be called after the channel was closed, you should release objects if needed.
     *
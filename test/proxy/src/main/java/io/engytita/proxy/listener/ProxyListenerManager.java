@@ -1,14 +1,14 @@
 package io.engytita.proxy.listener;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
 
 import io.engytita.proxy.ConnectionContext;
 import io.engytita.proxy.event.ForwardEvent;
@@ -21,111 +21,358 @@ import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http2.Http2Headers;
 
+/**
+ * A compiled, immutable chain of listeners which is shared by every connection.
+ * <p>
+ * Listeners from {@link ProxyListenerProvider#isShared() shared} providers are resolved once when the chain is
+ * compiled. Listeners from the other providers are created once per connection by {@link #newSlots()} and are
+ * looked up from {@link ConnectionContext#listenerSlots()} at invocation time.
+ */
 public class ProxyListenerManager implements ProxyListener {
 
    public static final CompletableFuture<FullHttpResponse> COMPLETED_NULL_FUTURE = CompletableFuture.completedFuture(null);
-   private final List<ProxyListener> listeners;
-   private final List<ProxyListener> reversedListeners;
+   private static final ProxyListener[] NO_SLOTS = new ProxyListener[0];
+
+   // Shared listener per position, null if the listener lives in a per-connection slot
+   private final ProxyListener[] listeners;
+   // Slot index per position, -1 if the listener is shared
+   private final int[] slots;
+   private final ProxyListenerProvider[] slotProviders;
 
    public ProxyListenerManager(List<ProxyListener> listeners) {
-      this.listeners = Collections.unmodifiableList(listeners);
-      this.reversedListeners = new ArrayList<>(this.listeners.size());
-      for (int i = listeners.size() - 1; i >= 0; i--) {
-         this.reversedListeners.add(listeners.get(i));
+      this(listeners.toArray(new ProxyListener[0]), new int[listeners.size()], new ProxyListenerProvider[0]);
+      Arrays.fill(slots, -1);
+   }
+
+   private ProxyListenerManager(ProxyListener[] listeners, int[] slots, ProxyListenerProvider[] slotProviders) {
+      this.listeners = listeners;
+      this.slots = slots;
+      this.slotProviders = slotProviders;
+   }
+
+   /**
+    * Compile the providers into a listener chain.
+    *
+    * @param providers the listener providers, in invocation order
+    * @return the compiled chain
+    */
+   public static ProxyListenerManager compile(List<ProxyListenerProvider> providers) {
+      return compile(providers, null);
+   }
+
+   /**
+    * Compile the providers into a listener chain, the blocking listeners are offloaded to {@code blockingExecutor}.
+    *
+    * @param providers        the listener providers, in invocation order
+    * @param blockingExecutor the executor for the blocking listeners, blocking listeners run on the event loop if
+    *                         {@code null}
+    * @return the compiled chain
+    */
+   public static ProxyListenerManager compile(List<ProxyListenerProvider> providers, Executor blockingExecutor) {
+      ProxyListener[] listeners = new ProxyListener[providers.size()];
+      int[] slots = new int[providers.size()];
+      List<ProxyListenerProvider> slotProviders = new ArrayList<>();
+      for (int i = 0; i < providers.size(); i++) {
+         ProxyListenerProvider provider = providers.get(i);
+         if (provider.isBlocking() && blockingExecutor != null) {
+            // Offloaded listeners carry the per-connection ordering state, so they always live in a slot
+            provider = ProxyListenerProvider.offload(provider, blockingExecutor);
+         }
+         if (provider.isShared()) {
+            listeners[i] = provider.create();
+            slots[i] = -1;
+         } else {
+            slots[i] = slotProviders.size();
+            slotProviders.add(provider);
+         }
       }
+      return new ProxyListenerManager(listeners, slots, slotProviders.toArray(new ProxyListenerProvider[0]));
+   }
+
+   /**
+    * Create the per-connection listener instances of this chain.
+    *
+    * @return the slots for a new connection, an empty shared array if every listener is shared
+    */
+   public ProxyListener[] newSlots() {
+      if (slotProviders.length == 0) {
+         return NO_SLOTS;
+      }
+      ProxyListener[] instances = new ProxyListener[slotProviders.length];
+      for (int i = 0; i < slotProviders.length; i++) {
+         instances[i] = slotProviders[i].create();
+      }
+      return instances;
+   }
+
+   public int size() {
+      return listeners.length;
+   }
+
+   private ProxyListener listener(int index, ConnectionContext connectionContext) {
+      ProxyListener listener = listeners[index];
+      return listener != null ? listener : connectionContext.listenerSlots()[slots[index]];
    }
 
    @Override
    public void onInit(ConnectionContext connectionContext, Channel clientChannel) {
-      listeners.forEach(listener -> listener.onInit(connectionContext, clientChannel));
+      for (int i = 0; i < listeners.length; i++) {
+         listener(i, connectionContext).onInit(connectionContext, clientChannel);
+      }
    }
 
    @Override
    public void onConnect(ConnectionContext connectionContext, Channel serverChannel) {
-      listeners.forEach(listener -> listener.onConnect(connectionContext, serverChannel));
+      for (int i = 0; i < listeners.length; i++) {
+         listener(i, connectionContext).onConnect(connectionContext, serverChannel);
+      }
    }
 
    @Override
    public void onHttpEvent(HttpEvent event) {
-      listeners.forEach(listener -> listener.onHttpEvent(event));
+      for (int i = 0; i < listeners.length; i++) {
+         listener(i, event.getConnectionContext()).onHttpEvent(event);
+      }
    }
 
    @Override
    public CompletionStage<FullHttpResponse> onHttp1Request(ConnectionContext connectionContext, FullHttpRequest request) {
-      return findFirst(listeners.iterator(), connectionContext, request);
+      return findFirst(0, connectionContext, request);
    }
 
-   private CompletionStage<FullHttpResponse> findFirst(Iterator<ProxyListener> i, ConnectionContext connectionContext, FullHttpRequest request) {
-      if (i.hasNext()) {
-         CompletableFuture<FullHttpResponse> f = i.next().onHttp1Request(connectionContext, request).toCompletableFuture();
-         if (f.isDone()) {
-            FullHttpResponse response = f.getNow(null);
-            if (response != null) {
-               return CompletableFuture.completedFuture(response);
-            }
+   private CompletionStage<FullHttpResponse> findFirst(int index, ConnectionContext connectionContext, FullHttpRequest request) {
+      for (int i = index; i < listeners.length; i++) {
+         CompletableFuture<FullHttpResponse> f = listener(i, connectionContext).onHttp1Request(connectionContext, request).toCompletableFuture();
+         if (!f.isDone() || f.isCompletedExceptionally()) {
+            int next = i + 1;
+            return f.thenCompose(r -> r != null ? CompletableFuture.completedFuture(r) : findFirst(next, connectionContext, request));
+         }
+         FullHttpResponse response = f.getNow(null);
+         if (response != null) {
+            return f;
          }
-         return f.thenCompose(r -> r != null ? CompletableFuture.completedFuture(r) : findFirst(i, connectionContext, request));
-      } else {
-         return COMPLETED_NULL_FUTURE;
       }
+      return COMPLETED_NULL_FUTURE;
    }
 
    @Override
    public List<HttpObject> onHttp1Response(ConnectionContext connectionContext, HttpObject response) {
-      return reversedListeners.stream()
-            .reduce(Collections.singletonList(response),
-                  (objects, listener) -> objects.stream()
-                        .flatMap(f -> listener.onHttp1Response(connectionContext, f).stream())
-                        .toList(),
-                  (accu, objects) -> objects);
+      List<HttpObject> objects = Collections.singletonList(response);
+      for (int i = listeners.length - 1; i >= 0; i--) {
+         ProxyListener listener = listener(i, connectionContext);
+         if (objects.size() == 1) {
+            objects = listener.onHttp1Response(connectionContext, objects.get(0));
+         } else {
+            List<HttpObject> output = new ArrayList<>(objects.size());
+            for (HttpObject object : objects) {
+               output.addAll(listener.onHttp1Response(connectionContext, object));
+            }
+            objects = output;
+         }
+      }
+      return objects;
+   }
+
+   @Override
+   public CompletionStage<List<HttpObject>> onHttp1ResponseAsync(ConnectionContext connectionContext,
+                                                                 HttpObject response) {
+      return transform(listeners.length - 1, connectionContext, Collections.singletonList(response),
+            (listener, object) -> listener.onHttp1ResponseAsync(connectionContext, object));
+   }
+
+   @Override
+   public boolean interceptsHttp2Request(ConnectionContext connectionContext, Http2Headers headers) {
+      for (int i = 0; i < listeners.length; i++) {
+         if (listener(i, connectionContext).interceptsHttp2Request(connectionContext, headers)) {
+            return true;
+         }
+      }
+      return false;
    }
 
    @Override
    public Optional<Http2FramesWrapper> onHttp2Request(ConnectionContext connectionContext,
                                                       Http2FramesWrapper request) {
-      Function<ProxyListener, Stream<Http2FramesWrapper>> apply = listener -> listener
-            .onHttp2Request(connectionContext, request).stream();
-      return listeners.stream().flatMap(apply).findFirst();
+      for (int i = 0; i < listeners.length; i++) {
+         Optional<Http2FramesWrapper> response = listener(i, connectionContext).onHttp2Request(connectionContext, request);
+         if (response.isPresent()) {
+            return response;
+         }
+      }
+      return Optional.empty();
+   }
+
+   @Override
+   public CompletionStage<Optional<Http2FramesWrapper>> onHttp2RequestAsync(ConnectionContext connectionContext,
+                                                                            Http2FramesWrapper request) {
+      return findFirstHttp2(0, connectionContext, request);
+   }
+
+   private CompletionStage<Optional<Http2FramesWrapper>> findFirstHttp2(int index, ConnectionContext connectionContext,
+                                                                        Http2FramesWrapper request) {
+      for (int i = index; i < listeners.length; i++) {
+         CompletableFuture<Optional<Http2FramesWrapper>> f = listener(i, connectionContext)
+               .onHttp2RequestAsync(connectionContext, request).toCompletableFuture();
+         if (!f.isDone() || f.isCompletedExceptionally()) {
+            int next = i + 1;
+            return f.thenCompose(r -> r.isPresent() ? CompletableFuture.completedFuture(r) : findFirstHttp2(next, connectionContext, request));
+         }
+         if (f.getNow(Optional.empty()).isPresent()) {
+            return f;
+         }
+      }
+      return CompletableFuture.completedFuture(Optional.empty());
    }
 
    @Override
    public List<Http2FrameWrapper<?>> onHttp2Response(ConnectionContext connectionContext, Http2FrameWrapper<?> frame) {
-      return reversedListeners.stream()
-            .reduce(Collections.singletonList(frame),
-                  (frames, listener) -> frames.stream()
-                        .flatMap(f -> listener.onHttp2Response(connectionContext, f).stream())
-                        .toList(),
-                  (accu, frames) -> frames);
+      List<Http2FrameWrapper<?>> frames = Collections.singletonList(frame);
+      for (int i = listeners.length - 1; i >= 0; i--) {
+         ProxyListener listener = listener(i, connectionContext);
+         if (frames.size() == 1) {
+            frames = listener.onHttp2Response(connectionContext, frames.get(0));
+         } else {
+            List<Http2FrameWrapper<?>> output = new ArrayList<>(frames.size());
+            for (Http2FrameWrapper<?> f : frames) {
+               output.addAll(listener.onHttp2Response(connectionContext, f));
+            }
+            frames = output;
+         }
+      }
+      return frames;
+   }
+
+   @Override
+   public CompletionStage<List<Http2FrameWrapper<?>>> onHttp2ResponseAsync(ConnectionContext connectionContext,
+                                                                           Http2FrameWrapper<?> frame) {
+      return transform(listeners.length - 1, connectionContext, Collections.singletonList(frame),
+            (listener, f) -> listener.onHttp2ResponseAsync(connectionContext, f));
+   }
+
+   /**
+    * Pass the objects through the listeners from {@code index} down to the first one, each listener may replace
+    * every object by a list of objects. Stays synchronous as long as the listeners return completed stages.
+    */
+   private <T> CompletionStage<List<T>> transform(int index, ConnectionContext connectionContext, List<T> objects,
+                                                  BiFunction<ProxyListener, T, CompletionStage<List<T>>> callback) {
+      for (int i = index; i >= 0; i--) {
+         ProxyListener listener = listener(i, connectionContext);
+         CompletableFuture<List<T>> f;
+         if (objects.size() == 1) {
+            f = callback.apply(listener, objects.get(0)).toCompletableFuture();
+         } else {
+            f = flatten(listener, objects, callback);
+         }
+         if (!f.isDone() || f.isCompletedExceptionally()) {
+            int next = i - 1;
+            return f.thenCompose(r -> transform(next, connectionContext, r, callback));
+         }
+         objects = f.join();
+      }
+      return CompletableFuture.completedFuture(objects);
+   }
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   private static <T> CompletableFuture<List<T>> flatten(ProxyListener listener, List<T> objects,
+                                                         BiFunction<ProxyListener, T, CompletionStage<List<T>>> callback) {
+      CompletableFuture<List<T>>[] stages = new CompletableFuture[objects.size()];
+      boolean done = true;
+      for (int i = 0; i < stages.length; i++) {
+         stages[i] = callback.apply(listener, objects.get(i)).toCompletableFuture();
+         done &= stages[i].isDone() && !stages[i].isCompletedExceptionally();
+      }
+      if (done) {
+         return CompletableFuture.completedFuture(collect(stages));
+      }
+      return CompletableFuture.allOf(stages).thenApply(ignore -> collect(stages));
+   }
+
+   private static <T> List<T> collect(CompletableFuture<List<T>>[] stages) {
+      List<T> output = new ArrayList<>(stages.length);
+      for (CompletableFuture<List<T>> stage : stages) {
+         output.addAll(stage.join());
+      }
+      return output;
+   }
+
+   /**
+    * Invoke the callback on the listeners in order, a listener is only invoked once the stage returned by the
+    * previous one was completed.
+    */
+   private CompletionStage<Void> sequence(int index, int step, ConnectionContext connectionContext,
+                                          BiFunction<ProxyListener, ConnectionContext, CompletionStage<Void>> callback) {
+      for (int i = index; i >= 0 && i < listeners.length; i += step) {
+         CompletableFuture<Void> f = callback.apply(listener(i, connectionContext), connectionContext).toCompletableFuture();
+         if (!f.isDone() || f.isCompletedExceptionally()) {
+            int next = i + step;
+            return f.thenCompose(ignore -> sequence(next, step, connectionContext, callback));
+         }
+      }
+      return COMPLETED;
    }
 
    @Override
    public void onWsRequest(ConnectionContext connectionContext, WebSocketFrame frame) {
-      listeners.forEach(listener -> listener.onWsRequest(connectionContext, frame));
+      for (int i = 0; i < listeners.length; i++) {
+         listener(i, connectionContext).onWsRequest(connectionContext, frame);
+      }
    }
 
    @Override
    public void onWsResponse(ConnectionContext connectionContext, WebSocketFrame frame) {
-      listeners.forEach(listener -> listener.onWsResponse(connectionContext, frame));
+      for (int i = 0; i < listeners.length; i++) {
+         listener(i, connectionContext).onWsResponse(connectionContext, frame);
+      }
+   }
+
+   @Override
+   public CompletionStage<Void> onWsRequestAsync(ConnectionContext connectionContext, WebSocketFrame frame) {
+      return sequence(0, 1, connectionContext, (listener, ctx) -> listener.onWsRequestAsync(ctx, frame));
+   }
+
+   @Override
+   public CompletionStage<Void> onWsResponseAsync(ConnectionContext connectionContext, WebSocketFrame frame) {
+      return sequence(0, 1, connectionContext, (listener, ctx) -> listener.onWsResponseAsync(ctx, frame));
    }
 
    @Override
    public void onForwardEvent(ConnectionContext connectionContext, ForwardEvent event) {
-      listeners.forEach(listener -> listener.onForwardEvent(connectionContext, event));
+      for (int i = 0; i < listeners.length; i++) {
+         listener(i, connectionContext).onForwardEvent(connectionContext, event);
+      }
    }
 
    @Override
    public void onForwardRequest(ConnectionContext connectionContext, ByteBuf byteBuf) {
-      listeners.forEach(listener -> listener.onForwardRequest(connectionContext, byteBuf));
+      for (int i = 0; i < listeners.length; i++) {
+         listener(i, connectionContext).onForwardRequest(connectionContext, byteBuf);
+      }
    }
 
    @Override
    public void onForwardResponse(ConnectionContext connectionContext, ByteBuf byteBuf) {
-      reversedListeners.forEach(listener -> listener.onForwardResponse(connectionContext, byteBuf));
+      for (int i = listeners.length - 1; i >= 0; i--) {
+         listener(i, connectionContext).onForwardResponse(connectionContext, byteBuf);
+      }
+   }
+
+   @Override
+   public CompletionStage<Void> onForwardRequestAsync(ConnectionContext connectionContext, ByteBuf byteBuf) {
+      return sequence(0, 1, connectionContext, (listener, ctx) -> listener.onForwardRequestAsync(ctx, byteBuf));
+   }
+
+   @Override
+   public CompletionStage<Void> onForwardResponseAsync(ConnectionContext connectionContext, ByteBuf byteBuf) {
+      return sequence(listeners.length - 1, -1, connectionContext,
+            (listener, ctx) -> listener.onForwardResponseAsync(ctx, byteBuf));
    }
 
    @Override
    public void close(ConnectionContext connectionContext) {
-      reversedListeners.forEach(listener -> listener.close(connectionContext));
+      for (int i = listeners.length - 1; i >= 0; i--) {
+         listener(i, connectionContext).close(connectionContext);
+      }
    }
 }
@@ -1,22 +1,55 @@
 package io.engytita.proxy.listener;
 
+import java.util.concurrent.Executor;
+
+/**
+ * Provides the compiled listener chain. The chain is compiled once per configuration and shared by all the
+ * connections, {@link #reload()} atomically swaps it for a chain compiled from the current listener store.
+ */
 public class ProxyListenerManagerProvider implements ProxyListenerProvider {
 
    private final ProxyListeners listenerStore;
+   private final Executor blockingExecutor;
+   private volatile ProxyListenerManager manager;
 
    public ProxyListenerManagerProvider(ProxyListeners listenerStore) {
+      this(listenerStore, null);
+   }
+
+   public ProxyListenerManagerProvider(ProxyListeners listenerStore, Executor blockingExecutor) {
       this.listenerStore = listenerStore;
+      this.blockingExecutor = blockingExecutor;
+      this.manager = compile();
    }
 
    @Override
-   public ProxyListener create() {
-      return new ProxyListenerManager(listenerStore.getListeners().stream()
-            .map(ProxyListenerProvider::create)
-            .toList());
+   public ProxyListenerManager create() {
+      return manager;
    }
 
    @Override
    public Class<? extends ProxyListener> listenerClass() {
       return ProxyListenerManager.class;
    }
+
+   @Override
+   public boolean isShared() {
+      return true;
+   }
+
+   /**
+    * Recompile the listener chain from the listener store. The connections read the chain once when they are
+    * created, the existing ones keep the chain they started with.
+    *
+    * @return the new listener chain
+    */
+   public ProxyListenerManager reload() {
+      ProxyListenerManager reloaded = compile();
+      manager = reloaded;
+      return reloaded;
+   }
+
+   private ProxyListenerManager compile() {
+      return ProxyListenerManager.compile(listenerStore.snapshot(), blockingExecutor);
+   }
 }
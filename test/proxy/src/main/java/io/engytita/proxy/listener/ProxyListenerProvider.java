@@ -1,5 +1,6 @@
 package io.engytita.proxy.listener;
 
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 
 import io.engytita.proxy.listener.ProxyListener.Empty;
@@ -15,6 +16,40 @@ public interface ProxyListenerProvider {
       return new Singleton(listener);
    }
 
+   /**
+    * Mark the listener as blocking, its callbacks will run on the blocking listener executor instead of the
+    * event loop.
+    *
+    * @param listener the listener
+    * @return the blocking provider
+    */
+   static ProxyListenerProvider blocking(ProxyListener listener) {
+      return blocking(singleton(listener));
+   }
+
+   /**
+    * Mark the listeners created by {@code provider} as blocking, their callbacks will run on the blocking listener
+    * executor instead of the event loop.
+    *
+    * @param provider the provider
+    * @return the blocking provider
+    */
+   static ProxyListenerProvider blocking(ProxyListenerProvider provider) {
+      return new Blocking(provider);
+   }
+
+   /**
+    * Run the callbacks of the listeners created by {@code provider} on {@code executor}, preserving their order
+    * per connection.
+    *
+    * @param provider the provider
+    * @param executor the executor
+    * @return the offloading provider
+    */
+   static ProxyListenerProvider offload(ProxyListenerProvider provider, Executor executor) {
+      return new Offloaded(provider, executor);
+   }
+
    static Predicate<ProxyListenerProvider> match(Class<?> listenerClass) {
       if (ProxyListener.class.isAssignableFrom(listenerClass)) {
          return new MatchListenerPredicate(listenerClass);
@@ -26,6 +61,27 @@ public interface ProxyListenerProvider {
 
    Class<? extends ProxyListener> listenerClass();
 
+   /**
+    * Whether the listener returned by {@link #create()} can be shared by all the connections.
+    * Shared listeners are created once when the listener chain is compiled, the others are created for every
+    * connection.
+    *
+    * @return {@code true} if the listener is stateless or thread-safe
+    */
+   default boolean isShared() {
+      return false;
+   }
+
+   /**
+    * Whether the listener returned by {@link #create()} does blocking calls. The callbacks of blocking listeners
+    * are offloaded to the {@link BlockingListenerExecutor}, preserving their order per connection.
+    *
+    * @return {@code true} if the listener may block
+    */
+   default boolean isBlocking() {
+      return false;
+   }
+
    class Singleton implements ProxyListenerProvider {
       private ProxyListener listener;
 
@@ -43,6 +99,11 @@ public interface ProxyListenerProvider {
          return listener.getClass();
       }
 
+      @Override
+      public boolean isShared() {
+         return true;
+      }
+
       @Override
       public int hashCode() {
          return listener.hashCode();
@@ -68,6 +129,64 @@ public interface ProxyListenerProvider {
       }
    }
 
+   class Blocking implements ProxyListenerProvider {
+      private final ProxyListenerProvider provider;
+
+      public Blocking(ProxyListenerProvider provider) {
+         this.provider = provider;
+      }
+
+      @Override
+      public ProxyListener create() {
+         return provider.create();
+      }
+
+      @Override
+      public Class<? extends ProxyListener> listenerClass() {
+         return provider.listenerClass();
+      }
+
+      @Override
+      public boolean isShared() {
+         return provider.isShared();
+      }
+
+      @Override
+      public boolean isBlocking() {
+         return true;
+      }
+
+      @Override
+      public String toString() {
+         return "blocking(" + provider + ")";
+      }
+   }
+
+   class Offloaded implements ProxyListenerProvider {
+      private final ProxyListenerProvider provider;
+      private final Executor executor;
+
+      public Offloaded(ProxyListenerProvider provider, Executor executor) {
+         this.provider = provider;
+         this.executor = executor;
+      }
+
+      @Override
+      public ProxyListener create() {
+         return new OffloadedProxyListener(provider.create(), executor);
+      }
+
+      @Override
+      public Class<? extends ProxyListener> listenerClass() {
+         return provider.listenerClass();
+      }
+
+      @Override
+      public String toString() {
+         return "offload(" + provider + ")";
+      }
+   }
+
    class MatchProviderPredicate implements Predicate<ProxyListenerProvider> {
       private Class<?> providerClass;
 
@@ -39,7 +39,7 @@ public class ProxyListeners {
     * @param provider the listener
     * @return the store itself
     */
-   public ProxyListeners addFirst(ProxyListenerProvider provider) {
+   public synchronized ProxyListeners addFirst(ProxyListenerProvider provider) {
       listeners.add(0, provider);
       return this;
    }
@@ -84,8 +84,8 @@ public class ProxyListeners {
     * @param provider  the provider
     * @return the store itself
     */
-   public ProxyListeners addAfter(Predicate<ProxyListenerProvider> predicate,
-                                  ProxyListenerProvider provider) {
+   public synchronized ProxyListeners addAfter(Predicate<ProxyListenerProvider> predicate,
+                                               ProxyListenerProvider provider) {
       int matched = IntStream.range(0, listeners.size())
             .filter(index -> predicate.test(listeners.get(index)))
             .findFirst()
@@ -135,8 +135,8 @@ public class ProxyListeners {
     * @param provider  the listener
     * @return the store itself
     */
-   public ProxyListeners addBefore(Predicate<ProxyListenerProvider> predicate,
-                                   ProxyListenerProvider provider) {
+   public synchronized ProxyListeners addBefore(Predicate<ProxyListenerProvider> predicate,
+                                                ProxyListenerProvider provider) {
       int matched = IntStream.range(0, listeners.size())
             .filter(index -> predicate.test(listeners.get(index)))
             .findFirst()
@@ -161,7 +161,7 @@ public class ProxyListeners {
     * @param provider the listener
     * @return the store itself
     */
-   public ProxyListeners addLast(ProxyListenerProvider provider) {
+   public synchronized ProxyListeners addLast(ProxyListenerProvider provider) {
       listeners.add(provider);
       return this;
    }
@@ -169,4 +169,13 @@ public class ProxyListeners {
    public List<ProxyListenerProvider> getListeners() {
       return listeners;
    }
+
+   /**
+    * Copy the providers, consistently with the concurrent additions.
+    *
+    * @return the providers in their current order
+    */
+   public synchronized List<ProxyListenerProvider> snapshot() {
+      return new ArrayList<>(listeners);
+   }
 }
@@ -1,38 +1,138 @@
 package io.engytita.proxy.tls;
 
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import javax.net.ssl.SSLException;
+
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.cert.X509CertificateHolder;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 
 import io.engytita.proxy.ProxyConfig;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
+/**
+ * Mints the certificates presented to the clients in interception mode, one per host, signed by the configured
+ * certificate.
+ * <p>
+ * The certificates share a single ECDSA P-256 key pair, generated once, and are signed on a dedicated pool so a burst
+ * of new hosts does not stall the event loops. Concurrent requests for the same host share the same minting.
+ * <p>
+ * With wildcards, the hosts of at least 3 labels share the wildcard certificate of their parent domain, such as
+ * {@code *.example.com} for {@code api.example.com}. With a {@link CertStore}, the certificates and their key pair
+ * are also read from and written to disk.
+ */
 public class CertManager {
 
    private static final int CERT_CACHE_SIZE = 2000;
 
    private final X509CertificateHolder certificate;
    private final PrivateKeyInfo key;
+   private final boolean wildcards;
+   private final CertStore store;
+   private final KeyPair keyPair;
+   private final ExecutorService executor;
 
-   private final LoadingCache<String, Certificate> certsCache;
+   private final AsyncLoadingCache<String, Certificate> certsCache;
 
    public CertManager(ProxyConfig config) {
       this.certificate = config.getCertificate();
       this.key = config.getKey();
+      this.wildcards = config.isCertWildcards();
+      this.store = config.getCertStorePath() != null && certificate != null
+            ? new CertStore(config.getCertStorePath(), certificate)
+            : null;
+      try {
+         this.keyPair = store != null ? store.keyPair() : CertUtil.generateEcKeyPair();
+      } catch (GeneralSecurityException e) {
+         throw new IllegalStateException(e);
+      }
+      this.executor = Executors.newFixedThreadPool(config.getCertMintingThreads(),
+            new DefaultThreadFactory("proxy-cert-minting", true));
       this.certsCache = Caffeine.newBuilder()
             .expireAfterWrite(1, TimeUnit.DAYS)
             .maximumSize(CERT_CACHE_SIZE)
-            .build(this::createCert);
+            .executor(executor)
+            .buildAsync(this::createCert);
+   }
+
+   /**
+    * Get the name of the certificate of a host, the host itself or the wildcard of its parent domain.
+    *
+    * @param host the host
+    * @return the certificate name
+    */
+   public String certName(String host) {
+      String name = host.toLowerCase(Locale.ROOT);
+      if (!wildcards) {
+         return name;
+      }
+      int first = name.indexOf('.');
+      int last = name.lastIndexOf('.');
+      if (first <= 0 || first == last || !Character.isLetter(name.charAt(name.length() - 1))) {
+         // A domain of 2 labels, or an IP address
+         return name;
+      }
+      String parent = name.substring(first + 1);
+      int parentDot = parent.indexOf('.');
+      if (parentDot == parent.lastIndexOf('.') && parentDot <= 3 && parent.length() - parentDot == 3) {
+         // Most likely a public suffix such as co.uk, the clients reject its wildcards
+         return name;
+      }
+      return "*." + parent;
+   }
+
+   /**
+    * Get the certificate of a host, minting it on the minting pool if needed.
+    *
+    * @param host the host
+    * @return the future certificate, completed on the minting pool when it was minted
+    */
+   public CompletableFuture<Certificate> certificate(String host) {
+      return certsCache.get(certName(host));
+   }
+
+   /**
+    * Get the certificate of a host already minted with {@link #certificate(String)}, never waiting for a minting
+    * since the handshakes run on the event loops.
+    *
+    * @param host the host
+    * @return the certificate
+    * @throws SSLException if the certificate is not minted yet or its minting failed
+    */
+   public Certificate getCert(String host) throws SSLException {
+      CompletableFuture<Certificate> future = certsCache.getIfPresent(certName(host));
+      if (future == null || !future.isDone()) {
+         throw new SSLException("The certificate of " + host + " is not minted yet");
+      }
+      try {
+         return future.join();
+      } catch (CompletionException e) {
+         throw new SSLException("Cannot mint the certificate of " + host, e.getCause());
+      }
    }
 
-   public Certificate getCert(String host) {
-      return certsCache.get(host);
+   public void shutdown() {
+      executor.shutdown();
    }
 
-   private Certificate createCert(String host) {
-      return CertUtil.newCert(certificate, key, host);
+   private Certificate createCert(String name) {
+      Certificate cert = store != null ? store.load(name, keyPair) : null;
+      if (cert == null) {
+         cert = CertUtil.newCert(certificate, key, keyPair, name);
+         if (store != null) {
+            store.save(name, cert);
+         }
+      }
+      return cert;
    }
 }
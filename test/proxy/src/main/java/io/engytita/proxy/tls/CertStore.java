@@ -0,0 +1,162 @@
+package io.engytita.proxy.tls;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.bouncycastle.openssl.jcajce.JcaPKCS8Generator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the minted certificates on disk, so a restarted or a new proxy sharing the directory reuses them instead of
+ * minting them again.
+ * <p>
+ * Each certificate is a PEM file named after its host, read lazily the first time the host is requested, and written
+ * atomically once minted. The key pair shared by the certificates is kept in the same directory. A stored certificate
+ * is only used if it was signed by the current certificate, for the current key pair, and is not about to expire.
+ * <p>
+ * The store is a cache, its IO failures are logged and the certificates are minted instead.
+ */
+public class CertStore {
+   private static final Logger LOGGER = LoggerFactory.getLogger(CertStore.class);
+
+   private static final String KEY_FILE = "key.pem";
+   private static final String CERT_SUFFIX = ".crt.pem";
+   // The names are lower case hosts, a wildcard is stored with a '+', which no host contains
+   private static final Pattern NAME = Pattern.compile("[a-z0-9_*][a-z0-9_.-]*");
+   private static final Duration MIN_VALIDITY = Duration.ofDays(1);
+
+   private final Path directory;
+   private final X509Certificate parent;
+
+   public CertStore(Path directory, X509CertificateHolder parent) {
+      this.directory = directory;
+      try {
+         this.parent = new JcaX509CertificateConverter().getCertificate(parent);
+      } catch (GeneralSecurityException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * Read the key pair of the certificates, generating and storing it the first time.
+    *
+    * @return the key pair
+    * @throws GeneralSecurityException if the key pair cannot be generated
+    */
+   public KeyPair keyPair() throws GeneralSecurityException {
+      Path file = directory.resolve(KEY_FILE);
+      if (Files.exists(file)) {
+         // The private key then the public key, the EC private keys are not always encoded with their public key
+         try (PEMParser parser = new PEMParser(Files.newBufferedReader(file, StandardCharsets.US_ASCII))) {
+            JcaPEMKeyConverter converter = new JcaPEMKeyConverter();
+            if (parser.readObject() instanceof PrivateKeyInfo privateKey
+                  && parser.readObject() instanceof SubjectPublicKeyInfo publicKey) {
+               return new KeyPair(converter.getPublicKey(publicKey), converter.getPrivateKey(privateKey));
+            }
+            LOGGER.warn("{} is not a key pair, generating a new one", file);
+         } catch (IOException e) {
+            LOGGER.warn("Cannot read the key pair {}, generating a new one", file, e);
+         }
+      }
+      KeyPair keyPair = CertUtil.generateEcKeyPair();
+      try {
+         // PKCS#8, the SEC1 encoding of PEMWriter drops the curve of the JDK keys
+         write(file, CertUtil.toPem(new JcaPKCS8Generator(keyPair.getPrivate(), null).generate(),
+               keyPair.getPublic()));
+      } catch (IOException e) {
+         LOGGER.warn("Cannot write {}", file, e);
+      }
+      return keyPair;
+   }
+
+   /**
+    * Read the certificate of a host.
+    *
+    * @param name    the host or the wildcard
+    * @param keyPair the key pair of the certificates
+    * @return the certificate, null if not stored or not usable anymore
+    */
+   public Certificate load(String name, KeyPair keyPair) {
+      Path file = file(name);
+      if (file == null || !Files.isRegularFile(file)) {
+         return null;
+      }
+      try {
+         Object pem = CertUtil.readPemFromFile(file.toString());
+         if (!(pem instanceof X509CertificateHolder holder)) {
+            return null;
+         }
+         X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(holder);
+         if (!isUsable(certificate, keyPair.getPublic())) {
+            LOGGER.debug("Stored certificate {} is not usable anymore", file);
+            return null;
+         }
+         return new Certificate(keyPair, certificate, parent);
+      } catch (Exception e) {
+         LOGGER.warn("Cannot read the certificate {}", file, e);
+         return null;
+      }
+   }
+
+   /**
+    * Write the certificate of a host.
+    *
+    * @param name        the host or the wildcard
+    * @param certificate the certificate
+    */
+   public void save(String name, Certificate certificate) {
+      Path file = file(name);
+      if (file != null) {
+         write(file, CertUtil.toPem(certificate.getChain()[0]));
+      }
+   }
+
+   private boolean isUsable(X509Certificate certificate, PublicKey publicKey) {
+      if (!certificate.getPublicKey().equals(publicKey)
+            || !certificate.getIssuerX500Principal().equals(parent.getSubjectX500Principal())) {
+         return false;
+      }
+      try {
+         certificate.checkValidity(new Date(System.currentTimeMillis() + MIN_VALIDITY.toMillis()));
+         certificate.verify(parent.getPublicKey());
+         return true;
+      } catch (GeneralSecurityException e) {
+         return false;
+      }
+   }
+
+   private Path file(String name) {
+      if (!NAME.matcher(name).matches()) {
+         return null;
+      }
+      return directory.resolve(name.replace('*', '+') + CERT_SUFFIX);
+   }
+
+   private void write(Path file, byte[] content) {
+      try {
+         Files.createDirectories(directory);
+         Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+         Files.write(tmp, content);
+         Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+         LOGGER.warn("Cannot write {}", file, e);
+      }
+   }
+}
@@ -3,25 +3,33 @@ package io.engytita.proxy.tls;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Provider;
-import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.time.Instant;
 import java.time.Year;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
 
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
@@ -55,7 +63,17 @@ public class CertUtil {
    private CertUtil() {
    }
 
-   public static Certificate newCert(X509CertificateHolder parent, PrivateKeyInfo key, String host) {
+   /**
+    * Mint a certificate for a host, signed by the parent certificate.
+    *
+    * @param parent  the parent certificate
+    * @param key     the private key of the parent certificate
+    * @param keyPair the key pair of the new certificate, which can be shared by all the hosts
+    * @param host    the host
+    * @return the certificate and its chain
+    */
+   public static Certificate newCert(X509CertificateHolder parent, PrivateKeyInfo key, KeyPair keyPair,
+                                     String host) {
       try {
          //need a date before today to adjust for other time zones
          Date before = Date.from(
@@ -70,15 +88,14 @@ public class CertUtil {
                      .toInstant());
 
          JcaPEMKeyConverter converter = new JcaPEMKeyConverter().setProvider(PROVIDER);
-         PublicKey publicKey = converter.getPublicKey(parent.getSubjectPublicKeyInfo());
-         PrivateKey privateKey = converter.getPrivateKey(key);
+         PrivateKey parentKey = converter.getPrivateKey(key);
          X509v3CertificateBuilder x509 = new JcaX509v3CertificateBuilder(
                parent.getSubject(),
                new BigInteger(64, new SecureRandom()),
                before,
                after,
                new X500Name("CN=" + host),
-               publicKey);
+               keyPair.getPublic());
          GeneralNames generalNames = GeneralNames.getInstance(
                new DERSequence(new GeneralName(GeneralName.dNSName, host)));
          x509.addExtension(Extension.subjectAlternativeName, true, generalNames);
@@ -89,14 +106,14 @@ public class CertUtil {
                true,
                new ExtendedKeyUsage(KeyPurposeId.id_kp_serverAuth));
 
-         ContentSigner signer = new JcaContentSignerBuilder("SHA256WithRSAEncryption")
-               .build(privateKey);
+         ContentSigner signer = new JcaContentSignerBuilder(signatureAlgorithm(parentKey))
+               .build(parentKey);
 
          JcaX509CertificateConverter x509CertificateConverter = new JcaX509CertificateConverter()
                .setProvider(PROVIDER);
 
          return new Certificate(
-               new KeyPair(publicKey, privateKey),
+               keyPair,
                x509CertificateConverter.getCertificate(x509.build(signer)),
                x509CertificateConverter.getCertificate(parent));
       } catch (Exception e) {
@@ -104,6 +121,59 @@ public class CertUtil {
       }
    }
 
+   private static String signatureAlgorithm(PrivateKey key) {
+      return switch (key.getAlgorithm()) {
+         case "EC", "ECDSA" -> "SHA256withECDSA";
+         default -> "SHA256WithRSAEncryption";
+      };
+   }
+
+   /**
+    * Generate an ECDSA P-256 key pair, its signatures are much cheaper than the RSA ones during the handshakes.
+    *
+    * @return the key pair
+    * @throws GeneralSecurityException if the curve is not supported
+    */
+   public static KeyPair generateEcKeyPair() throws GeneralSecurityException {
+      KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+      keyGen.initialize(new ECGenParameterSpec("secp256r1"), new SecureRandom());
+      return keyGen.generateKeyPair();
+   }
+
+   /**
+    * Get the SHA-256 fingerprint of a certificate.
+    *
+    * @param certificate the certificate
+    * @return the fingerprint, in lowercase hex
+    */
+   public static String fingerprint(X509Certificate certificate) {
+      try {
+         return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded()));
+      } catch (GeneralSecurityException e) {
+         throw new ProxyException("Cannot compute the fingerprint", e);
+      }
+   }
+
+   /**
+    * Read the certificates of a PEM or DER file.
+    *
+    * @param file the file
+    * @return the certificates
+    * @throws ProxyException if the file cannot be read
+    */
+   public static List<X509Certificate> readCertificates(Path file) {
+      try (InputStream in = Files.newInputStream(file)) {
+         List<X509Certificate> certificates = new ArrayList<>();
+         for (java.security.cert.Certificate certificate : CertificateFactory.getInstance("X.509")
+               .generateCertificates(in)) {
+            certificates.add((X509Certificate) certificate);
+         }
+         return certificates;
+      } catch (IOException | GeneralSecurityException e) {
+         throw new ProxyException("Read certificates failed: " + file, e);
+      }
+   }
+
    /**
     * Read pem from file.
     *
@@ -0,0 +1,248 @@
+package io.engytita.proxy.tls;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.engytita.proxy.ProxyConfig;
+
+/**
+ * Verifies the certificates presented by the clients, against the configured CAs or the JVM trust store without.
+ * <p>
+ * Building and validating the chain is the costly part of the verification, a success is cached by the fingerprint
+ * of the client certificate until the TTL elapsed or the certificate expired. The failures are not cached, another
+ * chain of the same certificate may be valid. The revocation is checked on every handshake, from the
+ * {@link RevocationStore} which never blocks, with the issuer which signed the certificate in the validated chain.
+ */
+public class ClientCertVerifier extends X509ExtendedTrustManager {
+
+   private static final int CACHE_SIZE = 10_000;
+
+   private final X509ExtendedTrustManager delegate;
+   private final RevocationStore revocationStore;
+   private final long ttlMillis;
+   private final Cache<String, Validation> validations;
+   private final LongAdder hits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+   private final LongAdder revoked = new LongAdder();
+
+   public ClientCertVerifier(ProxyConfig config) {
+      this(trustManager(config.getTlsClientCaCertificates()), new RevocationStore(config),
+            config.getTlsClientValidationCacheTtl());
+   }
+
+   public ClientCertVerifier(X509ExtendedTrustManager delegate, RevocationStore revocationStore, long ttlMillis) {
+      this.delegate = delegate;
+      this.revocationStore = revocationStore;
+      this.ttlMillis = ttlMillis;
+      this.validations = Caffeine.newBuilder()
+            .expireAfterWrite(Math.max(ttlMillis, 0), TimeUnit.MILLISECONDS)
+            .maximumSize(CACHE_SIZE)
+            .build();
+   }
+
+   private static X509ExtendedTrustManager trustManager(List<X509Certificate> caCertificates) {
+      try {
+         KeyStore keyStore = null;
+         if (!caCertificates.isEmpty()) {
+            keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(null, null);
+            for (int i = 0; i < caCertificates.size(); i++) {
+               keyStore.setCertificateEntry("ca-" + i, caCertificates.get(i));
+            }
+         }
+         TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+         factory.init(keyStore);
+         for (TrustManager trustManager : factory.getTrustManagers()) {
+            if (trustManager instanceof X509ExtendedTrustManager x509TrustManager) {
+               return x509TrustManager;
+            }
+         }
+         throw new IllegalStateException("No X509 trust manager");
+      } catch (GeneralSecurityException | IOException e) {
+         throw new IllegalStateException("Cannot create the trust manager of the client certificates", e);
+      }
+   }
+
+   @Override
+   public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+      verify(chain, () -> delegate.checkClientTrusted(chain, authType));
+   }
+
+   @Override
+   public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+         throws CertificateException {
+      verify(chain, () -> delegate.checkClientTrusted(chain, authType, socket));
+   }
+
+   @Override
+   public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+         throws CertificateException {
+      verify(chain, () -> delegate.checkClientTrusted(chain, authType, engine));
+   }
+
+   @Override
+   public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+      throw new CertificateException("Only verifies the clients");
+   }
+
+   @Override
+   public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+         throws CertificateException {
+      throw new CertificateException("Only verifies the clients");
+   }
+
+   @Override
+   public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+         throws CertificateException {
+      throw new CertificateException("Only verifies the clients");
+   }
+
+   @Override
+   public X509Certificate[] getAcceptedIssuers() {
+      return delegate.getAcceptedIssuers();
+   }
+
+   private void verify(X509Certificate[] chain, Check check) throws CertificateException {
+      if (chain == null || chain.length == 0) {
+         throw new CertificateException("No client certificate");
+      }
+      X509Certificate certificate = chain[0];
+      String fingerprint = CertUtil.fingerprint(certificate);
+      long now = System.currentTimeMillis();
+      Validation validation = validations.getIfPresent(fingerprint);
+      if (validation != null && validation.expiresAt > now) {
+         hits.increment();
+      } else {
+         misses.increment();
+         check.run();
+         validation = new Validation(issuer(chain), Math.min(now + ttlMillis, certificate.getNotAfter().getTime()));
+         if (ttlMillis > 0) {
+            validations.put(fingerprint, validation);
+         }
+      }
+      if (isRevoked(certificate, validation.issuer)) {
+         throw new CertificateException("Client certificate revoked: " + certificate.getSubjectX500Principal());
+      }
+   }
+
+   /**
+    * Check the revocation of the certificate of a session, once its handshake completed. A resumed session skips
+    * the verification of the chain, its chain was verified by the handshake which created the session.
+    *
+    * @param chain the verified chain of the session, the client certificate first
+    * @return {@code true} if the certificate is revoked
+    */
+   public boolean isRevoked(List<X509Certificate> chain) {
+      X509Certificate[] certificates = chain.toArray(new X509Certificate[0]);
+      Validation validation = validations.getIfPresent(CertUtil.fingerprint(certificates[0]));
+      X509Certificate issuer = validation != null ? validation.issuer : issuer(certificates);
+      return isRevoked(certificates[0], issuer);
+   }
+
+   private boolean isRevoked(X509Certificate certificate, X509Certificate issuer) {
+      if (revocationStore.status(certificate, issuer) != RevocationStore.Status.REVOKED) {
+         return false;
+      }
+      revoked.increment();
+      return true;
+   }
+
+   /**
+    * Find the issuer which signed the certificate of a validated chain, among the trust anchors then the
+    * intermediates of the chain. The client supplies the chain, a certificate only naming the issuer is not enough.
+    */
+   private X509Certificate issuer(X509Certificate[] chain) {
+      for (X509Certificate ca : delegate.getAcceptedIssuers()) {
+         if (signs(ca, chain[0])) {
+            return ca;
+         }
+      }
+      for (int i = 1; i < chain.length; i++) {
+         if (signs(chain[i], chain[0])) {
+            return chain[i];
+         }
+      }
+      return null;
+   }
+
+   private static boolean signs(X509Certificate issuer, X509Certificate certificate) {
+      if (!issuer.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+         return false;
+      }
+      try {
+         certificate.verify(issuer.getPublicKey());
+         return true;
+      } catch (GeneralSecurityException e) {
+         return false;
+      }
+   }
+
+   /**
+    * @return the number of verifications served from the cache
+    */
+   public long cacheHitCount() {
+      return hits.sum();
+   }
+
+   /**
+    * @return the number of verifications which validated the chain
+    */
+   public long cacheMissCount() {
+      return misses.sum();
+   }
+
+   /**
+    * @return the number of certificates refused because they were revoked
+    */
+   public long revokedCount() {
+      return revoked.sum();
+   }
+
+   public RevocationStore revocationStore() {
+      return revocationStore;
+   }
+
+   public void shutdown() {
+      revocationStore.shutdown();
+   }
+
+   @Override
+   public String toString() {
+      return "ClientCertVerifier{" +
+            "cacheHits=" + cacheHitCount() +
+            ", cacheMisses=" + cacheMissCount() +
+            ", revoked=" + revokedCount() +
+            ", crls=" + revocationStore.crlCount() +
+            ", ocspEntries=" + revocationStore.ocspEntryCount() +
+            '}';
+   }
+
+   @FunctionalInterface
+   private interface Check {
+      void run() throws CertificateException;
+   }
+
+   /**
+    * The result of a successful chain validation.
+    *
+    * @param issuer    the issuer which signed the client certificate, null if not found
+    * @param expiresAt when the result expires, in epoch milliseconds
+    */
+   private record Validation(X509Certificate issuer, long expiresAt) {
+   }
+}
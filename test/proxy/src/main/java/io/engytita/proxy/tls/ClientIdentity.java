@@ -0,0 +1,63 @@
+package io.engytita.proxy.tls;
+
+import java.security.cert.Certificate;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * The identity of a client which presented a verified certificate.
+ *
+ * @param subject          the subject of the certificate
+ * @param alternativeNames the subject alternative names of the certificate, such as its DNS names and emails
+ * @param fingerprint      the SHA-256 fingerprint of the certificate
+ * @param chain            the certificate chain, the client certificate first
+ */
+public record ClientIdentity(String subject, List<String> alternativeNames, String fingerprint,
+                             List<X509Certificate> chain) {
+
+   /**
+    * Get the identity of the client of a session.
+    *
+    * @param session the session of the client connection
+    * @return the identity, null if the client presented no certificate
+    */
+   public static ClientIdentity of(SSLSession session) {
+      Certificate[] peerCertificates;
+      try {
+         peerCertificates = session.getPeerCertificates();
+      } catch (SSLPeerUnverifiedException e) {
+         return null;
+      }
+      List<X509Certificate> chain = new ArrayList<>(peerCertificates.length);
+      for (Certificate certificate : peerCertificates) {
+         chain.add((X509Certificate) certificate);
+      }
+      X509Certificate certificate = chain.get(0);
+      return new ClientIdentity(certificate.getSubjectX500Principal().getName(), alternativeNames(certificate),
+            CertUtil.fingerprint(certificate), List.copyOf(chain));
+   }
+
+   private static List<String> alternativeNames(X509Certificate certificate) {
+      List<String> names = new ArrayList<>();
+      try {
+         Collection<List<?>> alternativeNames = certificate.getSubjectAlternativeNames();
+         if (alternativeNames != null) {
+            for (List<?> name : alternativeNames) {
+               // The names without a string form, such as otherName, are only DER encoded
+               if (name.get(1) instanceof String value) {
+                  names.add(value);
+               }
+            }
+         }
+      } catch (CertificateParsingException e) {
+         // The subject is enough
+      }
+      return List.copyOf(names);
+   }
+}
@@ -0,0 +1,229 @@
+package io.engytita.proxy.tls;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.engytita.proxy.ProxyConfig;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Executor of the TLS handshake work, the delegated tasks of the engines and the private key operations, so the
+ * handshakes do not delay the connections the event loops are forwarding.
+ * <p>
+ * The client handshakes are admitted up to {@code maxPendingHandshakes} in flight, 0 for no limit, the connections
+ * beyond are closed before any certificate is minted or any key operation queued, which bounds the queue during a
+ * handshake storm.
+ * Without threads, the work runs on the event loops as before.
+ */
+public class HandshakeExecutor implements Executor {
+
+   private final ThreadPoolExecutor delegate;
+   private final int maxPendingHandshakes;
+
+   private final AtomicInteger pendingHandshakes = new AtomicInteger();
+   private final LongAdder admitted = new LongAdder();
+   private final LongAdder shed = new LongAdder();
+   private final LongAdder handshakes = new LongAdder();
+   private final LongAdder totalHandshakeTime = new LongAdder();
+   private final AtomicLong maxHandshakeTime = new AtomicLong();
+   private final LongAdder tasks = new LongAdder();
+   private final LongAdder inline = new LongAdder();
+   private final LongAdder totalWait = new LongAdder();
+   private final AtomicLong maxWait = new AtomicLong();
+   private final LongAdder totalRun = new LongAdder();
+
+   public HandshakeExecutor(ProxyConfig config) {
+      this(config.getTlsHandshakeThreads(), config.getTlsMaxPendingHandshakes());
+   }
+
+   public HandshakeExecutor(int threads, int maxPendingHandshakes) {
+      this.delegate = threads > 0
+            ? new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+            new DefaultThreadFactory("proxy-tls-handshake", true))
+            : null;
+      this.maxPendingHandshakes = maxPendingHandshakes;
+   }
+
+   /**
+    * @return {@code true} if the handshake work runs on this executor rather than on the event loops
+    */
+   public boolean isEnabled() {
+      return delegate != null;
+   }
+
+   @Override
+   public void execute(Runnable task) {
+      if (delegate == null) {
+         task.run();
+         return;
+      }
+      long queued = System.nanoTime();
+      try {
+         delegate.execute(() -> run(task, queued));
+      } catch (RejectedExecutionException e) {
+         // Shutting down, the handshake still completes on the calling thread
+         inline.increment();
+         task.run();
+      }
+   }
+
+   private void run(Runnable task, long queued) {
+      long start = System.nanoTime();
+      long wait = start - queued;
+      totalWait.add(wait);
+      maxWait.accumulateAndGet(wait, Math::max);
+      try {
+         task.run();
+      } finally {
+         tasks.increment();
+         totalRun.add(System.nanoTime() - start);
+      }
+   }
+
+   /**
+    * Admit a client handshake, unless too many are in flight. An admitted handshake is {@link #release released}
+    * once it completed or its connection closed.
+    *
+    * @return {@code true} if the handshake was admitted
+    */
+   public boolean tryAdmit() {
+      if (pendingHandshakes.incrementAndGet() > maxPendingHandshakes && maxPendingHandshakes > 0) {
+         pendingHandshakes.decrementAndGet();
+         shed.increment();
+         return false;
+      }
+      admitted.increment();
+      return true;
+   }
+
+   /**
+    * Release an admitted handshake.
+    *
+    * @param nanos the duration of the handshake, negative if it did not complete
+    */
+   public void release(long nanos) {
+      pendingHandshakes.decrementAndGet();
+      if (nanos >= 0) {
+         handshakes.increment();
+         totalHandshakeTime.add(nanos);
+         maxHandshakeTime.accumulateAndGet(nanos, Math::max);
+      }
+   }
+
+   /**
+    * @return the number of tasks waiting for a thread
+    */
+   public int queueDepth() {
+      return delegate == null ? 0 : delegate.getQueue().size();
+   }
+
+   /**
+    * @return the number of client handshakes in flight
+    */
+   public int pendingHandshakes() {
+      return pendingHandshakes.get();
+   }
+
+   /**
+    * @return the number of client handshakes admitted
+    */
+   public long admittedCount() {
+      return admitted.sum();
+   }
+
+   /**
+    * @return the number of client connections closed because too many handshakes were in flight
+    */
+   public long shedCount() {
+      return shed.sum();
+   }
+
+   /**
+    * @return the number of admitted client handshakes which completed
+    */
+   public long handshakeCount() {
+      return handshakes.sum();
+   }
+
+   /**
+    * @return the average duration of a client handshake, from its admission to its completion, in nanoseconds
+    */
+   public long averageHandshakeNanos() {
+      long count = handshakes.sum();
+      return count == 0 ? 0 : totalHandshakeTime.sum() / count;
+   }
+
+   /**
+    * @return the longest client handshake, in nanoseconds
+    */
+   public long maxHandshakeNanos() {
+      return maxHandshakeTime.get();
+   }
+
+   /**
+    * @return the number of tasks which ran on the executor threads
+    */
+   public long taskCount() {
+      return tasks.sum();
+   }
+
+   /**
+    * @return the number of tasks which ran on the calling thread because the executor was shut down
+    */
+   public long inlineCount() {
+      return inline.sum();
+   }
+
+   /**
+    * @return the average time a task waited for a thread, in nanoseconds
+    */
+   public long averageWaitNanos() {
+      long count = tasks.sum();
+      return count == 0 ? 0 : totalWait.sum() / count;
+   }
+
+   /**
+    * @return the longest time a task waited for a thread, in nanoseconds
+    */
+   public long maxWaitNanos() {
+      return maxWait.get();
+   }
+
+   /**
+    * @return the average run time of a task, in nanoseconds
+    */
+   public long averageRunNanos() {
+      long count = tasks.sum();
+      return count == 0 ? 0 : totalRun.sum() / count;
+   }
+
+   public void shutdown() {
+      if (delegate != null) {
+         delegate.shutdown();
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "HandshakeExecutor{" +
+            "queueDepth=" + queueDepth() +
+            ", pendingHandshakes=" + pendingHandshakes() +
+            ", admitted=" + admittedCount() +
+            ", shed=" + shedCount() +
+            ", handshakes=" + handshakeCount() +
+            ", averageHandshakeNanos=" + averageHandshakeNanos() +
+            ", maxHandshakeNanos=" + maxHandshakeNanos() +
+            ", tasks=" + taskCount() +
+            ", inline=" + inlineCount() +
+            ", averageWaitNanos=" + averageWaitNanos() +
+            ", maxWaitNanos=" + maxWaitNanos() +
+            ", averageRunNanos=" + averageRunNanos() +
+            '}';
+   }
+}
@@ -0,0 +1,115 @@
+package io.engytita.proxy.tls;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.engytita.proxy.ProxyConfig;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * The OCSP responses stapled to the handshakes of the clients, served from memory so the handshakes never wait on
+ * the configured responder.
+ * <p>
+ * The response of a host is fetched in the background the first time the host is seen, then again at every refresh
+ * while it is still seen. Until a response is known, the handshakes of the host are not stapled.
+ */
+public class OcspStapling {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(OcspStapling.class);
+
+   // The responses of the hosts seen recently, refreshed well before the usual validity of days
+   private static final int MAX_ENTRIES = 10_000;
+   private static final long REFRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+   private static final long IDLE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+   private final Function<String, byte[]> responder;
+   private final ScheduledExecutorService scheduler;
+   private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+   public OcspStapling(ProxyConfig config) {
+      this(config.getOcspResponder());
+   }
+
+   public OcspStapling(Function<String, byte[]> responder) {
+      this.responder = responder;
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("proxy-ocsp-stapling", true));
+      scheduler.scheduleWithFixedDelay(this::refresh, REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Get the response stapled for a host, without blocking.
+    *
+    * @param host the host
+    * @return the DER encoded response, null until it is known
+    */
+   public byte[] response(String host) {
+      Entry entry = entries.get(host);
+      if (entry == null) {
+         if (entries.size() < MAX_ENTRIES) {
+            entry = new Entry(host);
+            if (entries.putIfAbsent(host, entry) == null) {
+               fetch(entry);
+            }
+         }
+         return null;
+      }
+      entry.lastSeen = System.currentTimeMillis();
+      return entry.response;
+   }
+
+   private void refresh() {
+      long idleSince = System.currentTimeMillis() - IDLE_MILLIS;
+      entries.values().removeIf(entry -> entry.lastSeen < idleSince);
+      entries.values().forEach(this::load);
+   }
+
+   private void fetch(Entry entry) {
+      try {
+         scheduler.execute(() -> load(entry));
+      } catch (RejectedExecutionException e) {
+         // Shut down
+      }
+   }
+
+   private void load(Entry entry) {
+      try {
+         byte[] response = responder.apply(entry.host);
+         if (response != null) {
+            entry.response = response;
+         }
+      } catch (RuntimeException e) {
+         // The previous response is kept until it is idle
+         LOGGER.warn("Cannot get the OCSP response of {}: {}", entry.host, e.toString());
+      }
+   }
+
+   /**
+    * @return the number of hosts whose response is tracked
+    */
+   public int entryCount() {
+      return entries.size();
+   }
+
+   public void shutdown() {
+      scheduler.shutdownNow();
+   }
+
+   private static final class Entry {
+      final String host;
+      volatile byte[] response;
+      volatile long lastSeen = System.currentTimeMillis();
+
+      Entry(String host) {
+         this.host = host;
+      }
+   }
+}
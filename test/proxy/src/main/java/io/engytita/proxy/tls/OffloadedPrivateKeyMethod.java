@@ -0,0 +1,104 @@
+package io.engytita.proxy.tls;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import javax.crypto.Cipher;
+import javax.net.ssl.SSLEngine;
+
+import io.netty.handler.ssl.OpenSslAsyncPrivateKeyMethod;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Private key operations of the OpenSSL engine, signed on the handshake executor with the JCA rather than on the
+ * event loop. The engine suspends the handshake until the returned future completes.
+ */
+class OffloadedPrivateKeyMethod implements OpenSslAsyncPrivateKeyMethod {
+
+   private final PrivateKey key;
+   private final Executor executor;
+
+   OffloadedPrivateKeyMethod(PrivateKey key, Executor executor) {
+      this.key = key;
+      this.executor = executor;
+   }
+
+   @Override
+   public Future<byte[]> sign(SSLEngine engine, int signatureAlgorithm, byte[] input) {
+      return offload(() -> {
+         Signature signature = signature(signatureAlgorithm);
+         signature.initSign(key);
+         signature.update(input);
+         return signature.sign();
+      });
+   }
+
+   @Override
+   public Future<byte[]> decrypt(SSLEngine engine, byte[] input) {
+      // The engine removes the padding of the RSA key exchange
+      return offload(() -> {
+         Cipher cipher = Cipher.getInstance("RSA/ECB/NoPadding");
+         cipher.init(Cipher.DECRYPT_MODE, key);
+         return cipher.doFinal(input);
+      });
+   }
+
+   private Future<byte[]> offload(Callable<byte[]> operation) {
+      Promise<byte[]> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+      executor.execute(() -> {
+         try {
+            promise.setSuccess(operation.call());
+         } catch (Throwable t) {
+            promise.setFailure(t);
+         }
+      });
+      return promise;
+   }
+
+   private static Signature signature(int signatureAlgorithm) throws GeneralSecurityException {
+      // The constants are read from netty-tcnative, they cannot be switched on
+      if (signatureAlgorithm == SSL_SIGN_RSA_PKCS1_SHA1) {
+         return Signature.getInstance("SHA1withRSA");
+      } else if (signatureAlgorithm == SSL_SIGN_RSA_PKCS1_SHA256) {
+         return Signature.getInstance("SHA256withRSA");
+      } else if (signatureAlgorithm == SSL_SIGN_RSA_PKCS1_SHA384) {
+         return Signature.getInstance("SHA384withRSA");
+      } else if (signatureAlgorithm == SSL_SIGN_RSA_PKCS1_SHA512) {
+         return Signature.getInstance("SHA512withRSA");
+      } else if (signatureAlgorithm == SSL_SIGN_RSA_PKCS1_MD5_SHA1) {
+         // The input is the MD5 and SHA-1 digests of TLS 1.0 and 1.1, signed as is
+         return Signature.getInstance("NONEwithRSA");
+      } else if (signatureAlgorithm == SSL_SIGN_ECDSA_SHA1) {
+         return Signature.getInstance("SHA1withECDSA");
+      } else if (signatureAlgorithm == SSL_SIGN_ECDSA_SECP256R1_SHA256) {
+         return Signature.getInstance("SHA256withECDSA");
+      } else if (signatureAlgorithm == SSL_SIGN_ECDSA_SECP384R1_SHA384) {
+         return Signature.getInstance("SHA384withECDSA");
+      } else if (signatureAlgorithm == SSL_SIGN_ECDSA_SECP521R1_SHA512) {
+         return Signature.getInstance("SHA512withECDSA");
+      } else if (signatureAlgorithm == SSL_SIGN_RSA_PSS_RSAE_SHA256) {
+         return pss("SHA-256", MGF1ParameterSpec.SHA256, 32);
+      } else if (signatureAlgorithm == SSL_SIGN_RSA_PSS_RSAE_SHA384) {
+         return pss("SHA-384", MGF1ParameterSpec.SHA384, 48);
+      } else if (signatureAlgorithm == SSL_SIGN_RSA_PSS_RSAE_SHA512) {
+         return pss("SHA-512", MGF1ParameterSpec.SHA512, 64);
+      } else if (signatureAlgorithm == SSL_SIGN_ED25519) {
+         return Signature.getInstance("Ed25519");
+      }
+      throw new GeneralSecurityException("Unsupported signature algorithm " + signatureAlgorithm);
+   }
+
+   private static Signature pss(String digest, MGF1ParameterSpec mgf1, int saltLength)
+         throws GeneralSecurityException {
+      Signature signature = Signature.getInstance("RSASSA-PSS");
+      signature.setParameter(new PSSParameterSpec(digest, "MGF1", mgf1, saltLength, 1));
+      return signature;
+   }
+}
@@ -0,0 +1,365 @@
+package io.engytita.proxy.tls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.CRL;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.engytita.proxy.ProxyConfig;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Revocation status of the client certificates, served from memory so the handshakes never wait on the network.
+ * <p>
+ * The CRLs of the configured sources, files or URLs, are loaded at start and reloaded at every refresh. A CRL is
+ * only used once its signature was verified with the key of the issuer which signed the certificate, and it only
+ * tells a certificate is good until its next update. With OCSP, the status of a certificate is queried in the
+ * background the first time it is seen, from the responder of its authority information access, then again at
+ * every refresh while it is still seen. Until a status is known, the certificate is not considered revoked.
+ */
+public class RevocationStore {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(RevocationStore.class);
+
+   // The OCSP statuses of the certificates seen recently
+   private static final int MAX_OCSP_ENTRIES = 10_000;
+   private static final long OCSP_IDLE_MILLIS = TimeUnit.DAYS.toMillis(1);
+   private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+   public enum Status {
+      GOOD,
+      REVOKED,
+      UNKNOWN
+   }
+
+   private final List<URI> crlSources;
+   private final boolean ocsp;
+   private final ScheduledExecutorService scheduler;
+   private final HttpClient httpClient;
+
+   // Only loaded by the scheduler thread, then indexed by issuer for the handshakes
+   private final Map<URI, List<Crl>> sourceCrls = new HashMap<>();
+   private volatile Map<X500Principal, List<Crl>> crls = Map.of();
+   private final Map<String, OcspEntry> ocspEntries = new ConcurrentHashMap<>();
+
+   public RevocationStore(ProxyConfig config) {
+      this(config.getTlsClientCrlSources(), config.isTlsClientOcsp(), config.getTlsClientRevocationRefresh());
+   }
+
+   public RevocationStore(List<URI> crlSources, boolean ocsp, long refreshMillis) {
+      this.crlSources = crlSources;
+      this.ocsp = ocsp;
+      if (crlSources.isEmpty() && !ocsp) {
+         this.scheduler = null;
+         this.httpClient = null;
+         return;
+      }
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("proxy-revocation", true));
+      this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(TIMEOUT)
+            .build();
+      scheduler.execute(this::loadCrls);
+      if (refreshMillis > 0) {
+         scheduler.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * Get the revocation status of a certificate, without blocking.
+    *
+    * @param certificate the certificate
+    * @param issuer      the certificate of its issuer which signed it, null if unknown
+    * @return the status
+    */
+   public Status status(X509Certificate certificate, X509Certificate issuer) {
+      if (issuer == null) {
+         // Neither the CRLs nor the OCSP responses can be authenticated
+         return Status.UNKNOWN;
+      }
+      Status status = Status.UNKNOWN;
+      List<Crl> issuerCrls = crls.get(certificate.getIssuerX500Principal());
+      if (issuerCrls != null) {
+         Date now = new Date();
+         for (Crl crl : issuerCrls) {
+            if (!crl.isSignedBy(issuer)) {
+               continue;
+            }
+            if (crl.crl.isRevoked(certificate)) {
+               return Status.REVOKED;
+            }
+            if (crl.crl.getNextUpdate() == null || !crl.crl.getNextUpdate().before(now)) {
+               status = Status.GOOD;
+            }
+         }
+      }
+      if (!ocsp) {
+         return status;
+      }
+      // Keyed by the issuer too, the status is only valid for the issuer the request was made for
+      String key = CertUtil.fingerprint(certificate) + "/" + CertUtil.fingerprint(issuer);
+      OcspEntry entry = ocspEntries.get(key);
+      if (entry == null) {
+         String responder = ocspResponder(certificate);
+         if (responder != null && ocspEntries.size() < MAX_OCSP_ENTRIES) {
+            entry = new OcspEntry(certificate, issuer, URI.create(responder));
+            if (ocspEntries.putIfAbsent(key, entry) == null) {
+               query(entry);
+            }
+         }
+         return status;
+      }
+      entry.lastSeen = System.currentTimeMillis();
+      return entry.status == Status.UNKNOWN ? status : entry.status;
+   }
+
+   private void refresh() {
+      loadCrls();
+      long idleSince = System.currentTimeMillis() - OCSP_IDLE_MILLIS;
+      ocspEntries.values().removeIf(entry -> entry.lastSeen < idleSince);
+      ocspEntries.values().forEach(this::query);
+   }
+
+   private void loadCrls() {
+      if (crlSources.isEmpty()) {
+         return;
+      }
+      for (URI source : crlSources) {
+         try (InputStream in = open(source)) {
+            List<Crl> loaded = new ArrayList<>();
+            for (CRL crl : CertificateFactory.getInstance("X.509").generateCRLs(in)) {
+               loaded.add(new Crl((X509CRL) crl));
+            }
+            sourceCrls.put(source, loaded);
+         } catch (IOException | GeneralSecurityException | InterruptedException e) {
+            // The CRLs previously loaded from the source are kept
+            LOGGER.warn("Cannot load the CRLs of {}: {}", source, e.toString());
+         }
+      }
+      Map<X500Principal, List<Crl>> byIssuer = new HashMap<>();
+      for (List<Crl> loaded : sourceCrls.values()) {
+         for (Crl crl : loaded) {
+            byIssuer.computeIfAbsent(crl.crl.getIssuerX500Principal(), issuer -> new ArrayList<>()).add(crl);
+         }
+      }
+      crls = byIssuer;
+      LOGGER.debug("Loaded the CRLs of {} issuers", byIssuer.size());
+   }
+
+   private InputStream open(URI source) throws IOException, InterruptedException {
+      if ("file".equals(source.getScheme())) {
+         return Files.newInputStream(Path.of(source));
+      }
+      HttpRequest request = HttpRequest.newBuilder(source).timeout(TIMEOUT).GET().build();
+      return httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream()).body();
+   }
+
+   private void query(OcspEntry entry) {
+      byte[] request;
+      try {
+         CertificateID id = new CertificateID(
+               new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+               new JcaX509CertificateHolder(entry.issuer), entry.certificate.getSerialNumber());
+         request = new OCSPReqBuilder().addRequest(id).build().getEncoded();
+      } catch (Exception e) {
+         LOGGER.debug("Cannot create the OCSP request of {}: {}", entry.certificate.getSubjectX500Principal(),
+               e.toString());
+         return;
+      }
+      httpClient.sendAsync(HttpRequest.newBuilder(entry.responder)
+                        .timeout(TIMEOUT)
+                        .header("Content-Type", "application/ocsp-request")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                        .build(),
+                  HttpResponse.BodyHandlers.ofByteArray())
+            .whenComplete((response, cause) -> {
+               if (cause != null) {
+                  LOGGER.debug("OCSP query to {} failed: {}", entry.responder, cause.toString());
+                  return;
+               }
+               try {
+                  entry.status = parse(entry, response.body());
+               } catch (Exception e) {
+                  LOGGER.debug("Invalid OCSP response from {}: {}", entry.responder, e.toString());
+               }
+            });
+   }
+
+   private static Status parse(OcspEntry entry, byte[] body) throws Exception {
+      OCSPResp response = new OCSPResp(body);
+      if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+         return entry.status;
+      }
+      BasicOCSPResp basic = (BasicOCSPResp) response.getResponseObject();
+      if (!isSignedByIssuer(basic, entry.issuer)) {
+         throw new GeneralSecurityException("OCSP response not signed by the issuer");
+      }
+      Date now = new Date();
+      for (SingleResp single : basic.getResponses()) {
+         if (!single.getCertID().getSerialNumber().equals(entry.certificate.getSerialNumber())) {
+            continue;
+         }
+         if (single.getNextUpdate() != null && single.getNextUpdate().before(now)) {
+            return Status.UNKNOWN;
+         }
+         CertificateStatus status = single.getCertStatus();
+         if (status == CertificateStatus.GOOD) {
+            return Status.GOOD;
+         }
+         return status instanceof RevokedStatus ? Status.REVOKED : Status.UNKNOWN;
+      }
+      return Status.UNKNOWN;
+   }
+
+   /**
+    * The issuer signs the response, or a responder it delegated with a certificate for OCSP signing.
+    */
+   private static boolean isSignedByIssuer(BasicOCSPResp basic, X509Certificate issuer) throws Exception {
+      JcaContentVerifierProviderBuilder verifiers = new JcaContentVerifierProviderBuilder();
+      if (basic.isSignatureValid(verifiers.build(issuer.getPublicKey()))) {
+         return true;
+      }
+      for (X509CertificateHolder holder : basic.getCerts()) {
+         X509Certificate responder = new JcaX509CertificateConverter().getCertificate(holder);
+         List<String> usages = responder.getExtendedKeyUsage();
+         if (usages != null && usages.contains(KeyPurposeId.id_kp_OCSPSigning.getId())
+               && holder.isSignatureValid(verifiers.build(issuer.getPublicKey()))
+               && basic.isSignatureValid(verifiers.build(holder))) {
+            responder.checkValidity();
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static String ocspResponder(X509Certificate certificate) {
+      byte[] extension = certificate.getExtensionValue(Extension.authorityInfoAccess.getId());
+      if (extension == null) {
+         return null;
+      }
+      AuthorityInformationAccess access = AuthorityInformationAccess.getInstance(
+            ASN1OctetString.getInstance(extension).getOctets());
+      for (AccessDescription description : access.getAccessDescriptions()) {
+         GeneralName location = description.getAccessLocation();
+         if (AccessDescription.id_ad_ocsp.equals(description.getAccessMethod())
+               && location.getTagNo() == GeneralName.uniformResourceIdentifier) {
+            return location.getName().toString();
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @return the number of CRLs loaded
+    */
+   public int crlCount() {
+      int count = 0;
+      for (List<Crl> issuerCrls : crls.values()) {
+         count += issuerCrls.size();
+      }
+      return count;
+   }
+
+   /**
+    * @return the number of certificates whose OCSP status is tracked
+    */
+   public int ocspEntryCount() {
+      return ocspEntries.size();
+   }
+
+   public void shutdown() {
+      if (scheduler != null) {
+         scheduler.shutdownNow();
+      }
+   }
+
+   /**
+    * A loaded CRL, with the key of the last issuer it was verified with, so the handshakes do not verify it again.
+    */
+   private static final class Crl {
+      final X509CRL crl;
+      volatile PublicKey verifiedKey;
+      volatile PublicKey rejectedKey;
+
+      Crl(X509CRL crl) {
+         this.crl = crl;
+      }
+
+      boolean isSignedBy(X509Certificate issuer) {
+         PublicKey key = issuer.getPublicKey();
+         if (key.equals(verifiedKey)) {
+            return true;
+         }
+         if (key.equals(rejectedKey)) {
+            return false;
+         }
+         try {
+            crl.verify(key);
+            verifiedKey = key;
+            return true;
+         } catch (GeneralSecurityException e) {
+            LOGGER.warn("CRL of {} not signed by {}: {}", crl.getIssuerX500Principal(),
+                  issuer.getSubjectX500Principal(), e.toString());
+            rejectedKey = key;
+            return false;
+         }
+      }
+   }
+
+   private static final class OcspEntry {
+      final X509Certificate certificate;
+      final X509Certificate issuer;
+      final URI responder;
+      volatile Status status = Status.UNKNOWN;
+      volatile long lastSeen = System.currentTimeMillis();
+
+      OcspEntry(X509Certificate certificate, X509Certificate issuer, URI responder) {
+         this.certificate = certificate;
+         this.issuer = issuer;
+         this.responder = responder;
+      }
+   }
+}
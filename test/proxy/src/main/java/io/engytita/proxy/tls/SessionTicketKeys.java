@@ -0,0 +1,98 @@
+package io.engytita.proxy.tls;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.engytita.proxy.ProxyConfig;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslProvider;
+
+/**
+ * The session ticket keys of the contexts presented to the clients, with the OpenSSL engine. The JDK engine manages
+ * and rotates its own keys.
+ * <p>
+ * The configured keys are used as is, they are shared with the other proxies resuming the same sessions. Otherwise,
+ * a random key is generated and rotated at the configured interval: the new key encrypts the new tickets and the
+ * previous ones still decrypt the tickets they issued, until they fall off the list.
+ */
+public class SessionTicketKeys {
+
+   // The current key and the previous ones which still decrypt
+   private static final int MAX_KEYS = 3;
+
+   private final SecureRandom random = new SecureRandom();
+   private final long rotationNanos;
+   private volatile OpenSslSessionTicketKey[] keys;
+   private volatile long nextRotation;
+
+   public SessionTicketKeys(ProxyConfig config) {
+      if (TlsUtil.tlsEngine(config) == SslProvider.JDK) {
+         // The keys need the classes of netty-tcnative
+         keys = null;
+         rotationNanos = 0;
+      } else if (!config.getTlsTicketKeys().isEmpty()) {
+         keys = TlsUtil.ticketKeys(config.getTlsTicketKeys());
+         rotationNanos = 0;
+      } else {
+         keys = new OpenSslSessionTicketKey[]{newKey()};
+         rotationNanos = TimeUnit.MILLISECONDS.toNanos(config.getTlsTicketKeyRotation());
+         nextRotation = System.nanoTime() + rotationNanos;
+      }
+   }
+
+   /**
+    * @return the current keys, the first one encrypts the new tickets, null with the JDK engine
+    */
+   public OpenSslSessionTicketKey[] keys() {
+      return keys;
+   }
+
+   /**
+    * Set the current keys to a context.
+    *
+    * @param context the ssl context
+    */
+   public void apply(SslContext context) {
+      if (keys != null && context.sessionContext() instanceof OpenSslSessionContext sessionContext) {
+         sessionContext.setTicketKeys(keys);
+      }
+   }
+
+   /**
+    * Rotate the keys once the interval elapsed, setting them to the contexts.
+    *
+    * @param contextCache the cache of the contexts presented to the clients
+    */
+   public void rotateIfDue(SslContextCache contextCache) {
+      if (rotationNanos <= 0 || System.nanoTime() - nextRotation < 0) {
+         return;
+      }
+      synchronized (this) {
+         if (System.nanoTime() - nextRotation < 0) {
+            return;
+         }
+         List<OpenSslSessionTicketKey> rotated = new ArrayList<>(MAX_KEYS);
+         rotated.add(newKey());
+         for (int i = 0; i < keys.length && rotated.size() < MAX_KEYS; i++) {
+            rotated.add(keys[i]);
+         }
+         keys = rotated.toArray(new OpenSslSessionTicketKey[0]);
+         nextRotation = System.nanoTime() + rotationNanos;
+      }
+      contextCache.forEachServerContext(this::apply);
+   }
+
+   private OpenSslSessionTicketKey newKey() {
+      byte[] name = new byte[OpenSslSessionTicketKey.NAME_SIZE];
+      byte[] hmacKey = new byte[OpenSslSessionTicketKey.HMAC_KEY_SIZE];
+      byte[] aesKey = new byte[OpenSslSessionTicketKey.AES_KEY_SIZE];
+      random.nextBytes(name);
+      random.nextBytes(hmacKey);
+      random.nextBytes(aesKey);
+      return new OpenSslSessionTicketKey(name, hmacKey, aesKey);
+   }
+}
@@ -26,6 +26,7 @@ import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2Headers;
 
 public class SimpleUnsafeAccessSupport implements UnsafeAccessSupport {
 
@@ -76,6 +77,13 @@ public class SimpleUnsafeAccessSupport implements UnsafeAccessSupport {
          };
       }
 
+      @Override
+      public boolean interceptsHttp2Request(ConnectionContext context, Http2Headers headers) {
+         // Only the origins to ask about or denied answer from the proxy
+         UnsafeAccess access = context.getServerAddr() != null ? accepted.get(context.getServerAddr()) : null;
+         return access != null && access != UnsafeAccess.ACCEPT;
+      }
+
       @Override
       public Optional<Http2FramesWrapper> onHttp2Request(ConnectionContext context, Http2FramesWrapper request) {
          if (context.getServerAddr() == null || !accepted.containsKey(context.getServerAddr())) {
@@ -0,0 +1,151 @@
+package io.engytita.proxy.tls;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.net.ssl.SSLException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.engytita.proxy.Address;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+
+/**
+ * Caches the {@link SslContext}s, building a context sets up its key manager, trust manager and cipher suites, which
+ * costs more than the handshake itself.
+ * <p>
+ * The server contexts are keyed by the name of the certificate and the ALPN protocols, they expire with the
+ * certificates of the {@link CertManager}. The client contexts are keyed by the server address and the ALPN
+ * protocols, each server keeps the session cache of its context.
+ * <p>
+ * The contexts of the OpenSSL engine are reference counted, the cache holds one reference, released on eviction, and
+ * each lookup returns a retained context which the caller releases once its engine was created.
+ */
+public class SslContextCache {
+
+   private static final int SERVER_CACHE_SIZE = 4000;
+   private static final int CLIENT_CACHE_SIZE = 1000;
+
+   private final Cache<ServerKey, SslContext> serverContexts = Caffeine.newBuilder()
+         .expireAfterWrite(1, TimeUnit.DAYS)
+         .maximumSize(SERVER_CACHE_SIZE)
+         .removalListener(SslContextCache.<ServerKey>release())
+         .recordStats()
+         .build();
+   private final Cache<ClientKey, SslContext> clientContexts = Caffeine.newBuilder()
+         .expireAfterAccess(1, TimeUnit.HOURS)
+         .maximumSize(CLIENT_CACHE_SIZE)
+         .removalListener(SslContextCache.<ClientKey>release())
+         .recordStats()
+         .build();
+
+   /**
+    * Get the context presented to the clients connecting to a host, building it if needed.
+    *
+    * @param certName      the name of the certificate, a host or a wildcard
+    * @param alpnProtocols the ALPN protocols
+    * @param builder       builds the context
+    * @return the ssl context, to release once used
+    * @throws SSLException if the context cannot be built
+    */
+   public SslContext serverContext(String certName, String[] alpnProtocols, ContextBuilder builder)
+         throws SSLException {
+      return get(serverContexts, new ServerKey(certName, List.of(alpnProtocols)), builder);
+   }
+
+   /**
+    * Get the context used to connect to a server, building it if needed.
+    *
+    * @param server        the server address
+    * @param alpnProtocols the ALPN protocols
+    * @param builder       builds the context
+    * @return the ssl context, to release once used
+    * @throws SSLException if the context cannot be built
+    */
+   public SslContext clientContext(Address server, String[] alpnProtocols, ContextBuilder builder)
+         throws SSLException {
+      return get(clientContexts, new ClientKey(server, List.of(alpnProtocols)), builder);
+   }
+
+   private static <K> SslContext get(Cache<K, SslContext> cache, K key, ContextBuilder builder)
+         throws SSLException {
+      while (true) {
+         SslContext context;
+         try {
+            context = cache.get(key, ignore -> {
+               try {
+                  return builder.build();
+               } catch (SSLException e) {
+                  throw new UncheckedIOException(e);
+               }
+            });
+         } catch (UncheckedIOException e) {
+            throw (SSLException) e.getCause();
+         }
+         if (!(context instanceof ReferenceCounted referenceCounted)) {
+            return context;
+         }
+         try {
+            referenceCounted.retain();
+            return context;
+         } catch (IllegalReferenceCountException e) {
+            // Evicted and released meanwhile, the next lookup builds a new one
+            cache.asMap().remove(key, context);
+         }
+      }
+   }
+
+   /**
+    * Apply an action to the cached contexts presented to the clients, each context is retained during its action.
+    *
+    * @param action the action
+    */
+   public void forEachServerContext(Consumer<SslContext> action) {
+      for (SslContext context : serverContexts.asMap().values()) {
+         if (context instanceof ReferenceCounted referenceCounted) {
+            try {
+               referenceCounted.retain();
+            } catch (IllegalReferenceCountException e) {
+               // Evicted and released meanwhile
+               continue;
+            }
+         }
+         try {
+            action.accept(context);
+         } finally {
+            ReferenceCountUtil.release(context);
+         }
+      }
+   }
+
+   private static <K> RemovalListener<K, SslContext> release() {
+      return (key, context, cause) -> ReferenceCountUtil.release(context);
+   }
+
+   public CacheStats serverStats() {
+      return serverContexts.stats();
+   }
+
+   public CacheStats clientStats() {
+      return clientContexts.stats();
+   }
+
+   @FunctionalInterface
+   public interface ContextBuilder {
+      SslContext build() throws SSLException;
+   }
+
+   private record ServerKey(String certName, List<String> alpnProtocols) {
+   }
+
+   private record ClientKey(Address server, List<String> alpnProtocols) {
+   }
+}
@@ -0,0 +1,192 @@
+package io.engytita.proxy.tls;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import javax.net.ssl.SSLParameters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.handler.ssl.CipherSuiteFilter;
+import io.netty.handler.ssl.ReferenceCountedOpenSslContext;
+import io.netty.handler.ssl.SslContext;
+
+/**
+ * The cipher suites and the named groups of the TLS connections, ordered for the hardware of the proxy.
+ * <p>
+ * AES-GCM is the fastest AEAD with the AES instructions of the CPU, ChaCha20-Poly1305 is faster without them. The
+ * configured suites are a preference rather than a restriction, the defaults of the engine follow them so the peers
+ * supporting none of them still connect.
+ */
+public final class TlsCipherPolicy {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(TlsCipherPolicy.class);
+
+   // SSLParameters.setNamedGroups since Java 20, and SSLContext.setCurvesList of netty-tcnative, null if missing
+   private static final MethodHandle SET_NAMED_GROUPS = findSetNamedGroups();
+   private static final MethodHandle SET_CURVES_LIST = findSetCurvesList();
+   private static final AtomicBoolean UNSUPPORTED_LOGGED = new AtomicBoolean();
+
+   private static final List<String> AES_GCM = List.of(
+         "TLS_AES_128_GCM_SHA256",
+         "TLS_AES_256_GCM_SHA384",
+         "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+         "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+         "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+         "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384");
+   private static final List<String> CHACHA20 = List.of(
+         "TLS_CHACHA20_POLY1305_SHA256",
+         "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+         "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256");
+
+   /**
+    * Keeps the configured suites supported by the engine in their order, followed by the defaults of the engine.
+    */
+   public static final CipherSuiteFilter PREFERRED_FIRST = (ciphers, defaultCiphers, supportedCiphers) -> {
+      Set<String> filtered = new LinkedHashSet<>();
+      if (ciphers != null) {
+         for (String cipher : ciphers) {
+            if (supportedCiphers.contains(cipher)) {
+               filtered.add(cipher);
+            }
+         }
+      }
+      filtered.addAll(defaultCiphers);
+      return filtered.toArray(new String[0]);
+   };
+
+   private static volatile Boolean aesAcceleration;
+
+   private TlsCipherPolicy() {
+   }
+
+   /**
+    * @return the AEAD suites, AES-GCM first with the AES instructions and ChaCha20-Poly1305 first otherwise
+    */
+   public static List<String> preferredCiphers() {
+      List<String> ciphers = new ArrayList<>(AES_GCM.size() + CHACHA20.size());
+      if (hasAesAcceleration()) {
+         ciphers.addAll(AES_GCM);
+         ciphers.addAll(CHACHA20);
+      } else {
+         ciphers.addAll(CHACHA20);
+         ciphers.addAll(AES_GCM);
+      }
+      return ciphers;
+   }
+
+   /**
+    * Tell whether the CPU has the AES instructions, from the flags of {@code /proc/cpuinfo}. When they cannot be
+    * read, the x86 and ARM 64 bits CPUs are assumed to have them, they all had for a decade.
+    *
+    * @return {@code true} if AES is accelerated
+    */
+   public static boolean hasAesAcceleration() {
+      Boolean accelerated = aesAcceleration;
+      if (accelerated == null) {
+         accelerated = readCpuFlags();
+         aesAcceleration = accelerated;
+      }
+      return accelerated;
+   }
+
+   private static boolean readCpuFlags() {
+      try (Stream<String> lines = Files.lines(Path.of("/proc/cpuinfo"))) {
+         // "flags" on x86, "Features" on ARM
+         return lines.filter(line -> line.startsWith("flags") || line.startsWith("Features"))
+               .findFirst()
+               .map(line -> List.of(line.substring(line.indexOf(':') + 1).trim().split("\\s+")).contains("aes"))
+               .orElseGet(TlsCipherPolicy::isCommonArch);
+      } catch (IOException | RuntimeException e) {
+         return isCommonArch();
+      }
+   }
+
+   private static boolean isCommonArch() {
+      String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+      return arch.equals("amd64") || arch.equals("x86_64") || arch.equals("aarch64");
+   }
+
+   /**
+    * Set the named groups of the key exchanges of the JDK engines, in preference order. Only supported from Java 20,
+    * the engine defaults apply on the older runtimes.
+    *
+    * @param parameters  the parameters of an engine, set back to the engine by the caller
+    * @param namedGroups the named groups, null or empty for the engine defaults
+    */
+   public static void applyNamedGroups(SSLParameters parameters, List<String> namedGroups) {
+      if (namedGroups == null || namedGroups.isEmpty()) {
+         return;
+      }
+      if (SET_NAMED_GROUPS == null) {
+         if (UNSUPPORTED_LOGGED.compareAndSet(false, true)) {
+            LOGGER.warn("The named groups need Java 20 with the JDK engine, the engine defaults apply");
+         }
+         return;
+      }
+      try {
+         SET_NAMED_GROUPS.invokeExact(parameters, namedGroups.toArray(new String[0]));
+      } catch (Throwable e) {
+         throw new IllegalArgumentException("Invalid named groups " + namedGroups, e);
+      }
+   }
+
+   /**
+    * Set the named groups of the key exchanges of an OpenSSL context, in preference order. The JDK contexts are left
+    * as is, their engines are set one by one.
+    *
+    * @param context     the context
+    * @param namedGroups the named groups, null or empty for the engine defaults
+    */
+   // The pointer is the only access to the native context until netty has an option for the groups
+   @SuppressWarnings("deprecation")
+   public static void applyNamedGroups(SslContext context, List<String> namedGroups) {
+      if (namedGroups == null || namedGroups.isEmpty() || SET_CURVES_LIST == null
+            || !(context instanceof ReferenceCountedOpenSslContext openSslContext)) {
+         return;
+      }
+      boolean applied;
+      try {
+         applied = (boolean) SET_CURVES_LIST.invokeExact(openSslContext.sslCtxPointer(),
+               namedGroups.toArray(new String[0]));
+      } catch (Throwable e) {
+         applied = false;
+      }
+      if (!applied && UNSUPPORTED_LOGGED.compareAndSet(false, true)) {
+         LOGGER.warn("OpenSSL does not support the named groups {}, the engine defaults apply", namedGroups);
+      }
+   }
+
+   private static MethodHandle findSetNamedGroups() {
+      try {
+         return MethodHandles.publicLookup().findVirtual(SSLParameters.class, "setNamedGroups",
+               MethodType.methodType(void.class, String[].class));
+      } catch (ReflectiveOperationException e) {
+         return null;
+      }
+   }
+
+   private static MethodHandle findSetCurvesList() {
+      try {
+         // Only initialized once an OpenSSL context exists, with the native library loaded
+         Class<?> sslContext = Class.forName("io.netty.internal.tcnative.SSLContext", false,
+               TlsCipherPolicy.class.getClassLoader());
+         return MethodHandles.publicLookup().findStatic(sslContext, "setCurvesList",
+               MethodType.methodType(boolean.class, long.class, String[].class));
+      } catch (ReflectiveOperationException | LinkageError e) {
+         return null;
+      }
+   }
+}
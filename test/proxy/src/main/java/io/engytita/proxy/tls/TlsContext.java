@@ -4,6 +4,8 @@ import static java.util.Collections.emptyList;
 
 import java.util.List;
 
+import javax.net.ssl.SSLSession;
+
 import io.engytita.proxy.exception.TlsException;
 import io.netty.util.concurrent.Promise;
 
@@ -13,6 +15,11 @@ public class TlsContext {
    private UnsafeAccess unsafeAccess = UnsafeAccess.ACCEPT;
    private Promise<List<String>> protocols;
    private Promise<String> protocol;
+   // Negotiated with the client and with the server, null until their handshake completed
+   private volatile String clientTlsProtocol;
+   private volatile String clientCipherSuite;
+   private volatile String serverTlsProtocol;
+   private volatile String serverCipherSuite;
 
    public TlsContext protocols(Promise<List<String>> protocols) {
       this.protocols = protocols;
@@ -68,6 +75,42 @@ public class TlsContext {
       return protocol.isDone();
    }
 
+   /**
+    * Record the TLS protocol and the cipher suite negotiated with the client.
+    *
+    * @param session the session of the client connection
+    */
+   public void clientHandshake(SSLSession session) {
+      clientTlsProtocol = session.getProtocol();
+      clientCipherSuite = session.getCipherSuite();
+   }
+
+   /**
+    * Record the TLS protocol and the cipher suite negotiated with the server.
+    *
+    * @param session the session of the server connection
+    */
+   public void serverHandshake(SSLSession session) {
+      serverTlsProtocol = session.getProtocol();
+      serverCipherSuite = session.getCipherSuite();
+   }
+
+   public String clientTlsProtocol() {
+      return clientTlsProtocol;
+   }
+
+   public String clientCipherSuite() {
+      return clientCipherSuite;
+   }
+
+   public String serverTlsProtocol() {
+      return serverTlsProtocol;
+   }
+
+   public String serverCipherSuite() {
+      return serverCipherSuite;
+   }
+
    public boolean isEnabled() {
       return enabled;
    }
@@ -0,0 +1,72 @@
+package io.engytita.proxy.tls;
+
+import java.util.List;
+import java.util.Locale;
+
+import io.engytita.proxy.Address;
+
+/**
+ * Selects by their SNI the TLS connections which are forwarded encrypted instead of being intercepted.
+ * <p>
+ * The host pattern is a host, a wildcard such as {@code *.example.com} which matches the subdomains at any depth, or
+ * {@code *} which matches all the hosts. In transparent mode, the connection goes to the backend of the rule if set,
+ * to the SNI host otherwise. Behind a CONNECT, the client chose the backend and the backend of the rule is ignored.
+ *
+ * @param hostPattern the host pattern
+ * @param backend     the backend, may be null
+ */
+public record TlsPassthroughRule(String hostPattern, Address backend) {
+
+   public TlsPassthroughRule {
+      hostPattern = hostPattern.toLowerCase(Locale.ROOT);
+   }
+
+   public TlsPassthroughRule(String hostPattern) {
+      this(hostPattern, null);
+   }
+
+   /**
+    * Parse a rule, a host pattern optionally followed by {@code =} and the backend {@code host:port}.
+    *
+    * @param rule the rule
+    * @return the parsed rule
+    */
+   public static TlsPassthroughRule parse(String rule) {
+      int separator = rule.indexOf('=');
+      if (separator < 0) {
+         return new TlsPassthroughRule(rule.trim());
+      }
+      return new TlsPassthroughRule(rule.substring(0, separator).trim(),
+            Address.resolve(rule.substring(separator + 1).trim(), 443));
+   }
+
+   /**
+    * Find the first rule matching a host.
+    *
+    * @param rules the rules
+    * @param host  the SNI host
+    * @return the rule, null if none matches
+    */
+   public static TlsPassthroughRule find(List<TlsPassthroughRule> rules, String host) {
+      for (int i = 0; i < rules.size(); i++) {
+         TlsPassthroughRule rule = rules.get(i);
+         if (rule.matches(host)) {
+            return rule;
+         }
+      }
+      return null;
+   }
+
+   public boolean matches(String host) {
+      if (hostPattern.equals("*")) {
+         return true;
+      }
+      if (hostPattern.startsWith("*.")) {
+         // The suffix keeps its leading dot, so *.example.com does not match badexample.com
+         String suffix = hostPattern.substring(1);
+         return host.length() > suffix.length() && host.regionMatches(true, host.length() - suffix.length(),
+               suffix, 0, suffix.length());
+      }
+      return hostPattern.equalsIgnoreCase(host);
+   }
+}
@@ -0,0 +1,85 @@
+package io.engytita.proxy.tls;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Handshakes of the client and the server connections, aggregated over all the connections, telling apart the full
+ * handshakes from the resumed sessions.
+ * <p>
+ * A session is resumed when it was created before its handshake started, from a ticket or the session cache.
+ */
+public class TlsSessionStats {
+
+   private final LongAdder clientHandshakes = new LongAdder();
+   private final LongAdder clientResumptions = new LongAdder();
+   private final LongAdder serverHandshakes = new LongAdder();
+   private final LongAdder serverResumptions = new LongAdder();
+
+   /**
+    * Record a handshake with a client.
+    *
+    * @param resumed {@code true} if the session was resumed
+    */
+   public void recordClient(boolean resumed) {
+      clientHandshakes.increment();
+      if (resumed) {
+         clientResumptions.increment();
+      }
+   }
+
+   /**
+    * Record a handshake with a server.
+    *
+    * @param resumed {@code true} if the session was resumed
+    */
+   public void recordServer(boolean resumed) {
+      serverHandshakes.increment();
+      if (resumed) {
+         serverResumptions.increment();
+      }
+   }
+
+   public long clientHandshakeCount() {
+      return clientHandshakes.sum();
+   }
+
+   public long clientResumptionCount() {
+      return clientResumptions.sum();
+   }
+
+   /**
+    * @return the share of the client handshakes which resumed a session, between 0 and 1
+    */
+   public double clientResumptionRate() {
+      return rate(clientResumptions.sum(), clientHandshakes.sum());
+   }
+
+   public long serverHandshakeCount() {
+      return serverHandshakes.sum();
+   }
+
+   public long serverResumptionCount() {
+      return serverResumptions.sum();
+   }
+
+   /**
+    * @return the share of the server handshakes which resumed a session, between 0 and 1
+    */
+   public double serverResumptionRate() {
+      return rate(serverResumptions.sum(), serverHandshakes.sum());
+   }
+
+   private static double rate(long resumptions, long handshakes) {
+      return handshakes == 0 ? 0 : (double) resumptions / handshakes;
+   }
+
+   @Override
+   public String toString() {
+      return "TlsSessionStats{" +
+            "clientHandshakes=" + clientHandshakeCount() +
+            ", clientResumptions=" + clientResumptionCount() +
+            ", serverHandshakes=" + serverHandshakeCount() +
+            ", serverResumptions=" + serverResumptionCount() +
+            '}';
+   }
+}
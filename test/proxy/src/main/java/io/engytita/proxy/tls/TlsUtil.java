@@ -4,24 +4,46 @@ import static io.netty.handler.ssl.ApplicationProtocolNames.HTTP_1_1;
 import static javax.net.ssl.TrustManagerFactory.getDefaultAlgorithm;
 
 import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManagerFactory;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.engytita.proxy.Address;
 import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.ProxyConfig;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.ssl.ApplicationProtocolConfig;
 import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
 import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
 import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslContextOption;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.handler.ssl.util.TrustManagerFactoryWrapper;
+import io.netty.util.ReferenceCountUtil;
 
 public final class TlsUtil {
 
+   private static final Logger LOGGER = LoggerFactory.getLogger(TlsUtil.class);
+
    private static final TrustManagerFactory TRUST_MANAGER_FACTORY;
+   private static final AtomicBoolean FALLBACK_LOGGED = new AtomicBoolean();
 
    static {
       TrustManagerFactory trustManagerFactory = null;
@@ -37,35 +59,255 @@ public final class TlsUtil {
    private TlsUtil() {
    }
 
-   public static SslContext ctxForClient(ConnectionContext context) throws SSLException {
-      SslContextBuilder builder = SslContextBuilder
-            .forClient()
+   /**
+    * Select the TLS engine, OpenSSL when netty-tcnative is available unless the JDK was configured, and the JDK
+    * otherwise.
+    *
+    * @param config the proxy config
+    * @return the TLS engine
+    */
+   public static SslProvider tlsEngine(ProxyConfig config) {
+      SslProvider engine = config.getTlsEngine();
+      if (engine == SslProvider.JDK) {
+         return engine;
+      }
+      if (OpenSsl.isAvailable()) {
+         return engine == null ? SslProvider.OPENSSL_REFCNT : engine;
+      }
+      if (engine != null && FALLBACK_LOGGED.compareAndSet(false, true)) {
+         LOGGER.warn("{} is not available, the JDK TLS engine is used: {}", engine,
+               OpenSsl.unavailabilityCause().toString());
+      }
+      return SslProvider.JDK;
+   }
+
+   /**
+    * Create the handler of a client connection, with a certificate for the requested host.
+    *
+    * @param context the connection context
+    * @param alloc   the allocator
+    * @return the ssl handler
+    * @throws SSLException if the context cannot be created
+    */
+   public static SslHandler serverHandler(ConnectionContext context, ByteBufAllocator alloc) throws SSLException {
+      context.master().sessionTicketKeys().rotateIfDue(context.master().sslContextCache());
+      SslContext sslContext = ctxForServer(context);
+      HandshakeExecutor handshakeExecutor = context.master().handshakeExecutor();
+      SslHandler handler;
+      try {
+         handler = handshakeExecutor.isEnabled()
+               ? sslContext.newHandler(alloc, handshakeExecutor)
+               : sslContext.newHandler(alloc);
+      } finally {
+         // The engine holds its own reference to the context
+         ReferenceCountUtil.release(sslContext);
+      }
+      // Set either way, the JDK defaults to the order of the server and OpenSSL to the order of the client
+      SSLParameters parameters = handler.engine().getSSLParameters();
+      parameters.setUseCipherSuitesOrder(context.config().isTlsServerCipherPreference());
+      if (tlsEngine(context.config()) == SslProvider.JDK) {
+         // The OpenSSL contexts already have them
+         TlsCipherPolicy.applyNamedGroups(parameters, context.config().getTlsNamedGroups());
+      }
+      handler.engine().setSSLParameters(parameters);
+      OcspStapling ocspStapling = context.master().ocspStapling();
+      if (ocspStapling != null && handler.engine() instanceof ReferenceCountedOpenSslEngine engine) {
+         byte[] response = ocspStapling.response(context.getServerAddr().getHost());
+         if (response != null) {
+            engine.setOcspResponse(response);
+         }
+      }
+      return recordHandshake(handler, context.master().tlsSessionStats()::recordClient, session -> {
+         context.tlsCtx().clientHandshake(session);
+         ClientCertVerifier clientCertVerifier = context.master().clientCertVerifier();
+         if (clientCertVerifier != null) {
+            ClientIdentity identity = ClientIdentity.of(session);
+            // A resumed session skipped the verification, the certificate may have been revoked since
+            if (identity != null && clientCertVerifier.isRevoked(identity.chain())) {
+               LOGGER.debug("{} : client certificate revoked, {}", context, identity.subject());
+               context.clientChannel().close();
+               return;
+            }
+            context.withClientIdentity(identity);
+         }
+      });
+   }
+
+   /**
+    * Create the handler of a server connection, offering the ALPN protocols of the client.
+    *
+    * @param context the connection context
+    * @param alloc   the allocator
+    * @return the ssl handler
+    * @throws SSLException if the context cannot be created
+    */
+   public static SslHandler clientHandler(ConnectionContext context, ByteBufAllocator alloc) throws SSLException {
+      return clientHandler(context, alloc, alpnProtocols(context.tlsCtx()));
+   }
+
+   /**
+    * Create the handler of a server connection which only offers HTTP/1.1, whatever the client negotiated.
+    *
+    * @param context the connection context
+    * @param alloc   the allocator
+    * @return the ssl handler
+    * @throws SSLException if the context cannot be created
+    */
+   public static SslHandler http1ClientHandler(ConnectionContext context, ByteBufAllocator alloc)
+         throws SSLException {
+      return clientHandler(context, alloc, new String[]{HTTP_1_1});
+   }
+
+   private static SslHandler clientHandler(ConnectionContext context, ByteBufAllocator alloc,
+                                           String[] alpnProtocols) throws SSLException {
+      Address address = context.getServerAddr();
+      SslContext sslContext = ctxForClient(context, alpnProtocols);
+      HandshakeExecutor handshakeExecutor = context.master().handshakeExecutor();
+      SslHandler handler;
+      try {
+         // The host and port key the session cache of the context
+         handler = handshakeExecutor.isEnabled()
+               ? sslContext.newHandler(alloc, address.getHost(), address.getPort(), handshakeExecutor)
+               : sslContext.newHandler(alloc, address.getHost(), address.getPort());
+      } finally {
+         ReferenceCountUtil.release(sslContext);
+      }
+      List<String> namedGroups = context.config().getTlsNamedGroups();
+      if (namedGroups != null && !namedGroups.isEmpty() && tlsEngine(context.config()) == SslProvider.JDK) {
+         SSLParameters parameters = handler.engine().getSSLParameters();
+         TlsCipherPolicy.applyNamedGroups(parameters, namedGroups);
+         handler.engine().setSSLParameters(parameters);
+      }
+      return recordHandshake(handler, context.master().tlsSessionStats()::recordServer,
+            context.tlsCtx()::serverHandshake);
+   }
+
+   private static SslHandler recordHandshake(SslHandler handler, Consumer<Boolean> recorder,
+                                             Consumer<SSLSession> negotiated) {
+      long start = System.currentTimeMillis();
+      handler.handshakeFuture().addListener(future -> {
+         if (future.isSuccess()) {
+            SSLSession session = handler.engine().getSession();
+            // A resumed session keeps the creation time of the handshake which created it
+            recorder.accept(session.getCreationTime() < start);
+            negotiated.accept(session);
+         }
+      });
+      return handler;
+   }
+
+   /**
+    * Get the context of a server connection, the caller releases it once its handler was created.
+    */
+   private static SslContext ctxForClient(ConnectionContext context, String[] alpnProtocols) throws SSLException {
+      if (context.config().getUnsafeAccessSupport() != UnsafeAccessSupport.DENY) {
+         // The trust manager asks for the unsafe access of this very connection, it cannot be shared
+         return newCtxForClient(context, alpnProtocols);
+      }
+      return context.master().sslContextCache().clientContext(context.getServerAddr(), alpnProtocols,
+            () -> newCtxForClient(context, alpnProtocols));
+   }
+
+   private static SslContext newCtxForClient(ConnectionContext context, String[] alpnProtocols)
+         throws SSLException {
+      SslContextBuilder builder = engine(SslContextBuilder.forClient(), context.config())
             .protocols(context.config().getTlsProtocols())
-            .sslContextProvider(context.config().getSslProvider())
-            .applicationProtocolConfig(applicationProtocolConfig(context.tlsCtx()))
+            .sessionCacheSize(context.config().getTlsSessionCacheSize())
+            .sessionTimeout(context.config().getTlsSessionTimeout())
+            .applicationProtocolConfig(applicationProtocolConfig(alpnProtocols))
             .trustManager(trustManagerFactory(context));
+      if (context.config().getTlsServerCiphers() != null) {
+         builder.ciphers(context.config().getTlsServerCiphers(), TlsCipherPolicy.PREFERRED_FIRST);
+      }
       if (context.config().getClientKeyManagerFactory() != null) {
          builder.keyManager(context.config().getClientKeyManagerFactory());
       }
-      return builder.build();
+      SslContext sslContext = builder.build();
+      TlsCipherPolicy.applyNamedGroups(sslContext, context.config().getTlsNamedGroups());
+      return sslContext;
    }
 
-   public static SslContext ctxForServer(ConnectionContext context) throws SSLException {
-      Certificate certificate = context.master().certManager().getCert(context.getServerAddr().getHost());
-      return SslContextBuilder
-            .forServer(certificate.getKeyPair().getPrivate(), certificate.getChain())
-            .protocols(context.config().getTlsProtocols())
-            .sslContextProvider(context.config().getSslProvider())
-            .applicationProtocolConfig(applicationProtocolConfig(context.tlsCtx()))
-            .build();
+   /**
+    * Get the context of a client connection, the caller releases it once its handler was created.
+    */
+   private static SslContext ctxForServer(ConnectionContext context) throws SSLException {
+      ProxyConfig config = context.config();
+      CertManager certManager = context.master().certManager();
+      String host = context.getServerAddr().getHost();
+      String[] alpnProtocols = alpnProtocols(context.tlsCtx());
+      // The hosts sharing a wildcard certificate share its context
+      return context.master().sslContextCache().serverContext(certManager.certName(host), alpnProtocols, () -> {
+         Certificate certificate = certManager.getCert(host);
+         PrivateKey key = certificate.getKeyPair().getPrivate();
+         SslContextBuilder builder = engine(SslContextBuilder.forServer(key, certificate.getChain()), config)
+               .protocols(config.getTlsProtocols())
+               .sessionCacheSize(config.getTlsSessionCacheSize())
+               .sessionTimeout(config.getTlsSessionTimeout())
+               .applicationProtocolConfig(applicationProtocolConfig(alpnProtocols))
+               .enableOcsp(config.getOcspResponder() != null && tlsEngine(config) != SslProvider.JDK);
+         if (config.getTlsClientCiphers() != null) {
+            builder.ciphers(config.getTlsClientCiphers(), TlsCipherPolicy.PREFERRED_FIRST);
+         }
+         ClientCertVerifier clientCertVerifier = context.master().clientCertVerifier();
+         if (clientCertVerifier != null) {
+            builder.clientAuth(config.getTlsClientAuth())
+                  .trustManager(new TrustManagerFactoryWrapper(clientCertVerifier));
+         }
+         HandshakeExecutor handshakeExecutor = context.master().handshakeExecutor();
+         if (handshakeExecutor.isEnabled() && tlsEngine(config) != SslProvider.JDK) {
+            // OpenSSL signs within the handshake rather than in a delegated task, the signature is offloaded too
+            builder.option(OpenSslContextOption.ASYNC_PRIVATE_KEY_METHOD,
+                  new OffloadedPrivateKeyMethod(key, handshakeExecutor));
+         }
+         SslContext sslContext = builder.build();
+         context.master().sessionTicketKeys().apply(sslContext);
+         TlsCipherPolicy.applyNamedGroups(sslContext, config.getTlsNamedGroups());
+         return sslContext;
+      });
+   }
+
+   private static SslContextBuilder engine(SslContextBuilder builder, ProxyConfig config) {
+      SslProvider engine = tlsEngine(config);
+      builder.sslProvider(engine);
+      if (engine == SslProvider.JDK) {
+         // The JCA provider only applies to the JDK engine
+         builder.sslContextProvider(config.getSslProvider());
+      }
+      return builder;
+   }
+
+   /**
+    * Split the configured session ticket keys, the first key encrypts the new tickets and all of them decrypt the
+    * tickets presented by the clients.
+    *
+    * @param keys the keys of {@link OpenSslSessionTicketKey#TICKET_KEY_SIZE} bytes, the name then the HMAC key
+    *             then the AES key
+    * @return the ticket keys
+    */
+   static OpenSslSessionTicketKey[] ticketKeys(List<byte[]> keys) {
+      OpenSslSessionTicketKey[] ticketKeys = new OpenSslSessionTicketKey[keys.size()];
+      for (int i = 0; i < ticketKeys.length; i++) {
+         byte[] key = keys.get(i);
+         if (key.length != OpenSslSessionTicketKey.TICKET_KEY_SIZE) {
+            throw new IllegalArgumentException("A session ticket key has "
+                  + OpenSslSessionTicketKey.TICKET_KEY_SIZE + " bytes, found " + key.length);
+         }
+         int hmacStart = OpenSslSessionTicketKey.NAME_SIZE;
+         int aesStart = hmacStart + OpenSslSessionTicketKey.HMAC_KEY_SIZE;
+         ticketKeys[i] = new OpenSslSessionTicketKey(
+               Arrays.copyOfRange(key, 0, hmacStart),
+               Arrays.copyOfRange(key, hmacStart, aesStart),
+               Arrays.copyOfRange(key, aesStart, key.length));
+      }
+      return ticketKeys;
    }
 
-   private static ApplicationProtocolConfig applicationProtocolConfig(TlsContext tlsContext) {
+   private static ApplicationProtocolConfig applicationProtocolConfig(String[] alpnProtocols) {
       return new ApplicationProtocolConfig(
             Protocol.ALPN,
             SelectorFailureBehavior.NO_ADVERTISE,
             SelectedListenerFailureBehavior.ACCEPT,
-            alpnProtocols(tlsContext));
+            alpnProtocols);
    }
 
    private static String[] alpnProtocols(TlsContext tlsCtx) {
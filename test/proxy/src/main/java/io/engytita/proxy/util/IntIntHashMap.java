@@ -0,0 +1,140 @@
+package io.engytita.proxy.util;
+
+/**
+ * A map of non zero int keys to int values, stored in two arrays with open addressing, so neither the keys nor the
+ * values are boxed.
+ * <p>
+ * The keys are probed linearly, a removal shifts the following keys of the run back instead of leaving a tombstone.
+ * This class is not thread-safe.
+ */
+public class IntIntHashMap {
+
+   private static final int EMPTY = 0;
+
+   private int[] keys;
+   private int[] values;
+   private int mask;
+   private int size;
+
+   public IntIntHashMap() {
+      this(8);
+   }
+
+   /**
+    * @param expectedSize the number of entries held without growing
+    */
+   public IntIntHashMap(int expectedSize) {
+      // At most half full
+      int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) * 2;
+      keys = new int[capacity];
+      values = new int[capacity];
+      mask = capacity - 1;
+   }
+
+   /**
+    * Get the value of a key.
+    *
+    * @param key     the key, not zero
+    * @param missing the value returned if the key is absent
+    * @return the value
+    */
+   public int get(int key, int missing) {
+      int index = indexOf(key);
+      return index < 0 ? missing : values[index];
+   }
+
+   public boolean containsKey(int key) {
+      return indexOf(key) >= 0;
+   }
+
+   /**
+    * Associate a value to a key, replacing the previous value.
+    *
+    * @param key   the key, not zero
+    * @param value the value
+    */
+   public void put(int key, int value) {
+      if (key == EMPTY) {
+         throw new IllegalArgumentException("The key cannot be zero");
+      }
+      int index = slot(key);
+      while (keys[index] != EMPTY) {
+         if (keys[index] == key) {
+            values[index] = value;
+            return;
+         }
+         index = index + 1 & mask;
+      }
+      keys[index] = key;
+      values[index] = value;
+      if (++size > keys.length >> 1) {
+         grow();
+      }
+   }
+
+   /**
+    * Remove a key.
+    *
+    * @param key the key
+    * @return {@code true} if the key was present
+    */
+   public boolean remove(int key) {
+      int index = indexOf(key);
+      if (index < 0) {
+         return false;
+      }
+      size--;
+      // Moves back the following keys which would not be found anymore behind the free slot
+      int free = index;
+      for (int next = free + 1 & mask; keys[next] != EMPTY; next = next + 1 & mask) {
+         int slot = slot(keys[next]);
+         if ((next - slot & mask) >= (next - free & mask)) {
+            keys[free] = keys[next];
+            values[free] = values[next];
+            free = next;
+         }
+      }
+      keys[free] = EMPTY;
+      return true;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   private int indexOf(int key) {
+      if (key == EMPTY) {
+         return -1;
+      }
+      for (int index = slot(key); keys[index] != EMPTY; index = index + 1 & mask) {
+         if (keys[index] == key) {
+            return index;
+         }
+      }
+      return -1;
+   }
+
+   private int slot(int key) {
+      // Spreads the keys of a sequence, such as the odd stream ids, over all the slots
+      int hash = key * 0x9E3779B9;
+      return (hash ^ hash >>> 16) & mask;
+   }
+
+   private void grow() {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new int[oldKeys.length << 1];
+      values = new int[oldValues.length << 1];
+      mask = keys.length - 1;
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+         if (oldKeys[i] != EMPTY) {
+            put(oldKeys[i], oldValues[i]);
+         }
+      }
+   }
+}
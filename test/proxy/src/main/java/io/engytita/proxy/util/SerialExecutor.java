@@ -0,0 +1,62 @@
+package io.engytita.proxy.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the tasks on the delegate executor one at a time, in submission order.
+ */
+public class SerialExecutor implements Executor {
+
+   private static final Logger LOGGER = LoggerFactory.getLogger(SerialExecutor.class);
+
+   private final Executor delegate;
+   private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+   private final AtomicBoolean running = new AtomicBoolean();
+
+   public SerialExecutor(Executor delegate) {
+      this.delegate = delegate;
+   }
+
+   @Override
+   public void execute(Runnable task) {
+      tasks.add(task);
+      try {
+         schedule();
+      } catch (RuntimeException e) {
+         tasks.remove(task);
+         throw e;
+      }
+   }
+
+   private void schedule() {
+      if (!tasks.isEmpty() && running.compareAndSet(false, true)) {
+         try {
+            delegate.execute(this::drain);
+         } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+         }
+      }
+   }
+
+   private void drain() {
+      // Keeps draining on this thread rather than resubmitting, a rejected resubmission would strand the tasks
+      do {
+         Runnable task;
+         while ((task = tasks.poll()) != null) {
+            try {
+               task.run();
+            } catch (Throwable t) {
+               LOGGER.error("Serial task failed", t);
+            }
+         }
+         running.set(false);
+      } while (!tasks.isEmpty() && running.compareAndSet(false, true));
+   }
+}
@@ -0,0 +1,110 @@
+package io.engytita.proxy.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * Resumes the processing of listener stages on the event loop, in the order the stages were submitted.
+ * <p>
+ * A stage which is already completed while nothing else is pending is processed inline, so synchronous listeners
+ * don't pay for any extra task. While stages are pending, the reads of the channel which feeds the sequence are
+ * suspended, so a slow listener does not let the queued messages grow without bound. This class is not
+ * thread-safe, it must only be used from the event loop of the channel.
+ */
+public class StageSequencer {
+
+   private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+   private final Supplier<Channel> source;
+   private CompletableFuture<?> tail = DONE;
+   private int pending;
+
+   public StageSequencer() {
+      this(null);
+   }
+
+   /**
+    * @param source the channel whose reads produce the submitted messages, its reads are suspended while stages are
+    *               pending, it may supply null
+    */
+   public StageSequencer(Supplier<Channel> source) {
+      this.source = source;
+   }
+
+   /**
+    * Submit a stage to the sequence.
+    *
+    * @param executor  the event loop to resume on
+    * @param stage     the stage
+    * @param onSuccess the callback when the stage completed successfully
+    * @param onFailure the callback when the stage completed exceptionally
+    * @param <T>       the type of the stage result
+    */
+   public <T> void submit(EventExecutor executor, CompletionStage<T> stage, Consumer<T> onSuccess,
+                          Consumer<Throwable> onFailure) {
+      CompletableFuture<T> future = stage.toCompletableFuture();
+      if (tail.isDone() && future.isDone()) {
+         tail = DONE;
+         complete(future, onSuccess, onFailure);
+         return;
+      }
+      if (pending++ == 0) {
+         autoRead(false);
+      }
+      tail = CompletableFuture.allOf(tail, future)
+            .handleAsync((ignore, cause) -> {
+               try {
+                  complete(future, onSuccess, onFailure);
+               } finally {
+                  if (--pending == 0) {
+                     autoRead(true);
+                  }
+               }
+               return null;
+            }, executor);
+   }
+
+   /**
+    * Submit a plain action to the sequence, it runs after all the previously submitted stages.
+    *
+    * @param executor  the event loop to resume on
+    * @param action    the action
+    * @param onFailure the callback if the sequence was broken
+    */
+   public void submit(EventExecutor executor, Runnable action, Consumer<Throwable> onFailure) {
+      submit(executor, DONE, ignore -> action.run(), onFailure);
+   }
+
+   public boolean isIdle() {
+      return tail.isDone();
+   }
+
+   private void autoRead(boolean autoRead) {
+      Channel channel = source != null ? source.get() : null;
+      if (channel != null) {
+         channel.config().setAutoRead(autoRead);
+      }
+   }
+
+   private static <T> void complete(CompletableFuture<T> future, Consumer<T> onSuccess,
+                                    Consumer<Throwable> onFailure) {
+      T value;
+      try {
+         value = future.join();
+      } catch (CompletionException e) {
+         onFailure.accept(e.getCause() != null ? e.getCause() : e);
+         return;
+      } catch (CancellationException e) {
+         onFailure.accept(e);
+         return;
+      }
+      onSuccess.accept(value);
+   }
+}
@@ -0,0 +1,73 @@
+package io.engytita.proxy.grpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.util.AsciiString;
+
+class GrpcCallTest {
+
+   @Test
+   void timeoutUnits() {
+      assertEquals(TimeUnit.HOURS.toNanos(2), GrpcCall.timeoutNanos("2H"));
+      assertEquals(TimeUnit.MINUTES.toNanos(3), GrpcCall.timeoutNanos("3M"));
+      assertEquals(TimeUnit.SECONDS.toNanos(4), GrpcCall.timeoutNanos("4S"));
+      assertEquals(TimeUnit.MILLISECONDS.toNanos(500), GrpcCall.timeoutNanos("500m"));
+      assertEquals(TimeUnit.MICROSECONDS.toNanos(250), GrpcCall.timeoutNanos("250u"));
+      assertEquals(100, GrpcCall.timeoutNanos("100n"));
+      assertEquals(0, GrpcCall.timeoutNanos("0S"));
+      assertEquals(TimeUnit.SECONDS.toNanos(1), GrpcCall.timeoutNanos(AsciiString.of("1S")));
+   }
+
+   @Test
+   void timeoutOfEightDigits() {
+      assertEquals(TimeUnit.HOURS.toNanos(99_999_999), GrpcCall.timeoutNanos("99999999H"));
+      assertEquals(-1, GrpcCall.timeoutNanos("123456789S"));
+   }
+
+   @Test
+   void invalidTimeouts() {
+      assertEquals(-1, GrpcCall.timeoutNanos(null));
+      assertEquals(-1, GrpcCall.timeoutNanos(""));
+      assertEquals(-1, GrpcCall.timeoutNanos("S"));
+      assertEquals(-1, GrpcCall.timeoutNanos("10"));
+      assertEquals(-1, GrpcCall.timeoutNanos("10s"));
+      assertEquals(-1, GrpcCall.timeoutNanos("10 S"));
+      assertEquals(-1, GrpcCall.timeoutNanos("-1S"));
+      assertEquals(-1, GrpcCall.timeoutNanos("1.5S"));
+   }
+
+   @Test
+   void grpcContentTypes() {
+      assertTrue(GrpcCall.isGrpc(contentType("application/grpc")));
+      assertTrue(GrpcCall.isGrpc(contentType("application/grpc+proto")));
+      assertTrue(GrpcCall.isGrpc(contentType("Application/GRPC; charset=utf-8")));
+      assertFalse(GrpcCall.isGrpc(contentType("application/grpc-web")));
+      assertFalse(GrpcCall.isGrpc(contentType("application/json")));
+      assertFalse(GrpcCall.isGrpc(new DefaultHttp2Headers()));
+   }
+
+   @Test
+   void statusOfTheTrailers() {
+      GrpcCall call = new GrpcCall("/helloworld.Greeter/SayHello");
+      call.onTrailers(new DefaultHttp2Headers().set(GrpcCall.GRPC_STATUS, "4").set(GrpcCall.GRPC_MESSAGE, "late%20"));
+      assertEquals(GrpcCall.DEADLINE_EXCEEDED, call.status());
+      assertEquals("late%20", call.message());
+
+      call.onTrailers(new DefaultHttp2Headers().set(GrpcCall.GRPC_STATUS, "ok"));
+      assertEquals(GrpcCall.UNKNOWN, call.status());
+   }
+
+   private static DefaultHttp2Headers contentType(String contentType) {
+      DefaultHttp2Headers headers = new DefaultHttp2Headers();
+      headers.set(HttpHeaderNames.CONTENT_TYPE, contentType);
+      return headers;
+   }
+}
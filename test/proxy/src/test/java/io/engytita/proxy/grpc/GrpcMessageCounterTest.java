@@ -0,0 +1,108 @@
+package io.engytita.proxy.grpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+class GrpcMessageCounterTest {
+
+   private final GrpcMessageCounter counter = new GrpcMessageCounter();
+
+   @Test
+   void prefixSplitAcrossFrames() {
+      ByteBuf message = message(false, 300);
+      // Every byte of the prefix in its own frame, then the payload in two frames
+      for (int i = 0; i < 5; i++) {
+         data(message.retainedSlice(i, 1));
+         assertEquals(i == 4 ? 1 : 0, counter.messages());
+         assertTrue(counter.isPartial());
+      }
+      data(message.retainedSlice(5, 100));
+      assertTrue(counter.isPartial());
+      data(message.retainedSlice(105, 200));
+      message.release();
+
+      assertEquals(1, counter.messages());
+      assertEquals(300, counter.bytes());
+      assertEquals(300, counter.maxMessageSize());
+      assertFalse(counter.isPartial());
+   }
+
+   @Test
+   void severalMessagesInOneFrame() {
+      ByteBuf frame = Unpooled.wrappedBuffer(message(false, 10), message(false, 0), message(false, 42));
+
+      data(frame);
+
+      assertEquals(3, counter.messages());
+      assertEquals(52, counter.bytes());
+      assertEquals(42, counter.maxMessageSize());
+      assertFalse(counter.isPartial());
+   }
+
+   @Test
+   void messageEndingWithinTheNextPrefix() {
+      ByteBuf frames = Unpooled.wrappedBuffer(message(false, 7), message(true, 9));
+
+      // The first frame ends with the first 2 bytes of the second prefix
+      data(frames.retainedSlice(0, 14));
+      assertEquals(1, counter.messages());
+      data(frames.retainedSlice(14, frames.readableBytes() - 14));
+      frames.release();
+
+      assertEquals(2, counter.messages());
+      assertEquals(1, counter.compressedMessages());
+      assertEquals(16, counter.bytes());
+      assertFalse(counter.isPartial());
+   }
+
+   @Test
+   void compressedFlag() {
+      data(Unpooled.wrappedBuffer(message(true, 3), message(false, 3), message(true, 3)));
+
+      assertEquals(3, counter.messages());
+      assertEquals(2, counter.compressedMessages());
+   }
+
+   @Test
+   void frameIsNotConsumed() {
+      ByteBuf frame = message(false, 4);
+      int readable = frame.readableBytes();
+
+      counter.onData(frame);
+
+      assertEquals(readable, frame.readableBytes());
+      frame.release();
+   }
+
+   @Test
+   void streamStoppingWithinAMessageIsPartial() {
+      ByteBuf message = message(false, 20);
+      data(message.retainedSlice(0, 12));
+      message.release();
+
+      assertEquals(1, counter.messages());
+      assertTrue(counter.isPartial());
+   }
+
+   private void data(ByteBuf content) {
+      try {
+         counter.onData(content);
+      } finally {
+         content.release();
+      }
+   }
+
+   private static ByteBuf message(boolean compressed, int length) {
+      ByteBuf message = Unpooled.buffer(5 + length);
+      message.writeByte(compressed ? 1 : 0);
+      message.writeInt(length);
+      message.writeZero(length);
+      return message;
+   }
+}
@@ -0,0 +1,206 @@
+package io.engytita.proxy.handler.protocol.http1;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.Proxy;
+import io.engytita.proxy.ProxyConfig;
+import io.engytita.proxy.ProxyStatusListener;
+import io.engytita.proxy.enums.ProxyMode;
+import io.engytita.proxy.handler.protocol.http2.Http2FrameWrapper;
+import io.engytita.proxy.listener.ProxyListener;
+
+/**
+ * HTTP/2 clients of a HTTP/1.1 origin, their streams translated to the origin connections of the pool.
+ */
+class Http1OriginPoolTest {
+
+   // Larger than the max content length of the aggregated requests, and than any flow control window
+   private static final byte[] BODY = new byte[3 * 1024 * 1024 + 17];
+
+   static {
+      new Random(1).nextBytes(BODY);
+   }
+
+   private final ExecutorService originExecutor = Executors.newCachedThreadPool();
+   private final ScheduledExecutorService listenerExecutor = Executors.newSingleThreadScheduledExecutor();
+   // Delay of the response frames by the listener, none when 0
+   private volatile long responseDelayMillis;
+   private HttpServer origin;
+   private Proxy proxy;
+   private int proxyPort;
+
+   @BeforeEach
+   void start() throws Exception {
+      origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      origin.setExecutor(originExecutor);
+      origin.createContext("/", exchange -> {
+         exchange.getRequestBody().readAllBytes();
+         byte[] body = exchange.getRequestURI().getPath().startsWith("/big") ? BODY : "small".getBytes();
+         exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+         exchange.sendResponseHeaders(200, body.length);
+         try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+         }
+      });
+      origin.start();
+
+      proxyPort = freePort();
+      ProxyConfig config = new ProxyConfig();
+      config.setProxyMode(ProxyMode.HTTP);
+      config.setHost("127.0.0.1");
+      config.setPort(proxyPort);
+      config.setRemoteHost("127.0.0.1");
+      config.setRemotePort(origin.getAddress().getPort());
+      config.setHttp2Translation(true);
+      config.setHttp1OriginPoolSize(2);
+      config.setMaxContentLength(1024 * 1024);
+      CountDownLatch started = new CountDownLatch(1);
+      config.getListeners().addLast(new ProxyListener() {
+         @Override
+         public CompletionStage<List<Http2FrameWrapper<?>>> onHttp2ResponseAsync(ConnectionContext connectionContext,
+                                                                                 Http2FrameWrapper<?> frame) {
+            long delay = responseDelayMillis;
+            if (delay == 0) {
+               return CompletableFuture.completedFuture(List.of(frame));
+            }
+            CompletableFuture<List<Http2FrameWrapper<?>>> delayed = new CompletableFuture<>();
+            listenerExecutor.schedule(() -> delayed.complete(List.of(frame)), delay, TimeUnit.MILLISECONDS);
+            return delayed;
+         }
+      });
+      config.setStatusListener(new ProxyStatusListener() {
+         @Override
+         public void onStart() {
+            started.countDown();
+         }
+      });
+      proxy = new Proxy(config);
+      Thread thread = new Thread(() -> {
+         try {
+            proxy.start();
+         } catch (Exception e) {
+            throw new IllegalStateException(e);
+         }
+      }, "proxy");
+      thread.setDaemon(true);
+      thread.start();
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+   }
+
+   @AfterEach
+   void stop() {
+      if (proxy != null) {
+         proxy.stop();
+      }
+      if (origin != null) {
+         origin.stop(0);
+      }
+      originExecutor.shutdownNow();
+      listenerExecutor.shutdownNow();
+   }
+
+   @Test
+   void largeResponsesAreStreamed() throws Exception {
+      HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+      // Upgrades the connection, the next requests are streams of the same connection
+      assertEquals("small", client.send(request("/first"), HttpResponse.BodyHandlers.ofString()).body());
+
+      List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>();
+      // More streams than connections in the pool, they wait for a connection
+      for (int i = 0; i < 6; i++) {
+         responses.add(client.sendAsync(request("/big" + i), HttpResponse.BodyHandlers.ofByteArray()));
+      }
+      for (CompletableFuture<HttpResponse<byte[]>> future : responses) {
+         HttpResponse<byte[]> response = future.get(30, TimeUnit.SECONDS);
+         assertEquals(HttpClient.Version.HTTP_2, response.version());
+         assertEquals(200, response.statusCode());
+         assertEquals("application/octet-stream", response.headers().firstValue("content-type").orElse(null));
+         assertArrayEquals(BODY, response.body());
+      }
+   }
+
+   @Test
+   void slowReaderStillGetsTheWholeBody() throws Exception {
+      HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+      client.send(request("/first"), HttpResponse.BodyHandlers.discarding());
+
+      HttpResponse<InputStream> response = client.send(request("/big"),
+            HttpResponse.BodyHandlers.ofInputStream());
+      byte[] received = new byte[BODY.length];
+      int length = 0;
+      try (InputStream in = response.body()) {
+         int read;
+         while ((read = in.read(received, length, Math.min(16 * 1024, received.length - length))) > 0) {
+            length += read;
+            if (length % (256 * 1024) < 16 * 1024) {
+               // Lets the client window close, the origin connection stops reading meanwhile
+               Thread.sleep(20);
+            }
+         }
+      }
+      assertEquals(BODY.length, length);
+      assertArrayEquals(BODY, received);
+      // The pooled connection serves the next stream once the body was fully relayed
+      assertEquals("small", client.send(request("/after"), HttpResponse.BodyHandlers.ofString()).body());
+   }
+
+   @Test
+   void slowResponseListenerKeepsTheBodyIntact() throws Exception {
+      HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+      client.send(request("/first"), HttpResponse.BodyHandlers.discarding());
+      // The pending stages must not resume the reads of an origin connection paused for the client window
+      responseDelayMillis = 1;
+
+      List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+         responses.add(client.sendAsync(request("/big" + i), HttpResponse.BodyHandlers.ofByteArray()));
+      }
+      for (CompletableFuture<HttpResponse<byte[]>> future : responses) {
+         HttpResponse<byte[]> response = future.get(60, TimeUnit.SECONDS);
+         assertEquals(200, response.statusCode());
+         assertArrayEquals(BODY, response.body());
+      }
+   }
+
+   private HttpRequest request(String path) {
+      return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + proxyPort + path))
+            .timeout(Duration.ofSeconds(30))
+            .build();
+   }
+
+   private static int freePort() throws IOException {
+      try (ServerSocket socket = new ServerSocket(0)) {
+         return socket.getLocalPort();
+      }
+   }
+}
@@ -0,0 +1,127 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.Http2ConnectionEncoder;
+
+class Http2DataFrameWrapperTest {
+
+   private final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+   private final ChannelHandlerContext ctx = channel.pipeline().firstContext();
+   // The promises of the frames taken by the encoder, completed once the peer window lets them through
+   private final List<ChannelPromise> written = new ArrayList<>();
+   private final Http2ConnectionEncoder encoder = (Http2ConnectionEncoder) Proxy.newProxyInstance(
+         getClass().getClassLoader(), new Class<?>[]{Http2ConnectionEncoder.class}, (proxy, method, args) -> {
+            if (method.getName().equals("writeData")) {
+               ((ByteBuf) args[2]).release();
+               written.add((ChannelPromise) args[5]);
+               return args[5];
+            }
+            throw new UnsupportedOperationException(method.getName());
+         });
+
+   @AfterEach
+   void close() {
+      channel.finishAndReleaseAll();
+   }
+
+   @Test
+   void writtenWrapperIsRecycled() {
+      Http2DataFrameWrapper wrapper = Http2DataFrameWrapper.newInstance(3, data("recycled"));
+
+      wrapper.write(ctx, encoder, 3, channel.newPromise());
+
+      assertEquals(1, written.size());
+      assertEquals(0, wrapper.streamId());
+      assertNull(wrapper.frame());
+   }
+
+   @Test
+   void pooledWrappersAreReused() {
+      Set<Http2DataFrameWrapper> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+      int frames = 64;
+      for (int i = 0; i < frames; i++) {
+         Http2DataFrameWrapper wrapper = Http2DataFrameWrapper.newInstance(i * 2 + 1, data("frame" + i));
+         assertEquals(i * 2 + 1, wrapper.streamId());
+         instances.add(wrapper);
+         wrapper.write(ctx, encoder, wrapper.streamId(), channel.newPromise());
+      }
+
+      // The recycler drops a share of the new objects before it starts pooling them
+      assertTrue(instances.size() < frames, instances.size() + " wrappers for " + frames + " frames");
+   }
+
+   @Test
+   void unpooledWrapperIsKept() {
+      Http2DataFrameWrapper wrapper = new Http2DataFrameWrapper(5, data("unpooled"));
+
+      wrapper.write(ctx, encoder, 5, channel.newPromise());
+
+      assertEquals(5, wrapper.streamId());
+      assertEquals(0, wrapper.refCnt());
+   }
+
+   @Test
+   void consumedOnceTheEncoderWroteTheFrame() {
+      AtomicInteger consumed = new AtomicInteger();
+      Http2DataFrameWrapper wrapper = Http2DataFrameWrapper.newInstance(7, data("consumed"))
+            .onConsumed(consumed::incrementAndGet);
+
+      wrapper.write(ctx, encoder, 7, channel.newPromise());
+      assertEquals(0, consumed.get());
+
+      written.get(0).setSuccess();
+      assertEquals(1, consumed.get());
+      // The recycled wrapper forgot its consumer
+      wrapper.consumed();
+      assertEquals(1, consumed.get());
+   }
+
+   @Test
+   void consumedOnFailedWrite() {
+      AtomicInteger consumed = new AtomicInteger();
+      Http2DataFrameWrapper.newInstance(9, data("failed"))
+            .onConsumed(consumed::incrementAndGet)
+            .write(ctx, encoder, 9, channel.newPromise());
+
+      written.get(0).setFailure(new IllegalStateException("stream closed"));
+      assertEquals(1, consumed.get());
+   }
+
+   @Test
+   void droppedFrameIsConsumedOnlyOnce() {
+      AtomicInteger consumed = new AtomicInteger();
+      Http2DataFrameWrapper wrapper = Http2DataFrameWrapper.newInstance(11, data("dropped"))
+            .onConsumed(consumed::incrementAndGet);
+
+      wrapper.consumed();
+      wrapper.consumed();
+
+      assertEquals(1, consumed.get());
+      assertTrue(wrapper.release());
+   }
+
+   private static DefaultHttp2DataFrame data(String content) {
+      return new DefaultHttp2DataFrame(Unpooled.copiedBuffer(content.getBytes()), false);
+   }
+}
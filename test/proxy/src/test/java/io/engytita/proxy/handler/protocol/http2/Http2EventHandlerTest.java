@@ -0,0 +1,54 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import static io.engytita.proxy.handler.protocol.http2.Http2FrameWrapper.frameWrapper;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.engytita.proxy.ConnectionContext;
+import io.engytita.proxy.ProxyConfig;
+import io.engytita.proxy.ProxyMaster;
+import io.engytita.proxy.channel.BackendChannelBootstrap;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+
+class Http2EventHandlerTest {
+
+   private ProxyMaster master;
+   private EmbeddedChannel channel;
+
+   @AfterEach
+   void close() {
+      if (channel != null) {
+         channel.finishAndReleaseAll();
+      }
+      if (master != null) {
+         master.shutdown();
+      }
+   }
+
+   @Test
+   void requestWithoutPathSkipsTheEarlyHints() {
+      ProxyConfig config = new ProxyConfig();
+      config.setEarlyHints(true);
+      master = new ProxyMaster(config, new BackendChannelBootstrap());
+      ConnectionContext context = new ConnectionContext(master);
+      channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+      context.withClientChannel(channel);
+      channel.pipeline().addLast(new Http2EventHandler(context));
+
+      // Malformed, the codec leaves the validation of the pseudo headers to the proxy
+      Http2Headers headers = new DefaultHttp2Headers().method("GET").scheme("https").authority("example.com");
+      channel.writeInbound(frameWrapper(1, new DefaultHttp2HeadersFrame(headers, true)));
+
+      Http2FrameWrapper<?> forwarded = channel.readInbound();
+      assertEquals(1, forwarded.streamId());
+      // No 103 written back to the client
+      assertNull(channel.readOutbound());
+   }
+}
@@ -0,0 +1,114 @@
+package io.engytita.proxy.handler.protocol.http2;
+
+import static io.netty.handler.codec.http2.Http2CodecUtil.DEFAULT_PRIORITY_WEIGHT;
+import static io.netty.handler.codec.http2.Http2CodecUtil.MIN_WEIGHT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.engytita.proxy.ProxyConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2RemoteFlowController;
+
+class Http2WriteSchedulerTest {
+
+   private final Http2Connection connection = new DefaultHttp2Connection(true);
+   // The stream ids and weights given to the flow controller
+   private final List<List<Number>> updates = new ArrayList<>();
+   private Http2WriteScheduler scheduler;
+
+   @BeforeEach
+   void scheduler() throws Exception {
+      scheduler = new Http2WriteScheduler(connection, new ProxyConfig(), new Http2WriteStats());
+      connection.remote().flowController((Http2RemoteFlowController) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{Http2RemoteFlowController.class}, (proxy, method, args) -> {
+               if (method.getName().equals("updateDependencyTree")) {
+                  updates.add(List.of((Integer) args[0], (Short) args[2]));
+                  return null;
+               }
+               throw new UnsupportedOperationException(method.getName());
+            }));
+      connection.remote().createStream(3, false);
+   }
+
+   @Test
+   void urgencyParameter() {
+      assertEquals(0, Http2WriteScheduler.urgency("u=0"));
+      assertEquals(7, Http2WriteScheduler.urgency("u=7"));
+      assertEquals(1, Http2WriteScheduler.urgency("u=1, i"));
+      assertEquals(5, Http2WriteScheduler.urgency("i, u=5"));
+      assertEquals(2, Http2WriteScheduler.urgency("i,u=2"));
+      assertEquals(4, Http2WriteScheduler.urgency("u=4;x=y"));
+      assertEquals(3, Http2WriteScheduler.urgency("i"));
+      assertEquals(3, Http2WriteScheduler.urgency(""));
+   }
+
+   @Test
+   void malformedUrgencyIsTheDefault() {
+      assertEquals(3, Http2WriteScheduler.urgency("u=8"));
+      assertEquals(3, Http2WriteScheduler.urgency("u=10"));
+      assertEquals(3, Http2WriteScheduler.urgency("u=-1"));
+      assertEquals(3, Http2WriteScheduler.urgency("u=a"));
+      assertEquals(3, Http2WriteScheduler.urgency("u="));
+      assertEquals(3, Http2WriteScheduler.urgency("u"));
+      // Another parameter ending with u
+      assertEquals(3, Http2WriteScheduler.urgency("mu=1"));
+   }
+
+   @Test
+   void eachUrgencyHalvesTheWeight() {
+      assertEquals(DEFAULT_PRIORITY_WEIGHT, Http2WriteScheduler.weight(3));
+      for (int urgency = 1; urgency <= 7; urgency++) {
+         int weight = Http2WriteScheduler.weight(urgency);
+         int higher = Http2WriteScheduler.weight(urgency - 1);
+         assertEquals(Math.max(MIN_WEIGHT, higher / 2), weight, "urgency " + urgency);
+      }
+   }
+
+   @Test
+   void headerAppliesTheWeight() {
+      scheduler.prioritize(3, new DefaultHttp2Headers().set(Http2WriteScheduler.PRIORITY, "u=0"));
+      scheduler.prioritize(3, new DefaultHttp2Headers());
+
+      assertEquals(List.of(List.of(3, Http2WriteScheduler.weight(0))), updates);
+   }
+
+   @Test
+   void priorityUpdateAppliesTheWeight() {
+      update(3, "u=6, i");
+      // The reserved bit of the stream id is ignored
+      update(3 | 0x80000000, "u=1");
+
+      assertEquals(List.of(List.of(3, Http2WriteScheduler.weight(6)), List.of(3, Http2WriteScheduler.weight(1))),
+            updates);
+   }
+
+   @Test
+   void priorityUpdateOfUnknownStreamOrTruncatedIsIgnored() {
+      update(5, "u=0");
+      scheduler.priorityUpdate(Unpooled.wrappedBuffer(new byte[]{0, 0, 3}));
+
+      assertEquals(List.of(), updates);
+   }
+
+   private void update(int streamId, String priority) {
+      ByteBuf payload = Unpooled.buffer();
+      try {
+         payload.writeInt(streamId);
+         payload.writeCharSequence(priority, StandardCharsets.US_ASCII);
+         scheduler.priorityUpdate(payload);
+      } finally {
+         payload.release();
+      }
+   }
+}
@@ -0,0 +1,55 @@
+package io.engytita.proxy.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+
+class HttpUtilTest {
+
+   @Test
+   void absoluteAndOriginFormShareTheKeyOfTheHttp2Request() {
+      String http2 = HttpUtil.cacheKey("https", "example.com", "/app.js?v=2");
+
+      assertEquals("https://example.com/app.js?v=2", http2);
+      assertEquals(http2, HttpUtil.cacheKey(request("https://example.com/app.js?v=2", null), false));
+      assertEquals(http2, HttpUtil.cacheKey(request("/app.js?v=2", "example.com"), true));
+   }
+
+   @Test
+   void authorityIsPartOfTheKey() {
+      assertNotEquals(HttpUtil.cacheKey(request("/app.js", "a.example.com"), false),
+            HttpUtil.cacheKey(request("/app.js", "b.example.com"), false));
+      assertNotEquals(HttpUtil.cacheKey("http", "example.com", "/app.js"),
+            HttpUtil.cacheKey("https", "example.com", "/app.js"));
+      assertNotEquals(HttpUtil.cacheKey("http", "example.com:8080", "/app.js"),
+            HttpUtil.cacheKey("http", "example.com", "/app.js"));
+   }
+
+   @Test
+   void defaultPortAndCaseAreNormalized() {
+      assertEquals("http://example.com/", HttpUtil.cacheKey("HTTP", "Example.COM:80", "/"));
+      assertEquals("https://example.com/", HttpUtil.cacheKey(request("https://example.com:443", null), false));
+   }
+
+   @Test
+   void requestWithoutAuthorityHasNoKey() {
+      assertNull(HttpUtil.cacheKey(request("/app.js", null), false));
+      assertNull(HttpUtil.cacheKey(request("*", null), false));
+   }
+
+   private static HttpRequest request(String uri, String host) {
+      HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+      if (host != null) {
+         request.headers().set(HttpHeaderNames.HOST, host);
+      }
+      return request;
+   }
+}
@@ -0,0 +1,157 @@
+package io.engytita.proxy.listener;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.engytita.proxy.ConnectionContext;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+class OffloadedProxyListenerTest {
+
+   @Test
+   void callbacksRunOffTheCallerInReceivedOrder() throws Exception {
+      BlockingListenerExecutor executor = new BlockingListenerExecutor(4, 1000);
+      try {
+         RecordingListener delegate = new RecordingListener();
+         OffloadedProxyListener listener = new OffloadedProxyListener(delegate, executor);
+         List<CompletableFuture<FullHttpResponse>> stages = new ArrayList<>();
+         for (int i = 0; i < 200; i++) {
+            stages.add(listener.onHttp1Request(null, request("/" + i)).toCompletableFuture());
+         }
+         CompletableFuture.allOf(stages.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+         assertEquals(200, delegate.uris.size());
+         for (int i = 0; i < 200; i++) {
+            assertEquals("/" + i, delegate.uris.get(i));
+         }
+         assertTrue(delegate.threads.stream().noneMatch(Thread.currentThread().getName()::equals));
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   void rejectedCallbackFailsItsStage() {
+      OffloadedProxyListener listener = new OffloadedProxyListener(new RecordingListener(), task -> {
+         throw new RejectedExecutionException("saturated");
+      });
+
+      CompletableFuture<FullHttpResponse> stage = listener.onHttp1Request(null, request("/rejected"))
+            .toCompletableFuture();
+
+      ExecutionException failure = assertThrows(ExecutionException.class, stage::get);
+      assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+   }
+
+   @Test
+   void rejectedCloseRunsOnTheCaller() {
+      RecordingListener delegate = new RecordingListener();
+      OffloadedProxyListener listener = new OffloadedProxyListener(delegate, task -> {
+         throw new RejectedExecutionException("shut down");
+      });
+
+      listener.close(null);
+
+      assertEquals(List.of(Thread.currentThread().getName()), delegate.closedBy);
+   }
+
+   @Test
+   void fullQueueRejectsAndShutdownStillRunsTheQueuedTasks() throws Exception {
+      ExecutorService pool = Executors.newSingleThreadExecutor();
+      BlockingListenerExecutor executor = new BlockingListenerExecutor(pool, 1, 1);
+      CountDownLatch release = new CountDownLatch(1);
+      CountDownLatch queuedRan = new CountDownLatch(1);
+
+      executor.execute(() -> await(release));
+      executor.execute(queuedRan::countDown);
+      assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+      }));
+      assertEquals(1, executor.rejectedCount());
+      assertEquals(1, executor.queueDepth());
+
+      // The queued task is dispatched after the shutdown, it runs on the thread finishing the running one
+      executor.shutdown();
+      release.countDown();
+      assertTrue(queuedRan.await(10, TimeUnit.SECONDS));
+      assertEquals(0, executor.queueDepth());
+      assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+   }
+
+   @Test
+   void offloadedListenersKeepTheirOwnOrder() throws Exception {
+      BlockingListenerExecutor executor = new BlockingListenerExecutor(4, 1000);
+      try {
+         RecordingListener first = new RecordingListener();
+         RecordingListener second = new RecordingListener();
+         OffloadedProxyListener firstListener = new OffloadedProxyListener(first, executor);
+         OffloadedProxyListener secondListener = new OffloadedProxyListener(second, executor);
+         List<CompletableFuture<FullHttpResponse>> stages = new ArrayList<>();
+         for (int i = 0; i < 100; i++) {
+            stages.add(firstListener.onHttp1Request(null, request("/" + i)).toCompletableFuture());
+            stages.add(secondListener.onHttp1Request(null, request("/" + i)).toCompletableFuture());
+         }
+         CompletableFuture.allOf(stages.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+         for (int i = 0; i < 100; i++) {
+            assertEquals("/" + i, first.uris.get(i));
+            assertEquals("/" + i, second.uris.get(i));
+         }
+         assertNotEquals(0, executor.completedCount());
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   private static FullHttpRequest request(String uri) {
+      return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+   }
+
+   private static void await(CountDownLatch latch) {
+      try {
+         latch.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private static class RecordingListener implements ProxyListener {
+      // Only added to by one callback at a time, read once the stages completed
+      final List<String> uris = new ArrayList<>();
+      final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+      final List<String> closedBy = new ArrayList<>();
+
+      @Override
+      public CompletionStage<FullHttpResponse> onHttp1Request(ConnectionContext connectionContext,
+                                                              FullHttpRequest request) {
+         uris.add(request.uri());
+         threads.add(Thread.currentThread().getName());
+         return CompletableFuture.completedFuture(null);
+      }
+
+      @Override
+      public void close(ConnectionContext connectionContext) {
+         closedBy.add(Thread.currentThread().getName());
+      }
+   }
+}
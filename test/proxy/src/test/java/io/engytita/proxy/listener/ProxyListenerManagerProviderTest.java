@@ -0,0 +1,26 @@
+package io.engytita.proxy.listener;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class ProxyListenerManagerProviderTest {
+
+   @Test
+   void reloadSwapsTheChainForTheNewConnectionsOnly() {
+      ProxyListeners store = new ProxyListeners().addLast(new ProxyListener.Empty());
+      ProxyListenerManagerProvider provider = new ProxyListenerManagerProvider(store);
+      // What a connection created before the reload holds
+      ProxyListenerManager previous = provider.create();
+      assertSame(previous, provider.create());
+
+      store.addLast(new ProxyListener.Empty());
+      ProxyListenerManager reloaded = provider.reload();
+
+      assertNotSame(previous, reloaded);
+      assertSame(reloaded, provider.create());
+      assertEquals(previous.size() + 1, reloaded.size());
+   }
+}
@@ -0,0 +1,295 @@
+package io.engytita.proxy.tls;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClientCertVerifierTest {
+
+   private static final String CA_SUBJECT = "CN=Client CA";
+   private static final long TTL = TimeUnit.MINUTES.toMillis(5);
+
+   private static KeyPair caKeys;
+   private static X509Certificate ca;
+   private static X509Certificate good;
+   private static X509Certificate revoked;
+   private static long serial = 1000;
+
+   private final List<ClientCertVerifier> verifiers = new ArrayList<>();
+
+   @BeforeAll
+   static void certificates() throws Exception {
+      caKeys = CertUtil.generateKeyPair(2048);
+      ca = CertUtil.generateCertificate(CA_SUBJECT, Date.from(Instant.now().minus(1, ChronoUnit.DAYS)),
+            Date.from(Instant.now().plus(1, ChronoUnit.DAYS)), caKeys);
+      good = clientCert("CN=good", ca, caKeys);
+      revoked = clientCert("CN=revoked", ca, caKeys);
+   }
+
+   @AfterEach
+   void shutdown() {
+      verifiers.forEach(ClientCertVerifier::shutdown);
+   }
+
+   @Test
+   void revokedCertificateIsRefused(@TempDir Path dir) throws Exception {
+      ClientCertVerifier verifier = verifier(crlStore(dir, revoked));
+
+      verifier.checkClientTrusted(new X509Certificate[]{good, ca}, "RSA");
+      assertThrows(CertificateException.class,
+            () -> verifier.checkClientTrusted(new X509Certificate[]{revoked, ca}, "RSA"));
+      assertEquals(1, verifier.revokedCount());
+   }
+
+   @Test
+   void revocationIsCheckedOnCachedValidations(@TempDir Path dir) throws Exception {
+      ClientCertVerifier verifier = verifier(crlStore(dir, revoked));
+
+      verifier.checkClientTrusted(new X509Certificate[]{good, ca}, "RSA");
+      verifier.checkClientTrusted(new X509Certificate[]{good, ca}, "RSA");
+      assertEquals(1, verifier.cacheHitCount());
+
+      // A resumed session skips the verification of the chain
+      assertFalse(verifier.isRevoked(List.of(good, ca)));
+      assertTrue(verifier.isRevoked(List.of(revoked, ca)));
+   }
+
+   @Test
+   void crlNotSignedByTheIssuerIsIgnored(@TempDir Path dir) throws Exception {
+      // Names the CA, as a CRL tampered with on its way
+      RevocationStore store = crlStore(dir, CertUtil.generateKeyPair(2048), Instant.now().plus(1, ChronoUnit.DAYS));
+      ClientCertVerifier verifier = verifier(store);
+
+      assertEquals(RevocationStore.Status.UNKNOWN, store.status(revoked, ca));
+      assertEquals(RevocationStore.Status.UNKNOWN, store.status(good, ca));
+      // Without the issuer the CRL cannot be authenticated either
+      assertEquals(RevocationStore.Status.UNKNOWN, store.status(good, null));
+      verifier.checkClientTrusted(new X509Certificate[]{good, ca}, "RSA");
+   }
+
+   @Test
+   void expiredCrlDoesNotTellTheCertificateIsGood(@TempDir Path dir) throws Exception {
+      RevocationStore store = crlStore(dir, caKeys, Instant.now().minus(1, ChronoUnit.HOURS), revoked);
+      ClientCertVerifier verifier = verifier(store);
+
+      assertEquals(RevocationStore.Status.UNKNOWN, store.status(good, ca));
+      // A revocation stays true once the list expired
+      assertEquals(RevocationStore.Status.REVOKED, store.status(revoked, ca));
+      assertThrows(CertificateException.class,
+            () -> verifier.checkClientTrusted(new X509Certificate[]{revoked, ca}, "RSA"));
+   }
+
+   @Test
+   void failuresAreNotCached() throws Exception {
+      ControlledTrustManager trustManager = new ControlledTrustManager();
+      ClientCertVerifier verifier = verifier(trustManager, new RevocationStore(List.of(), false, 0));
+
+      trustManager.reject = true;
+      assertThrows(CertificateException.class,
+            () -> verifier.checkClientTrusted(new X509Certificate[]{good, ca}, "RSA"));
+      trustManager.reject = false;
+      verifier.checkClientTrusted(new X509Certificate[]{good, ca}, "RSA");
+      assertEquals(2, verifier.cacheMissCount());
+   }
+
+   @Test
+   void issuerIsTheCertificateWhichSignedTheClientCertificate() throws Exception {
+      ControlledTrustManager trustManager = new ControlledTrustManager();
+      RecordingStore store = new RecordingStore();
+      ClientCertVerifier verifier = verifier(trustManager, store);
+      // Names the issuer of the client certificate, but was not the one which signed it
+      KeyPair forgedKeys = CertUtil.generateKeyPair(2048);
+      X509Certificate forged = CertUtil.generateCertificate(CA_SUBJECT,
+            Date.from(Instant.now().minus(1, ChronoUnit.DAYS)), Date.from(Instant.now().plus(1, ChronoUnit.DAYS)),
+            forgedKeys);
+
+      // Whatever the trust manager accepted, the issuer is only taken from a certificate with the right key
+      trustManager.acceptAll = true;
+      verifier.checkClientTrusted(new X509Certificate[]{good, forged}, "RSA");
+      assertSame(ca, store.issuer);
+
+      store.issuer = null;
+      verifier.isRevoked(List.of(revoked, forged));
+      assertSame(ca, store.issuer);
+   }
+
+   private ClientCertVerifier verifier(RevocationStore store) throws Exception {
+      return verifier(trustManager(), store);
+   }
+
+   private ClientCertVerifier verifier(X509ExtendedTrustManager trustManager, RevocationStore store) {
+      ClientCertVerifier verifier = new ClientCertVerifier(trustManager, store, TTL);
+      verifiers.add(verifier);
+      return verifier;
+   }
+
+   private static RevocationStore crlStore(Path dir, X509Certificate... revokedCertificates) throws Exception {
+      return crlStore(dir, caKeys, Instant.now().plus(1, ChronoUnit.DAYS), revokedCertificates);
+   }
+
+   private static RevocationStore crlStore(Path dir, KeyPair signer, Instant nextUpdate,
+                                           X509Certificate... revokedCertificates) throws Exception {
+      Date thisUpdate = Date.from(nextUpdate.minus(2, ChronoUnit.DAYS));
+      X509v2CRLBuilder builder = new X509v2CRLBuilder(new X500Name(CA_SUBJECT), thisUpdate);
+      builder.setNextUpdate(Date.from(nextUpdate));
+      for (X509Certificate certificate : revokedCertificates) {
+         builder.addCRLEntry(certificate.getSerialNumber(), thisUpdate, CRLReason.keyCompromise);
+      }
+      Path file = dir.resolve("ca.crl");
+      Files.write(file, new JcaX509CRLConverter().getCRL(
+            builder.build(new JcaContentSignerBuilder("SHA256WithRSAEncryption").build(signer.getPrivate())))
+            .getEncoded());
+
+      RevocationStore store = new RevocationStore(List.of(file.toUri()), false, 0);
+      // The CRLs are loaded in the background, never by the handshakes
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (store.crlCount() == 0) {
+         assertTrue(System.currentTimeMillis() < deadline, "CRL not loaded");
+         Thread.sleep(10);
+      }
+      return store;
+   }
+
+   private static X509Certificate clientCert(String subject, X509Certificate issuer, KeyPair issuerKeys)
+         throws Exception {
+      KeyPair keys = CertUtil.generateKeyPair(2048);
+      JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuer,
+            BigInteger.valueOf(++serial),
+            Date.from(Instant.now().minus(1, ChronoUnit.DAYS)),
+            Date.from(Instant.now().plus(1, ChronoUnit.DAYS)),
+            new X500Name(subject),
+            keys.getPublic());
+      builder.addExtension(Extension.extendedKeyUsage, false, new ExtendedKeyUsage(KeyPurposeId.id_kp_clientAuth));
+      return new JcaX509CertificateConverter().getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256WithRSAEncryption").build(issuerKeys.getPrivate())));
+   }
+
+   private static X509ExtendedTrustManager trustManager() throws Exception {
+      KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      keyStore.load(null, null);
+      keyStore.setCertificateEntry("ca", ca);
+      TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      factory.init(keyStore);
+      for (TrustManager trustManager : factory.getTrustManagers()) {
+         if (trustManager instanceof X509ExtendedTrustManager x509TrustManager) {
+            return x509TrustManager;
+         }
+      }
+      throw new IllegalStateException("No X509 trust manager");
+   }
+
+   /**
+    * Trusts the CA, unless told to reject every chain or to accept any.
+    */
+   private static class ControlledTrustManager extends X509ExtendedTrustManager {
+      private final X509ExtendedTrustManager delegate;
+      volatile boolean reject;
+      volatile boolean acceptAll;
+
+      ControlledTrustManager() throws Exception {
+         this.delegate = trustManager();
+      }
+
+      private void check(X509Certificate[] chain, String authType) throws CertificateException {
+         if (reject) {
+            throw new CertificateException("Rejected");
+         }
+         if (!acceptAll) {
+            delegate.checkClientTrusted(chain, authType);
+         }
+      }
+
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+         check(chain, authType);
+      }
+
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+            throws CertificateException {
+         check(chain, authType);
+      }
+
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+            throws CertificateException {
+         check(chain, authType);
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+         throw new CertificateException("Only verifies the clients");
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+            throws CertificateException {
+         throw new CertificateException("Only verifies the clients");
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+            throws CertificateException {
+         throw new CertificateException("Only verifies the clients");
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+         return delegate.getAcceptedIssuers();
+      }
+   }
+
+   /**
+    * Records the issuer the status was asked for, without any revocation source.
+    */
+   private static class RecordingStore extends RevocationStore {
+      volatile X509Certificate issuer;
+
+      RecordingStore() {
+         super(List.of(), false, 0);
+      }
+
+      @Override
+      public Status status(X509Certificate certificate, X509Certificate issuer) {
+         this.issuer = issuer;
+         return Status.UNKNOWN;
+      }
+   }
+}
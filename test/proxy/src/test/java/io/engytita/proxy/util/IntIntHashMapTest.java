@@ -0,0 +1,88 @@
+package io.engytita.proxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class IntIntHashMapTest {
+
+   @Test
+   void putGetAndReplace() {
+      IntIntHashMap map = new IntIntHashMap();
+
+      map.put(3, 1);
+      map.put(5, 3);
+      map.put(3, 7);
+
+      assertEquals(7, map.get(3, 0));
+      assertEquals(3, map.get(5, 0));
+      assertEquals(-1, map.get(7, -1));
+      assertEquals(2, map.size());
+   }
+
+   @Test
+   void growsPastTheExpectedSize() {
+      IntIntHashMap map = new IntIntHashMap(2);
+      for (int streamId = 1; streamId < 20_000; streamId += 2) {
+         map.put(streamId, streamId * 2);
+      }
+
+      assertEquals(10_000, map.size());
+      for (int streamId = 1; streamId < 20_000; streamId += 2) {
+         assertEquals(streamId * 2, map.get(streamId, 0));
+      }
+      assertFalse(map.containsKey(2));
+   }
+
+   @Test
+   void removalKeepsTheOtherKeysReachable() {
+      IntIntHashMap map = new IntIntHashMap();
+      Map<Integer, Integer> expected = new HashMap<>();
+      Random random = new Random(7);
+      for (int i = 0; i < 100_000; i++) {
+         // Few distinct keys, so the runs of probes are often broken by the removals
+         int key = random.nextInt(64) + 1;
+         if (random.nextBoolean()) {
+            map.put(key, i);
+            expected.put(key, i);
+         } else {
+            assertEquals(expected.remove(key) != null, map.remove(key));
+         }
+         assertEquals(expected.size(), map.size());
+      }
+      for (int key = 1; key <= 64; key++) {
+         assertEquals(expected.getOrDefault(key, 0), map.get(key, 0));
+         assertEquals(expected.containsKey(key), map.containsKey(key));
+      }
+   }
+
+   @Test
+   void largeAndNegativeKeys() {
+      IntIntHashMap map = new IntIntHashMap();
+      map.put(Integer.MAX_VALUE, 1);
+      map.put(Integer.MIN_VALUE, 2);
+      map.put(-1, 3);
+
+      assertEquals(1, map.get(Integer.MAX_VALUE, 0));
+      assertEquals(2, map.get(Integer.MIN_VALUE, 0));
+      assertTrue(map.remove(-1));
+      assertFalse(map.isEmpty());
+      assertEquals(0, map.get(-1, 0));
+   }
+
+   @Test
+   void zeroIsNotAKey() {
+      IntIntHashMap map = new IntIntHashMap();
+
+      assertThrows(IllegalArgumentException.class, () -> map.put(0, 1));
+      assertFalse(map.containsKey(0));
+      assertFalse(map.remove(0));
+   }
+}
@@ -0,0 +1,76 @@
+package io.engytita.proxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class SerialExecutorTest {
+
+   @Test
+   void tasksRunOneAtATimeInSubmissionOrder() throws InterruptedException {
+      ExecutorService pool = Executors.newFixedThreadPool(4);
+      try {
+         SerialExecutor executor = new SerialExecutor(pool);
+         List<Integer> order = new ArrayList<>();
+         CountDownLatch done = new CountDownLatch(1);
+         int tasks = 1000;
+         for (int i = 0; i < tasks; i++) {
+            int task = i;
+            // Not synchronized, the tasks never overlap
+            executor.execute(() -> order.add(task));
+         }
+         executor.execute(done::countDown);
+
+         assertTrue(done.await(10, TimeUnit.SECONDS));
+         assertEquals(tasks, order.size());
+         for (int i = 0; i < tasks; i++) {
+            assertEquals(i, order.get(i));
+         }
+      } finally {
+         pool.shutdownNow();
+      }
+   }
+
+   @Test
+   void rejectionLeavesTheExecutorUsable() {
+      AtomicBoolean reject = new AtomicBoolean(true);
+      SerialExecutor executor = new SerialExecutor(task -> {
+         if (reject.get()) {
+            throw new RejectedExecutionException("saturated");
+         }
+         task.run();
+      });
+      List<String> ran = new ArrayList<>();
+
+      assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> ran.add("rejected")));
+      reject.set(false);
+      executor.execute(() -> ran.add("accepted"));
+
+      // The rejected task is not run later either
+      assertEquals(List.of("accepted"), ran);
+   }
+
+   @Test
+   void failingTaskDoesNotStopTheNextOnes() {
+      SerialExecutor executor = new SerialExecutor(Runnable::run);
+      List<String> ran = new ArrayList<>();
+
+      executor.execute(() -> {
+         throw new IllegalStateException("task failed");
+      });
+      executor.execute(() -> ran.add("next"));
+
+      assertEquals(List.of("next"), ran);
+   }
+}
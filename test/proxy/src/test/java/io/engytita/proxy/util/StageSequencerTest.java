@@ -0,0 +1,96 @@
+package io.engytita.proxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+class StageSequencerTest {
+
+   private final EmbeddedChannel channel = new EmbeddedChannel();
+   private final StageSequencer sequencer = new StageSequencer(() -> channel);
+   private final List<Object> processed = new ArrayList<>();
+
+   @AfterEach
+   void close() {
+      channel.finishAndReleaseAll();
+   }
+
+   @Test
+   void completedStageRunsInline() {
+      sequencer.submit(channel.eventLoop(), CompletableFuture.completedFuture("a"), processed::add, processed::add);
+
+      assertEquals(List.of("a"), processed);
+      assertTrue(sequencer.isIdle());
+      assertTrue(channel.config().isAutoRead());
+   }
+
+   @Test
+   void stagesCompleteInSubmissionOrder() {
+      CompletableFuture<String> first = new CompletableFuture<>();
+      CompletableFuture<String> second = new CompletableFuture<>();
+      sequencer.submit(channel.eventLoop(), first, processed::add, processed::add);
+      sequencer.submit(channel.eventLoop(), second, processed::add, processed::add);
+      sequencer.submit(channel.eventLoop(), () -> processed.add("action"), processed::add);
+
+      second.complete("second");
+      channel.runPendingTasks();
+      assertEquals(List.of(), processed);
+
+      first.complete("first");
+      channel.runPendingTasks();
+      assertEquals(List.of("first", "second", "action"), processed);
+      assertTrue(sequencer.isIdle());
+   }
+
+   @Test
+   void readsSuspendedWhileStagesPending() {
+      CompletableFuture<String> pending = new CompletableFuture<>();
+      sequencer.submit(channel.eventLoop(), pending, processed::add, processed::add);
+      // Queued behind the pending stage, although already completed
+      sequencer.submit(channel.eventLoop(), CompletableFuture.completedFuture("next"), processed::add,
+            processed::add);
+      assertFalse(channel.config().isAutoRead());
+
+      pending.complete("pending");
+      channel.runPendingTasks();
+      assertEquals(List.of("pending", "next"), processed);
+      assertTrue(channel.config().isAutoRead());
+   }
+
+   @Test
+   void failedStageReachesOnFailure() {
+      IllegalStateException failure = new IllegalStateException("listener failed");
+      CompletableFuture<String> stage = new CompletableFuture<>();
+      sequencer.submit(channel.eventLoop(), stage, processed::add, processed::add);
+      sequencer.submit(channel.eventLoop(), CompletableFuture.completedFuture("after"), processed::add,
+            processed::add);
+
+      stage.completeExceptionally(failure);
+      channel.runPendingTasks();
+      assertEquals(2, processed.size());
+      assertSame(failure, processed.get(0));
+      assertEquals("after", processed.get(1));
+      assertTrue(channel.config().isAutoRead());
+   }
+
+   @Test
+   void sourceMayBeMissing() {
+      StageSequencer detached = new StageSequencer(() -> null);
+      CompletableFuture<String> stage = new CompletableFuture<>();
+      detached.submit(channel.eventLoop(), stage, processed::add, processed::add);
+
+      stage.complete("done");
+      channel.runPendingTasks();
+      assertEquals(List.of("done"), processed);
+   }
+}